@@ -2,6 +2,8 @@ plugins {
     java
     id("org.springframework.boot") version "3.2.1"
     id("io.spring.dependency-management") version "1.1.4"
+    // Микробенчмарки горячих участков кода (src/jmh/java)
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "ru.bank"
@@ -12,18 +14,39 @@ repositories {
     mavenCentral()
 }
 
+// Нагрузочный тест (src/loadTest/java): приложение целиком против PostgreSQL со схемой creation.sql
+sourceSets {
+    create("loadTest") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+val loadTestImplementation: Configuration by configurations.getting {
+    extendsFrom(configurations.implementation.get())
+}
+val loadTestRuntimeOnly: Configuration by configurations.getting {
+    extendsFrom(configurations.runtimeOnly.get())
+}
+
 dependencies {
     // Spring Boot Starter
     implementation("org.springframework.boot:spring-boot-starter-web")
     implementation("org.springframework.boot:spring-boot-starter-thymeleaf")
     implementation("org.springframework.boot:spring-boot-starter-data-jpa")
 
+    // Метрики (очередь журнала доступа и др.)
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
+
     // PostgreSQL Driver
     implementation("org.postgresql:postgresql:42.7.1")
 
     // Validation
     implementation("org.springframework.boot:spring-boot-starter-validation")
 
+    // Превью и число страниц PDF-документов
+    implementation("org.apache.pdfbox:pdfbox:3.0.1")
+
     // BCrypt для паролей
     implementation("org.springframework.security:spring-security-crypto:6.2.1")
 
@@ -36,8 +59,35 @@ dependencies {
 
     // Test
     testImplementation("org.springframework.boot:spring-boot-starter-test")
+
+    // Нагрузочный тест: встроенный PostgreSQL и гистограммы задержек
+    loadTestImplementation("io.zonky.test:embedded-postgres:2.0.7")
+    loadTestImplementation(enforcedPlatform("io.zonky.test.postgres:embedded-postgres-binaries-bom:16.2.0"))
+    loadTestImplementation("org.hdrhistogram:HdrHistogram:2.1.12")
 }
 
 tasks.withType<Test> {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// Запуск: ./gradlew loadTest -Ploadtest.concurrency=50 -Ploadtest.duration-seconds=120
+// Все параметры loadtest.* описаны в LoadTestConfig
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Нагрузочный тест: пропускная способность и перцентили задержек по эндпоинтам"
+    classpath = sourceSets["loadTest"].runtimeClasspath
+    mainClass.set("ru.mospolytech.cards.loadtest.LoadTestRunner")
+    systemProperty("loadtest.report", layout.buildDirectory.file("reports/loadtest/results.json").get().asFile.path)
+    systemProperties(project.properties.filterKeys { it.startsWith("loadtest.") || it.startsWith("cards.") })
+}
+
+// Запуск: ./gradlew jmh, отдельные бенчмарки: ./gradlew jmh -PjmhIncludes=BCrypt
+// Результаты в JSON для сравнения между версиями (например, в jmh.morethan.io)
+jmh {
+    jmhVersion.set("1.37")
+    // Бенчмарки используют тестовые заглушки (например, InMemoryRequestNumberCounters)
+    includeTests.set(true)
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/jmh/results.json"))
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.add(it) }
+}
@@ -0,0 +1,52 @@
+package ru.mospolytech.cards.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка пароля BCrypt при разной стоимости (cards.security.bcrypt.cost).
+ * Время одной проверки определяет, сколько входов в секунду выдерживает пул PasswordVerifier.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class BCryptBenchmark {
+
+    private static final String PASSWORD = "Secret-Passw0rd";
+
+    @Param({"4", "10", "12"})
+    public int cost;
+
+    private String passwordHash;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        passwordHash = BCrypt.hashpw(PASSWORD, BCrypt.gensalt(cost));
+    }
+
+    @Benchmark
+    public boolean checkCorrectPassword() {
+        return BCrypt.checkpw(PASSWORD, passwordHash);
+    }
+
+    @Benchmark
+    public boolean checkWrongPassword() {
+        return BCrypt.checkpw("wrong-password", passwordHash);
+    }
+}
@@ -0,0 +1,129 @@
+package ru.mospolytech.cards.benchmark;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.data.jpa.domain.Specification;
+import ru.mospolytech.cards.entity.CardRequest;
+import ru.mospolytech.cards.specification.CardRequestSpecification;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение критериев списка заявок: filterBy, withSort и их применение к CriteriaQuery,
+ * как это делает репозиторий при каждом открытии списка.
+ *
+ * Метамодель строится Hibernate без подключения к БД.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CardRequestSpecificationBenchmark {
+
+    private static final String ENTITY_PACKAGE = "ru.mospolytech.cards.entity";
+
+    @Param({"createdAt", "client", "organization"})
+    public String sortBy;
+
+    private SessionFactory sessionFactory;
+    private CriteriaBuilder criteriaBuilder;
+    private LocalDate dateFrom;
+    private LocalDate dateTo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.DIALECT, PostgreSQLDialect.class.getName())
+                .applySetting("hibernate.boot.allow_jdbc_metadata_access", "false")
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "none")
+                .build();
+        MetadataSources sources = new MetadataSources(registry);
+
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Entity.class));
+        for (BeanDefinition definition : scanner.findCandidateComponents(ENTITY_PACKAGE)) {
+            sources.addAnnotatedClass(Class.forName(definition.getBeanClassName()));
+        }
+
+        sessionFactory = sources.buildMetadata().buildSessionFactory();
+        criteriaBuilder = sessionFactory.getCriteriaBuilder();
+        dateTo = LocalDate.now();
+        dateFrom = dateTo.minusMonths(3);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    /**
+     * Список без фильтров
+     */
+    @Benchmark
+    public CriteriaQuery<CardRequest> filterByEmpty() {
+        return apply(CardRequestSpecification.filterBy(null, null, null, null, null, null, null));
+    }
+
+    /**
+     * Все фильтры панели заполнены
+     */
+    @Benchmark
+    public CriteriaQuery<CardRequest> filterByAll() {
+        return apply(CardRequestSpecification.filterBy(1L, 2L, 3L, 4L, 5L, dateFrom, dateTo));
+    }
+
+    @Benchmark
+    public CriteriaQuery<CardRequest> withSort() {
+        return apply(CardRequestSpecification.withSort(sortBy, "asc"));
+    }
+
+    /**
+     * Первая страница списка целиком: fetch-join, фильтры и сортировка
+     */
+    @Benchmark
+    public CriteriaQuery<CardRequest> listPage() {
+        Specification<CardRequest> spec = Specification.where(CardRequestSpecification.fetchForList())
+                .and(CardRequestSpecification.filterBy(null, 2L, null, 4L, 5L, dateFrom, dateTo))
+                .and(CardRequestSpecification.withSort(sortBy, "desc"))
+                .and(CardRequestSpecification.afterCursor(sortBy, "desc", null));
+        return apply(spec);
+    }
+
+    private CriteriaQuery<CardRequest> apply(Specification<CardRequest> spec) {
+        CriteriaQuery<CardRequest> query = criteriaBuilder.createQuery(CardRequest.class);
+        Root<CardRequest> root = query.from(CardRequest.class);
+        Predicate predicate = spec.toPredicate(root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        return query;
+    }
+}
@@ -0,0 +1,83 @@
+package ru.mospolytech.cards.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mospolytech.cards.entity.Employee;
+import ru.mospolytech.cards.entity.Role;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Методы Employee, которые вызываются на каждом запросе: имя в шапке и проверки роли
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmployeeBenchmark {
+
+    private Employee admin;
+    private Employee manager;
+    private Employee seniorManager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        admin = employee("Администратор", "Петров", "Петр", "Петрович");
+        manager = employee("Менеджер", "Сидорова", "Анна", null);
+        // Роль с "менеджер" в нижнем регистре - isManager проверяет оба варианта
+        seniorManager = employee("Старший менеджер", "Кузнецов", "Олег", "");
+    }
+
+    @Benchmark
+    public String fullNameWithMiddleName() {
+        return admin.getFullName();
+    }
+
+    @Benchmark
+    public String fullNameWithoutMiddleName() {
+        return manager.getFullName();
+    }
+
+    @Benchmark
+    public boolean isAdmin() {
+        return manager.isAdmin();
+    }
+
+    @Benchmark
+    public boolean isManagerFirstMatch() {
+        return manager.isManager();
+    }
+
+    @Benchmark
+    public boolean isManagerSecondMatch() {
+        return seniorManager.isManager();
+    }
+
+    @Benchmark
+    public boolean isManagerNoMatch() {
+        return admin.isManager();
+    }
+
+    private static Employee employee(String roleName, String lastName, String firstName, String middleName) {
+        Role role = new Role();
+        role.setRoleName(roleName);
+
+        Employee employee = new Employee();
+        employee.setRole(role);
+        employee.setLastName(lastName);
+        employee.setFirstName(firstName);
+        employee.setMiddleName(middleName);
+        return employee;
+    }
+}
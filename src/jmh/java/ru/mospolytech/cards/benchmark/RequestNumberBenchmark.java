@@ -0,0 +1,60 @@
+package ru.mospolytech.cards.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mospolytech.cards.service.InMemoryRequestNumberCounters;
+import ru.mospolytech.cards.service.RequestNumberAllocator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выдача номеров заявок RequestNumberAllocator: форматирование номера, раздача блока из памяти
+ * и конкуренция потоков узла за блок.
+ *
+ * Таблица request_number_counters заменена тестовой InMemoryRequestNumberCounters (та же, что
+ * в RequestNumberAllocatorTest): UPSERT - это блокировка строки в памяти без сетевого обращения,
+ * журнала и конкуренции узлов за строку в PostgreSQL. Поэтому результаты показывают только
+ * накладные расходы кода узла и не говорят о пропускной способности UPSERT; ее под нагрузкой
+ * против настоящей БД измеряет loadTest (сценарий create).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestNumberBenchmark {
+
+    @Param({"1", "20", "100"})
+    public int blockSize;
+
+    private RequestNumberAllocator allocator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryRequestNumberCounters counters = new InMemoryRequestNumberCounters();
+        allocator = new RequestNumberAllocator(counters, counters.transactionManager(), blockSize);
+    }
+
+    @Benchmark
+    public String nextRequestNumber() {
+        return allocator.nextRequestNumber();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String nextRequestNumberContended() {
+        return allocator.nextRequestNumber();
+    }
+}
@@ -0,0 +1,80 @@
+package ru.mospolytech.cards.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mospolytech.cards.controller.ApiController;
+import ru.mospolytech.cards.entity.User;
+import ru.mospolytech.cards.entity.UserOrganization;
+import ru.mospolytech.cards.repository.UserOrganizationRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Преобразование пользователей организации в JSON-ответ ApiController.getUsersByOrganization.
+ * Репозиторий подменен и возвращает заранее созданный список, БД не нужна.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserOrganizationMappingBenchmark {
+
+    private static final Long ORGANIZATION_ID = 1L;
+
+    @Param({"10", "100", "1000"})
+    public int users;
+
+    private ApiController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<UserOrganization> userOrganizations = new ArrayList<>(users);
+        for (long i = 1; i <= users; i++) {
+            User user = new User();
+            user.setId(i);
+            user.setLastName("Иванов" + i);
+            user.setFirstName("Иван");
+            user.setMiddleName(i % 3 == 0 ? null : "Иванович");
+            user.setEmail("user" + i + "@example.ru");
+            user.setPhone("+7900" + String.format("%07d", i));
+
+            UserOrganization userOrganization = new UserOrganization();
+            userOrganization.setId(i);
+            userOrganization.setUser(user);
+            userOrganization.setPosition("Бухгалтер");
+            userOrganizations.add(userOrganization);
+        }
+
+        UserOrganizationRepository repository = (UserOrganizationRepository) Proxy.newProxyInstance(
+                UserOrganizationRepository.class.getClassLoader(),
+                new Class<?>[]{UserOrganizationRepository.class},
+                (proxy, method, args) -> {
+                    if ("findByOrganizationIdAndIsActiveTrue".equals(method.getName())) {
+                        return userOrganizations;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        controller = new ApiController(repository, null, null, null, null);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> getUsersByOrganization() {
+        return controller.getUsersByOrganization(ORGANIZATION_ID);
+    }
+}
@@ -0,0 +1,173 @@
+package ru.mospolytech.cards.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Параметры нагрузочного теста. Читаются из системных свойств loadtest.*
+ * (через Gradle: ./gradlew loadTest -Ploadtest.concurrency=50).
+ *
+ * <ul>
+ *     <li>concurrency - число виртуальных пользователей (потоков), по умолчанию 20</li>
+ *     <li>warmup-seconds, duration-seconds - прогрев без учета и время измерения</li>
+ *     <li>think-time-ms - пауза пользователя между действиями</li>
+ *     <li>mix - доли сценариев, например "list:40,view:25,create:10"</li>
+ *     <li>jdbc-url, jdbc-user, jdbc-password - локальный PostgreSQL; если не задан, запускается встроенный</li>
+ *     <li>init-schema - загрузить creation.sql и data.sql в пустую базу (по умолчанию да)</li>
+ *     <li>seed-requests - сколько заявок сгенерировать дополнительно к data.sql</li>
+ *     <li>base-url - адрес уже запущенного приложения; если не задан, приложение запускается в этом процессе</li>
+ *     <li>password - пароль, который получают все сотрудники для входа</li>
+ *     <li>report - файл JSON-отчета</li>
+ * </ul>
+ */
+public class LoadTestConfig {
+
+    static final String DEFAULT_MIX = "list:35,view:25,create:8,change-status:8,update:3,bulk-change-status:2," +
+            "new-form:4,export:1,api-users:6,api-dashboard:4,home:2,relogin:2";
+
+    private final int concurrency;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final long thinkTimeMs;
+    private final Map<Scenario, Integer> mix;
+    private final String jdbcUrl;
+    private final String jdbcUser;
+    private final String jdbcPassword;
+    private final boolean initSchema;
+    private final int seedRequests;
+    private final String baseUrl;
+    private final String password;
+    private final int bcryptCost;
+    private final String reportPath;
+
+    private LoadTestConfig() {
+        this.concurrency = Math.max(1, intProperty("concurrency", 20));
+        this.warmupSeconds = Math.max(0, intProperty("warmup-seconds", 15));
+        this.durationSeconds = Math.max(1, intProperty("duration-seconds", 60));
+        this.thinkTimeMs = Math.max(0, intProperty("think-time-ms", 0));
+        this.mix = parseMix(property("mix", DEFAULT_MIX));
+        this.jdbcUrl = property("jdbc-url", "");
+        this.jdbcUser = property("jdbc-user", "postgres");
+        this.jdbcPassword = property("jdbc-password", "postgres");
+        this.initSchema = Boolean.parseBoolean(property("init-schema", "true"));
+        this.seedRequests = Math.max(0, intProperty("seed-requests", 20000));
+        this.baseUrl = property("base-url", "");
+        this.password = property("password", "password123");
+        this.bcryptCost = Integer.parseInt(System.getProperty("cards.security.bcrypt.cost", "10"));
+        this.reportPath = property("report", "build/reports/loadtest/results.json");
+    }
+
+    public static LoadTestConfig fromSystemProperties() {
+        return new LoadTestConfig();
+    }
+
+    private static String property(String name, String defaultValue) {
+        String value = System.getProperty("loadtest." + name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        return Integer.parseInt(property(name, String.valueOf(defaultValue)));
+    }
+
+    private static Map<Scenario, Integer> parseMix(String value) {
+        Map<Scenario, Integer> result = new LinkedHashMap<>();
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Некорректный элемент loadtest.mix: " + part);
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                result.put(Scenario.fromKey(pair[0].trim()), weight);
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("В loadtest.mix нет ни одного сценария с положительной долей");
+        }
+        return result;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public long getThinkTimeMs() {
+        return thinkTimeMs;
+    }
+
+    public Map<Scenario, Integer> getMix() {
+        return mix;
+    }
+
+    public boolean isEmbeddedDatabase() {
+        return jdbcUrl.isEmpty();
+    }
+
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public String getJdbcUser() {
+        return jdbcUser;
+    }
+
+    public String getJdbcPassword() {
+        return jdbcPassword;
+    }
+
+    public boolean isInitSchema() {
+        return initSchema;
+    }
+
+    public int getSeedRequests() {
+        return seedRequests;
+    }
+
+    public boolean isExternalApplication() {
+        return !baseUrl.isEmpty();
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getBcryptCost() {
+        return bcryptCost;
+    }
+
+    public String getReportPath() {
+        return reportPath;
+    }
+
+    /**
+     * Параметры для отчета
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("concurrency", concurrency);
+        result.put("warmupSeconds", warmupSeconds);
+        result.put("durationSeconds", durationSeconds);
+        result.put("thinkTimeMs", thinkTimeMs);
+        Map<String, Integer> mixByKey = new LinkedHashMap<>();
+        mix.forEach((scenario, weight) -> mixByKey.put(scenario.getKey(), weight));
+        result.put("mix", mixByKey);
+        result.put("database", isEmbeddedDatabase() ? "embedded" : jdbcUrl);
+        result.put("seedRequests", initSchema ? seedRequests : 0);
+        result.put("application", isExternalApplication() ? baseUrl : "in-process");
+        result.put("bcryptCost", bcryptCost);
+        return result;
+    }
+}
@@ -0,0 +1,168 @@
+package ru.mospolytech.cards.loadtest;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Идентификаторы из базы, из которых виртуальные пользователи собирают параметры запросов.
+ * Читаются один раз перед стартом нагрузки.
+ */
+public class LoadTestData {
+
+    /**
+     * Сотрудник, от имени которого работает виртуальный пользователь
+     */
+    public static class Account {
+
+        private final long employeeId;
+        private final String email;
+        private final boolean admin;
+
+        Account(long employeeId, String email, boolean admin) {
+            this.employeeId = employeeId;
+            this.email = email;
+            this.admin = admin;
+        }
+
+        public long getEmployeeId() {
+            return employeeId;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public boolean isAdmin() {
+            return admin;
+        }
+    }
+
+    private final List<Account> accounts;
+    private final long[] allRequestIds;
+    private final Map<Long, long[]> requestIdsByEmployee;
+    private final long[] userOrganizationIds;
+    private final long[] organizationIds;
+    private final long[] cardTypeIds;
+    private final long[] branchIds;
+    private final long[] statusIds;
+    // Статусы, в которые переводят заявки сценарии смены статуса ("Выпущена" исключена)
+    private final long[] targetStatusIds;
+
+    private LoadTestData(List<Account> accounts, long[] allRequestIds, Map<Long, long[]> requestIdsByEmployee,
+                         long[] userOrganizationIds, long[] organizationIds, long[] cardTypeIds,
+                         long[] branchIds, long[] statusIds, long[] targetStatusIds) {
+        this.accounts = accounts;
+        this.allRequestIds = allRequestIds;
+        this.requestIdsByEmployee = requestIdsByEmployee;
+        this.userOrganizationIds = userOrganizationIds;
+        this.organizationIds = organizationIds;
+        this.cardTypeIds = cardTypeIds;
+        this.branchIds = branchIds;
+        this.statusIds = statusIds;
+        this.targetStatusIds = targetStatusIds;
+    }
+
+    public static LoadTestData load(DataSource dataSource) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        List<Account> accounts = jdbcTemplate.query(
+                "SELECT e.id, e.email, r.role_name = 'Администратор' AS is_admin " +
+                "FROM employees e JOIN roles r ON r.id = e.role_id WHERE e.is_active ORDER BY e.id",
+                (rs, rowNum) -> new Account(rs.getLong("id"), rs.getString("email"), rs.getBoolean("is_admin")));
+        if (accounts.isEmpty()) {
+            throw new IllegalStateException("В базе нет активных сотрудников");
+        }
+
+        List<Long> allIds = new ArrayList<>();
+        Map<Long, List<Long>> idsByEmployee = new HashMap<>();
+        jdbcTemplate.query("SELECT id, assigned_employee_id FROM card_requests ORDER BY id", rs -> {
+            long id = rs.getLong("id");
+            allIds.add(id);
+            long employeeId = rs.getLong("assigned_employee_id");
+            if (!rs.wasNull()) {
+                idsByEmployee.computeIfAbsent(employeeId, key -> new ArrayList<>()).add(id);
+            }
+        });
+        Map<Long, long[]> requestIdsByEmployee = new HashMap<>();
+        idsByEmployee.forEach((employeeId, ids) -> requestIdsByEmployee.put(employeeId, toArray(ids)));
+
+        return new LoadTestData(
+                accounts,
+                toArray(allIds),
+                requestIdsByEmployee,
+                ids(jdbcTemplate, "SELECT id FROM user_organizations WHERE is_active ORDER BY id"),
+                ids(jdbcTemplate, "SELECT id FROM organizations WHERE is_active ORDER BY id"),
+                ids(jdbcTemplate, "SELECT id FROM card_types ORDER BY id"),
+                ids(jdbcTemplate, "SELECT id FROM branches WHERE is_active ORDER BY id"),
+                ids(jdbcTemplate, "SELECT id FROM request_statuses ORDER BY id"),
+                ids(jdbcTemplate, "SELECT id FROM request_statuses WHERE status_name <> 'Выпущена' ORDER BY id"));
+    }
+
+    private static long[] ids(JdbcTemplate jdbcTemplate, String sql) {
+        long[] result = toArray(jdbcTemplate.queryForList(sql, Long.class));
+        if (result.length == 0) {
+            throw new IllegalStateException("Пустой справочник: " + sql);
+        }
+        return result;
+    }
+
+    private static long[] toArray(List<Long> ids) {
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Сотрудник для виртуального пользователя с номером index (по кругу)
+     */
+    public Account account(int index) {
+        return accounts.get(index % accounts.size());
+    }
+
+    public int getRequestCount() {
+        return allRequestIds.length;
+    }
+
+    /**
+     * Случайная заявка, доступная сотруднику: администратору - любая, менеджеру - назначенная на него
+     */
+    public long randomRequestId(Account account) {
+        long[] ids = account.isAdmin() ? allRequestIds : requestIdsByEmployee.get(account.getEmployeeId());
+        if (ids == null || ids.length == 0) {
+            ids = allRequestIds;
+        }
+        return random(ids);
+    }
+
+    public long randomUserOrganizationId() {
+        return random(userOrganizationIds);
+    }
+
+    public long randomOrganizationId() {
+        return random(organizationIds);
+    }
+
+    public long randomCardTypeId() {
+        return random(cardTypeIds);
+    }
+
+    public long randomBranchId() {
+        return random(branchIds);
+    }
+
+    public long randomStatusId() {
+        return random(statusIds);
+    }
+
+    public long randomTargetStatusId() {
+        return random(targetStatusIds);
+    }
+
+    private static long random(long[] values) {
+        return values[ThreadLocalRandom.current().nextInt(values.length)];
+    }
+}
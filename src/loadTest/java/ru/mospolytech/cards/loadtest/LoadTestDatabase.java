@@ -0,0 +1,120 @@
+package ru.mospolytech.cards.loadtest;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * База для нагрузочного теста: встроенный PostgreSQL или локальный по loadtest.jdbc-url.
+ *
+ * В пустую базу загружаются creation.sql и data.sql, затем генерируется seed-requests заявок
+ * по справочникам из data.sql, чтобы список и фильтры работали на объеме, близком к рабочему.
+ * Всем сотрудникам ставится пароль loadtest.password с той же стоимостью BCrypt, что у приложения,
+ * иначе первый вход каждого сотрудника запускал бы перехеширование.
+ */
+public class LoadTestDatabase implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestDatabase.class);
+
+    private static final String SEED_REQUESTS_SQL =
+            "WITH uo AS (SELECT array_agg(id ORDER BY id) AS ids FROM user_organizations WHERE is_active), " +
+            "ct AS (SELECT array_agg(id ORDER BY id) AS ids FROM card_types), " +
+            "br AS (SELECT array_agg(id ORDER BY id) AS ids FROM branches WHERE is_active), " +
+            "st AS (SELECT array_agg(id ORDER BY id) AS ids FROM request_statuses WHERE status_name <> 'Выпущена'), " +
+            "em AS (SELECT array_agg(id ORDER BY id) AS ids FROM employees WHERE is_active) " +
+            "INSERT INTO card_requests (user_organization_id, card_type_id, branch_id, status_id, " +
+            "assigned_employee_id, request_number, comments, created_at, updated_at) " +
+            "SELECT uo.ids[1 + g % cardinality(uo.ids)], ct.ids[1 + g % cardinality(ct.ids)], " +
+            "br.ids[1 + g % cardinality(br.ids)], st.ids[1 + (g / 7) % cardinality(st.ids)], " +
+            "em.ids[1 + (g / 3) % cardinality(em.ids)], 'LOAD-' || g, 'Сгенерирована для нагрузочного теста', " +
+            "now() - (g % 540) * INTERVAL '1 day' - (g % 1440) * INTERVAL '1 minute', " +
+            "now() - (g % 540) * INTERVAL '1 day' " +
+            "FROM generate_series(1, ?) AS g, uo, ct, br, st, em";
+
+    private final EmbeddedPostgres embeddedPostgres;
+    private final String jdbcUrl;
+    private final String user;
+    private final String password;
+    private final DataSource dataSource;
+
+    private LoadTestDatabase(EmbeddedPostgres embeddedPostgres, String jdbcUrl, String user, String password) {
+        this.embeddedPostgres = embeddedPostgres;
+        this.jdbcUrl = jdbcUrl;
+        this.user = user;
+        this.password = password;
+        this.dataSource = new DriverManagerDataSource(jdbcUrl, user, password);
+    }
+
+    public static LoadTestDatabase start(LoadTestConfig config) throws IOException {
+        if (!config.isEmbeddedDatabase()) {
+            logger.info("Используется PostgreSQL {}", config.getJdbcUrl());
+            return new LoadTestDatabase(null, config.getJdbcUrl(), config.getJdbcUser(), config.getJdbcPassword());
+        }
+        EmbeddedPostgres postgres = EmbeddedPostgres.builder().start();
+        logger.info("Запущен встроенный PostgreSQL на порту {}", postgres.getPort());
+        return new LoadTestDatabase(postgres, postgres.getJdbcUrl("postgres", "postgres"), "postgres", "postgres");
+    }
+
+    /**
+     * Загрузить схему и данные, сгенерировать заявки и выставить пароли сотрудников
+     */
+    public void prepare(LoadTestConfig config) throws IOException, SQLException {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        if (config.isInitSchema()) {
+            executeScript("scripts/creation.sql");
+            executeScript("scripts/data.sql");
+            if (config.getSeedRequests() > 0) {
+                long started = System.nanoTime();
+                int inserted = jdbcTemplate.update(SEED_REQUESTS_SQL, config.getSeedRequests());
+                logger.info("Сгенерировано заявок: {} за {} мс", inserted, (System.nanoTime() - started) / 1_000_000);
+            }
+            jdbcTemplate.execute("ANALYZE");
+        }
+        String passwordHash = BCrypt.hashpw(config.getPassword(), BCrypt.gensalt(config.getBcryptCost()));
+        jdbcTemplate.update("UPDATE employees SET password_hash = ?", passwordHash);
+    }
+
+    // Скрипт отправляется целиком: драйвер сам делит его на команды с учетом $$-блоков функций
+    private void executeScript(String path) throws IOException, SQLException {
+        String sql = new ClassPathResource(path).getContentAsString(StandardCharsets.UTF_8);
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+        logger.info("Загружен {}", path);
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (embeddedPostgres != null) {
+            embeddedPostgres.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ru.mospolytech.cards.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Задержки и ошибки по эндпоинтам. Пока идет прогрев, измерения не записываются.
+ */
+public class LoadTestMetrics {
+
+    /**
+     * Статистика одного эндпоинта (метод и шаблон пути, например "GET /applications/{id}")
+     */
+    public static class EndpointStats {
+
+        // Задержка в микросекундах, гистограмма расширяется сама
+        private final Histogram latency = new ConcurrentHistogram(3);
+        private final LongAdder errors = new LongAdder();
+
+        void record(long latencyNanos, boolean success) {
+            latency.recordValue(Math.max(1, latencyNanos / 1_000));
+            if (!success) {
+                errors.increment();
+            }
+        }
+
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        public long getCount() {
+            return latency.getTotalCount();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+    }
+
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private volatile boolean recording;
+
+    public void record(String endpoint, long latencyNanos, boolean success) {
+        if (recording) {
+            endpoints.computeIfAbsent(endpoint, key -> new EndpointStats()).record(latencyNanos, success);
+        }
+    }
+
+    public void startRecording() {
+        recording = true;
+    }
+
+    public void stopRecording() {
+        recording = false;
+    }
+
+    /**
+     * Снимок статистики, отсортированный по эндпоинту
+     */
+    public Map<String, EndpointStats> getEndpoints() {
+        return new TreeMap<>(endpoints);
+    }
+}
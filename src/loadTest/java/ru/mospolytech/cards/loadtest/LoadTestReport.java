@@ -0,0 +1,96 @@
+package ru.mospolytech.cards.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Итоги нагрузочного теста: таблица в консоль и JSON-файл для сравнения между версиями.
+ * Задержки в миллисекундах, пропускная способность - успешные и неуспешные ответы в секунду.
+ */
+public class LoadTestReport {
+
+    private static final double[] PERCENTILES = {50, 90, 95, 99, 99.9};
+
+    private final LoadTestConfig config;
+    private final Map<String, LoadTestMetrics.EndpointStats> endpoints;
+    private final double elapsedSeconds;
+    private final int requestCount;
+
+    public LoadTestReport(LoadTestConfig config, Map<String, LoadTestMetrics.EndpointStats> endpoints,
+                          double elapsedSeconds, int requestCount) {
+        this.config = config;
+        this.endpoints = endpoints;
+        this.elapsedSeconds = elapsedSeconds;
+        this.requestCount = requestCount;
+    }
+
+    public void print(PrintStream out) {
+        out.printf("%nНагрузка: %d пользователей, %.1f с, заявок в базе: %d%n",
+                config.getConcurrency(), elapsedSeconds, requestCount);
+        out.printf("%-45s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "Эндпоинт", "Запросов", "Ошибок", "В сек", "p50", "p90", "p95", "p99", "max");
+
+        long totalCount = 0;
+        long totalErrors = 0;
+        for (Map.Entry<String, LoadTestMetrics.EndpointStats> entry : endpoints.entrySet()) {
+            LoadTestMetrics.EndpointStats stats = entry.getValue();
+            Histogram latency = stats.getLatency();
+            out.printf("%-45s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    entry.getKey(), stats.getCount(), stats.getErrors(), stats.getCount() / elapsedSeconds,
+                    millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(90)),
+                    millis(latency.getValueAtPercentile(95)), millis(latency.getValueAtPercentile(99)),
+                    millis(latency.getMaxValue()));
+            totalCount += stats.getCount();
+            totalErrors += stats.getErrors();
+        }
+        out.printf("%-45s %9d %7d %9.1f%n", "Всего", totalCount, totalErrors, totalCount / elapsedSeconds);
+    }
+
+    public void write(Path path) throws IOException {
+        List<Map<String, Object>> endpointList = new ArrayList<>();
+        endpoints.forEach((endpoint, stats) -> {
+            Histogram latency = stats.getLatency();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("endpoint", endpoint);
+            item.put("count", stats.getCount());
+            item.put("errors", stats.getErrors());
+            item.put("throughputPerSecond", stats.getCount() / elapsedSeconds);
+            Map<String, Object> latencyMs = new LinkedHashMap<>();
+            latencyMs.put("mean", latency.getMean() / 1_000);
+            for (double percentile : PERCENTILES) {
+                latencyMs.put("p" + (percentile % 1 == 0 ? String.valueOf((int) percentile) : String.valueOf(percentile)),
+                        millis(latency.getValueAtPercentile(percentile)));
+            }
+            latencyMs.put("max", millis(latency.getMaxValue()));
+            item.put("latencyMs", latencyMs);
+            endpointList.add(item);
+        });
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("finishedAt", LocalDateTime.now().toString());
+        result.put("config", config.toMap());
+        result.put("elapsedSeconds", elapsedSeconds);
+        result.put("requestCount", requestCount);
+        result.put("endpoints", endpointList);
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(path.toFile(), result);
+    }
+
+    private static double millis(long micros) {
+        return micros / 1_000.0;
+    }
+}
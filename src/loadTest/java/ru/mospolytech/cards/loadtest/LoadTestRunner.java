@@ -0,0 +1,121 @@
+package ru.mospolytech.cards.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.mospolytech.cards.CorporateCardsApplication;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Нагрузочный тест приложения целиком: PostgreSQL со схемой creation.sql, приложение на случайном порту
+ * и concurrency виртуальных пользователей, которые входят, смотрят список с фильтрами, открывают,
+ * создают заявки и меняют статусы. В конце печатаются пропускная способность и перцентили задержек
+ * по каждому эндпоинту ApplicationController, AuthController и ApiController.
+ *
+ * Запуск: ./gradlew loadTest (параметры - в LoadTestConfig)
+ */
+public class LoadTestRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestRunner.class);
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromSystemProperties();
+
+        try (LoadTestDatabase database = LoadTestDatabase.start(config)) {
+            database.prepare(config);
+            LoadTestData data = LoadTestData.load(database.getDataSource());
+
+            ConfigurableApplicationContext context = null;
+            try {
+                String baseUrl;
+                if (config.isExternalApplication()) {
+                    baseUrl = config.getBaseUrl().replaceAll("/+$", "");
+                } else {
+                    context = startApplication(database, config);
+                    baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+                }
+                logger.info("Нагрузка на {}: {} пользователей, прогрев {} с, измерение {} с",
+                        baseUrl, config.getConcurrency(), config.getWarmupSeconds(), config.getDurationSeconds());
+
+                LoadTestReport report = runLoad(baseUrl, data, config);
+                report.print(System.out);
+                Path reportPath = Path.of(config.getReportPath());
+                report.write(reportPath);
+                logger.info("Отчет записан в {}", reportPath.toAbsolutePath());
+            } finally {
+                if (context != null) {
+                    context.close();
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext startApplication(LoadTestDatabase database, LoadTestConfig config)
+            throws Exception {
+        Path storage = Files.createTempDirectory("cards-loadtest");
+
+        // Значения по умолчанию: системные свойства (-Pcards.* в Gradle) их переопределяют
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("spring.datasource.url", database.getJdbcUrl());
+        properties.put("spring.datasource.username", database.getUser());
+        properties.put("spring.datasource.password", database.getPassword());
+        properties.put("server.port", 0);
+        properties.put("server.servlet.session.tracking-modes", "cookie");
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("logging.level.root", "WARN");
+        properties.put("logging.level.ru.mospolytech.cards.loadtest", "INFO");
+        properties.put("cards.documents.storage-dir", storage.resolve("documents").toString());
+        properties.put("cards.authorization.journal.dir", storage.resolve("journal").toString());
+        properties.put("cards.security.bcrypt.cost", config.getBcryptCost());
+        // Перенос в архив во время замера исказил бы задержки списка и смены статуса
+        properties.put("cards.archive.enabled", false);
+
+        return new SpringApplicationBuilder(CorporateCardsApplication.class)
+                .properties(properties)
+                .run();
+    }
+
+    private static LoadTestReport runLoad(String baseUrl, LoadTestData data, LoadTestConfig config)
+            throws InterruptedException {
+        LoadTestMetrics metrics = new LoadTestMetrics();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(config.getConcurrency(), runnable -> {
+            Thread thread = new Thread(runnable, "virtual-user-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<VirtualUser> users = new ArrayList<>();
+        for (int i = 0; i < config.getConcurrency(); i++) {
+            VirtualUser user = new VirtualUser(baseUrl, data, data.account(i), config, metrics);
+            users.add(user);
+            executor.execute(user);
+        }
+
+        TimeUnit.SECONDS.sleep(config.getWarmupSeconds());
+        metrics.startRecording();
+        long started = System.nanoTime();
+        TimeUnit.SECONDS.sleep(config.getDurationSeconds());
+        metrics.stopRecording();
+        double elapsedSeconds = (System.nanoTime() - started) / 1_000_000_000.0;
+
+        users.forEach(VirtualUser::stop);
+        executor.shutdown();
+        if (!executor.awaitTermination(70, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+        return new LoadTestReport(config, metrics.getEndpoints(), elapsedSeconds, data.getRequestCount());
+    }
+}
@@ -0,0 +1,39 @@
+package ru.mospolytech.cards.loadtest;
+
+/**
+ * Действие виртуального пользователя. Доли сценариев задаются в loadtest.mix по ключу.
+ */
+public enum Scenario {
+    LIST("list"),
+    VIEW("view"),
+    NEW_FORM("new-form"),
+    CREATE("create"),
+    UPDATE("update"),
+    CHANGE_STATUS("change-status"),
+    BULK_CHANGE_STATUS("bulk-change-status"),
+    EXPORT("export"),
+    API_USERS("api-users"),
+    API_DASHBOARD("api-dashboard"),
+    HOME("home"),
+    // Выход и повторный вход: GET /logout, GET /login, POST /login
+    RELOGIN("relogin");
+
+    private final String key;
+
+    Scenario(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public static Scenario fromKey(String key) {
+        for (Scenario scenario : values()) {
+            if (scenario.key.equals(key)) {
+                return scenario;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный сценарий в loadtest.mix: " + key);
+    }
+}
@@ -0,0 +1,256 @@
+package ru.mospolytech.cards.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Виртуальный пользователь: входит под своим сотрудником и до остановки выполняет сценарии
+ * в пропорциях loadtest.mix. У каждого пользователя своя сессия (cookie JSESSIONID).
+ *
+ * Редиректы не выполняются: измеряется время ответа самого эндпоинта. Успех определяется
+ * по коду ответа и адресу редиректа; редирект на /login считается ошибкой и приводит к повторному входу.
+ * Ошибки, которые контроллеры показывают flash-сообщением (например, недопустимая смена статуса),
+ * по ответу не видны и считаются успешными.
+ */
+public class VirtualUser implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualUser.class);
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final String[] SORT_FIELDS = {"createdAt", "client", "organization"};
+
+    private final String baseUrl;
+    private final LoadTestData data;
+    private final LoadTestData.Account account;
+    private final String password;
+    private final LoadTestMetrics metrics;
+    private final Scenario[] scenarios;
+    private final int[] cumulativeWeights;
+    private final long thinkTimeMs;
+    private final HttpClient client;
+
+    private volatile boolean running = true;
+    private boolean loggedIn;
+
+    public VirtualUser(String baseUrl, LoadTestData data, LoadTestData.Account account, LoadTestConfig config,
+                       LoadTestMetrics metrics) {
+        this.baseUrl = baseUrl;
+        this.data = data;
+        this.account = account;
+        this.password = config.getPassword();
+        this.metrics = metrics;
+        this.thinkTimeMs = config.getThinkTimeMs();
+        this.scenarios = config.getMix().keySet().toArray(new Scenario[0]);
+        this.cumulativeWeights = new int[scenarios.length];
+        int total = 0;
+        for (int i = 0; i < scenarios.length; i++) {
+            total += config.getMix().get(scenarios[i]);
+            cumulativeWeights[i] = total;
+        }
+        this.client = HttpClient.newBuilder()
+                .cookieHandler(new CookieManager())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                if (!loggedIn) {
+                    login();
+                    if (!loggedIn) {
+                        // Вход не удался (неверный пароль, блокировка) - не засыпаем сервер попытками
+                        Thread.sleep(1000);
+                    }
+                } else {
+                    execute(nextScenario());
+                }
+                if (thinkTimeMs > 0) {
+                    Thread.sleep(thinkTimeMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                logger.debug("Ошибка запроса пользователя {}: {}", account.getEmail(), e.getMessage());
+            }
+        }
+    }
+
+    private Scenario nextScenario() {
+        int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return scenarios[i];
+            }
+        }
+        return scenarios[scenarios.length - 1];
+    }
+
+    private void execute(Scenario scenario) throws IOException, InterruptedException {
+        switch (scenario) {
+            case LIST -> get("GET /applications", "/applications" + query(listFilters()), ok());
+            case VIEW -> get("GET /applications/{id}", "/applications/" + data.randomRequestId(account), ok());
+            case NEW_FORM -> get("GET /applications/new", "/applications/new", ok());
+            case CREATE -> post("POST /applications/create", "/applications/create", Map.of(
+                    "userOrganizationId", data.randomUserOrganizationId(),
+                    "cardTypeId", data.randomCardTypeId(),
+                    "branchId", data.randomBranchId(),
+                    "comments", "Нагрузочный тест"), redirectTo("/applications"));
+            case UPDATE -> {
+                long id = data.randomRequestId(account);
+                post("POST /applications/{id}/update", "/applications/" + id + "/update", Map.of(
+                        "userOrganizationId", data.randomUserOrganizationId(),
+                        "cardTypeId", data.randomCardTypeId(),
+                        "branchId", data.randomBranchId(),
+                        "comments", "Изменена нагрузочным тестом"), redirectTo("/applications/" + id));
+            }
+            case CHANGE_STATUS -> {
+                long id = data.randomRequestId(account);
+                post("POST /applications/{id}/change-status", "/applications/" + id + "/change-status", Map.of(
+                        "newStatusId", data.randomTargetStatusId(),
+                        "statusComment", "Нагрузочный тест"), redirectTo("/applications/" + id));
+            }
+            case BULK_CHANGE_STATUS -> {
+                StringJoiner body = new StringJoiner("&");
+                for (int i = 0; i < 10; i++) {
+                    body.add("requestIds=" + data.randomRequestId(account));
+                }
+                body.add("newStatusId=" + data.randomTargetStatusId());
+                send("POST /applications/bulk-change-status", form("/applications/bulk-change-status", body.toString()),
+                        redirectTo("/applications"));
+            }
+            case EXPORT -> get("GET /applications/export", "/applications/export" + query(Map.of(
+                    "statusId", data.randomStatusId(),
+                    "dateFrom", LocalDate.now().minusDays(30),
+                    "format", "csv")), ok());
+            case API_USERS -> get("GET /api/organizations/{organizationId}/users",
+                    "/api/organizations/" + data.randomOrganizationId() + "/users", ok());
+            case API_DASHBOARD -> get("GET /api/dashboard/counts", "/api/dashboard/counts", ok());
+            case HOME -> get("GET /", "/", redirectTo("/applications"));
+            case RELOGIN -> {
+                get("GET /logout", "/logout", redirectTo("/login"));
+                loggedIn = false;
+                get("GET /login", "/login", ok());
+                login();
+            }
+        }
+    }
+
+    private void login() throws IOException, InterruptedException {
+        loggedIn = post("POST /login", "/login", Map.of("email", account.getEmail(), "password", password),
+                redirectTo("/applications"));
+    }
+
+    /**
+     * Фильтры списка: как правило один-два фильтра панели, иногда сортировка по клиенту или организации
+     */
+    private Map<String, Object> listFilters() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<String, Object> params = new LinkedHashMap<>();
+        if (random.nextInt(3) == 0) {
+            params.put("statusId", data.randomStatusId());
+        }
+        if (random.nextInt(4) == 0) {
+            params.put("cardTypeId", data.randomCardTypeId());
+        }
+        if (random.nextInt(5) == 0) {
+            params.put("organizationId", data.randomOrganizationId());
+        }
+        if (random.nextInt(4) == 0) {
+            LocalDate dateFrom = LocalDate.now().minusDays(random.nextInt(7, 365));
+            params.put("dateFrom", dateFrom);
+            params.put("dateTo", dateFrom.plusDays(random.nextInt(7, 90)));
+        }
+        if (random.nextInt(4) == 0) {
+            params.put("sortBy", SORT_FIELDS[random.nextInt(SORT_FIELDS.length)]);
+            params.put("sortDirection", random.nextBoolean() ? "asc" : "desc");
+        }
+        return params;
+    }
+
+    private boolean get(String endpoint, String path, Predicate<HttpResponse<Void>> success)
+            throws IOException, InterruptedException {
+        return send(endpoint, HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build(), success);
+    }
+
+    private boolean post(String endpoint, String path, Map<String, Object> params,
+                         Predicate<HttpResponse<Void>> success) throws IOException, InterruptedException {
+        return send(endpoint, form(path, query(params).substring(1)), success);
+    }
+
+    private HttpRequest form(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private boolean send(String endpoint, HttpRequest request, Predicate<HttpResponse<Void>> success)
+            throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        HttpResponse<Void> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            metrics.record(endpoint, System.nanoTime() - started, false);
+            throw e;
+        }
+        long elapsed = System.nanoTime() - started;
+
+        boolean sessionLost = !endpoint.equals("GET /logout") && redirectTo("/login").test(response);
+        if (sessionLost) {
+            loggedIn = false;
+        }
+        boolean ok = !sessionLost && success.test(response);
+        metrics.record(endpoint, elapsed, ok);
+        return ok;
+    }
+
+    private static Predicate<HttpResponse<Void>> ok() {
+        return response -> response.statusCode() == 200;
+    }
+
+    private static Predicate<HttpResponse<Void>> redirectTo(String path) {
+        return response -> response.statusCode() / 100 == 3 && response.headers().firstValue("Location")
+                // Tomcat может дописать ;jsessionid=..., пока не получил cookie сессии
+                .map(location -> URI.create(location).getPath().split(";", 2)[0].equals(path))
+                .orElse(false);
+    }
+
+    private static String query(Map<String, Object> params) {
+        if (params.isEmpty()) {
+            return "";
+        }
+        StringJoiner joiner = new StringJoiner("&", "?", "");
+        params.forEach((name, value) ->
+                joiner.add(name + "=" + URLEncoder.encode(String.valueOf(value), StandardCharsets.UTF_8)));
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,13 @@
+package ru.mospolytech.cards.authorization;
+
+/**
+ * Канал операции по карте
+ */
+public enum AuthorizationChannel {
+    /** Оплата в торговой точке */
+    POS,
+    /** Оплата в интернете */
+    ECOM,
+    /** Снятие наличных - дополнительно ограничивается atm_daily_limit */
+    ATM
+}
@@ -0,0 +1,27 @@
+package ru.mospolytech.cards.authorization;
+
+/**
+ * Решение по авторизации
+ */
+public enum AuthorizationDecision {
+    APPROVED,
+    INVALID_AMOUNT,
+    CARD_NOT_FOUND,
+    CARD_INACTIVE,
+    LIMITS_NOT_SET,
+    CURRENCY_MISMATCH,
+    SINGLE_LIMIT_EXCEEDED,
+    DAILY_LIMIT_EXCEEDED,
+    MONTHLY_LIMIT_EXCEEDED,
+    ATM_LIMIT_EXCEEDED,
+    /** Превышен общий лимит держателя (по всем его картам) */
+    USER_ORGANIZATION_CAP_EXCEEDED,
+    /** Превышен общий лимит организации (по всем ее картам) */
+    ORGANIZATION_CAP_EXCEEDED,
+    /** Операцию не удалось зафиксировать в журнале расходов */
+    JOURNAL_UNAVAILABLE;
+
+    public boolean isApproved() {
+        return this == APPROVED;
+    }
+}
@@ -0,0 +1,56 @@
+package ru.mospolytech.cards.authorization;
+
+/**
+ * Результат авторизации. Суммы - в копейках (минимальных единицах валюты карты).
+ */
+public class AuthorizationResult {
+
+    private final AuthorizationDecision decision;
+    private final long cardId;
+    private final long dailySpent;
+    private final long monthlySpent;
+
+    private AuthorizationResult(AuthorizationDecision decision, long cardId, long dailySpent, long monthlySpent) {
+        this.decision = decision;
+        this.cardId = cardId;
+        this.dailySpent = dailySpent;
+        this.monthlySpent = monthlySpent;
+    }
+
+    public static AuthorizationResult approved(long cardId, long dailySpent, long monthlySpent) {
+        return new AuthorizationResult(AuthorizationDecision.APPROVED, cardId, dailySpent, monthlySpent);
+    }
+
+    public static AuthorizationResult declined(AuthorizationDecision decision, long cardId) {
+        return new AuthorizationResult(decision, cardId, -1, -1);
+    }
+
+    public AuthorizationDecision getDecision() {
+        return decision;
+    }
+
+    public boolean isApproved() {
+        return decision.isApproved();
+    }
+
+    /**
+     * id карты (0, если карта не найдена)
+     */
+    public long getCardId() {
+        return cardId;
+    }
+
+    /**
+     * Потрачено за день с учетом этой операции (-1 при отказе)
+     */
+    public long getDailySpent() {
+        return dailySpent;
+    }
+
+    /**
+     * Потрачено за месяц с учетом этой операции (-1 при отказе)
+     */
+    public long getMonthlySpent() {
+        return monthlySpent;
+    }
+}
@@ -0,0 +1,481 @@
+package ru.mospolytech.cards.authorization;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Авторизация операций по картам с проверкой card_limits в памяти.
+ *
+ * Лимиты всех карт загружаются в CardLimitTable (примитивные массивы, поиск по номеру карты как long)
+ * и периодически перезагружаются целиком; таблица заменяется атомарно, авторизация ее не ждет.
+ * Расходы за день и месяц считаются в SpendCounters без блокировок. На горячем пути нет обращений
+ * к БД. Одобренные операции пишутся в SpendJournal, из которого счетчики восстанавливаются при запуске;
+ * при cards.authorization.journal.sync-commit=true одобрение возвращается только после fsync записи.
+ *
+ * Поверх лимитов карты действуют общие лимиты держателя (user_organization_limits) и организации
+ * (organization_limits): они проверяются и списываются в том же вызове через SpendingCap,
+ * если валюта операции совпадает с валютой общего лимита.
+ */
+@Service
+public class CardAuthorizationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardAuthorizationService.class);
+
+    private static final String ACTIVE_CARD_STATUS = "Активна";
+
+    // card_limits.card_id уникален: на карту приходится одна строка результата
+    private static final String LOAD_SQL =
+            "SELECT c.id, c.card_number, (c.is_active AND cs.status_name = ?) AS active, " +
+            "r.user_organization_id, uo.organization_id, " +
+            "l.single_transaction_limit, l.daily_limit, l.monthly_limit, l.atm_daily_limit, l.currency " +
+            "FROM cards c " +
+            "JOIN card_statuses cs ON cs.id = c.status_id " +
+            "JOIN card_requests_all r ON r.id = c.request_id " +
+            "JOIN user_organizations uo ON uo.id = r.user_organization_id " +
+            "LEFT JOIN card_limits l ON l.card_id = c.id";
+
+    private static final String LOAD_ORGANIZATION_CAPS_SQL =
+            "SELECT organization_id AS owner_id, daily_limit, monthly_limit, currency FROM organization_limits";
+
+    private static final String LOAD_USER_ORGANIZATION_CAPS_SQL =
+            "SELECT user_organization_id AS owner_id, daily_limit, monthly_limit, currency FROM user_organization_limits";
+
+    // У держателя обычно одна-две карты, полосы нужны только общим лимитам организаций
+    private static final int USER_ORGANIZATION_CAP_STRIPES = 1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long reloadIntervalSeconds;
+    private final SpendJournal spendJournal;
+    private final boolean syncCommit;
+    private final long commitTimeoutNanos;
+
+    private final SpendCounters counters = new SpendCounters();
+    // Слоты счетчиков закрепляются за номером карты и сохраняются между перезагрузками таблицы
+    private final AtomicInteger nextCounterSlot = new AtomicInteger();
+    private volatile CardLimitTable table = CardLimitTable.empty();
+    private final int organizationCapStripes;
+    // Общие лимиты по id владельца; объекты сохраняются между перезагрузками вместе с расходами
+    private volatile Map<Long, SpendingCap> organizationCaps = Map.of();
+    private volatile Map<Long, SpendingCap> userOrganizationCaps = Map.of();
+
+    private final ScheduledExecutorService reloadExecutor;
+    private final Timer latencyTimer;
+    private final Map<AuthorizationDecision, Counter> decisionCounters = new EnumMap<>(AuthorizationDecision.class);
+
+    public CardAuthorizationService(
+            DataSource dataSource,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            SpendJournal spendJournal,
+            @Value("${cards.authorization.reload-interval-seconds:60}") long reloadIntervalSeconds,
+            @Value("${cards.authorization.fetch-size:5000}") int fetchSize,
+            @Value("${cards.authorization.journal.sync-commit:true}") boolean syncCommit,
+            @Value("${cards.authorization.journal.commit-timeout-ms:1000}") long commitTimeoutMs,
+            @Value("${cards.authorization.organization-cap-stripes:16}") int organizationCapStripes) {
+        // Отдельный JdbcTemplate с fetch size: лимиты читаются курсором, а не одним списком
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.reloadIntervalSeconds = reloadIntervalSeconds;
+        this.spendJournal = spendJournal;
+        this.syncCommit = syncCommit;
+        this.commitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(commitTimeoutMs);
+        this.organizationCapStripes = organizationCapStripes;
+
+        this.reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "card-limits-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.latencyTimer = Timer.builder("card_authorization.latency")
+                .description("Время авторизации операции по карте")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(meterRegistry);
+        for (AuthorizationDecision decision : AuthorizationDecision.values()) {
+            decisionCounters.put(decision, Counter.builder("card_authorization.decisions")
+                    .description("Решения по авторизациям")
+                    .tag("decision", decision.name())
+                    .register(meterRegistry));
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        reload();
+        restoreSpend();
+        reloadExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                reload();
+            } catch (Exception e) {
+                logger.error("Ошибка перезагрузки лимитов карт, используется прежняя таблица", e);
+            }
+        }, reloadIntervalSeconds, reloadIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        reloadExecutor.shutdownNow();
+    }
+
+    /**
+     * Перечитать лимиты всех карт из БД. Вызывается по расписанию и после массовых изменений лимитов.
+     */
+    public synchronized void reload() {
+        long startNanos = System.nanoTime();
+        CardLimitTable previous = table;
+        CardLimitTable.Builder builder = CardLimitTable.builder(previous.size());
+        Set<SpendingCap> createdCaps = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<Long, SpendingCap> loadedOrganizationCaps = loadCaps(LOAD_ORGANIZATION_CAPS_SQL,
+                organizationCaps, organizationCapStripes, createdCaps);
+        Map<Long, SpendingCap> loadedUserOrganizationCaps = loadCaps(LOAD_USER_ORGANIZATION_CAPS_SQL,
+                userOrganizationCaps, USER_ORGANIZATION_CAP_STRIPES, createdCaps);
+
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(LOAD_SQL, rs -> {
+            long cardNumber = Long.parseLong(rs.getString("card_number"));
+            BigDecimal daily = rs.getBigDecimal("daily_limit");
+            int previousIndex = previous.indexOf(cardNumber);
+            int counterSlot = previousIndex >= 0
+                    ? previous.counterSlot(previousIndex)
+                    : nextCounterSlot.getAndIncrement();
+            long userOrganizationId = rs.getLong("user_organization_id");
+            long organizationId = rs.getLong("organization_id");
+            if (daily == null) {
+                builder.add(cardNumber, rs.getLong("id"), userOrganizationId, organizationId,
+                        counterSlot, rs.getBoolean("active"), 0,
+                        CardLimitTable.NO_LIMIT, CardLimitTable.NO_LIMIT,
+                        CardLimitTable.NO_LIMIT, CardLimitTable.NO_LIMIT);
+            } else {
+                builder.add(cardNumber, rs.getLong("id"), userOrganizationId, organizationId,
+                        counterSlot, rs.getBoolean("active"),
+                        CardLimitTable.encodeCurrency(rs.getString("currency")),
+                        toMinorUnits(rs.getBigDecimal("single_transaction_limit")),
+                        toMinorUnits(daily),
+                        toMinorUnits(rs.getBigDecimal("monthly_limit")),
+                        toMinorUnits(rs.getBigDecimal("atm_daily_limit")));
+            }
+        }, ACTIVE_CARD_STATUS));
+
+        // Счетчики должны существовать до публикации таблицы с новыми слотами
+        counters.ensureCapacity(nextCounterSlot.get());
+        CardLimitTable loaded = builder.build(loadedUserOrganizationCaps::get, loadedOrganizationCaps::get);
+        // Новый общий лимит учитывает уже потраченное картами за текущие день и месяц
+        seedCaps(loaded, createdCaps);
+        organizationCaps = loadedOrganizationCaps;
+        userOrganizationCaps = loadedUserOrganizationCaps;
+        table = loaded;
+        logger.info("Загружены лимиты карт: {}, общих лимитов организаций: {}, держателей: {} за {} мс",
+                loaded.size(), loadedOrganizationCaps.size(), loadedUserOrganizationCaps.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Запланировать перезагрузку лимитов в фоне (после изменения лимитов в БД)
+     */
+    public void requestReload() {
+        reloadExecutor.execute(() -> {
+            try {
+                reload();
+            } catch (Exception e) {
+                logger.error("Ошибка перезагрузки лимитов карт, используется прежняя таблица", e);
+            }
+        });
+    }
+
+    /**
+     * Общий лимит организации и расходы по нему за сегодня и текущий месяц
+     */
+    public Optional<SpendingCapStatus> getOrganizationCapStatus(Long organizationId) {
+        return Optional.ofNullable(organizationCaps.get(organizationId)).map(CardAuthorizationService::toStatus);
+    }
+
+    /**
+     * Общий лимит держателя и расходы по нему за сегодня и текущий месяц
+     */
+    public Optional<SpendingCapStatus> getUserOrganizationCapStatus(Long userOrganizationId) {
+        return Optional.ofNullable(userOrganizationCaps.get(userOrganizationId)).map(CardAuthorizationService::toStatus);
+    }
+
+    private static SpendingCapStatus toStatus(SpendingCap cap) {
+        LocalDate today = LocalDate.now();
+        long month = today.getYear() * 12L + today.getMonthValue() - 1;
+        return new SpendingCapStatus(cap.getDailyLimit(), cap.getMonthlyLimit(),
+                cap.getDailySpent(today.toEpochDay()), cap.getMonthlySpent(month));
+    }
+
+    /**
+     * Прочитать общие лимиты, переиспользуя существующие объекты (с их расходами)
+     */
+    private Map<Long, SpendingCap> loadCaps(String sql, Map<Long, SpendingCap> existing, int stripes,
+                                            Set<SpendingCap> created) {
+        Map<Long, SpendingCap> loaded = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            long ownerId = rs.getLong("owner_id");
+            SpendingCap cap = existing.get(ownerId);
+            if (cap == null) {
+                cap = new SpendingCap(stripes);
+                created.add(cap);
+            }
+            cap.update(toMinorUnits(rs.getBigDecimal("daily_limit")),
+                    toMinorUnits(rs.getBigDecimal("monthly_limit")),
+                    CardLimitTable.encodeCurrency(rs.getString("currency")));
+            loaded.put(ownerId, cap);
+        });
+        return Map.copyOf(loaded);
+    }
+
+    /**
+     * Добавить в общие лимиты текущие расходы их карт
+     */
+    private void seedCaps(CardLimitTable cards, Set<SpendingCap> caps) {
+        if (caps.isEmpty()) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        long day = today.toEpochDay();
+        long month = today.getYear() * 12L + today.getMonthValue() - 1;
+        for (int i = 0; i < cards.size(); i++) {
+            int slot = cards.counterSlot(i);
+            long dailySpent = counters.get(slot, SpendCounters.DAILY, day);
+            long monthlySpent = counters.get(slot, SpendCounters.MONTHLY, month);
+            if (dailySpent == 0 && monthlySpent == 0) {
+                continue;
+            }
+            for (SpendingCap cap : new SpendingCap[]{cards.userOrganizationCap(i), cards.organizationCap(i)}) {
+                if (cap != null && caps.contains(cap) && cap.appliesTo(cards.currency(i))) {
+                    cap.addSpent(day, dailySpent, month, monthlySpent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Восстановить счетчики расходов из журнала (снимок + хвост журнала)
+     */
+    private void restoreSpend() {
+        CardLimitTable current = table;
+        int[] restored = {0};
+        spendJournal.forEachRecovered((cardNumber, day, dailySpent, atmDailySpent, month, monthlySpent) -> {
+            int index = current.indexOf(cardNumber);
+            if (index < 0) {
+                return;
+            }
+            int slot = current.counterSlot(index);
+            counters.restore(slot, SpendCounters.DAILY, day, dailySpent);
+            counters.restore(slot, SpendCounters.ATM_DAILY, day, atmDailySpent);
+            counters.restore(slot, SpendCounters.MONTHLY, month, monthlySpent);
+            restored[0]++;
+        });
+
+        Set<SpendingCap> allCaps = Collections.newSetFromMap(new IdentityHashMap<>());
+        allCaps.addAll(organizationCaps.values());
+        allCaps.addAll(userOrganizationCaps.values());
+        seedCaps(current, allCaps);
+        logger.info("Восстановлены расходы по картам из журнала: {}", restored[0]);
+    }
+
+    /**
+     * Авторизовать операцию: проверить карту и лимиты и, если операция одобрена, учесть ее в расходах
+     */
+    public AuthorizationResult authorize(String cardNumber, BigDecimal amount, String currency,
+                                         AuthorizationChannel channel) {
+        long startNanos = System.nanoTime();
+        AuthorizationResult result = evaluate(cardNumber, amount, currency, channel);
+        latencyTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        decisionCounters.get(result.getDecision()).increment();
+        return result;
+    }
+
+    /**
+     * Количество карт в таблице лимитов
+     */
+    public int getLoadedCardCount() {
+        return table.size();
+    }
+
+    private AuthorizationResult evaluate(String cardNumber, BigDecimal amount, String currency,
+                                         AuthorizationChannel channel) {
+        long minorAmount = toMinorUnits(amount);
+        if (minorAmount <= 0 || channel == null) {
+            return AuthorizationResult.declined(AuthorizationDecision.INVALID_AMOUNT, 0);
+        }
+
+        CardLimitTable current = table;
+        int index = current.indexOf(parseCardNumber(cardNumber));
+        if (index < 0) {
+            return AuthorizationResult.declined(AuthorizationDecision.CARD_NOT_FOUND, 0);
+        }
+        long cardId = current.cardId(index);
+        if (!current.isActive(index)) {
+            return AuthorizationResult.declined(AuthorizationDecision.CARD_INACTIVE, cardId);
+        }
+        if (current.dailyLimit(index) == CardLimitTable.NO_LIMIT) {
+            return AuthorizationResult.declined(AuthorizationDecision.LIMITS_NOT_SET, cardId);
+        }
+        if (current.currency(index) != CardLimitTable.encodeCurrency(currency)) {
+            return AuthorizationResult.declined(AuthorizationDecision.CURRENCY_MISMATCH, cardId);
+        }
+        if (minorAmount > current.singleLimit(index)) {
+            return AuthorizationResult.declined(AuthorizationDecision.SINGLE_LIMIT_EXCEEDED, cardId);
+        }
+
+        LocalDate today = LocalDate.now();
+        long day = today.toEpochDay();
+        long month = today.getYear() * 12L + today.getMonthValue() - 1;
+        int slot = current.counterSlot(index);
+
+        long dailySpent = counters.tryAdd(slot, SpendCounters.DAILY, day, minorAmount, current.dailyLimit(index));
+        if (dailySpent < 0) {
+            return AuthorizationResult.declined(AuthorizationDecision.DAILY_LIMIT_EXCEEDED, cardId);
+        }
+        long monthlySpent = counters.tryAdd(slot, SpendCounters.MONTHLY, month, minorAmount,
+                current.monthlyLimit(index));
+        if (monthlySpent < 0) {
+            counters.subtract(slot, SpendCounters.DAILY, day, minorAmount);
+            return AuthorizationResult.declined(AuthorizationDecision.MONTHLY_LIMIT_EXCEEDED, cardId);
+        }
+        boolean atm = channel == AuthorizationChannel.ATM;
+        if (atm && counters.tryAdd(slot, SpendCounters.ATM_DAILY, day, minorAmount, current.atmDailyLimit(index)) < 0) {
+            rollback(slot, day, month, minorAmount, false, null, null);
+            return AuthorizationResult.declined(AuthorizationDecision.ATM_LIMIT_EXCEEDED, cardId);
+        }
+
+        // Общие лимиты держателя и организации; полоса общего лимита определяется слотом карты
+        int currencyCode = current.currency(index);
+        SpendingCap holderCap = current.userOrganizationCap(index);
+        if (holderCap != null && !holderCap.appliesTo(currencyCode)) {
+            holderCap = null;
+        }
+        if (holderCap != null && !holderCap.tryConsume(slot, day, month, minorAmount)) {
+            rollback(slot, day, month, minorAmount, atm, null, null);
+            return AuthorizationResult.declined(AuthorizationDecision.USER_ORGANIZATION_CAP_EXCEEDED, cardId);
+        }
+        SpendingCap organizationCap = current.organizationCap(index);
+        if (organizationCap != null && !organizationCap.appliesTo(currencyCode)) {
+            organizationCap = null;
+        }
+        if (organizationCap != null && !organizationCap.tryConsume(slot, day, month, minorAmount)) {
+            rollback(slot, day, month, minorAmount, atm, holderCap, null);
+            return AuthorizationResult.declined(AuthorizationDecision.ORGANIZATION_CAP_EXCEEDED, cardId);
+        }
+
+        SpendJournal.Entry entry = spendJournal.append(current.cardNumber(index), day, month, minorAmount, atm);
+        if (syncCommit && !spendJournal.awaitDurable(entry, commitTimeoutNanos)) {
+            // Запись может все же попасть в журнал - тогда после перезапуска расход будет завышен, а не занижен
+            rollback(slot, day, month, minorAmount, atm, holderCap, organizationCap);
+            return AuthorizationResult.declined(AuthorizationDecision.JOURNAL_UNAVAILABLE, cardId);
+        }
+        return AuthorizationResult.approved(cardId, dailySpent, monthlySpent);
+    }
+
+    /**
+     * Откатить уже списанные суммы при отказе на одном из следующих шагов
+     */
+    private void rollback(int slot, long day, long month, long amount, boolean atm,
+                          SpendingCap holderCap, SpendingCap organizationCap) {
+        if (organizationCap != null) {
+            organizationCap.release(slot, day, month, amount);
+        }
+        if (holderCap != null) {
+            holderCap.release(slot, day, month, amount);
+        }
+        if (atm) {
+            counters.subtract(slot, SpendCounters.ATM_DAILY, day, amount);
+        }
+        counters.subtract(slot, SpendCounters.MONTHLY, month, amount);
+        counters.subtract(slot, SpendCounters.DAILY, day, amount);
+    }
+
+    /**
+     * Номер карты как long (0, если это не 16 цифр)
+     */
+    private static long parseCardNumber(String cardNumber) {
+        if (cardNumber == null || cardNumber.length() != 16) {
+            return 0;
+        }
+        long result = 0;
+        for (int i = 0; i < 16; i++) {
+            char c = cardNumber.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /**
+     * Сумма в копейках; -1, если сумма не задана или в ней больше двух знаков после запятой
+     */
+    private static long toMinorUnits(BigDecimal amount) {
+        if (amount == null) {
+            return -1;
+        }
+        try {
+            return amount.setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Общий лимит и расходы по нему. Суммы - в копейках.
+     */
+    public static class SpendingCapStatus {
+
+        private final long dailyLimit;
+        private final long monthlyLimit;
+        private final long dailySpent;
+        private final long monthlySpent;
+
+        public SpendingCapStatus(long dailyLimit, long monthlyLimit, long dailySpent, long monthlySpent) {
+            this.dailyLimit = dailyLimit;
+            this.monthlyLimit = monthlyLimit;
+            this.dailySpent = dailySpent;
+            this.monthlySpent = monthlySpent;
+        }
+
+        public long getDailyLimit() {
+            return dailyLimit;
+        }
+
+        public long getMonthlyLimit() {
+            return monthlyLimit;
+        }
+
+        public long getDailySpent() {
+            return dailySpent;
+        }
+
+        public long getMonthlySpent() {
+            return monthlySpent;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package ru.mospolytech.cards.authorization;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+/**
+ * Неизменяемая таблица лимитов карт на примитивных массивах.
+ *
+ * Номер карты (16 цифр) хранится как long и ищется в хеш-таблице с открытой адресацией,
+ * лимиты лежат в параллельных массивах по плотному индексу записи. Объектов на карту нет,
+ * поэтому таблица на миллионы карт не нагружает сборщик мусора и поиск не зависит от equals/hashCode.
+ * Суммы - в копейках; NO_LIMIT означает, что строки card_limits для карты нет.
+ * Для каждой карты хранятся ссылки на общие лимиты ее держателя и организации (или null).
+ */
+final class CardLimitTable {
+
+    static final long NO_LIMIT = -1;
+
+    // Номер карты не может быть нулем, поэтому 0 - пустая ячейка
+    private static final long EMPTY = 0;
+
+    private final long[] keys;
+    private final int[] entries;
+    private final int mask;
+
+    private final int size;
+    private final long[] cardNumbers;
+    private final long[] cardIds;
+    private final long[] userOrganizationIds;
+    private final long[] organizationIds;
+    private final SpendingCap[] userOrganizationCaps;
+    private final SpendingCap[] organizationCaps;
+    private final int[] counterSlots;
+    private final boolean[] active;
+    private final int[] currencies;
+    private final long[] singleLimits;
+    private final long[] dailyLimits;
+    private final long[] monthlyLimits;
+    private final long[] atmDailyLimits;
+
+    private CardLimitTable(Builder builder, LongFunction<SpendingCap> userOrganizationCapResolver,
+                           LongFunction<SpendingCap> organizationCapResolver) {
+        this.size = builder.size;
+        this.cardNumbers = Arrays.copyOf(builder.cardNumbers, size);
+        this.cardIds = Arrays.copyOf(builder.cardIds, size);
+        this.userOrganizationIds = Arrays.copyOf(builder.userOrganizationIds, size);
+        this.organizationIds = Arrays.copyOf(builder.organizationIds, size);
+        this.userOrganizationCaps = new SpendingCap[size];
+        this.organizationCaps = new SpendingCap[size];
+        for (int i = 0; i < size; i++) {
+            userOrganizationCaps[i] = userOrganizationCapResolver.apply(userOrganizationIds[i]);
+            organizationCaps[i] = organizationCapResolver.apply(organizationIds[i]);
+        }
+        this.counterSlots = Arrays.copyOf(builder.counterSlots, size);
+        this.active = Arrays.copyOf(builder.active, size);
+        this.currencies = Arrays.copyOf(builder.currencies, size);
+        this.singleLimits = Arrays.copyOf(builder.singleLimits, size);
+        this.dailyLimits = Arrays.copyOf(builder.dailyLimits, size);
+        this.monthlyLimits = Arrays.copyOf(builder.monthlyLimits, size);
+        this.atmDailyLimits = Arrays.copyOf(builder.atmDailyLimits, size);
+
+        // Заполненность хеш-таблицы не больше 50%
+        int capacity = Integer.highestOneBit(Math.max(16, size * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.entries = new int[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int bucket = bucket(cardNumbers[i]);
+            while (keys[bucket] != EMPTY) {
+                bucket = (bucket + 1) & mask;
+            }
+            keys[bucket] = cardNumbers[i];
+            entries[bucket] = i;
+        }
+    }
+
+    static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    static CardLimitTable empty() {
+        return new Builder(0).build(id -> null, id -> null);
+    }
+
+    /**
+     * Индекс записи карты или -1
+     */
+    int indexOf(long cardNumber) {
+        if (cardNumber == EMPTY) {
+            return -1;
+        }
+        int bucket = bucket(cardNumber);
+        long key;
+        while ((key = keys[bucket]) != EMPTY) {
+            if (key == cardNumber) {
+                return entries[bucket];
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        return -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long cardNumber(int index) {
+        return cardNumbers[index];
+    }
+
+    long cardId(int index) {
+        return cardIds[index];
+    }
+
+    long userOrganizationId(int index) {
+        return userOrganizationIds[index];
+    }
+
+    long organizationId(int index) {
+        return organizationIds[index];
+    }
+
+    SpendingCap userOrganizationCap(int index) {
+        return userOrganizationCaps[index];
+    }
+
+    SpendingCap organizationCap(int index) {
+        return organizationCaps[index];
+    }
+
+    int counterSlot(int index) {
+        return counterSlots[index];
+    }
+
+    boolean isActive(int index) {
+        return active[index];
+    }
+
+    int currency(int index) {
+        return currencies[index];
+    }
+
+    long singleLimit(int index) {
+        return singleLimits[index];
+    }
+
+    long dailyLimit(int index) {
+        return dailyLimits[index];
+    }
+
+    long monthlyLimit(int index) {
+        return monthlyLimits[index];
+    }
+
+    long atmDailyLimit(int index) {
+        return atmDailyLimits[index];
+    }
+
+    private int bucket(long cardNumber) {
+        // Финализатор MurmurHash3: соседние номера карт расходятся по таблице
+        long h = cardNumber;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    /**
+     * Код валюты из трех латинских букв, упакованный в int (0 - валюта неизвестна)
+     */
+    static int encodeCurrency(String currency) {
+        if (currency == null || currency.length() != 3) {
+            return 0;
+        }
+        return (Character.toUpperCase(currency.charAt(0)) << 16)
+                | (Character.toUpperCase(currency.charAt(1)) << 8)
+                | Character.toUpperCase(currency.charAt(2));
+    }
+
+    static final class Builder {
+
+        private int size;
+        private long[] cardNumbers;
+        private long[] cardIds;
+        private long[] userOrganizationIds;
+        private long[] organizationIds;
+        private int[] counterSlots;
+        private boolean[] active;
+        private int[] currencies;
+        private long[] singleLimits;
+        private long[] dailyLimits;
+        private long[] monthlyLimits;
+        private long[] atmDailyLimits;
+
+        private Builder(int expectedSize) {
+            allocate(Math.max(16, expectedSize));
+        }
+
+        Builder add(long cardNumber, long cardId, long userOrganizationId, long organizationId, int counterSlot,
+                    boolean isActive, int currency,
+                    long singleLimit, long dailyLimit, long monthlyLimit, long atmDailyLimit) {
+            if (size == cardNumbers.length) {
+                allocate(size * 2);
+            }
+            cardNumbers[size] = cardNumber;
+            cardIds[size] = cardId;
+            userOrganizationIds[size] = userOrganizationId;
+            organizationIds[size] = organizationId;
+            counterSlots[size] = counterSlot;
+            active[size] = isActive;
+            currencies[size] = currency;
+            singleLimits[size] = singleLimit;
+            dailyLimits[size] = dailyLimit;
+            monthlyLimits[size] = monthlyLimit;
+            atmDailyLimits[size] = atmDailyLimit;
+            size++;
+            return this;
+        }
+
+        /**
+         * Построить таблицу, связав карты с общими лимитами держателей и организаций
+         */
+        CardLimitTable build(LongFunction<SpendingCap> userOrganizationCapResolver,
+                             LongFunction<SpendingCap> organizationCapResolver) {
+            return new CardLimitTable(this, userOrganizationCapResolver, organizationCapResolver);
+        }
+
+        private void allocate(int capacity) {
+            cardNumbers = cardNumbers == null ? new long[capacity] : Arrays.copyOf(cardNumbers, capacity);
+            cardIds = cardIds == null ? new long[capacity] : Arrays.copyOf(cardIds, capacity);
+            userOrganizationIds = userOrganizationIds == null
+                    ? new long[capacity] : Arrays.copyOf(userOrganizationIds, capacity);
+            organizationIds = organizationIds == null ? new long[capacity] : Arrays.copyOf(organizationIds, capacity);
+            counterSlots = counterSlots == null ? new int[capacity] : Arrays.copyOf(counterSlots, capacity);
+            active = active == null ? new boolean[capacity] : Arrays.copyOf(active, capacity);
+            currencies = currencies == null ? new int[capacity] : Arrays.copyOf(currencies, capacity);
+            singleLimits = singleLimits == null ? new long[capacity] : Arrays.copyOf(singleLimits, capacity);
+            dailyLimits = dailyLimits == null ? new long[capacity] : Arrays.copyOf(dailyLimits, capacity);
+            monthlyLimits = monthlyLimits == null ? new long[capacity] : Arrays.copyOf(monthlyLimits, capacity);
+            atmDailyLimits = atmDailyLimits == null ? new long[capacity] : Arrays.copyOf(atmDailyLimits, capacity);
+        }
+    }
+}
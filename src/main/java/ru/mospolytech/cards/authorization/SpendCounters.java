@@ -0,0 +1,123 @@
+package ru.mospolytech.cards.authorization;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Счетчики расходов по картам: за день, за месяц и снятие наличных за день.
+ *
+ * Каждый счетчик - одно long-значение: старшие биты - номер периода (день от эпохи или месяц),
+ * младшие 40 бит - сумма в копейках. Проверка лимита и увеличение выполняются одним CAS,
+ * смена периода обнуляет сумму без отдельного сброса. Блокировок нет, а счетчики одной карты
+ * занимают отдельную кэш-линию, поэтому операции по разным картам не мешают друг другу.
+ *
+ * Память выделяется сегментами; при росте числа карт добавляются новые сегменты, а существующие
+ * переиспользуются, так что параллельные обновления не теряются.
+ */
+final class SpendCounters {
+
+    static final int DAILY = 0;
+    static final int MONTHLY = 1;
+    static final int ATM_DAILY = 2;
+
+    // 8 long = 64 байта: счетчики одной карты в своей кэш-линии
+    private static final int STRIDE = 8;
+    private static final int SEGMENT_SHIFT = 12;
+    private static final int SEGMENT_CARDS = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_CARDS - 1;
+
+    private static final int PERIOD_SHIFT = 40;
+    static final long MAX_AMOUNT = (1L << PERIOD_SHIFT) - 1;
+
+    private volatile AtomicLongArray[] segments = new AtomicLongArray[0];
+
+    /**
+     * Обеспечить место для счетчиков слотов 0..slots-1
+     */
+    synchronized void ensureCapacity(int slots) {
+        int required = (slots + SEGMENT_CARDS - 1) >>> SEGMENT_SHIFT;
+        AtomicLongArray[] current = segments;
+        if (current.length >= required) {
+            return;
+        }
+        AtomicLongArray[] grown = Arrays.copyOf(current, required);
+        for (int i = current.length; i < required; i++) {
+            grown[i] = new AtomicLongArray(SEGMENT_CARDS * STRIDE);
+        }
+        segments = grown;
+    }
+
+    /**
+     * Увеличить счетчик на amount, если сумма за период не превысит limit
+     *
+     * @return новая сумма за период или -1, если лимит был бы превышен или счетчик уже перешел
+     * в следующий период (операция, начатая до полуночи, не должна обнулять расходы нового дня)
+     */
+    long tryAdd(int slot, int counter, long period, long amount, long limit) {
+        AtomicLongArray segment = segments[slot >>> SEGMENT_SHIFT];
+        int index = offset(slot, counter);
+        while (true) {
+            long packed = segment.get(index);
+            if (periodOf(packed) > period) {
+                return -1;
+            }
+            long spent = periodOf(packed) == period ? amountOf(packed) : 0;
+            long updated = spent + amount;
+            if (updated > limit || updated > MAX_AMOUNT) {
+                return -1;
+            }
+            if (segment.compareAndSet(index, packed, pack(period, updated))) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Вернуть сумму (откат авторизации); если период уже сменился, откатывать нечего
+     */
+    void subtract(int slot, int counter, long period, long amount) {
+        AtomicLongArray segment = segments[slot >>> SEGMENT_SHIFT];
+        int index = offset(slot, counter);
+        while (true) {
+            long packed = segment.get(index);
+            if (periodOf(packed) != period) {
+                return;
+            }
+            long updated = Math.max(0, amountOf(packed) - amount);
+            if (segment.compareAndSet(index, packed, pack(period, updated))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Сумма за период (0, если в этом периоде расходов не было)
+     */
+    long get(int slot, int counter, long period) {
+        long packed = segments[slot >>> SEGMENT_SHIFT].get(offset(slot, counter));
+        return periodOf(packed) == period ? amountOf(packed) : 0;
+    }
+
+    /**
+     * Установить сумму за период (восстановление из журнала до начала авторизаций)
+     */
+    void restore(int slot, int counter, long period, long amount) {
+        segments[slot >>> SEGMENT_SHIFT].set(offset(slot, counter), pack(period, Math.min(amount, MAX_AMOUNT)));
+    }
+
+    private static int offset(int slot, int counter) {
+        return (slot & SEGMENT_MASK) * STRIDE + counter;
+    }
+
+    private static long pack(long period, long amount) {
+        return (period << PERIOD_SHIFT) | amount;
+    }
+
+    private static long periodOf(long packed) {
+        return packed >>> PERIOD_SHIFT;
+    }
+
+    private static long amountOf(long packed) {
+        return packed & MAX_AMOUNT;
+    }
+}
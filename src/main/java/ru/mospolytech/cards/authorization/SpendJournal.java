@@ -0,0 +1,475 @@
+package ru.mospolytech.cards.authorization;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал расходов по картам: только дозапись, сегменты фиксированного размера, групповая фиксация.
+ *
+ * Потоки авторизации кладут записи в очередь; поток записи забирает все накопившиеся записи,
+ * пишет их одним write и одним fsync и только после этого отмечает их зафиксированными -
+ * чем больше параллельных авторизаций, тем больше записей приходится на один fsync.
+ *
+ * Поток записи применяет записанные записи к SpendState и периодически сохраняет ее снимок через
+ * memory-mapped файл вместе с позицией в журнале. При запуске загружается последний снимок и
+ * дочитывается только хвост журнала после его позиции; сегменты до снимка удаляются.
+ * Запись с неверной контрольной суммой (оборванная при сбое) завершает чтение сегмента, чтение
+ * продолжается со следующего. Пачка, запись которой не удалась, обрезается из сегмента.
+ */
+@Service
+public class SpendJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpendJournal.class);
+
+    // cardNumber(8) amount(8) day(4) month(4) flags(4) crc(4)
+    private static final int RECORD_SIZE = 32;
+    private static final int FLAG_ATM = 1;
+
+    private static final int SNAPSHOT_MAGIC = 0x534E4150;
+    private static final int SNAPSHOT_VERSION = 1;
+    // magic(4) version(4) segment(8) offset(8) count(4) crc(4)
+    private static final int SNAPSHOT_HEADER_SIZE = 32;
+    // cardNumber, day, daily, atmDaily, month, monthly
+    private static final int SNAPSHOT_ENTRY_SIZE = 48;
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+    private static final String SEGMENT_PREFIX = "spend-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final int MAX_BATCH_RECORDS = 8192;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long segmentSize;
+    private final long snapshotIntervalNanos;
+
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer batchBuffer = ByteBuffer.allocateDirect(MAX_BATCH_RECORDS * RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    // Состояние ниже принадлежит потоку записи (до его запуска - потоку инициализации)
+    private SpendState state = new SpendState(1024);
+    private FileChannel segment;
+    private long segmentIndex;
+    private long lastSnapshotNanos;
+    private boolean changedSinceSnapshot;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    private final Timer fsyncTimer;
+    private final DistributionSummary batchSizeSummary;
+
+    public SpendJournal(
+            MeterRegistry meterRegistry,
+            @Value("${cards.authorization.journal.enabled:true}") boolean enabled,
+            @Value("${cards.authorization.journal.dir:data/spend-journal}") String directory,
+            @Value("${cards.authorization.journal.segment-size-mb:64}") long segmentSizeMb,
+            @Value("${cards.authorization.journal.snapshot-interval-seconds:60}") long snapshotIntervalSeconds) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSizeMb * 1024 * 1024;
+        this.snapshotIntervalNanos = TimeUnit.SECONDS.toNanos(snapshotIntervalSeconds);
+        this.fsyncTimer = Timer.builder("spend_journal.fsync")
+                .description("Время записи и fsync одной группы записей журнала расходов")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("spend_journal.batch_size")
+                .description("Количество записей журнала расходов на один fsync")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            logger.warn("Журнал расходов отключен: расходы по картам не переживут перезапуск");
+            return;
+        }
+        Files.createDirectories(directory);
+        recover();
+        openSegment(segmentIndex);
+        lastSnapshotNanos = System.nanoTime();
+
+        running = true;
+        writerThread = new Thread(this::writeLoop, "spend-journal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Передать восстановленные при запуске расходы по картам. Вызывается до начала авторизаций.
+     */
+    public void forEachRecovered(SpendVisitor visitor) {
+        if (enabled) {
+            state.forEach(visitor);
+        }
+    }
+
+    /**
+     * Поставить запись о расходе в очередь на запись
+     *
+     * @return запись для ожидания фиксации (null, если журнал отключен)
+     */
+    public Entry append(long cardNumber, long day, long month, long amount, boolean atm) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = new Entry(cardNumber, day, month, amount, atm);
+        queue.offer(entry);
+        LockSupport.unpark(writerThread);
+        return entry;
+    }
+
+    /**
+     * Дождаться фиксации записи на диске
+     *
+     * @return false, если запись не зафиксирована за timeoutNanos
+     */
+    public boolean awaitDurable(Entry entry, long timeoutNanos) {
+        if (entry == null) {
+            return true;
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+        entry.waiter = Thread.currentThread();
+        while (!entry.durable) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+        return true;
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH_RECORDS);
+        while (running || !queue.isEmpty()) {
+            Entry entry;
+            while (batch.size() < MAX_BATCH_RECORDS && (entry = queue.poll()) != null) {
+                batch.add(entry);
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                    batch.clear();
+                    continue;
+                }
+                if (changedSinceSnapshot && System.nanoTime() - lastSnapshotNanos >= snapshotIntervalNanos) {
+                    writeSnapshot();
+                }
+            } catch (IOException | RuntimeException e) {
+                // Записи пачки не отмечаются зафиксированными - авторизации по ним будут отклонены по таймауту
+                logger.error("Ошибка записи журнала расходов, потеряно записей: {}", batch.size(), e);
+                batch.clear();
+            }
+            if (running && queue.isEmpty()) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+            }
+        }
+        try {
+            writeSnapshot();
+            segment.close();
+        } catch (IOException e) {
+            logger.error("Ошибка сохранения снимка журнала расходов при остановке", e);
+        }
+    }
+
+    private void writeBatch(List<Entry> batch) throws IOException {
+        long startNanos = System.nanoTime();
+        batchBuffer.clear();
+        for (Entry entry : batch) {
+            int start = batchBuffer.position();
+            batchBuffer.putLong(entry.cardNumber)
+                    .putLong(entry.amount)
+                    .putInt((int) entry.day)
+                    .putInt((int) entry.month)
+                    .putInt(entry.atm ? FLAG_ATM : 0);
+            crc.reset();
+            crc.update(batchBuffer.duplicate().position(start).limit(start + RECORD_SIZE - 4));
+            batchBuffer.putInt((int) crc.getValue());
+        }
+        batchBuffer.flip();
+
+        if (segment.position() > 0 && segment.position() + batchBuffer.remaining() > segmentSize) {
+            segment.force(false);
+            segment.close();
+            openSegment(segmentIndex + 1);
+        }
+        long batchStart = segment.position();
+        try {
+            while (batchBuffer.hasRemaining()) {
+                segment.write(batchBuffer);
+            }
+            segment.force(false);
+        } catch (IOException | RuntimeException e) {
+            discardFailedBatch(batchStart);
+            throw e;
+        }
+        fsyncTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        batchSizeSummary.record(batch.size());
+
+        for (Entry entry : batch) {
+            state.apply(entry.cardNumber, entry.day, entry.month, entry.amount, entry.atm);
+            entry.durable = true;
+            Thread waiter = entry.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+        changedSinceSnapshot = true;
+    }
+
+    /**
+     * Убрать из сегмента пачку, запись которой не удалась: оборванная запись остановила бы чтение
+     * сегмента при восстановлении, а целиком записанная, но не зафиксированная пачка учла бы расходы,
+     * по которым авторизации отклонены. Если обрезать сегмент не удалось, дальше пишем в новый сегмент.
+     */
+    private void discardFailedBatch(long batchStart) {
+        try {
+            segment.truncate(batchStart);
+            segment.force(false);
+            return;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Не удалось обрезать сегмент журнала расходов {} до позиции {}, " +
+                    "при восстановлении может быть учтена неподтвержденная пачка", segmentIndex, batchStart, e);
+        }
+        try {
+            segment.close();
+        } catch (IOException e) {
+            logger.warn("Ошибка закрытия сегмента журнала расходов {}", segmentIndex, e);
+        }
+        try {
+            openSegment(segmentIndex + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть новый сегмент журнала расходов", e);
+        }
+    }
+
+    /**
+     * Сохранить снимок SpendState с текущей позицией журнала и удалить сегменты до нее
+     */
+    private void writeSnapshot() throws IOException {
+        // При ошибке следующая попытка - через интервал снимков, а не на каждой итерации
+        lastSnapshotNanos = System.nanoTime();
+        LocalDate today = LocalDate.now();
+        state.evictBefore(today.getYear() * 12L + today.getMonthValue() - 1);
+
+        int count = state.size();
+        long size = SNAPSHOT_HEADER_SIZE + (long) count * SNAPSHOT_ENTRY_SIZE;
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position(SNAPSHOT_HEADER_SIZE);
+            state.forEach((cardNumber, day, daily, atmDaily, month, monthly) -> buffer
+                    .putLong(cardNumber).putLong(day).putLong(daily)
+                    .putLong(atmDaily).putLong(month).putLong(monthly));
+            CRC32 entriesCrc = new CRC32();
+            entriesCrc.update(buffer.duplicate().position(SNAPSHOT_HEADER_SIZE).limit((int) size));
+            buffer.putInt(0, SNAPSHOT_MAGIC)
+                    .putInt(4, SNAPSHOT_VERSION)
+                    .putLong(8, segmentIndex)
+                    .putLong(16, segment.position())
+                    .putInt(24, count)
+                    .putInt(28, (int) entriesCrc.getValue());
+            buffer.force();
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        for (long index : listSegments()) {
+            if (index < segmentIndex) {
+                Files.deleteIfExists(segmentPath(index));
+            }
+        }
+        changedSinceSnapshot = false;
+        logger.debug("Сохранен снимок журнала расходов: карт {}, сегмент {}", count, segmentIndex);
+    }
+
+    /**
+     * Загрузить снимок и дочитать журнал после него. Новые записи пишутся в следующий сегмент.
+     */
+    private void recover() throws IOException {
+        long startNanos = System.nanoTime();
+        long fromSegment = -1;
+        long fromOffset = 0;
+
+        Path snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotPath)) {
+            try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+                if (channel.size() < SNAPSHOT_HEADER_SIZE) {
+                    logger.error("Снимок журнала расходов обрезан, журнал будет прочитан целиком");
+                } else {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    int count = buffer.getInt(24);
+                    long expectedSize = SNAPSHOT_HEADER_SIZE + (long) count * SNAPSHOT_ENTRY_SIZE;
+                    boolean valid = buffer.getInt(0) == SNAPSHOT_MAGIC && buffer.getInt(4) == SNAPSHOT_VERSION
+                            && count >= 0 && channel.size() == expectedSize;
+                    if (valid) {
+                        CRC32 entriesCrc = new CRC32();
+                        entriesCrc.update(buffer.duplicate().position(SNAPSHOT_HEADER_SIZE).limit((int) expectedSize));
+                        valid = (int) entriesCrc.getValue() == buffer.getInt(28);
+                    }
+                    if (valid) {
+                        state = new SpendState(count);
+                        buffer.position(SNAPSHOT_HEADER_SIZE);
+                        for (int i = 0; i < count; i++) {
+                            state.put(buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                                    buffer.getLong(), buffer.getLong(), buffer.getLong());
+                        }
+                        fromSegment = buffer.getLong(8);
+                        fromOffset = buffer.getLong(16);
+                    } else {
+                        logger.error("Снимок журнала расходов поврежден, журнал будет прочитан целиком");
+                    }
+                }
+            }
+        }
+
+        List<Long> segments = listSegments();
+        long replayed = 0;
+        for (long index : segments) {
+            if (index < fromSegment) {
+                continue;
+            }
+            replayed += replaySegment(index, index == fromSegment ? fromOffset : 0);
+        }
+        segmentIndex = segments.isEmpty() ? Math.max(0, fromSegment) : segments.get(segments.size() - 1) + 1;
+
+        logger.info("Журнал расходов восстановлен за {} мс: карт {}, дочитано записей {}",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), state.size(), replayed);
+    }
+
+    private long replaySegment(long index, long offset) throws IOException {
+        long replayed = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_BATCH_RECORDS * RECORD_SIZE);
+        try (FileChannel channel = FileChannel.open(segmentPath(index), StandardOpenOption.READ)) {
+            channel.position(offset);
+            while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    int start = buffer.position();
+                    crc.reset();
+                    crc.update(buffer.duplicate().position(start).limit(start + RECORD_SIZE - 4));
+                    long cardNumber = buffer.getLong();
+                    long amount = buffer.getLong();
+                    int day = buffer.getInt();
+                    int month = buffer.getInt();
+                    int flags = buffer.getInt();
+                    if (buffer.getInt() != (int) crc.getValue()) {
+                        // Хвост сегмента после оборванной записи не читается; пачки после сбоя записи
+                        // пишутся в следующий сегмент, его чтение продолжается
+                        logger.warn("Оборванная запись в сегменте журнала расходов {} на позиции {}, " +
+                                "переход к следующему сегменту", index, channel.position() - buffer.limit() + start);
+                        return replayed;
+                    }
+                    state.apply(cardNumber, day, month, amount, (flags & FLAG_ATM) != 0);
+                    replayed++;
+                }
+                if (buffer.hasRemaining() && channel.position() >= channel.size()) {
+                    // Неполная последняя запись
+                    return replayed;
+                }
+                buffer.compact();
+            }
+        }
+        return replayed;
+    }
+
+    private void openSegment(long index) throws IOException {
+        segmentIndex = index;
+        segment = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        } catch (NumberFormatException e) {
+            throw new UncheckedIOException(new IOException("Посторонний файл в каталоге журнала " + directory, e));
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Обход расходов по картам
+     */
+    @FunctionalInterface
+    public interface SpendVisitor {
+        void visit(long cardNumber, long day, long dailySpent, long atmDailySpent, long month, long monthlySpent);
+    }
+
+    /**
+     * Запись журнала, ожидающая фиксации
+     */
+    public static final class Entry {
+
+        private final long cardNumber;
+        private final long day;
+        private final long month;
+        private final long amount;
+        private final boolean atm;
+
+        private volatile boolean durable;
+        private volatile Thread waiter;
+
+        private Entry(long cardNumber, long day, long month, long amount, boolean atm) {
+            this.cardNumber = cardNumber;
+            this.day = day;
+            this.month = month;
+            this.amount = amount;
+            this.atm = atm;
+        }
+    }
+}
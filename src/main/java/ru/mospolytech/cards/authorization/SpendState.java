@@ -0,0 +1,146 @@
+package ru.mospolytech.cards.authorization;
+
+import java.util.Arrays;
+
+/**
+ * Расходы по картам, восстановленные из журнала: однопоточная хеш-таблица номер карты -> счетчики.
+ *
+ * Принадлежит потоку записи журнала: в нее применяются записи в порядке записи в файл,
+ * поэтому снимок этой таблицы точно соответствует позиции в журнале.
+ */
+final class SpendState {
+
+    private static final long EMPTY = 0;
+
+    private long[] keys;
+    private long[] days;
+    private long[] dailySpent;
+    private long[] atmDailySpent;
+    private long[] months;
+    private long[] monthlySpent;
+    private int size;
+    private int mask;
+
+    SpendState(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1);
+    }
+
+    /**
+     * Учесть операцию по карте
+     */
+    void apply(long cardNumber, long day, long month, long amount, boolean atm) {
+        int index = findOrInsert(cardNumber);
+        if (days[index] != day) {
+            days[index] = day;
+            dailySpent[index] = 0;
+            atmDailySpent[index] = 0;
+        }
+        dailySpent[index] += amount;
+        if (atm) {
+            atmDailySpent[index] += amount;
+        }
+        if (months[index] != month) {
+            months[index] = month;
+            monthlySpent[index] = 0;
+        }
+        monthlySpent[index] += amount;
+    }
+
+    /**
+     * Загрузить значения счетчиков карты из снимка
+     */
+    void put(long cardNumber, long day, long daily, long atmDaily, long month, long monthly) {
+        int index = findOrInsert(cardNumber);
+        days[index] = day;
+        dailySpent[index] = daily;
+        atmDailySpent[index] = atmDaily;
+        months[index] = month;
+        monthlySpent[index] = monthly;
+    }
+
+    /**
+     * Удалить карты, у которых нет расходов в текущем месяце (они больше не влияют на лимиты)
+     */
+    void evictBefore(long currentMonth) {
+        long[] oldKeys = keys;
+        long[] oldDays = days;
+        long[] oldDaily = dailySpent;
+        long[] oldAtm = atmDailySpent;
+        long[] oldMonths = months;
+        long[] oldMonthly = monthlySpent;
+        allocate(keys.length);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY && oldMonths[i] >= currentMonth) {
+                put(oldKeys[i], oldDays[i], oldDaily[i], oldAtm[i], oldMonths[i], oldMonthly[i]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(SpendJournal.SpendVisitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                visitor.visit(keys[i], days[i], dailySpent[i], atmDailySpent[i], months[i], monthlySpent[i]);
+            }
+        }
+    }
+
+    private int findOrInsert(long cardNumber) {
+        int bucket = bucket(cardNumber);
+        while (keys[bucket] != EMPTY) {
+            if (keys[bucket] == cardNumber) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            return findOrInsert(cardNumber);
+        }
+        keys[bucket] = cardNumber;
+        size++;
+        return bucket;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldDays = days;
+        long[] oldDaily = dailySpent;
+        long[] oldAtm = atmDailySpent;
+        long[] oldMonths = months;
+        long[] oldMonthly = monthlySpent;
+        allocate(keys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldDays[i], oldDaily[i], oldAtm[i], oldMonths[i], oldMonthly[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        days = new long[capacity];
+        dailySpent = new long[capacity];
+        atmDailySpent = new long[capacity];
+        months = new long[capacity];
+        monthlySpent = new long[capacity];
+        mask = capacity - 1;
+        Arrays.fill(days, -1);
+        Arrays.fill(months, -1);
+    }
+
+    private int bucket(long cardNumber) {
+        long h = cardNumber;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
@@ -0,0 +1,72 @@
+package ru.mospolytech.cards.authorization;
+
+/**
+ * Общий лимит расходов по всем картам держателя (user_organization) или организации.
+ *
+ * Объект живет между перезагрузками таблицы лимитов: меняются только значения лимитов,
+ * а накопленные расходы сохраняются.
+ */
+final class SpendingCap {
+
+    private final StripedBudget daily;
+    private final StripedBudget monthly;
+
+    private volatile long dailyLimit;
+    private volatile long monthlyLimit;
+    private volatile int currency;
+
+    SpendingCap(int stripes) {
+        this.daily = new StripedBudget(stripes);
+        this.monthly = new StripedBudget(stripes);
+    }
+
+    void update(long dailyLimit, long monthlyLimit, int currency) {
+        this.dailyLimit = dailyLimit;
+        this.monthlyLimit = monthlyLimit;
+        this.currency = currency;
+    }
+
+    /**
+     * Лимит действует только для операций в своей валюте
+     */
+    boolean appliesTo(int operationCurrency) {
+        return currency == operationCurrency;
+    }
+
+    boolean tryConsume(int stripe, long day, long month, long amount) {
+        if (!daily.tryConsume(stripe, day, amount, dailyLimit)) {
+            return false;
+        }
+        if (!monthly.tryConsume(stripe, month, amount, monthlyLimit)) {
+            daily.release(stripe, day, amount);
+            return false;
+        }
+        return true;
+    }
+
+    void release(int stripe, long day, long month, long amount) {
+        daily.release(stripe, day, amount);
+        monthly.release(stripe, month, amount);
+    }
+
+    void addSpent(long day, long dailyAmount, long month, long monthlyAmount) {
+        daily.addSpent(day, dailyAmount);
+        monthly.addSpent(month, monthlyAmount);
+    }
+
+    long getDailyLimit() {
+        return dailyLimit;
+    }
+
+    long getMonthlyLimit() {
+        return monthlyLimit;
+    }
+
+    long getDailySpent(long day) {
+        return daily.spent(day);
+    }
+
+    long getMonthlySpent(long month) {
+        return monthly.spent(month);
+    }
+}
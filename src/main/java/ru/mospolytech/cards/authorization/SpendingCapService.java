@@ -0,0 +1,84 @@
+package ru.mospolytech.cards.authorization;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import ru.mospolytech.cards.entity.Employee;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+/**
+ * Изменение общих лимитов организаций и держателей.
+ *
+ * Лимиты сохраняются в organization_limits / user_organization_limits, после чего
+ * сервис авторизации перечитывает таблицу лимитов в фоне; накопленные расходы при этом сохраняются.
+ * Каждое изменение - один UPSERT без внешней транзакции, чтобы перезагрузка увидела уже
+ * зафиксированное значение.
+ */
+@Service
+public class SpendingCapService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpendingCapService.class);
+
+    private static final String UPSERT_ORGANIZATION_SQL =
+            "INSERT INTO organization_limits (organization_id, daily_limit, monthly_limit, currency, updated_at) " +
+            "VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP) " +
+            "ON CONFLICT (organization_id) DO UPDATE SET daily_limit = EXCLUDED.daily_limit, " +
+            "monthly_limit = EXCLUDED.monthly_limit, currency = EXCLUDED.currency, updated_at = EXCLUDED.updated_at";
+
+    private static final String UPSERT_USER_ORGANIZATION_SQL =
+            "INSERT INTO user_organization_limits (user_organization_id, daily_limit, monthly_limit, currency, updated_at) " +
+            "VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP) " +
+            "ON CONFLICT (user_organization_id) DO UPDATE SET daily_limit = EXCLUDED.daily_limit, " +
+            "monthly_limit = EXCLUDED.monthly_limit, currency = EXCLUDED.currency, updated_at = EXCLUDED.updated_at";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CardAuthorizationService authorizationService;
+
+    public SpendingCapService(JdbcTemplate jdbcTemplate, CardAuthorizationService authorizationService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.authorizationService = authorizationService;
+    }
+
+    /**
+     * Установить общий лимит организации
+     */
+    public void setOrganizationCap(Long organizationId, BigDecimal dailyLimit, BigDecimal monthlyLimit,
+                                   String currency, Employee employee) {
+        String normalizedCurrency = validate(dailyLimit, monthlyLimit, currency);
+        jdbcTemplate.update(UPSERT_ORGANIZATION_SQL, organizationId, dailyLimit, monthlyLimit, normalizedCurrency);
+        logger.info("Сотрудник {} установил общий лимит организации {}: {} в день, {} в месяц {}",
+                employee.getId(), organizationId, dailyLimit, monthlyLimit, normalizedCurrency);
+        authorizationService.requestReload();
+    }
+
+    /**
+     * Установить общий лимит держателя (по всем его картам в организации)
+     */
+    public void setUserOrganizationCap(Long userOrganizationId, BigDecimal dailyLimit, BigDecimal monthlyLimit,
+                                       String currency, Employee employee) {
+        String normalizedCurrency = validate(dailyLimit, monthlyLimit, currency);
+        jdbcTemplate.update(UPSERT_USER_ORGANIZATION_SQL, userOrganizationId, dailyLimit, monthlyLimit, normalizedCurrency);
+        logger.info("Сотрудник {} установил общий лимит держателя {}: {} в день, {} в месяц {}",
+                employee.getId(), userOrganizationId, dailyLimit, monthlyLimit, normalizedCurrency);
+        authorizationService.requestReload();
+    }
+
+    private static String validate(BigDecimal dailyLimit, BigDecimal monthlyLimit, String currency) {
+        if (dailyLimit == null || monthlyLimit == null || dailyLimit.signum() <= 0) {
+            throw new IllegalArgumentException("Лимиты должны быть положительными");
+        }
+        if (dailyLimit.compareTo(monthlyLimit) > 0) {
+            throw new IllegalArgumentException("Дневной лимит не может превышать месячный");
+        }
+        if (dailyLimit.scale() > 2 || monthlyLimit.scale() > 2) {
+            throw new IllegalArgumentException("Лимиты задаются с точностью до копеек");
+        }
+        if (currency == null || !currency.matches("[A-Za-z]{3}")) {
+            throw new IllegalArgumentException("Неверный код валюты");
+        }
+        return currency.toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,153 @@
+package ru.mospolytech.cards.authorization;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Общий лимит за период для многих карт с низкой конкуренцией.
+ *
+ * Центральный счетчик хранит выделенную за период сумму и никогда не превышает лимит. Карты
+ * расходуют не центральный счетчик, а "аренду" своей полосы (stripe): когда аренды не хватает,
+ * полоса одним CAS берет из центра порцию бюджета с запасом. Так тысячи карт одной организации
+ * обращаются к общему счетчику редко, а перерасход невозможен: потрачено не больше выделенного.
+ * Когда центр исчерпан, операция пытается взять остаток из аренды других полос.
+ *
+ * Значения упакованы так же, как в SpendCounters: номер периода в старших битах, сумма - в младших.
+ */
+final class StripedBudget {
+
+    private static final int STRIDE = 8;
+    private static final int PERIOD_SHIFT = 40;
+    private static final long AMOUNT_MASK = (1L << PERIOD_SHIFT) - 1;
+    // Доля лимита, которую полоса берет за раз: limit / (stripes * LEASE_DIVISOR)
+    private static final int LEASE_DIVISOR = 64;
+
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLongArray stripes;
+    private final int stripeMask;
+
+    StripedBudget(int stripeCount) {
+        int count = Integer.highestOneBit(Math.max(1, stripeCount) * 2 - 1);
+        this.stripes = new AtomicLongArray(count * STRIDE);
+        this.stripeMask = count - 1;
+    }
+
+    /**
+     * Списать amount в периоде, если общий расход не превысит limit.
+     * Если бюджет уже перешел в следующий период, операция отклоняется
+     */
+    boolean tryConsume(int stripe, long period, long amount, long limit) {
+        int index = (stripe & stripeMask) * STRIDE;
+        if (takeFromStripe(index, period, amount)) {
+            return true;
+        }
+
+        long lease = Math.max(amount, limit / ((stripeMask + 1L) * LEASE_DIVISOR));
+        while (true) {
+            long packed = allocated.get();
+            if (periodOf(packed) > period) {
+                return false;
+            }
+            long current = periodOf(packed) == period ? amountOf(packed) : 0;
+            long grant = Math.min(lease, limit - current);
+            if (grant < amount) {
+                break;
+            }
+            if (allocated.compareAndSet(packed, pack(period, current + grant))) {
+                addToStripe(index, period, grant - amount);
+                return true;
+            }
+        }
+
+        // Центр исчерпан - возможно, нужная сумма лежит в аренде другой полосы
+        for (int other = 0; other <= stripeMask; other++) {
+            if (other * STRIDE != index && takeFromStripe(other * STRIDE, period, amount)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Вернуть списанную сумму (откат авторизации) в аренду полосы; если полоса уже в следующем периоде,
+     * возвращать некуда
+     */
+    void release(int stripe, long period, long amount) {
+        addToStripe((stripe & stripeMask) * STRIDE, period, amount);
+    }
+
+    /**
+     * Учесть уже потраченную сумму (восстановление расходов карт); расходы прошедшего периода не учитываются
+     */
+    void addSpent(long period, long amount) {
+        while (true) {
+            long packed = allocated.get();
+            if (periodOf(packed) > period) {
+                return;
+            }
+            long current = periodOf(packed) == period ? amountOf(packed) : 0;
+            if (allocated.compareAndSet(packed, pack(period, Math.min(AMOUNT_MASK, current + amount)))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Потрачено за период: выделенное центром минус неизрасходованная аренда полос
+     */
+    long spent(long period) {
+        long packed = allocated.get();
+        if (periodOf(packed) != period) {
+            return 0;
+        }
+        long spent = amountOf(packed);
+        for (int i = 0; i <= stripeMask; i++) {
+            long stripe = stripes.get(i * STRIDE);
+            if (periodOf(stripe) == period) {
+                spent -= amountOf(stripe);
+            }
+        }
+        return Math.max(0, spent);
+    }
+
+    private boolean takeFromStripe(int index, long period, long amount) {
+        while (true) {
+            long packed = stripes.get(index);
+            if (periodOf(packed) != period || amountOf(packed) < amount) {
+                return false;
+            }
+            if (stripes.compareAndSet(index, packed, pack(period, amountOf(packed) - amount))) {
+                return true;
+            }
+        }
+    }
+
+    private void addToStripe(int index, long period, long amount) {
+        if (amount <= 0) {
+            return;
+        }
+        while (true) {
+            long packed = stripes.get(index);
+            // Аренда более позднего периода принадлежит его бюджету - не затираем ее старым периодом
+            if (periodOf(packed) > period) {
+                return;
+            }
+            long current = periodOf(packed) == period ? amountOf(packed) : 0;
+            if (stripes.compareAndSet(index, packed, pack(period, Math.min(AMOUNT_MASK, current + amount)))) {
+                return;
+            }
+        }
+    }
+
+    private static long pack(long period, long amount) {
+        return (period << PERIOD_SHIFT) | amount;
+    }
+
+    private static long periodOf(long packed) {
+        return packed >>> PERIOD_SHIFT;
+    }
+
+    private static long amountOf(long packed) {
+        return packed & AMOUNT_MASK;
+    }
+}
@@ -1,15 +1,29 @@
 package ru.mospolytech.cards.controller;
 
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import ru.mospolytech.cards.entity.Employee;
+import ru.mospolytech.cards.entity.Organization;
 import ru.mospolytech.cards.entity.UserOrganization;
+import ru.mospolytech.cards.repository.EmployeeRepository;
+import ru.mospolytech.cards.repository.OrganizationRepository;
 import ru.mospolytech.cards.repository.UserOrganizationRepository;
+import ru.mospolytech.cards.service.DashboardService;
+import ru.mospolytech.cards.service.ReferenceDataCache;
+import ru.mospolytech.cards.service.RequestStatusInfo;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @RestController
@@ -17,9 +31,22 @@ import java.util.stream.Collectors;
 public class ApiController {
 
     private final UserOrganizationRepository userOrganizationRepository;
+    private final EmployeeRepository employeeRepository;
+    private final OrganizationRepository organizationRepository;
+    private final DashboardService dashboardService;
+    private final ReferenceDataCache referenceDataCache;
 
-    public ApiController(UserOrganizationRepository userOrganizationRepository) {
+    public ApiController(
+            UserOrganizationRepository userOrganizationRepository,
+            EmployeeRepository employeeRepository,
+            OrganizationRepository organizationRepository,
+            DashboardService dashboardService,
+            ReferenceDataCache referenceDataCache) {
         this.userOrganizationRepository = userOrganizationRepository;
+        this.employeeRepository = employeeRepository;
+        this.organizationRepository = organizationRepository;
+        this.dashboardService = dashboardService;
+        this.referenceDataCache = referenceDataCache;
     }
 
     /**
@@ -41,4 +68,48 @@ public class ApiController {
             return userMap;
         }).collect(Collectors.toList());
     }
-}
+
+    /**
+     * Счетчики заявок для дашборда: по статусам, ответственным и организациям.
+     * Читаются из предрассчитанной таблицы, без обхода card_requests. Только для вошедших сотрудников.
+     */
+    @GetMapping("/dashboard/counts")
+    public ResponseEntity<Map<String, Object>> getDashboardCounts(@RequestParam(defaultValue = "20") int limit,
+                                                                  HttpSession session) {
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        int topLimit = Math.max(1, Math.min(limit, 100));
+
+        Map<Long, Long> byStatus = dashboardService.getCounts(DashboardService.BY_STATUS, Integer.MAX_VALUE);
+        Map<Long, Long> byEmployee = dashboardService.getCounts(DashboardService.BY_EMPLOYEE, topLimit);
+        Map<Long, Long> byOrganization = dashboardService.getCounts(DashboardService.BY_ORGANIZATION, topLimit);
+
+        Map<Long, String> employeeNames = employeeRepository.findAllById(byEmployee.keySet()).stream()
+                .collect(Collectors.toMap(Employee::getId, Employee::getFullName));
+        Map<Long, String> organizationNames = organizationRepository.findAllById(byOrganization.keySet()).stream()
+                .collect(Collectors.toMap(Organization::getId, Organization::getName));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("total", byStatus.values().stream().mapToLong(Long::longValue).sum());
+        result.put("byStatus", toCountList(byStatus, id -> referenceDataCache.findRequestStatusById(id)
+                .map(RequestStatusInfo::getStatusName).orElse(null)));
+        result.put("byEmployee", toCountList(byEmployee, id -> id == 0 ? "Не назначен" : employeeNames.get(id)));
+        result.put("byOrganization", toCountList(byOrganization, organizationNames::get));
+        return ResponseEntity.ok(result);
+    }
+
+    private List<Map<String, Object>> toCountList(Map<Long, Long> counts, Function<Long, String> nameResolver) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        counts.forEach((id, count) -> {
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", id);
+            item.put("name", nameResolver.apply(id));
+            item.put("count", count);
+            result.add(item);
+        });
+        return result;
+    }
+}
\ No newline at end of file
@@ -1,7 +1,7 @@
 package ru.mospolytech.cards.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Controller;
@@ -12,45 +12,84 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import ru.mospolytech.cards.document.DocumentService;
 import ru.mospolytech.cards.entity.*;
+import ru.mospolytech.cards.export.CsvRowWriter;
+import ru.mospolytech.cards.export.RowWriter;
+import ru.mospolytech.cards.export.XlsxRowWriter;
 import ru.mospolytech.cards.repository.*;
+import ru.mospolytech.cards.service.ArchivedRequest;
+import ru.mospolytech.cards.service.CardRequestExportService;
+import ru.mospolytech.cards.service.CardRequestSearchService;
+import ru.mospolytech.cards.service.DashboardService;
+import ru.mospolytech.cards.service.ReferenceDataCache;
+import ru.mospolytech.cards.service.RequestArchiveService;
+import ru.mospolytech.cards.service.RequestNumberAllocator;
+import ru.mospolytech.cards.service.RequestStatusInfo;
+import ru.mospolytech.cards.service.RequestStatusService;
+import ru.mospolytech.cards.specification.CardRequestCursor;
 import ru.mospolytech.cards.specification.CardRequestSpecification;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Controller
 @RequestMapping("/applications")
 public class ApplicationController {
 
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private static final DateTimeFormatter EXPORT_FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmm");
+
     private final CardRequestRepository requestRepository;
     private final OrganizationRepository organizationRepository;
-    private final CardTypeRepository cardTypeRepository;
-    private final BranchRepository branchRepository;
     private final UserOrganizationRepository userOrganizationRepository;
-    private final RequestStatusRepository statusRepository;
+    private final ReferenceDataCache referenceDataCache;
+    private final RequestNumberAllocator requestNumberAllocator;
+    private final RequestStatusService requestStatusService;
+    private final DashboardService dashboardService;
     private final UserRepository userRepository;
     private final EmployeeRepository employeeRepository;
+    private final CardRequestExportService exportService;
+    private final CardRequestSearchService searchService;
+    private final DocumentService documentService;
+    private final RequestArchiveService requestArchiveService;
 
     public ApplicationController(
             CardRequestRepository requestRepository,
             OrganizationRepository organizationRepository,
-            CardTypeRepository cardTypeRepository,
-            BranchRepository branchRepository,
             UserOrganizationRepository userOrganizationRepository,
-            RequestStatusRepository statusRepository,
+            ReferenceDataCache referenceDataCache,
+            RequestNumberAllocator requestNumberAllocator,
+            RequestStatusService requestStatusService,
+            DashboardService dashboardService,
             UserRepository userRepository,
-            EmployeeRepository employeeRepository) {
+            EmployeeRepository employeeRepository,
+            CardRequestExportService exportService,
+            CardRequestSearchService searchService,
+            DocumentService documentService,
+            RequestArchiveService requestArchiveService) {
         this.requestRepository = requestRepository;
         this.organizationRepository = organizationRepository;
-        this.cardTypeRepository = cardTypeRepository;
-        this.branchRepository = branchRepository;
         this.userOrganizationRepository = userOrganizationRepository;
-        this.statusRepository = statusRepository;
+        this.referenceDataCache = referenceDataCache;
+        this.requestNumberAllocator = requestNumberAllocator;
+        this.requestStatusService = requestStatusService;
+        this.dashboardService = dashboardService;
         this.userRepository = userRepository;
         this.employeeRepository = employeeRepository;
+        this.exportService = exportService;
+        this.searchService = searchService;
+        this.documentService = documentService;
+        this.requestArchiveService = requestArchiveService;
     }
 
     /**
@@ -67,6 +106,10 @@ public class ApplicationController {
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateTo,
             @RequestParam(defaultValue = "createdAt") String sortBy,
             @RequestParam(defaultValue = "desc") String sortDirection,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(required = false) String q,
+            @RequestParam(defaultValue = "0") int page,
             HttpSession session,
             Model model) {
 
@@ -76,22 +119,63 @@ public class ApplicationController {
             return "redirect:/login";
         }
 
-        // Создаем спецификацию для фильтрации
-        Specification<CardRequest> spec = CardRequestSpecification.filterBy(
-                userId, organizationId, cardTypeId, assignedEmployeeId, statusId, dateFrom, dateTo
-        );
-
-        // Если сотрудник - менеджер (не администратор), добавляем фильтр по своим заявкам
-        if (!employee.isAdmin()) {
-            spec = spec.and(CardRequestSpecification.byAssignedEmployee(employee.getId()));
+        Specification<CardRequest> spec = listSpecification(
+                userId, organizationId, cardTypeId, assignedEmployeeId, statusId, dateFrom, dateTo, employee);
+
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        String searchQuery = q == null ? "" : q.trim();
+        boolean searchMode = !searchQuery.isEmpty();
+
+        Long totalCount;
+        List<CardRequest> requests;
+        String nextPageUrl = null;
+        String firstPageUrl = null;
+
+        if (searchMode) {
+            // Полнотекстовый поиск: результаты по релевантности, фильтры панели не применяются.
+            // Общее количество совпадений не считаем - это потребовало бы обойти их все
+            totalCount = null;
+            int pageNumber = Math.max(0, page);
+            List<Long> ids = searchService.search(searchQuery, employee, pageNumber * pageSize, pageSize + 1);
+            if (ids.size() > pageSize) {
+                ids = ids.subList(0, pageSize);
+                nextPageUrl = ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("page", pageNumber + 1)
+                        .toUriString();
+            }
+            if (pageNumber > 0) {
+                firstPageUrl = ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("page")
+                        .toUriString();
+            }
+            requests = loadInOrder(ids);
+        } else {
+            // Общее количество считаем отдельным запросом, без сортировки и курсора
+            totalCount = requestRepository.count(spec);
+
+            // Добавляем сортировку и условие "после курсора"
+            CardRequestCursor cursor = CardRequestCursor.decode(after);
+            Specification<CardRequest> pageSpec = Specification.where(CardRequestSpecification.fetchForList())
+                    .and(spec)
+                    .and(CardRequestSpecification.withSort(sortBy, sortDirection))
+                    .and(CardRequestSpecification.afterCursor(sortBy, sortDirection, cursor));
+
+            // Загружаем на одну запись больше, чтобы понять, есть ли следующая страница
+            requests = requestRepository.findBy(pageSpec, query -> query.limit(pageSize + 1).all());
+            if (requests.size() > pageSize) {
+                requests = requests.subList(0, pageSize);
+                String nextCursor = CardRequestCursor.of(requests.get(pageSize - 1), sortBy).encode();
+                nextPageUrl = ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("after", nextCursor)
+                        .toUriString();
+            }
+            if (cursor != null) {
+                firstPageUrl = ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("after")
+                        .toUriString();
+            }
         }
 
-        // Добавляем сортировку
-        spec = spec.and(CardRequestSpecification.withSort(sortBy, sortDirection));
-
-        // Выполняем запрос с фильтрацией и сортировкой
-        List<CardRequest> requests = requestRepository.findAll(spec);
-
         // Формируем информацию о фильтрах
         StringBuilder filterInfo = new StringBuilder();
         if (!employee.isAdmin()) {
@@ -108,22 +192,48 @@ public class ApplicationController {
         if (statusId != null) activeFilters++;
         if (dateFrom != null || dateTo != null) activeFilters++;
 
-        if (activeFilters > 0) {
+        if (searchMode) {
+            filterInfo.append(" (поиск: «").append(searchQuery).append("»)");
+        } else if (activeFilters > 0) {
             filterInfo.append(" (активных фильтров: ").append(activeFilters).append(")");
         }
 
         // Добавляем данные в модель
         model.addAttribute("employee", employee);
         model.addAttribute("applications", requests);
+        model.addAttribute("totalCount", totalCount);
+
+        // Счетчики по статусам из предрассчитанной таблицы (без обхода заявок)
+        if (employee.isAdmin()) {
+            Map<Long, Long> statusCounts = dashboardService.getCounts(DashboardService.BY_STATUS, Integer.MAX_VALUE);
+            model.addAttribute("statusCounts", referenceDataCache.getRequestStatuses().stream()
+                    .map(status -> Map.entry(status.getStatusName(), statusCounts.getOrDefault(status.getId(), 0L)))
+                    .toList());
+        } else {
+            model.addAttribute("myRequestsCount",
+                    dashboardService.getCount(DashboardService.BY_EMPLOYEE, employee.getId()));
+        }
+        model.addAttribute("nextPageUrl", nextPageUrl);
+        model.addAttribute("searchQuery", searchQuery);
+        if (!searchMode) {
+            model.addAttribute("exportCsvUrl", exportUrl("csv"));
+            model.addAttribute("exportXlsxUrl", exportUrl("xlsx"));
+        }
+        model.addAttribute("firstPageUrl", firstPageUrl);
         model.addAttribute("isAdmin", employee.isAdmin());
         model.addAttribute("filterInfo", filterInfo.toString());
 
         // Добавляем справочники для фильтров
-        model.addAttribute("allUsers", userRepository.findAll(Sort.by("lastName").and(Sort.by("firstName"))));
-        model.addAttribute("allOrganizations", organizationRepository.findAll(Sort.by("name")));
-        model.addAttribute("allCardTypes", cardTypeRepository.findAll(Sort.by("typeName")));
-        model.addAttribute("allEmployees", employeeRepository.findAll(Sort.by("lastName").and(Sort.by("firstName"))));
-        model.addAttribute("allStatuses", statusRepository.findAll(Sort.by("id")));
+        // Клиенты, организации и сотрудники выбираются через поиск (/api/search),
+        // здесь загружаем только подписи для уже выбранных значений
+        model.addAttribute("allCardTypes", referenceDataCache.getCardTypes());
+        model.addAttribute("allStatuses", referenceDataCache.getRequestStatuses());
+        model.addAttribute("filterUserName", userId == null ? null
+                : userRepository.findById(userId).map(User::getFullName).orElse(null));
+        model.addAttribute("filterOrganizationName", organizationId == null ? null
+                : organizationRepository.findById(organizationId).map(Organization::getName).orElse(null));
+        model.addAttribute("filterAssignedEmployeeName", assignedEmployeeId == null ? null
+                : employeeRepository.findById(assignedEmployeeId).map(Employee::getFullName).orElse(null));
 
         // Сохраняем текущие значения фильтров для отображения в форме
         model.addAttribute("filterUserId", userId);
@@ -139,6 +249,146 @@ public class ApplicationController {
         return "applications";
     }
 
+    /**
+     * Выгрузка заявок с текущими фильтрами и сортировкой в CSV или XLSX
+     */
+    @GetMapping("/export")
+    public void exportApplications(
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) Long organizationId,
+            @RequestParam(required = false) Long cardTypeId,
+            @RequestParam(required = false) Long assignedEmployeeId,
+            @RequestParam(required = false) Long statusId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateTo,
+            @RequestParam(defaultValue = "createdAt") String sortBy,
+            @RequestParam(defaultValue = "desc") String sortDirection,
+            @RequestParam(defaultValue = "csv") String format,
+            HttpSession session,
+            HttpServletResponse response) throws IOException {
+
+        // Проверяем авторизацию
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null) {
+            response.sendRedirect("/login");
+            return;
+        }
+
+        boolean xlsx = "xlsx".equalsIgnoreCase(format);
+        String fileName = "requests-" + LocalDateTime.now().format(EXPORT_FILE_DATE_FORMAT) + (xlsx ? ".xlsx" : ".csv");
+        response.setContentType(xlsx
+                ? "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"
+                : "text/csv; charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+
+        // Пишем напрямую в поток ответа, без буферизации всего файла
+        RowWriter writer = xlsx
+                ? new XlsxRowWriter(response.getOutputStream(), "Заявки")
+                : new CsvRowWriter(response.getOutputStream());
+        // Та же спецификация, что у списка: выгрузка совпадает с тем, что видит сотрудник
+        Specification<CardRequest> spec = listSpecification(
+                userId, organizationId, cardTypeId, assignedEmployeeId, statusId, dateFrom, dateTo, employee);
+        exportService.export(spec, sortBy, sortDirection, employee, writer);
+    }
+
+    /**
+     * Фильтры списка заявок; менеджер (не администратор) видит только свои заявки
+     */
+    private static Specification<CardRequest> listSpecification(
+            Long userId, Long organizationId, Long cardTypeId, Long assignedEmployeeId, Long statusId,
+            LocalDate dateFrom, LocalDate dateTo, Employee employee) {
+        Specification<CardRequest> spec = CardRequestSpecification.filterBy(
+                userId, organizationId, cardTypeId, assignedEmployeeId, statusId, dateFrom, dateTo
+        );
+        if (!employee.isAdmin()) {
+            spec = spec.and(CardRequestSpecification.byAssignedEmployee(employee.getId()));
+        }
+        return spec;
+    }
+
+    /**
+     * Архив закрытых заявок - список с поиском, только для чтения.
+     * Страницы по id (новые первыми), общее количество не считается.
+     */
+    @GetMapping("/archive")
+    public String listArchivedApplications(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "50") int size,
+            HttpSession session,
+            Model model) {
+
+        // Проверяем авторизацию
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null) {
+            return "redirect:/login";
+        }
+
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        String searchQuery = q == null ? "" : q.trim();
+
+        // Загружаем на одну запись больше, чтобы понять, есть ли следующая страница
+        List<ArchivedRequest> requests = requestArchiveService.findArchivedPage(searchQuery, employee, after, pageSize + 1);
+        String nextPageUrl = null;
+        if (requests.size() > pageSize) {
+            requests = requests.subList(0, pageSize);
+            nextPageUrl = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", requests.get(pageSize - 1).getId())
+                    .toUriString();
+        }
+        String firstPageUrl = after == null ? null : ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("after")
+                .toUriString();
+
+        model.addAttribute("employee", employee);
+        model.addAttribute("applications", requests);
+        model.addAttribute("searchQuery", searchQuery);
+        model.addAttribute("nextPageUrl", nextPageUrl);
+        model.addAttribute("firstPageUrl", firstPageUrl);
+        return "applications/archive";
+    }
+
+    /**
+     * Загрузить заявки для списка в порядке переданных id
+     */
+    private List<CardRequest> loadInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, CardRequest> byId = requestRepository.findBy(
+                        Specification.where(CardRequestSpecification.fetchForList())
+                                .and(CardRequestSpecification.byIds(ids)),
+                        query -> query.all())
+                .stream()
+                .collect(Collectors.toMap(CardRequest::getId, request -> request));
+        return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Ссылка на выгрузку с теми же фильтрами и сортировкой, что и текущая страница списка
+     */
+    private String exportUrl(String format) {
+        return ServletUriComponentsBuilder.fromCurrentRequest()
+                .replacePath("/applications/export")
+                .replaceQueryParam("after")
+                .replaceQueryParam("size")
+                .replaceQueryParam("format", format)
+                .toUriString();
+    }
+
+    private String viewArchivedApplication(Long id, Employee employee, Model model,
+                                           RedirectAttributes redirectAttributes) {
+        ArchivedRequest archived = requestArchiveService.findArchived(id)
+                .orElseThrow(() -> new RuntimeException("Заявка не найдена"));
+        if (!employee.isAdmin() && !Objects.equals(archived.getAssignedEmployeeId(), employee.getId())) {
+            redirectAttributes.addFlashAttribute("error", "У вас нет прав для просмотра этой заявки");
+            return "redirect:/applications";
+        }
+        model.addAttribute("request", archived);
+        model.addAttribute("employee", employee);
+        return "applications/archived";
+    }
+
     /**
      * Форма создания новой заявки
      */
@@ -152,8 +402,8 @@ public class ApplicationController {
 
         // Загружаем справочники
         model.addAttribute("organizations", organizationRepository.findByIsActiveTrue());
-        model.addAttribute("cardTypes", cardTypeRepository.findAll());
-        model.addAttribute("branches", branchRepository.findByIsActiveTrue());
+        model.addAttribute("cardTypes", referenceDataCache.getCardTypes());
+        model.addAttribute("branches", referenceDataCache.getActiveBranches());
         model.addAttribute("employee", employee);
 
         return "application-form";
@@ -183,21 +433,18 @@ public class ApplicationController {
 
             // Устанавливаем связи
             request.setUserOrganization(userOrganizationRepository.findById(userOrganizationId).orElseThrow());
-            request.setCardType(cardTypeRepository.findById(cardTypeId).orElseThrow());
-            request.setBranch(branchRepository.findById(branchId).orElseThrow());
+            request.setCardType(referenceDataCache.cardTypeReference(cardTypeId).orElseThrow());
+            request.setBranch(referenceDataCache.branchReference(branchId).orElseThrow());
 
             // Устанавливаем статус "Новая"
-            RequestStatus newStatus = statusRepository.findByStatusName("Новая")
+            Long newStatusId = referenceDataCache.findRequestStatusByName("Новая")
+                    .map(RequestStatusInfo::getId)
                     .orElseThrow(() -> new RuntimeException("Статус 'Новая' не найден в базе данных"));
-            request.setStatus(newStatus);
+            request.setStatus(referenceDataCache.requestStatusReference(newStatusId).orElseThrow());
 
             // Автоматически назначаем заявку на текущего сотрудника
             request.setAssignedEmployee(employee);
 
-            // Генерируем номер заявки
-            String requestNumber = generateApplicationNumber();
-            request.setRequestNumber(requestNumber);
-
             // Устанавливаем комментарии
             request.setComments(comments);
 
@@ -206,8 +453,12 @@ public class ApplicationController {
             request.setCreatedAt(now);
             request.setUpdatedAt(now);
 
-            // Сохраняем заявку
-            requestRepository.save(request);
+            // Генерируем номер и сохраняем заявку в одной транзакции: при ошибке вставки номер не теряется
+            String requestNumber = requestNumberAllocator.createWithNumber(number -> {
+                request.setRequestNumber(number);
+                requestRepository.save(request);
+                return number;
+            });
 
             redirectAttributes.addFlashAttribute("success",
                 "Заявка " + requestNumber + " успешно создана!");
@@ -233,8 +484,12 @@ public class ApplicationController {
         }
 
         try {
-            CardRequest request = requestRepository.findById(id)
-                    .orElseThrow(() -> new RuntimeException("Заявка не найдена"));
+            Optional<CardRequest> found = requestRepository.findWithDetailsById(id);
+            if (found.isEmpty()) {
+                // Закрытые заявки старше срока хранения лежат в архиве и открываются только для чтения
+                return viewArchivedApplication(id, employee, model, redirectAttributes);
+            }
+            CardRequest request = found.get();
 
             // Проверяем права доступа
             if (!employee.isAdmin() &&
@@ -259,12 +514,13 @@ public class ApplicationController {
 
             model.addAttribute("request", request);
             model.addAttribute("employee", employee);
-            model.addAttribute("allStatuses", statusRepository.findAll());
+            model.addAttribute("allStatuses", referenceDataCache.getRequestStatuses());
             model.addAttribute("canEdit", request.getStatus() != null && !request.getStatus().getStatusName().equals("Выпущена"));
 
             // Данные для форм редактирования
-            model.addAttribute("cardTypes", cardTypeRepository.findAll());
-            model.addAttribute("branches", branchRepository.findByIsActiveTrue());
+            model.addAttribute("cardTypes", referenceDataCache.getCardTypes());
+            model.addAttribute("branches", referenceDataCache.getActiveBranches());
+            model.addAttribute("documents", documentService.findByRequest(id));
 
             return "applications/view";
         } catch (Exception e) {
@@ -304,8 +560,8 @@ public class ApplicationController {
 
             // Обновляем данные
             request.setUserOrganization(userOrganizationRepository.findById(userOrganizationId).orElseThrow());
-            request.setCardType(cardTypeRepository.findById(cardTypeId).orElseThrow());
-            request.setBranch(branchRepository.findById(branchId).orElseThrow());
+            request.setCardType(referenceDataCache.cardTypeReference(cardTypeId).orElseThrow());
+            request.setBranch(referenceDataCache.branchReference(branchId).orElseThrow());
             request.setComments(comments);
             request.setUpdatedAt(LocalDateTime.now());
 
@@ -337,23 +593,20 @@ public class ApplicationController {
         }
 
         try {
-            CardRequest request = requestRepository.findById(id)
-                    .orElseThrow(() -> new RuntimeException("Заявка не найдена"));
-
-            RequestStatus newStatus = statusRepository.findById(newStatusId)
-                    .orElseThrow(() -> new RuntimeException("Статус не найден"));
-
-            RequestStatus oldStatus = request.getStatus();
-
-            // Обновляем статус
-            request.setStatus(newStatus);
-            request.setUpdatedAt(LocalDateTime.now());
-            requestRepository.save(request);
+            RequestStatusService.StatusTransitionResult result =
+                    requestStatusService.changeStatus(id, newStatusId, employee, statusComment);
 
-            // Сохраняем историю изменения (если нужно - можно добавить позже)
+            if (result.getChangedCount() == 0) {
+                redirectAttributes.addFlashAttribute("error",
+                    "Статус не изменен: заявка недоступна, уже выпущена или уже находится в этом статусе");
+                return "redirect:/applications/" + id;
+            }
 
+            String oldStatusName = referenceDataCache.findRequestStatusById(result.getOldStatusIds().get(id))
+                    .map(RequestStatusInfo::getStatusName)
+                    .orElse("?");
             redirectAttributes.addFlashAttribute("success",
-                "Статус заявки изменен: " + oldStatus.getStatusName() + " → " + newStatus.getStatusName());
+                "Статус заявки изменен: " + oldStatusName + " → " + result.getNewStatus().getStatusName());
             return "redirect:/applications/" + id;
 
         } catch (Exception e) {
@@ -363,12 +616,40 @@ public class ApplicationController {
     }
 
     /**
-     * Генерация номера заявки
+     * Массовая смена статуса выбранных заявок
      */
-    private String generateApplicationNumber() {
-        LocalDateTime now = LocalDateTime.now();
-        String datePrefix = now.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        long count = requestRepository.count() + 1;
-        return String.format("REQ-%s-%04d", datePrefix, count);
+    @PostMapping("/bulk-change-status")
+    public String bulkChangeStatus(
+            @RequestParam(required = false) List<Long> requestIds,
+            @RequestParam Long newStatusId,
+            @RequestParam(required = false) String statusComment,
+            HttpSession session,
+            RedirectAttributes redirectAttributes) {
+
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null) {
+            return "redirect:/login";
+        }
+
+        if (requestIds == null || requestIds.isEmpty()) {
+            redirectAttributes.addFlashAttribute("error", "Не выбрано ни одной заявки");
+            return "redirect:/applications";
+        }
+
+        try {
+            RequestStatusService.StatusTransitionResult result =
+                    requestStatusService.changeStatuses(requestIds, newStatusId, employee, statusComment);
+
+            String message = "Статус \"" + result.getNewStatus().getStatusName() + "\" установлен для заявок: "
+                    + result.getChangedCount();
+            if (result.getSkippedCount() > 0) {
+                message += " (пропущено: " + result.getSkippedCount() + ")";
+            }
+            redirectAttributes.addFlashAttribute("success", message);
+
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Ошибка при смене статусов: " + e.getMessage());
+        }
+        return "redirect:/applications";
     }
-}
+}
\ No newline at end of file
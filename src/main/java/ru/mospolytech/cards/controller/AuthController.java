@@ -1,5 +1,6 @@
 package ru.mospolytech.cards.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -8,6 +9,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import ru.mospolytech.cards.entity.Employee;
 import ru.mospolytech.cards.service.AuthService;
+import ru.mospolytech.cards.service.LoginRejectedException;
 import java.util.Optional;
 
 @Controller
@@ -38,10 +40,18 @@ public class AuthController {
     public String login(
             @RequestParam String email,
             @RequestParam String password,
+            HttpServletRequest request,
             HttpSession session,
             Model model) {
 
-        Optional<Employee> employeeOpt = authService.authenticate(email, password);
+        Optional<Employee> employeeOpt;
+        try {
+            employeeOpt = authService.authenticate(email, password,
+                    request.getRemoteAddr(), request.getHeader("User-Agent"));
+        } catch (LoginRejectedException e) {
+            model.addAttribute("error", e.getMessage());
+            return "login";
+        }
 
         if (employeeOpt.isPresent()) {
             Employee employee = employeeOpt.get();
@@ -61,7 +71,11 @@ public class AuthController {
      * Выход из системы
      */
     @GetMapping("/logout")
-    public String logout(HttpSession session) {
+    public String logout(HttpServletRequest request, HttpSession session) {
+        Long employeeId = (Long) session.getAttribute("employeeId");
+        if (employeeId != null) {
+            authService.recordLogout(employeeId, request.getRemoteAddr(), request.getHeader("User-Agent"));
+        }
         session.invalidate();
         return "redirect:/login";
     }
@@ -0,0 +1,64 @@
+package ru.mospolytech.cards.controller;
+
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.mospolytech.cards.authorization.AuthorizationChannel;
+import ru.mospolytech.cards.authorization.AuthorizationResult;
+import ru.mospolytech.cards.authorization.CardAuthorizationService;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Авторизация операций по картам
+ */
+@RestController
+@RequestMapping("/api/authorizations")
+public class AuthorizationController {
+
+    private final CardAuthorizationService authorizationService;
+
+    public AuthorizationController(CardAuthorizationService authorizationService) {
+        this.authorizationService = authorizationService;
+    }
+
+    /**
+     * Авторизовать операцию по карте
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> authorize(
+            @RequestParam String cardNumber,
+            @RequestParam BigDecimal amount,
+            @RequestParam(defaultValue = "RUB") String currency,
+            @RequestParam(defaultValue = "POS") String channel,
+            HttpSession session) {
+
+        if (session.getAttribute("employee") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        AuthorizationChannel authorizationChannel;
+        try {
+            authorizationChannel = AuthorizationChannel.valueOf(channel.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        AuthorizationResult result = authorizationService.authorize(cardNumber, amount, currency, authorizationChannel);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("approved", result.isApproved());
+        response.put("decision", result.getDecision().name());
+        if (result.isApproved()) {
+            response.put("dailySpent", BigDecimal.valueOf(result.getDailySpent(), 2));
+            response.put("monthlySpent", BigDecimal.valueOf(result.getMonthlySpent(), 2));
+        }
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,86 @@
+package ru.mospolytech.cards.controller;
+
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.mospolytech.cards.entity.Employee;
+import ru.mospolytech.cards.service.CardIssuanceService;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Управление пакетным выпуском карт (только для администратора)
+ */
+@RestController
+@RequestMapping("/api/cards/issuance")
+public class CardIssuanceController {
+
+    private final CardIssuanceService cardIssuanceService;
+
+    public CardIssuanceController(CardIssuanceService cardIssuanceService) {
+        this.cardIssuanceService = cardIssuanceService;
+    }
+
+    /**
+     * Запустить выпуск карт по одобренным заявкам
+     */
+    @PostMapping("/start")
+    public ResponseEntity<Map<String, Object>> start(HttpSession session) {
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null || !employee.isAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!cardIssuanceService.start(employee)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(toMap(cardIssuanceService.getProgress()));
+        }
+        return ResponseEntity.accepted().body(toMap(cardIssuanceService.getProgress()));
+    }
+
+    /**
+     * Остановить выпуск после текущей пачки; повторный запуск продолжит с необработанных заявок
+     */
+    @PostMapping("/stop")
+    public ResponseEntity<Map<String, Object>> stop(HttpSession session) {
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null || !employee.isAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        cardIssuanceService.requestStop();
+        return ResponseEntity.ok(toMap(cardIssuanceService.getProgress()));
+    }
+
+    /**
+     * Прогресс и скорость выпуска
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> progress(HttpSession session) {
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null || !employee.isAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(toMap(cardIssuanceService.getProgress()));
+    }
+
+    private Map<String, Object> toMap(CardIssuanceService.IssuanceProgress progress) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("running", cardIssuanceService.isRunning());
+        if (progress == null) {
+            return result;
+        }
+        result.put("state", progress.getState());
+        result.put("startedBy", progress.getStartedBy());
+        result.put("startedAt", progress.getStartedAt());
+        result.put("finishedAt", progress.getFinishedAt());
+        result.put("pendingAtStart", progress.getPendingAtStart());
+        result.put("issued", progress.getIssued());
+        result.put("chunks", progress.getChunks());
+        result.put("cardsPerSecond", Math.round(progress.getCardsPerSecond() * 10) / 10.0);
+        result.put("lastError", progress.getLastError());
+        return result;
+    }
+}
@@ -0,0 +1,69 @@
+package ru.mospolytech.cards.controller;
+
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.mospolytech.cards.entity.Employee;
+import ru.mospolytech.cards.service.CardLimitBulkService;
+import ru.mospolytech.cards.service.CardLimitBulkService.BulkLimitResult;
+import ru.mospolytech.cards.service.CardLimitBulkService.LimitValues;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Массовое изменение лимитов карт (только для администратора)
+ */
+@RestController
+@RequestMapping("/api/cards/limits")
+public class CardLimitController {
+
+    private final CardLimitBulkService cardLimitBulkService;
+
+    public CardLimitController(CardLimitBulkService cardLimitBulkService) {
+        this.cardLimitBulkService = cardLimitBulkService;
+    }
+
+    /**
+     * Изменить лимиты карт организации и/или типа карт: по шаблону (templateId) или явными значениями
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<Map<String, Object>> bulkUpdate(
+            @RequestParam(required = false) Long organizationId,
+            @RequestParam(required = false) Long cardTypeId,
+            @RequestParam(required = false) Long templateId,
+            @RequestParam(required = false) BigDecimal dailyLimit,
+            @RequestParam(required = false) BigDecimal monthlyLimit,
+            @RequestParam(required = false) BigDecimal singleTransactionLimit,
+            @RequestParam(required = false) BigDecimal atmDailyLimit,
+            @RequestParam(required = false) String currency,
+            @RequestParam(required = false) String reason,
+            HttpSession session) {
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null || !employee.isAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        BulkLimitResult result;
+        try {
+            result = templateId != null
+                    ? cardLimitBulkService.applyTemplate(templateId, organizationId, cardTypeId, reason, employee)
+                    : cardLimitBulkService.applyValues(
+                            new LimitValues(dailyLimit, monthlyLimit, singleTransactionLimit, atmDailyLimit, currency),
+                            organizationId, cardTypeId, reason, employee);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("matched", result.getMatchedCount());
+        response.put("changed", result.getChangedCount());
+        response.put("skipped", result.getSkippedCount());
+        return ResponseEntity.ok(response);
+    }
+}
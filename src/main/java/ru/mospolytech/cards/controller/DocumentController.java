@@ -0,0 +1,302 @@
+package ru.mospolytech.cards.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import ru.mospolytech.cards.document.ByteRange;
+import ru.mospolytech.cards.document.DocumentArchiveService;
+import ru.mospolytech.cards.document.DocumentInfo;
+import ru.mospolytech.cards.document.DocumentService;
+import ru.mospolytech.cards.document.DocumentTooLargeException;
+import ru.mospolytech.cards.entity.Employee;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Загрузка и скачивание документов к заявкам
+ */
+@RestController
+public class DocumentController {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentController.class);
+
+    // Атрибуты запроса Tomcat для отдачи файла через sendfile (NIO-коннектор)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final DateTimeFormatter ARCHIVE_FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmm");
+
+    private final DocumentService documentService;
+    private final DocumentArchiveService archiveService;
+
+    public DocumentController(DocumentService documentService, DocumentArchiveService archiveService) {
+        this.documentService = documentService;
+        this.archiveService = archiveService;
+    }
+
+    /**
+     * Загрузить документ к заявке. Файл читается потоком и сразу пишется в хранилище.
+     */
+    @PostMapping("/api/requests/{requestId}/documents")
+    public ResponseEntity<Map<String, Object>> upload(
+            @PathVariable Long requestId,
+            @RequestParam String documentType,
+            @RequestParam MultipartFile file,
+            HttpSession session) throws IOException {
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        DocumentInfo document;
+        try (InputStream content = file.getInputStream()) {
+            document = documentService.upload(requestId, documentType, file.getOriginalFilename(), content, employee);
+        } catch (DocumentTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).body(toMap(document));
+    }
+
+    /**
+     * Документы заявки
+     */
+    @GetMapping("/api/requests/{requestId}/documents")
+    public ResponseEntity<List<Map<String, Object>>> list(@PathVariable Long requestId, HttpSession session) {
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (!documentService.canViewRequest(requestId, employee)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(documentService.findByRequest(requestId).stream().map(this::toMap).toList());
+    }
+
+    /**
+     * ZIP-архив документов организации и/или набора заявок за период загрузки.
+     * Архив пишется прямо в поток ответа, размер заранее неизвестен.
+     */
+    @GetMapping("/api/documents/archive")
+    public void archive(
+            @RequestParam(required = false) Long organizationId,
+            @RequestParam(required = false) List<Long> requestIds,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateTo,
+            HttpSession session,
+            HttpServletResponse response) throws IOException {
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        boolean hasRequestIds = requestIds != null && !requestIds.isEmpty();
+        if (organizationId == null && !hasRequestIds) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Укажите организацию или заявки");
+            return;
+        }
+        if (hasRequestIds && requestIds.size() > DocumentArchiveService.MAX_REQUEST_IDS) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "Не больше " + DocumentArchiveService.MAX_REQUEST_IDS + " заявок за раз");
+            return;
+        }
+
+        String fileName = "documents-" + (organizationId != null ? "org" + organizationId + "-" : "")
+                + LocalDateTime.now().format(ARCHIVE_FILE_DATE_FORMAT) + ".zip";
+        response.setContentType("application/zip");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        archiveService.export(organizationId, requestIds, dateFrom, dateTo, employee, response.getOutputStream());
+    }
+
+    /**
+     * Содержимое документа. Поддерживается заголовок Range. Файл отдается через sendfile Tomcat
+     * (без копирования в память приложения), если коннектор его поддерживает, иначе FileChannel.transferTo.
+     */
+    @GetMapping("/api/documents/{id}/content")
+    public void download(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "false") boolean attachment,
+            HttpSession session,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Optional<DocumentInfo> document = findForResponse(id, session, response);
+        if (document.isEmpty()) {
+            return;
+        }
+        DocumentInfo found = document.get();
+        String etag = found.getContentHash() == null ? null : "\"" + found.getContentHash() + "\"";
+        serveFile(documentService.resolveFile(found),
+                found.getContentType() != null ? found.getContentType() : "application/octet-stream",
+                found.getFileName(), attachment, etag, request, response);
+    }
+
+    /**
+     * Сжатое превью первой страницы (JPEG до 1200 пикселей по ширине)
+     */
+    @GetMapping("/api/documents/{id}/preview")
+    public void preview(@PathVariable Long id, HttpSession session,
+                        HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serveRendition(id, false, session, request, response);
+    }
+
+    /**
+     * Миниатюра первой страницы (JPEG до 240 пикселей по ширине)
+     */
+    @GetMapping("/api/documents/{id}/thumbnail")
+    public void thumbnail(@PathVariable Long id, HttpSession session,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serveRendition(id, true, session, request, response);
+    }
+
+    private void serveRendition(Long id, boolean thumbnail, HttpSession session,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<DocumentInfo> document = findForResponse(id, session, response);
+        if (document.isEmpty()) {
+            return;
+        }
+        DocumentInfo found = document.get();
+        String path = thumbnail ? found.getThumbnailPath() : found.getPreviewPath();
+        if (path == null) {
+            // Документ еще обрабатывается
+            response.setHeader("Retry-After", "5");
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String kind = thumbnail ? "thumbnail" : "preview";
+        serveFile(documentService.resolveStored(path), "image/jpeg", kind + "-" + found.getId() + ".jpg", false,
+                "\"" + found.getContentHash() + "-" + kind + "\"", request, response);
+    }
+
+    /**
+     * Документ, доступный сотруднику; иначе в ответ уже записана ошибка
+     */
+    private Optional<DocumentInfo> findForResponse(Long id, HttpSession session,
+                                                   HttpServletResponse response) throws IOException {
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return Optional.empty();
+        }
+        Optional<DocumentInfo> found = documentService.findAccessible(id, employee);
+        if (found.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+        return found;
+    }
+
+    private void serveFile(Path file, String contentType, String fileName, boolean attachment, String etag,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            logger.warn("Файл отсутствует в хранилище документов: {}", file);
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long length = Files.size(file);
+        // Содержимое по хешу не меняется, поэтому хеш - сильный ETag
+        if (etag != null && etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        ByteRange range;
+        try {
+            String ifRange = request.getHeader("If-Range");
+            range = ifRange == null || ifRange.equals(etag) ? ByteRange.parse(request.getHeader("Range"), length) : null;
+        } catch (IllegalArgumentException e) {
+            response.setHeader("Content-Range", "bytes */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        if (range == null) {
+            range = ByteRange.full(length);
+            response.setStatus(HttpServletResponse.SC_OK);
+        } else {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", range.toContentRange(length));
+        }
+
+        response.setContentType(contentType);
+        response.setContentLengthLong(range.getLength());
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("Cache-Control", "private, max-age=86400");
+        if (etag != null) {
+            response.setHeader("ETag", etag);
+        }
+        response.setHeader("Content-Disposition", (attachment ? "attachment" : "inline")
+                + "; filename*=UTF-8''" + URLEncoder.encode(fileName, StandardCharsets.UTF_8).replace("+", "%20"));
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat сам отправит файл из кэша страниц ОС в сокет после выхода из обработчика
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, range.getStart());
+            request.setAttribute(SENDFILE_END, range.getEnd() + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = range.getStart();
+            long remaining = range.getLength();
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    private Map<String, Object> toMap(DocumentInfo document) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", document.getId());
+        result.put("requestId", document.getRequestId());
+        result.put("documentType", document.getDocumentType());
+        result.put("fileName", document.getFileName());
+        result.put("fileSize", document.getFileSize());
+        result.put("contentType", document.getContentType());
+        result.put("uploadedAt", document.getUploadedAt());
+        result.put("pageCount", document.getPageCount());
+        result.put("url", "/api/documents/" + document.getId() + "/content");
+        if (document.isPreviewReady()) {
+            result.put("previewUrl", "/api/documents/" + document.getId() + "/preview");
+            result.put("thumbnailUrl", "/api/documents/" + document.getId() + "/thumbnail");
+        }
+        return result;
+    }
+}
@@ -8,6 +8,9 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import ru.mospolytech.cards.entity.*;
 import ru.mospolytech.cards.repository.*;
+import ru.mospolytech.cards.service.PasswordVerifier;
+import ru.mospolytech.cards.service.ReferenceDataCache;
+import ru.mospolytech.cards.service.RoleInfo;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -17,16 +20,16 @@ import java.util.List;
 public class EmployeeController {
 
     private final EmployeeRepository employeeRepository;
-    private final RoleRepository roleRepository;
-    private final BranchRepository branchRepository;
+    private final ReferenceDataCache referenceDataCache;
+    private final PasswordVerifier passwordVerifier;
 
     public EmployeeController(
             EmployeeRepository employeeRepository,
-            RoleRepository roleRepository,
-            BranchRepository branchRepository) {
+            ReferenceDataCache referenceDataCache,
+            PasswordVerifier passwordVerifier) {
         this.employeeRepository = employeeRepository;
-        this.roleRepository = roleRepository;
-        this.branchRepository = branchRepository;
+        this.referenceDataCache = referenceDataCache;
+        this.passwordVerifier = passwordVerifier;
     }
 
     /**
@@ -49,10 +52,10 @@ public class EmployeeController {
         // Если администратор - показываем список менеджеров
         if (employee.isAdmin()) {
             // Получаем все роли
-            List<Role> allRoles = roleRepository.findAll();
+            List<RoleInfo> allRoles = referenceDataCache.getRoles();
 
             // Находим роль администратора
-            Role adminRole = roleRepository.findByRoleName("Администратор").orElse(null);
+            RoleInfo adminRole = referenceDataCache.findRoleByName("Администратор").orElse(null);
 
             // Получаем всех сотрудников, которые не являются администраторами
             List<Employee> managers = employeeRepository.findAll().stream()
@@ -70,7 +73,7 @@ public class EmployeeController {
                     .toList());
 
             // Добавляем справочники для создания нового менеджера
-            model.addAttribute("branches", branchRepository.findByIsActiveTrue());
+            model.addAttribute("branches", referenceDataCache.getActiveBranches());
         }
 
         return "employee/profile";
@@ -112,7 +115,7 @@ public class EmployeeController {
             }
 
             // Находим роль
-            Role role = roleRepository.findById(roleId)
+            RoleInfo role = referenceDataCache.findRoleById(roleId)
                     .orElseThrow(() -> new RuntimeException("Роль не найдена в базе данных"));
 
             // Проверяем, что не пытаются создать администратора
@@ -129,16 +132,16 @@ public class EmployeeController {
             newEmployee.setEmail(email);
             newEmployee.setPhone(phone);
 
-            // Хешируем пароль (упрощенный вариант - в production использовать BCrypt)
-            newEmployee.setPasswordHash(password); // TODO: Implement proper password hashing
+            // Хешируем пароль BCrypt с текущей стоимостью
+            newEmployee.setPasswordHash(passwordVerifier.hash(password));
 
-            newEmployee.setRole(role);
+            newEmployee.setRole(referenceDataCache.roleReference(role.getId()).orElseThrow());
             newEmployee.setIsActive(true);
             newEmployee.setCreatedAt(LocalDateTime.now());
 
             // Устанавливаем отделение, если выбрано
             if (branchId != null) {
-                Branch branch = branchRepository.findById(branchId).orElse(null);
+                Branch branch = referenceDataCache.branchReference(branchId).orElse(null);
                 newEmployee.setBranch(branch);
             }
 
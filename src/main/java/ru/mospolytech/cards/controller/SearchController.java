@@ -0,0 +1,153 @@
+package ru.mospolytech.cards.controller;
+
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.mospolytech.cards.repository.EmployeeRepository;
+import ru.mospolytech.cards.repository.OrganizationRepository;
+import ru.mospolytech.cards.repository.UserRepository;
+import ru.mospolytech.cards.service.SearchQueries;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Поиск для полей с подсказками (typeahead) в панели фильтров.
+ * Возвращает не более limit записей, поиск идет по триграммным и префиксным индексам.
+ */
+@RestController
+@RequestMapping("/api/search")
+public class SearchController {
+
+    private static final int MAX_LIMIT = 50;
+
+    private final UserRepository userRepository;
+    private final OrganizationRepository organizationRepository;
+    private final EmployeeRepository employeeRepository;
+
+    public SearchController(
+            UserRepository userRepository,
+            OrganizationRepository organizationRepository,
+            EmployeeRepository employeeRepository) {
+        this.userRepository = userRepository;
+        this.organizationRepository = organizationRepository;
+        this.employeeRepository = employeeRepository;
+    }
+
+    /**
+     * Поиск клиентов по ФИО, телефону или серии и номеру паспорта
+     */
+    @GetMapping("/users")
+    public ResponseEntity<List<Map<String, Object>>> searchUsers(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "10") int limit,
+            HttpSession session) {
+
+        if (session.getAttribute("employee") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        String normalized = normalize(query);
+        if (normalized.length() < SearchQueries.MIN_QUERY_LENGTH) {
+            return ResponseEntity.ok(List.of());
+        }
+
+        String escaped = escapeLike(normalized);
+        List<Map<String, Object>> result = userRepository
+                .search("%" + escaped.toLowerCase() + "%", escaped.replace(" ", "") + "%", clampLimit(limit))
+                .stream().map(user -> {
+                    Map<String, Object> userMap = new HashMap<>();
+                    userMap.put("id", user.getId());
+                    userMap.put("fullName", user.getFullName());
+                    userMap.put("phone", user.getPhone());
+                    return userMap;
+                }).collect(Collectors.toList());
+
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Поиск организаций по названию (в том числе нечеткий) или ИНН
+     */
+    @GetMapping("/organizations")
+    public ResponseEntity<List<Map<String, Object>>> searchOrganizations(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "10") int limit,
+            HttpSession session) {
+
+        if (session.getAttribute("employee") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        String normalized = normalize(query);
+        if (normalized.length() < SearchQueries.MIN_QUERY_LENGTH) {
+            return ResponseEntity.ok(List.of());
+        }
+
+        String escaped = escapeLike(normalized);
+        List<Map<String, Object>> result = organizationRepository
+                .search("%" + escaped.toLowerCase() + "%", normalized.toLowerCase(), escaped + "%", clampLimit(limit))
+                .stream().map(org -> {
+                    Map<String, Object> orgMap = new HashMap<>();
+                    orgMap.put("id", org.getId());
+                    orgMap.put("name", org.getName());
+                    orgMap.put("inn", org.getInn());
+                    return orgMap;
+                }).collect(Collectors.toList());
+
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Поиск сотрудников банка по ФИО или email
+     */
+    @GetMapping("/employees")
+    public ResponseEntity<List<Map<String, Object>>> searchEmployees(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "10") int limit,
+            HttpSession session) {
+
+        if (session.getAttribute("employee") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        String normalized = normalize(query);
+        if (normalized.length() < SearchQueries.MIN_QUERY_LENGTH) {
+            return ResponseEntity.ok(List.of());
+        }
+
+        String escaped = escapeLike(normalized).toLowerCase();
+        List<Map<String, Object>> result = employeeRepository
+                .search("%" + escaped + "%", escaped + "%", clampLimit(limit))
+                .stream().map(emp -> {
+                    Map<String, Object> empMap = new HashMap<>();
+                    empMap.put("id", emp.getId());
+                    empMap.put("fullName", emp.getFullName());
+                    empMap.put("email", emp.getEmail());
+                    return empMap;
+                }).collect(Collectors.toList());
+
+        return ResponseEntity.ok(result);
+    }
+
+    private static String normalize(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ");
+    }
+
+    private static int clampLimit(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    /**
+     * Экранирует спецсимволы LIKE, чтобы ввод пользователя искался буквально
+     */
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,118 @@
+package ru.mospolytech.cards.controller;
+
+import jakarta.servlet.http.HttpSession;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.mospolytech.cards.authorization.CardAuthorizationService;
+import ru.mospolytech.cards.authorization.CardAuthorizationService.SpendingCapStatus;
+import ru.mospolytech.cards.authorization.SpendingCapService;
+import ru.mospolytech.cards.entity.Employee;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Общие лимиты расходов организаций и держателей (изменение - только администратор)
+ */
+@RestController
+public class SpendingCapController {
+
+    private final SpendingCapService spendingCapService;
+    private final CardAuthorizationService authorizationService;
+
+    public SpendingCapController(SpendingCapService spendingCapService,
+                                 CardAuthorizationService authorizationService) {
+        this.spendingCapService = spendingCapService;
+        this.authorizationService = authorizationService;
+    }
+
+    /**
+     * Общий лимит организации и текущие расходы по нему
+     */
+    @GetMapping("/api/organizations/{id}/spending-cap")
+    public ResponseEntity<Map<String, Object>> getOrganizationCap(@PathVariable Long id, HttpSession session) {
+        if (session.getAttribute("employee") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return toResponse(authorizationService.getOrganizationCapStatus(id));
+    }
+
+    /**
+     * Установить общий лимит организации
+     */
+    @PostMapping("/api/organizations/{id}/spending-cap")
+    public ResponseEntity<Map<String, Object>> setOrganizationCap(
+            @PathVariable Long id,
+            @RequestParam BigDecimal dailyLimit,
+            @RequestParam BigDecimal monthlyLimit,
+            @RequestParam(defaultValue = "RUB") String currency,
+            HttpSession session) {
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null || !employee.isAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            spendingCapService.setOrganizationCap(id, dailyLimit, monthlyLimit, currency, employee);
+        } catch (IllegalArgumentException | DataIntegrityViolationException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", errorMessage(e)));
+        }
+        return ResponseEntity.accepted().build();
+    }
+
+    /**
+     * Общий лимит держателя и текущие расходы по нему
+     */
+    @GetMapping("/api/user-organizations/{id}/spending-cap")
+    public ResponseEntity<Map<String, Object>> getUserOrganizationCap(@PathVariable Long id, HttpSession session) {
+        if (session.getAttribute("employee") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return toResponse(authorizationService.getUserOrganizationCapStatus(id));
+    }
+
+    /**
+     * Установить общий лимит держателя
+     */
+    @PostMapping("/api/user-organizations/{id}/spending-cap")
+    public ResponseEntity<Map<String, Object>> setUserOrganizationCap(
+            @PathVariable Long id,
+            @RequestParam BigDecimal dailyLimit,
+            @RequestParam BigDecimal monthlyLimit,
+            @RequestParam(defaultValue = "RUB") String currency,
+            HttpSession session) {
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null || !employee.isAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            spendingCapService.setUserOrganizationCap(id, dailyLimit, monthlyLimit, currency, employee);
+        } catch (IllegalArgumentException | DataIntegrityViolationException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", errorMessage(e)));
+        }
+        return ResponseEntity.accepted().build();
+    }
+
+    private ResponseEntity<Map<String, Object>> toResponse(Optional<SpendingCapStatus> status) {
+        return status.map(cap -> {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("dailyLimit", BigDecimal.valueOf(cap.getDailyLimit(), 2));
+            result.put("monthlyLimit", BigDecimal.valueOf(cap.getMonthlyLimit(), 2));
+            result.put("dailySpent", BigDecimal.valueOf(cap.getDailySpent(), 2));
+            result.put("monthlySpent", BigDecimal.valueOf(cap.getMonthlySpent(), 2));
+            return ResponseEntity.ok(result);
+        }).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private static String errorMessage(RuntimeException e) {
+        // Нарушение внешнего ключа - организации или держателя с таким id нет
+        return e instanceof DataIntegrityViolationException ? "Владелец лимита не найден" : e.getMessage();
+    }
+}
@@ -0,0 +1,67 @@
+package ru.mospolytech.cards.controller;
+
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.mospolytech.cards.entity.Employee;
+import ru.mospolytech.cards.timeline.RequestTimelineService;
+import ru.mospolytech.cards.timeline.TimelineCursor;
+import ru.mospolytech.cards.timeline.TimelineEvent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Лента событий заявки: история статусов заявки и карты, изменения лимитов, документы
+ */
+@RestController
+public class TimelineController {
+
+    private final RequestTimelineService timelineService;
+
+    public TimelineController(RequestTimelineService timelineService) {
+        this.timelineService = timelineService;
+    }
+
+    /**
+     * Страница ленты, от новых событий к старым. Следующая страница - по курсору next.
+     */
+    @GetMapping("/api/requests/{requestId}/timeline")
+    public ResponseEntity<Map<String, Object>> timeline(
+            @PathVariable Long requestId,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int size,
+            HttpSession session) {
+        Employee employee = (Employee) session.getAttribute("employee");
+        if (employee == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        TimelineCursor cursor = TimelineCursor.decode(after);
+        if (after != null && !after.isBlank() && cursor == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Некорректный курсор"));
+        }
+
+        return timelineService.getTimeline(requestId, cursor, size, employee)
+                .map(page -> {
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("events", page.getEvents().stream().map(this::toMap).toList());
+                    result.put("next", page.getNextCursor());
+                    return ResponseEntity.ok(result);
+                })
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private Map<String, Object> toMap(TimelineEvent event) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("type", event.getSource().name());
+        result.put("id", event.getId());
+        result.put("occurredAt", event.getOccurredAt());
+        result.put("employee", event.getEmployeeName());
+        result.put("details", event.getDetails());
+        return result;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.mospolytech.cards.document;
+
+/**
+ * Диапазон байтов из заголовка Range (RFC 9110), концы включительно
+ */
+public final class ByteRange {
+
+    private final long start;
+    private final long end;
+
+    private ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public static ByteRange full(long length) {
+        return new ByteRange(0, length - 1);
+    }
+
+    /**
+     * Разобрать заголовок Range для файла длиной length.
+     * Поддерживается один диапазон: "bytes=a-b", "bytes=a-", "bytes=-n".
+     *
+     * @return null, если заголовка нет или он в другом формате (отдается весь файл)
+     * @throws IllegalArgumentException если диапазон не пересекается с файлом (ответ 416)
+     */
+    public static ByteRange parse(String header, long length) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            // Несколько диапазонов (multipart/byteranges) не поддерживаются - сервер вправе отдать весь файл
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    throw new IllegalArgumentException("Пустой диапазон");
+                }
+                return new ByteRange(Math.max(0, length - suffix), length - 1);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            if (start >= length || end < start) {
+                throw new IllegalArgumentException("Диапазон вне файла");
+            }
+            return new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    public String toContentRange(long totalLength) {
+        return "bytes " + start + "-" + end + "/" + totalLength;
+    }
+}
@@ -0,0 +1,194 @@
+package ru.mospolytech.cards.document;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.mospolytech.cards.entity.Employee;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Выгрузка документов организации или набора заявок одним ZIP-архивом.
+ *
+ * Строки documents читаются курсором JDBC, файлы по одному копируются в поток ответа через
+ * буфер фиксированного размера: ни архив, ни список документов в памяти и во временных файлах
+ * не собираются. JPEG и PNG уже сжаты, они кладутся в архив без сжатия (STORED), остальное
+ * сжимается. Архивы больше 4 ГБ ZipOutputStream пишет в формате ZIP64.
+ * В выгрузку попадают и документы заявок, перенесенных в архив (RequestArchiveService).
+ */
+@Service
+public class DocumentArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentArchiveService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    public static final int MAX_REQUEST_IDS = 1000;
+
+    // Повторное сжатие этих форматов только тратит процессор
+    private static final Set<String> COMPRESSED_TYPES = Set.of("image/jpeg", "image/png");
+
+    private static final String SELECT_SQL =
+            "SELECT d.id, d.document_type, d.file_name, d.file_path, d.content_type, r.request_number " +
+            "FROM (SELECT id, request_id, document_type, file_name, file_path, content_type, uploaded_at FROM documents " +
+            "      UNION ALL " +
+            "      SELECT id, request_id, document_type, file_name, file_path, content_type, uploaded_at FROM documents_archive) d " +
+            "JOIN card_requests_all r ON r.id = d.request_id " +
+            "JOIN user_organizations uo ON uo.id = r.user_organization_id " +
+            "WHERE 1 = 1";
+
+    // Отдельный JdbcTemplate с fetch size, как у выгрузки заявок
+    private final JdbcTemplate jdbcTemplate;
+    private final DocumentStore documentStore;
+
+    public DocumentArchiveService(
+            DataSource dataSource,
+            DocumentStore documentStore,
+            @Value("${cards.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.documentStore = documentStore;
+    }
+
+    /**
+     * Записать архив документов в поток. Поток не закрывается.
+     * Должен быть задан хотя бы один из фильтров organizationId и requestIds.
+     *
+     * @return количество документов в архиве
+     */
+    @Transactional(readOnly = true)
+    public long export(
+            Long organizationId,
+            List<Long> requestIds,
+            LocalDate dateFrom,
+            LocalDate dateTo,
+            Employee employee,
+            OutputStream output) throws IOException {
+
+        StringBuilder sql = new StringBuilder(SELECT_SQL);
+        List<Object> params = new ArrayList<>();
+
+        if (organizationId != null) {
+            sql.append(" AND uo.organization_id = ?");
+            params.add(organizationId);
+        }
+        if (requestIds != null && !requestIds.isEmpty()) {
+            sql.append(" AND r.id = ANY (?)");
+            params.add(requestIds.toArray(new Long[0]));
+        }
+        if (dateFrom != null) {
+            sql.append(" AND d.uploaded_at >= ?");
+            params.add(Timestamp.valueOf(dateFrom.atStartOfDay()));
+        }
+        if (dateTo != null) {
+            sql.append(" AND d.uploaded_at < ?");
+            params.add(Timestamp.valueOf(dateTo.plusDays(1).atStartOfDay()));
+        }
+        // Менеджер выгружает только документы своих заявок
+        if (!employee.isAdmin()) {
+            sql.append(" AND r.assigned_employee_id = ?");
+            params.add(employee.getId());
+        }
+        sql.append(" ORDER BY r.request_number, d.id");
+
+        ZipOutputStream zip = new ZipOutputStream(output);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long[] counts = {0, 0};
+        try {
+            jdbcTemplate.query(sql.toString(), rs -> {
+                Path file = documentStore.resolve(rs.getString("file_path"));
+                if (!Files.isRegularFile(file)) {
+                    logger.warn("Документ {} пропущен при выгрузке: файл {} отсутствует", rs.getLong("id"), file);
+                    counts[1]++;
+                    return;
+                }
+                String name = entryName(rs.getString("request_number"), rs.getLong("id"),
+                        rs.getString("document_type"), rs.getString("file_name"));
+                try {
+                    writeEntry(zip, name, file, COMPRESSED_TYPES.contains(rs.getString("content_type")), buffer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                counts[0]++;
+            }, params.toArray());
+        } catch (UncheckedIOException e) {
+            // Клиент оборвал загрузку - курсор закрывается вместе с транзакцией
+            throw e.getCause();
+        }
+        // finish, а не close: поток ответа закрывает контейнер
+        zip.finish();
+        zip.flush();
+
+        logger.info("Сотрудник {} выгрузил архив документов: {} файлов, пропущено {}",
+                employee.getId(), counts[0], counts[1]);
+        return counts[0];
+    }
+
+    private static void writeEntry(ZipOutputStream zip, String name, Path file, boolean stored, byte[] buffer)
+            throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            // Для STORED размер и CRC пишутся в заголовок до данных, поэтому файл читается дважды.
+            // Файлы хранилища неизменяемы, а второе чтение идет из кэша страниц ОС.
+            long size = Files.size(file);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(size);
+            entry.setCompressedSize(size);
+            entry.setCrc(crc32(file, buffer));
+        } else {
+            entry.setMethod(ZipEntry.DEFLATED);
+        }
+        zip.putNextEntry(entry);
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                zip.write(buffer, 0, read);
+            }
+        }
+        zip.closeEntry();
+    }
+
+    private static long crc32(Path file, byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Путь в архиве: каталог заявки и имя с id документа (имена файлов в заявке могут совпадать)
+     */
+    static String entryName(String requestNumber, long documentId, String documentType, String fileName) {
+        return safeName(requestNumber, "request") + "/" + documentId + "-"
+                + safeName(documentType, "document") + "-" + safeName(fileName, "file");
+    }
+
+    private static String safeName(String value, String fallback) {
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        // Разделители путей и управляющие символы в имени записи архива недопустимы
+        String name = value.replaceAll("[\\p{Cntrl}/\\\\:*?\"<>|]", "_").trim();
+        return name.isEmpty() || name.equals("..") ? fallback : name;
+    }
+}
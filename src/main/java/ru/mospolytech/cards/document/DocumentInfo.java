@@ -0,0 +1,106 @@
+package ru.mospolytech.cards.document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Строка documents, нужная для выдачи файла
+ */
+public class DocumentInfo {
+
+    private final Long id;
+    private final Long requestId;
+    private final String documentType;
+    private final String fileName;
+    private final String filePath;
+    private final long fileSize;
+    private final String contentHash;
+    private final String contentType;
+    private final Long assignedEmployeeId;
+    private final LocalDateTime uploadedAt;
+    private final Integer pageCount;
+    private final String previewPath;
+    private final String thumbnailPath;
+
+    public DocumentInfo(Long id, Long requestId, String documentType, String fileName, String filePath,
+                        long fileSize, String contentHash, String contentType, Long assignedEmployeeId,
+                        LocalDateTime uploadedAt, Integer pageCount, String previewPath, String thumbnailPath) {
+        this.id = id;
+        this.requestId = requestId;
+        this.documentType = documentType;
+        this.fileName = fileName;
+        this.filePath = filePath;
+        this.fileSize = fileSize;
+        this.contentHash = contentHash;
+        this.contentType = contentType;
+        this.assignedEmployeeId = assignedEmployeeId;
+        this.uploadedAt = uploadedAt;
+        this.pageCount = pageCount;
+        this.previewPath = previewPath;
+        this.thumbnailPath = thumbnailPath;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getRequestId() {
+        return requestId;
+    }
+
+    public String getDocumentType() {
+        return documentType;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * SHA-256 содержимого (null для документов, загруженных до появления хранилища)
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Менеджер заявки документа (null, если не назначен)
+     */
+    public Long getAssignedEmployeeId() {
+        return assignedEmployeeId;
+    }
+
+    public LocalDateTime getUploadedAt() {
+        return uploadedAt;
+    }
+
+    /**
+     * Число страниц (null, пока документ не обработан)
+     */
+    public Integer getPageCount() {
+        return pageCount;
+    }
+
+    public String getPreviewPath() {
+        return previewPath;
+    }
+
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+
+    public boolean isPreviewReady() {
+        return previewPath != null;
+    }
+}
@@ -0,0 +1,332 @@
+package ru.mospolytech.cards.document;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.awt.image.BufferedImage;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Фоновая обработка загруженных документов: превью, миниатюра и число страниц.
+ *
+ * Задания хранятся в таблице document_jobs (создаются триггером при вставке в documents), поэтому
+ * переживают перезапуск и распределяются между узлами: поток-диспетчер забирает задания
+ * с FOR UPDATE SKIP LOCKED не больше, чем свободных мест в пуле обработчиков ограниченного размера.
+ * Неудачное задание повторяется с экспоненциальной задержкой, после max-attempts помечается FAILED.
+ * Задания, зависшие в RUNNING (узел остановился во время обработки), возвращаются в очередь.
+ * Результат записывается во все документы с тем же хешем содержимого; если превью для такого
+ * содержимого уже построено, задание завершается без обработки файла.
+ */
+@Service
+public class DocumentProcessingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentProcessingService.class);
+
+    private static final String PREVIEW = "preview";
+    private static final String THUMBNAIL = "thumbnail";
+
+    private static final int PREVIEW_WIDTH = 1200;
+    private static final int THUMBNAIL_WIDTH = 240;
+    private static final float PREVIEW_QUALITY = 0.8f;
+    private static final float THUMBNAIL_QUALITY = 0.7f;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private static final String CLAIM_SQL =
+            "UPDATE document_jobs j SET status = 'RUNNING', attempts = j.attempts + 1, locked_at = ?, updated_at = ? " +
+            "FROM documents d " +
+            "WHERE d.id = j.document_id AND j.id IN (" +
+            "    SELECT id FROM document_jobs WHERE status = 'PENDING' AND next_attempt_at <= ? " +
+            "    ORDER BY next_attempt_at, id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "RETURNING j.id, j.document_id, j.attempts, d.file_path, d.content_hash, d.content_type";
+
+    private static final String RELEASE_STALE_SQL =
+            "UPDATE document_jobs SET status = 'PENDING', locked_at = NULL, updated_at = ? " +
+            "WHERE status = 'RUNNING' AND locked_at < ?";
+
+    private static final String PROCESSED_SQL =
+            "SELECT page_count, preview_path, thumbnail_path FROM documents " +
+            "WHERE content_hash = ? AND preview_path IS NOT NULL LIMIT 1";
+
+    private static final String UPDATE_DOCUMENTS_SQL =
+            "UPDATE documents SET page_count = ?, preview_path = ?, thumbnail_path = ? WHERE content_hash = ?";
+
+    private static final String COMPLETE_SQL =
+            "UPDATE document_jobs SET status = 'DONE', locked_at = NULL, last_error = NULL, updated_at = ? WHERE id = ?";
+
+    // Задание, которое не удалось передать обработчику, возвращается в очередь без учета попытки
+    private static final String RETURN_SQL =
+            "UPDATE document_jobs SET status = 'PENDING', attempts = attempts - 1, locked_at = NULL, updated_at = ? " +
+            "WHERE id = ? AND status = 'RUNNING'";
+
+    private static final String RETRY_SQL =
+            "UPDATE document_jobs SET status = ?, locked_at = NULL, last_error = ?, next_attempt_at = ?, updated_at = ? " +
+            "WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DocumentStore documentStore;
+
+    private final int workers;
+    private final int maxAttempts;
+    private final long pollIntervalNanos;
+    private final Duration retryDelay;
+    private final Duration staleTimeout;
+    private final ThreadPoolExecutor executor;
+    // Задания, взятые из таблицы и еще не обработанные (в очереди пула или в работе)
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Counter processedCounter;
+    private final Counter failedCounter;
+    private final Timer processingTimer;
+
+    private volatile boolean running;
+    private volatile Thread dispatcherThread;
+
+    public DocumentProcessingService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            DocumentStore documentStore,
+            MeterRegistry meterRegistry,
+            @Value("${cards.documents.processing.workers:2}") int workers,
+            @Value("${cards.documents.processing.max-attempts:5}") int maxAttempts,
+            @Value("${cards.documents.processing.poll-interval-ms:2000}") long pollIntervalMs,
+            @Value("${cards.documents.processing.retry-delay-seconds:30}") long retryDelaySeconds,
+            @Value("${cards.documents.processing.stale-timeout-minutes:10}") long staleTimeoutMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.documentStore = documentStore;
+        this.workers = Math.max(1, workers);
+        this.maxAttempts = maxAttempts;
+        this.pollIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pollIntervalMs);
+        this.retryDelay = Duration.ofSeconds(retryDelaySeconds);
+        this.staleTimeout = Duration.ofMinutes(staleTimeoutMinutes);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        // Диспетчер держит не больше workers * 2 заданий, но счетчик уменьшается в конце задачи, до того как
+        // поток возьмет следующую из очереди, поэтому у очереди запас: workers * 2 мест сверх работающих потоков
+        this.executor = new ThreadPoolExecutor(this.workers, this.workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.workers * 2),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "document-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    // Обработка изображений не должна отнимать CPU у потоков обработки запросов
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("document_processing.in_flight", inFlight, AtomicInteger::get)
+                .description("Задания обработки документов, взятые узлом в работу")
+                .register(meterRegistry);
+        this.processedCounter = Counter.builder("document_processing.processed")
+                .description("Обработанные документы")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("document_processing.failed")
+                .description("Неудачные попытки обработки документов")
+                .register(meterRegistry);
+        this.processingTimer = Timer.builder("document_processing.duration")
+                .description("Время построения превью одного документа")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        dispatcherThread = new Thread(this::dispatchLoop, "document-dispatcher");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (dispatcherThread != null) {
+            LockSupport.unpark(dispatcherThread);
+        }
+        executor.shutdown();
+        try {
+            // Незавершенные задания останутся в RUNNING и будут возвращены в очередь по stale-timeout
+            executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Разбудить диспетчер (после загрузки документа), не дожидаясь очередного опроса
+     */
+    public void wakeUp() {
+        Thread dispatcher = dispatcherThread;
+        if (dispatcher != null) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    private void dispatchLoop() {
+        long lastStaleCheck = 0;
+        while (running) {
+            try {
+                long now = System.nanoTime();
+                if (now - lastStaleCheck > pollIntervalNanos * 30) {
+                    releaseStaleJobs();
+                    lastStaleCheck = now;
+                }
+                int free = workers * 2 - inFlight.get();
+                if (free > 0) {
+                    List<Job> jobs = claim(free);
+                    for (int i = 0; i < jobs.size(); i++) {
+                        Job job = jobs.get(i);
+                        inFlight.incrementAndGet();
+                        try {
+                            executor.execute(() -> {
+                                try {
+                                    process(job);
+                                } finally {
+                                    inFlight.decrementAndGet();
+                                    wakeUp();
+                                }
+                            });
+                        } catch (RejectedExecutionException e) {
+                            // Пул остановлен или переполнен: это и оставшиеся задания - обратно в очередь
+                            inFlight.decrementAndGet();
+                            returnJobs(jobs.subList(i, jobs.size()));
+                            break;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Ошибка диспетчера обработки документов", e);
+            }
+            // Освободившийся обработчик будит диспетчер, не дожидаясь интервала опроса
+            if (running) {
+                LockSupport.parkNanos(this, pollIntervalNanos);
+            }
+        }
+    }
+
+    private List<Job> claim(int limit) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return transactionTemplate.execute(status -> jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> new Job(
+                rs.getLong("id"),
+                rs.getLong("document_id"),
+                rs.getInt("attempts"),
+                rs.getString("file_path"),
+                rs.getString("content_hash"),
+                rs.getString("content_type")), now, now, now, limit));
+    }
+
+    private void returnJobs(List<Job> jobs) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (Job job : jobs) {
+            jdbcTemplate.update(RETURN_SQL, now, job.id);
+        }
+        logger.warn("Пул обработки документов не принял задания, возвращены в очередь: {}", jobs.size());
+    }
+
+    private void releaseStaleJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        int released = jdbcTemplate.update(RELEASE_STALE_SQL,
+                Timestamp.valueOf(now), Timestamp.valueOf(now.minus(staleTimeout)));
+        if (released > 0) {
+            logger.warn("Возвращены в очередь зависшие задания обработки документов: {}", released);
+        }
+    }
+
+    private void process(Job job) {
+        long startNanos = System.nanoTime();
+        try {
+            Rendered rendered = jdbcTemplate.query(PROCESSED_SQL, rs -> rs.next()
+                    ? new Rendered(rs.getInt("page_count"), rs.getString("preview_path"), rs.getString("thumbnail_path"))
+                    : null, job.contentHash);
+            if (rendered == null) {
+                rendered = render(job);
+            }
+            Rendered result = rendered;
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update(UPDATE_DOCUMENTS_SQL,
+                        result.pageCount, result.previewPath, result.thumbnailPath, job.contentHash);
+                jdbcTemplate.update(COMPLETE_SQL, now, job.id);
+            });
+            processedCounter.increment();
+            processingTimer.record(Duration.ofNanos(System.nanoTime() - startNanos));
+        } catch (Exception | OutOfMemoryError e) {
+            // OutOfMemoryError от одного огромного скана не должен останавливать обработчик
+            failedCounter.increment();
+            boolean giveUp = job.attempts >= maxAttempts;
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime nextAttempt = now.plus(retryDelay.multipliedBy(1L << Math.min(job.attempts - 1, 10)));
+            String error = String.valueOf(e.getMessage());
+            jdbcTemplate.update(RETRY_SQL, giveUp ? "FAILED" : "PENDING",
+                    error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error,
+                    Timestamp.valueOf(nextAttempt), Timestamp.valueOf(now), job.id);
+            logger.warn("Не удалось обработать документ {} (попытка {}{})", job.documentId, job.attempts,
+                    giveUp ? ", попытки исчерпаны" : "", e);
+        }
+    }
+
+    private Rendered render(Job job) throws Exception {
+        DocumentRenderer.Rendition rendition = DocumentRenderer.render(
+                documentStore.resolve(job.filePath), job.contentType, PREVIEW_WIDTH);
+        BufferedImage preview = DocumentRenderer.scale(rendition.image, PREVIEW_WIDTH);
+        BufferedImage thumbnail = DocumentRenderer.scale(preview, THUMBNAIL_WIDTH);
+        String previewPath = documentStore.storeDerived(job.contentHash, PREVIEW,
+                target -> DocumentRenderer.writeJpeg(preview, PREVIEW_QUALITY, target));
+        String thumbnailPath = documentStore.storeDerived(job.contentHash, THUMBNAIL,
+                target -> DocumentRenderer.writeJpeg(thumbnail, THUMBNAIL_QUALITY, target));
+        return new Rendered(rendition.pageCount, previewPath, thumbnailPath);
+    }
+
+    private static final class Job {
+
+        final long id;
+        final long documentId;
+        final int attempts;
+        final String filePath;
+        final String contentHash;
+        final String contentType;
+
+        Job(long id, long documentId, int attempts, String filePath, String contentHash, String contentType) {
+            this.id = id;
+            this.documentId = documentId;
+            this.attempts = attempts;
+            this.filePath = filePath;
+            this.contentHash = contentHash;
+            this.contentType = contentType;
+        }
+    }
+
+    private static final class Rendered {
+
+        final int pageCount;
+        final String previewPath;
+        final String thumbnailPath;
+
+        Rendered(int pageCount, String previewPath, String thumbnailPath) {
+            this.pageCount = pageCount;
+            this.previewPath = previewPath;
+            this.thumbnailPath = thumbnailPath;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ru.mospolytech.cards.document;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Построение превью и миниатюр документов (JPEG, PNG, PDF).
+ *
+ * Растровые изображения читаются с прореживанием (subsampling) сразу до размера, близкого
+ * к превью, поэтому скан 6000x8000 не разворачивается в памяти целиком. Для PDF считается
+ * число страниц, а превью строится по первой странице в нужном масштабе.
+ */
+final class DocumentRenderer {
+
+    private DocumentRenderer() {
+    }
+
+    /**
+     * Первая страница документа не шире maxWidth и число страниц
+     */
+    static Rendition render(Path file, String contentType, int maxWidth) throws IOException {
+        if ("application/pdf".equals(contentType)) {
+            return renderPdf(file, maxWidth);
+        }
+        return new Rendition(readImage(file, maxWidth), 1);
+    }
+
+    private static Rendition renderPdf(Path file, int maxWidth) throws IOException {
+        // Буферы PDFBox - во временных файлах, а не в куче
+        try (PDDocument document = Loader.loadPDF(file.toFile(), null, null, null, IOUtils.createTempFileOnlyStreamCache())) {
+            int pageCount = document.getNumberOfPages();
+            if (pageCount == 0) {
+                throw new IOException("PDF без страниц");
+            }
+            PDRectangle box = document.getPage(0).getCropBox();
+            float scale = Math.min(4f, maxWidth / Math.max(1f, box.getWidth()));
+            BufferedImage image = new PDFRenderer(document).renderImage(0, scale, ImageType.RGB);
+            return new Rendition(image, pageCount);
+        }
+    }
+
+    private static BufferedImage readImage(Path file, int maxWidth) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Неизвестный формат изображения");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Прореживание до ширины не меньше 2 * maxWidth - дальше изображение сглаживается при масштабировании
+                int step = Math.max(1, width / (maxWidth * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Уменьшить изображение до ширины maxWidth (меньшие не увеличиваются)
+     */
+    static BufferedImage scale(BufferedImage source, int maxWidth) {
+        BufferedImage current = source;
+        // Уменьшение по шагам вдвое дает заметно более гладкий результат, чем один шаг
+        while (current.getWidth() > maxWidth) {
+            int width = Math.max(maxWidth, current.getWidth() / 2);
+            int height = Math.max(1, (int) ((long) current.getHeight() * width / current.getWidth()));
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        }
+        if (current.getType() != BufferedImage.TYPE_INT_RGB) {
+            // JPEG не поддерживает прозрачность: PNG с альфа-каналом переводится в RGB на белом фоне
+            BufferedImage rgb = new BufferedImage(current.getWidth(), current.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = rgb.createGraphics();
+            try {
+                graphics.drawImage(current, 0, 0, Color.WHITE, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = rgb;
+        }
+        return current;
+    }
+
+    static void writeJpeg(BufferedImage image, float quality, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Первая страница и число страниц
+     */
+    static final class Rendition {
+
+        final BufferedImage image;
+        final int pageCount;
+
+        Rendition(BufferedImage image, int pageCount) {
+            this.image = image;
+            this.pageCount = pageCount;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package ru.mospolytech.cards.document;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import ru.mospolytech.cards.entity.Employee;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Загрузка и выдача документов к заявкам.
+ *
+ * Содержимое хранится в DocumentStore по хешу, строка documents ссылается на файл хранилища.
+ * Повторная загрузка того же файла к той же заявке возвращает существующий документ.
+ * Превью и миниатюры строятся в фоне (DocumentProcessingService), загрузка их не ждет.
+ * Доступ - у администратора и у менеджера, назначенного на заявку. Документы архивных заявок
+ * (documents_archive) доступны для просмотра и скачивания, загрузка к ним не допускается.
+ */
+@Service
+public class DocumentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentService.class);
+
+    private static final int MAX_FILE_NAME_LENGTH = 255;
+    private static final int MAX_DOCUMENT_TYPE_LENGTH = 50;
+
+    private static final String DOCUMENT_COLUMNS =
+            "id, request_id, document_type, file_name, file_path, file_size, " +
+            "content_hash, content_type, uploaded_at, page_count, preview_path, thumbnail_path";
+
+    // Рабочие и архивные документы; условия по d.id и d.request_id доходят до индексов обеих таблиц
+    private static final String SELECT_DOCUMENT_SQL =
+            "SELECT d.id, d.request_id, d.document_type, d.file_name, d.file_path, d.file_size, " +
+            "d.content_hash, d.content_type, d.uploaded_at, d.page_count, d.preview_path, d.thumbnail_path, " +
+            "r.assigned_employee_id " +
+            "FROM (SELECT " + DOCUMENT_COLUMNS + " FROM documents " +
+            "      UNION ALL " +
+            "      SELECT " + DOCUMENT_COLUMNS + " FROM documents_archive) d " +
+            "JOIN card_requests_all r ON r.id = d.request_id ";
+
+    private static final String REQUEST_ASSIGNEE_SQL =
+            "SELECT assigned_employee_id FROM card_requests WHERE id = ?";
+
+    private static final String ANY_REQUEST_ASSIGNEE_SQL =
+            "SELECT assigned_employee_id FROM card_requests_all WHERE id = ?";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO documents (request_id, document_type, file_name, file_path, file_size, " +
+            "content_hash, content_type, uploaded_by, uploaded_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) RETURNING id";
+
+    private static final RowMapper<DocumentInfo> DOCUMENT_MAPPER = (rs, rowNum) -> {
+        Timestamp uploadedAt = rs.getTimestamp("uploaded_at");
+        return new DocumentInfo(
+                rs.getLong("id"),
+                rs.getLong("request_id"),
+                rs.getString("document_type"),
+                rs.getString("file_name"),
+                rs.getString("file_path"),
+                rs.getLong("file_size"),
+                rs.getString("content_hash"),
+                rs.getString("content_type"),
+                rs.getObject("assigned_employee_id", Long.class),
+                uploadedAt == null ? null : uploadedAt.toLocalDateTime(),
+                rs.getObject("page_count", Integer.class),
+                rs.getString("preview_path"),
+                rs.getString("thumbnail_path"));
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DocumentStore documentStore;
+    private final DocumentProcessingService processingService;
+
+    public DocumentService(JdbcTemplate jdbcTemplate, DocumentStore documentStore,
+                           DocumentProcessingService processingService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.documentStore = documentStore;
+        this.processingService = processingService;
+    }
+
+    /**
+     * Загрузить документ к заявке
+     *
+     * @throws IllegalArgumentException если заявка не найдена или недоступна сотруднику, тип файла не поддерживается
+     */
+    public DocumentInfo upload(Long requestId, String documentType, String fileName, InputStream content,
+                               Employee employee) throws IOException {
+        if (documentType == null || documentType.isBlank() || documentType.length() > MAX_DOCUMENT_TYPE_LENGTH) {
+            throw new IllegalArgumentException("Не указан тип документа");
+        }
+        if (!canAccessRequest(requestId, employee)) {
+            throw new IllegalArgumentException("Заявка не найдена");
+        }
+
+        // Неподдерживаемый тип отклоняется хранилищем до записи файла
+        DocumentStore.StoredContent stored = documentStore.store(content);
+        String contentType = stored.getContentType();
+
+        Optional<DocumentInfo> existing = jdbcTemplate.query(
+                SELECT_DOCUMENT_SQL + "WHERE d.request_id = ? AND d.content_hash = ? AND d.document_type = ?",
+                DOCUMENT_MAPPER, requestId, stored.getContentHash(), documentType.trim()).stream().findFirst();
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+
+        String storedFileName = sanitizeFileName(fileName);
+        LocalDateTime now = LocalDateTime.now();
+        Long id = jdbcTemplate.queryForObject(INSERT_SQL, Long.class,
+                requestId, documentType.trim(), storedFileName, stored.getFilePath(),
+                stored.getSize(), stored.getContentHash(), contentType, employee.getId(), Timestamp.valueOf(now));
+        logger.info("Сотрудник {} загрузил документ {} к заявке {} ({} байт{})", employee.getId(), id, requestId,
+                stored.getSize(), stored.isDeduplicated() ? ", копия уже была в хранилище" : "");
+        // Задание на построение превью создано триггером вместе со строкой documents
+        processingService.wakeUp();
+        return new DocumentInfo(id, requestId, documentType.trim(), storedFileName, stored.getFilePath(),
+                stored.getSize(), stored.getContentHash(), contentType, null, now, null, null, null);
+    }
+
+    /**
+     * Документ, если он доступен сотруднику
+     */
+    public Optional<DocumentInfo> findAccessible(Long documentId, Employee employee) {
+        return jdbcTemplate.query(SELECT_DOCUMENT_SQL + "WHERE d.id = ?", DOCUMENT_MAPPER, documentId).stream()
+                .filter(document -> canAccess(employee, document.getAssignedEmployeeId()))
+                .findFirst();
+    }
+
+    /**
+     * Документы заявки, новые первыми
+     */
+    public List<DocumentInfo> findByRequest(Long requestId) {
+        return jdbcTemplate.query(SELECT_DOCUMENT_SQL + "WHERE d.request_id = ? ORDER BY d.uploaded_at DESC, d.id DESC",
+                DOCUMENT_MAPPER, requestId);
+    }
+
+    /**
+     * Есть ли рабочая (не архивная) заявка и доступна ли она сотруднику
+     */
+    public boolean canAccessRequest(Long requestId, Employee employee) {
+        return canAccess(REQUEST_ASSIGNEE_SQL, requestId, employee);
+    }
+
+    /**
+     * Есть ли заявка, рабочая или архивная, и может ли сотрудник просматривать ее документы
+     */
+    public boolean canViewRequest(Long requestId, Employee employee) {
+        return canAccess(ANY_REQUEST_ASSIGNEE_SQL, requestId, employee);
+    }
+
+    private boolean canAccess(String assigneeSql, Long requestId, Employee employee) {
+        List<Long> assignees = jdbcTemplate.query(assigneeSql,
+                (rs, rowNum) -> rs.getObject("assigned_employee_id", Long.class), requestId);
+        return !assignees.isEmpty() && canAccess(employee, assignees.get(0));
+    }
+
+    /**
+     * Файл документа в хранилище
+     */
+    public Path resolveFile(DocumentInfo document) {
+        return documentStore.resolve(document.getFilePath());
+    }
+
+    /**
+     * Файл хранилища по относительному пути (превью, миниатюра)
+     */
+    public Path resolveStored(String relativePath) {
+        return documentStore.resolve(relativePath);
+    }
+
+    private static boolean canAccess(Employee employee, Long assignedEmployeeId) {
+        return employee.isAdmin() || Objects.equals(employee.getId(), assignedEmployeeId);
+    }
+
+    private static String sanitizeFileName(String fileName) {
+        if (fileName == null || fileName.isBlank()) {
+            return "document";
+        }
+        // Браузеры старых версий присылают полный путь
+        String name = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1)
+                .replaceAll("[\\p{Cntrl}\"]", "_").trim();
+        if (name.isEmpty()) {
+            return "document";
+        }
+        return name.length() > MAX_FILE_NAME_LENGTH ? name.substring(name.length() - MAX_FILE_NAME_LENGTH) : name;
+    }
+}
@@ -0,0 +1,272 @@
+package ru.mospolytech.cards.document;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Файловое хранилище документов с адресацией по содержимому.
+ *
+ * Файл пишется потоком во временный файл с фиксированным буфером, одновременно считается SHA-256.
+ * Затем временный файл атомарно переименовывается в sha256/ab/cd/<хеш>; если такой файл уже есть
+ * (тот же скан загружен повторно), временный файл удаляется, и документы ссылаются на одну копию.
+ * Файлы в хранилище не изменяются и не удаляются при удалении строк documents.
+ * Производные файлы (превью, миниатюры) лежат рядом в derived/ab/cd/<хеш>-<вид>.jpg.
+ */
+@Service
+public class DocumentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentStore.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Первые байты файла, по которым определяется тип (PDF, JPEG, PNG)
+    private static final int SIGNATURE_LENGTH = 8;
+    private static final String HASH_DIRECTORY = "sha256";
+    private static final String DERIVED_DIRECTORY = "derived";
+
+    private final Path root;
+    private final Path tempDirectory;
+    private final long maxSize;
+
+    public DocumentStore(
+            @Value("${cards.documents.storage-dir:data/documents}") String storageDir,
+            @Value("${cards.documents.max-size-mb:50}") long maxSizeMb) {
+        this.root = Path.of(storageDir).toAbsolutePath().normalize();
+        this.tempDirectory = root.resolve("tmp");
+        this.maxSize = maxSizeMb * 1024 * 1024;
+        try {
+            Files.createDirectories(tempDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать каталог документов " + root, e);
+        }
+    }
+
+    /**
+     * Сохранить содержимое потока. Поток не закрывается.
+     * Тип файла определяется по первым байтам до записи на диск: неподдерживаемый файл в хранилище не попадает.
+     *
+     * @throws DocumentTooLargeException если файл больше cards.documents.max-size-mb
+     * @throws IllegalArgumentException если файл пустой или не PDF, JPEG или PNG
+     */
+    public StoredContent store(InputStream input) throws IOException {
+        byte[] header = new byte[SIGNATURE_LENGTH];
+        int headerLength = input.readNBytes(header, 0, header.length);
+        if (headerLength == 0) {
+            throw new IllegalArgumentException("Файл пустой");
+        }
+        String contentType = detectContentType(header);
+        if (contentType == null) {
+            throw new IllegalArgumentException("Поддерживаются только PDF, JPEG и PNG");
+        }
+
+        MessageDigest digest = sha256();
+        // Временный файл в том же каталоге, что и хранилище: переименование атомарно
+        Path temp = Files.createTempFile(tempDirectory, "upload-", ".part");
+        try {
+            long size = headerLength;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                digest.update(header, 0, headerLength);
+                ByteBuffer headerChunk = ByteBuffer.wrap(header, 0, headerLength);
+                while (headerChunk.hasRemaining()) {
+                    channel.write(headerChunk);
+                }
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxSize) {
+                        throw new DocumentTooLargeException(maxSize);
+                    }
+                    digest.update(buffer, 0, read);
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                }
+                channel.force(false);
+            }
+
+            String hash = HexFormat.of().formatHex(digest.digest());
+            String relativePath = relativePath(hash);
+            Path target = root.resolve(relativePath);
+            boolean deduplicated = Files.exists(target);
+            if (!deduplicated) {
+                Files.createDirectories(target.getParent());
+                deduplicated = !moveIntoPlace(temp, target);
+            }
+            if (deduplicated) {
+                logger.debug("Документ {} уже есть в хранилище, копия не сохраняется", hash);
+            }
+            return new StoredContent(hash, relativePath, size, contentType, deduplicated);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Путь к файлу по значению documents.file_path. Пути вне каталога хранилища не допускаются.
+     */
+    public Path resolve(String filePath) {
+        // Старые записи хранят путь вида /documents/2025/01/file.pdf - он считается относительным
+        String relative = filePath.startsWith("/") ? filePath.substring(1) : filePath;
+        Path path = root.resolve(relative).normalize();
+        if (!path.startsWith(root)) {
+            throw new IllegalArgumentException("Недопустимый путь документа: " + filePath);
+        }
+        return path;
+    }
+
+    /**
+     * Записать производный файл для содержимого с хешем contentHash.
+     * Файл сначала пишется во временный и затем атомарно заменяет прежний.
+     *
+     * @return путь относительно каталога хранилища
+     */
+    public String storeDerived(String contentHash, String kind, DerivedWriter writer) throws IOException {
+        String relativePath = DERIVED_DIRECTORY + "/" + contentHash.substring(0, 2) + "/" + contentHash.substring(2, 4)
+                + "/" + contentHash + "-" + kind + ".jpg";
+        Path target = root.resolve(relativePath);
+        Path temp = Files.createTempFile(tempDirectory, kind + "-", ".part");
+        try {
+            writer.write(temp);
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return relativePath;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return false, если файл с тем же хешем появился параллельно (временный файл не нужен)
+     */
+    private static boolean moveIntoPlace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (AtomicMoveNotSupportedException e) {
+            try {
+                Files.move(temp, target);
+                return true;
+            } catch (FileAlreadyExistsException exists) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Тип содержимого по сигнатуре файла, расширению имени не доверяем (null - тип не поддерживается)
+     */
+    static String detectContentType(byte[] bytes) {
+        if (bytes.length < SIGNATURE_LENGTH) {
+            return null;
+        }
+        if (bytes[0] == '%' && bytes[1] == 'P' && bytes[2] == 'D' && bytes[3] == 'F') {
+            return "application/pdf";
+        }
+        if ((bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xD8 && (bytes[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if ((bytes[0] & 0xFF) == 0x89 && bytes[1] == 'P' && bytes[2] == 'N' && bytes[3] == 'G') {
+            return "image/png";
+        }
+        return null;
+    }
+
+    private static String relativePath(String hash) {
+        return HASH_DIRECTORY + "/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Запись производного файла по указанному пути
+     */
+    @FunctionalInterface
+    public interface DerivedWriter {
+
+        void write(Path target) throws IOException;
+    }
+
+    /**
+     * Сохраненное содержимое
+     */
+    public static class StoredContent {
+
+        private final String contentHash;
+        private final String filePath;
+        private final long size;
+        private final String contentType;
+        private final boolean deduplicated;
+
+        public StoredContent(String contentHash, String filePath, long size, String contentType,
+                             boolean deduplicated) {
+            this.contentHash = contentHash;
+            this.filePath = filePath;
+            this.size = size;
+            this.contentType = contentType;
+            this.deduplicated = deduplicated;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        /**
+         * Путь относительно каталога хранилища (значение documents.file_path)
+         */
+        public String getFilePath() {
+            return filePath;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Тип содержимого, определенный по сигнатуре файла
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Такое содержимое уже было в хранилище
+         */
+        public boolean isDeduplicated() {
+            return deduplicated;
+        }
+    }
+}
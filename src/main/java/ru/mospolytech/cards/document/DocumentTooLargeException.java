@@ -0,0 +1,11 @@
+package ru.mospolytech.cards.document;
+
+/**
+ * Загружаемый документ больше допустимого размера
+ */
+public class DocumentTooLargeException extends RuntimeException {
+
+    public DocumentTooLargeException(long maxSize) {
+        super("Размер документа превышает " + (maxSize / (1024 * 1024)) + " МБ");
+    }
+}
@@ -0,0 +1,30 @@
+package ru.mospolytech.cards.document;
+
+import jakarta.servlet.MultipartConfigElement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.MultipartConfigFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Ограничения multipart-загрузки по cards.documents.max-size-mb.
+ * Без этого действует лимит Spring Boot в 1 МБ, и обычные сканы отклоняются раньше проверки в DocumentStore.
+ */
+@Configuration
+public class DocumentUploadConfig {
+
+    // Запас на остальные поля формы загрузки (тип документа)
+    private static final long FORM_OVERHEAD_MB = 1;
+
+    @Bean
+    public MultipartConfigElement multipartConfigElement(
+            @Value("${cards.documents.max-size-mb:50}") long maxSizeMb) {
+        MultipartConfigFactory factory = new MultipartConfigFactory();
+        factory.setMaxFileSize(DataSize.ofMegabytes(maxSizeMb));
+        factory.setMaxRequestSize(DataSize.ofMegabytes(maxSizeMb + FORM_OVERHEAD_MB));
+        // Части пишутся на диск сразу, а не накапливаются в куче
+        factory.setFileSizeThreshold(DataSize.ofBytes(0));
+        return factory.createMultipartConfig();
+    }
+}
@@ -0,0 +1,17 @@
+package ru.mospolytech.cards.export;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Построчная запись табличной выгрузки в поток без накопления строк в памяти
+ */
+public interface RowWriter {
+
+    void writeRow(List<String> values) throws IOException;
+
+    /**
+     * Дописать служебные данные формата и сбросить буферы. Поток ответа не закрывается.
+     */
+    void finish() throws IOException;
+}
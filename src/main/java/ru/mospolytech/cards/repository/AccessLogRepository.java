@@ -21,7 +21,7 @@ public interface AccessLogRepository extends JpaRepository<AccessLog, Long> {
     // Найти неудачные попытки входа
     List<AccessLog> findByIsSuccessfulFalseOrderByLoginTimeDesc();
 
-    // Найти логи за определенный период
+    // Найти логи за определенный период (access_logs секционирована по login_time - читаются только секции периода)
     @Query("SELECT a FROM AccessLog a WHERE a.loginTime BETWEEN :startDate AND :endDate ORDER BY a.loginTime DESC")
     List<AccessLog> findByDateRange(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
 
@@ -1,5 +1,6 @@
 package ru.mospolytech.cards.repository;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.stereotype.Repository;
@@ -15,4 +16,15 @@ public interface CardRequestRepository extends JpaRepository<CardRequest, Long>,
     Optional<CardRequest> findByRequestNumber(String requestNumber);
     List<CardRequest> findByUserOrganizationIdOrderByCreatedAtDesc(Long userOrganizationId);
     List<CardRequest> findByStatusIdOrderByCreatedAtDesc(Long statusId);
+
+    // Заявка со всеми связями, отображаемыми на странице просмотра, одним запросом
+    @EntityGraph(attributePaths = {
+            "userOrganization.user",
+            "userOrganization.organization",
+            "cardType",
+            "branch",
+            "status",
+            "assignedEmployee.role"
+    })
+    Optional<CardRequest> findWithDetailsById(Long id);
 }
@@ -1,7 +1,11 @@
 package ru.mospolytech.cards.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.mospolytech.cards.entity.*;
 import java.util.List;
 import java.util.Optional;
@@ -12,4 +16,21 @@ public interface EmployeeRepository extends JpaRepository<Employee, Long> {
     Optional<Employee> findByEmailAndIsActive(String email, Boolean isActive);
     List<Employee> findByRoleIdAndIsActive(Long roleId, Boolean isActive);
     List<Employee> findByRoleId(Long roleId);
+
+    // Обновить хеш пароля (перехеширование при смене стоимости BCrypt)
+    @Modifying
+    @Transactional
+    @Query("UPDATE Employee e SET e.passwordHash = :passwordHash WHERE e.id = :id")
+    int updatePasswordHash(@Param("id") Long id, @Param("passwordHash") String passwordHash);
+
+    // Поиск для подсказок: фрагмент ФИО (триграммный индекс) или префикс email
+    @Query(value = "SELECT e.* FROM employees e " +
+                   "WHERE lower(e.last_name || ' ' || e.first_name || ' ' || coalesce(e.middle_name, '')) LIKE :namePattern " +
+                   "OR lower(e.email) LIKE :emailPrefix " +
+                   "ORDER BY e.last_name, e.first_name, e.id " +
+                   "LIMIT :limit",
+           nativeQuery = true)
+    List<Employee> search(@Param("namePattern") String namePattern,
+                          @Param("emailPrefix") String emailPrefix,
+                          @Param("limit") int limit);
 }
@@ -1,6 +1,8 @@
 package ru.mospolytech.cards.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.mospolytech.cards.entity.*;
 
@@ -10,4 +12,17 @@ import java.util.Optional;
 @Repository
 public interface OrganizationRepository extends JpaRepository<Organization, Long> {
     List<Organization> findByIsActiveTrue();
+
+    // Поиск для подсказок: нечеткое совпадение названия (pg_trgm) или префикс ИНН
+    @Query(value = "SELECT o.* FROM organizations o " +
+                   "WHERE lower(o.name) LIKE :namePattern " +
+                   "OR lower(o.name) % :query " +
+                   "OR o.inn LIKE :innPrefix " +
+                   "ORDER BY similarity(lower(o.name), :query) DESC, o.name, o.id " +
+                   "LIMIT :limit",
+           nativeQuery = true)
+    List<Organization> search(@Param("namePattern") String namePattern,
+                              @Param("query") String query,
+                              @Param("innPrefix") String innPrefix,
+                              @Param("limit") int limit);
 }
\ No newline at end of file
@@ -24,4 +24,16 @@ public interface UserRepository extends JpaRepository<User, Long> {
     // Найти всех пользователей организации (через user_organizations)
     @Query("SELECT DISTINCT uo.user FROM UserOrganization uo WHERE uo.organization.id = :organizationId AND uo.isActive = true")
     List<User> findByOrganizationId(@Param("organizationId") Long organizationId);
+
+    // Поиск для подсказок: фрагмент ФИО (триграммный индекс), префикс телефона или серии и номера паспорта
+    @Query(value = "SELECT u.* FROM users u " +
+                   "WHERE lower(u.last_name || ' ' || u.first_name || ' ' || coalesce(u.middle_name, '')) LIKE :namePattern " +
+                   "OR u.phone LIKE :prefix " +
+                   "OR (u.passport_series || u.passport_number) LIKE :prefix " +
+                   "ORDER BY u.last_name, u.first_name, u.id " +
+                   "LIMIT :limit",
+           nativeQuery = true)
+    List<User> search(@Param("namePattern") String namePattern,
+                      @Param("prefix") String prefix,
+                      @Param("limit") int limit);
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+package ru.mospolytech.cards.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Событие журнала доступа (строка таблицы access_logs), ожидающее записи
+ */
+public class AccessLogEvent {
+
+    public static final String ACTION_LOGIN = "Вход в систему";
+    public static final String ACTION_LOGOUT = "Выход из системы";
+    public static final String ACTION_LOGIN_ATTEMPT = "Попытка входа";
+
+    private final Long employeeId;
+    private final LocalDateTime loginTime;
+    private final String ipAddress;
+    private final String userAgent;
+    private final String action;
+    private final boolean successful;
+
+    public AccessLogEvent(Long employeeId, LocalDateTime loginTime, String ipAddress,
+                          String userAgent, String action, boolean successful) {
+        this.employeeId = employeeId;
+        this.loginTime = loginTime;
+        this.ipAddress = ipAddress;
+        this.userAgent = userAgent;
+        this.action = action;
+        this.successful = successful;
+    }
+
+    public Long getEmployeeId() {
+        return employeeId;
+    }
+
+    public LocalDateTime getLoginTime() {
+        return loginTime;
+    }
+
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+}
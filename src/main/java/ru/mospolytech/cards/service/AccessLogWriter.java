@@ -0,0 +1,171 @@
+package ru.mospolytech.cards.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронная запись журнала доступа (access_logs).
+ *
+ * Потоки обработки запросов только кладут событие в ограниченную неблокирующую очередь,
+ * фоновый поток пишет события в БД пачками (JDBC batch). Если очередь заполнена,
+ * событие отбрасывается и учитывается в метрике access_log.dropped - вход в систему
+ * не должен ждать записи журнала. При остановке приложения очередь дописывается до конца.
+ */
+@Service
+public class AccessLogWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessLogWriter.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO access_logs (employee_id, login_time, ip_address, user_agent, action, is_successful) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    private final Queue<AccessLogEvent> queue = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() - O(n), поэтому глубина очереди считается отдельно
+    private final AtomicInteger depth = new AtomicInteger();
+
+    private final Counter droppedCounter;
+    private final Counter writtenCounter;
+    private final Counter failedCounter;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public AccessLogWriter(
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${cards.access-log.queue-capacity:10000}") int capacity,
+            @Value("${cards.access-log.batch-size:200}") int batchSize,
+            @Value("${cards.access-log.flush-interval-ms:1000}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+
+        Gauge.builder("access_log.queue.depth", depth, AtomicInteger::get)
+                .description("Количество событий журнала доступа, ожидающих записи")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("access_log.dropped")
+                .description("События журнала доступа, отброшенные из-за переполнения очереди")
+                .register(meterRegistry);
+        this.writtenCounter = Counter.builder("access_log.written")
+                .description("События журнала доступа, записанные в БД")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("access_log.failed")
+                .description("События журнала доступа, не записанные из-за ошибки БД")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writerThread = new Thread(this::writeLoop, "access-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writerThread == null) {
+            return;
+        }
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (depth.get() > 0) {
+            logger.warn("При остановке не записано событий журнала доступа: {}", depth.get());
+        }
+    }
+
+    /**
+     * Поставить событие в очередь на запись. Не блокирует вызывающий поток.
+     *
+     * @return false, если очередь заполнена и событие отброшено
+     */
+    public boolean submit(AccessLogEvent event) {
+        if (event.getEmployeeId() == null) {
+            // access_logs.employee_id обязателен - попытки входа с неизвестным email не журналируются
+            return false;
+        }
+        int newDepth = depth.incrementAndGet();
+        if (newDepth > capacity || !running) {
+            depth.decrementAndGet();
+            droppedCounter.increment();
+            return false;
+        }
+        queue.offer(event);
+        if (newDepth >= batchSize) {
+            LockSupport.unpark(writerThread);
+        }
+        return true;
+    }
+
+    private void writeLoop() {
+        List<AccessLogEvent> batch = new ArrayList<>(batchSize);
+        while (running || depth.get() > 0) {
+            AccessLogEvent event;
+            while (batch.size() < batchSize && (event = queue.poll()) != null) {
+                batch.add(event);
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                depth.addAndGet(-batch.size());
+                batch.clear();
+                // Полная пачка - в очереди, вероятно, есть еще события
+                if (depth.get() >= batchSize) {
+                    continue;
+                }
+            }
+
+            if (running) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+    }
+
+    private void flush(List<AccessLogEvent> batch) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, event) -> {
+                ps.setLong(1, event.getEmployeeId());
+                ps.setTimestamp(2, Timestamp.valueOf(event.getLoginTime()));
+                ps.setString(3, event.getIpAddress());
+                ps.setString(4, event.getUserAgent());
+                ps.setString(5, event.getAction());
+                ps.setBoolean(6, event.isSuccessful());
+            });
+            writtenCounter.increment(batch.size());
+        } catch (Exception e) {
+            failedCounter.increment(batch.size());
+            logger.error("Ошибка записи журнала доступа, потеряно событий: {}", batch.size(), e);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package ru.mospolytech.cards.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Заявка из архива (card_requests_archive) с историей и описаниями документов, только для чтения
+ */
+public class ArchivedRequest {
+
+    private final Long id;
+    private final String requestNumber;
+    private final String statusName;
+    private final String clientName;
+    private final String organizationName;
+    private final String organizationInn;
+    private final String cardTypeName;
+    private final String branchName;
+    private final Long assignedEmployeeId;
+    private final String assignedEmployeeName;
+    private final String comments;
+    private final LocalDateTime createdAt;
+    private final LocalDateTime updatedAt;
+    private final LocalDateTime archivedAt;
+    private final List<HistoryEntry> history;
+    private final List<DocumentEntry> documents;
+
+    public ArchivedRequest(Long id, String requestNumber, String statusName, String clientName,
+                           String organizationName, String organizationInn, String cardTypeName, String branchName,
+                           Long assignedEmployeeId, String assignedEmployeeName, String comments,
+                           LocalDateTime createdAt, LocalDateTime updatedAt, LocalDateTime archivedAt,
+                           List<HistoryEntry> history, List<DocumentEntry> documents) {
+        this.id = id;
+        this.requestNumber = requestNumber;
+        this.statusName = statusName;
+        this.clientName = clientName;
+        this.organizationName = organizationName;
+        this.organizationInn = organizationInn;
+        this.cardTypeName = cardTypeName;
+        this.branchName = branchName;
+        this.assignedEmployeeId = assignedEmployeeId;
+        this.assignedEmployeeName = assignedEmployeeName;
+        this.comments = comments;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.archivedAt = archivedAt;
+        this.history = history;
+        this.documents = documents;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getRequestNumber() {
+        return requestNumber;
+    }
+
+    public String getStatusName() {
+        return statusName;
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public String getOrganizationName() {
+        return organizationName;
+    }
+
+    public String getOrganizationInn() {
+        return organizationInn;
+    }
+
+    public String getCardTypeName() {
+        return cardTypeName;
+    }
+
+    public String getBranchName() {
+        return branchName;
+    }
+
+    public Long getAssignedEmployeeId() {
+        return assignedEmployeeId;
+    }
+
+    public String getAssignedEmployeeName() {
+        return assignedEmployeeName;
+    }
+
+    public String getComments() {
+        return comments;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public LocalDateTime getArchivedAt() {
+        return archivedAt;
+    }
+
+    /**
+     * История статусов, по времени
+     */
+    public List<HistoryEntry> getHistory() {
+        return history;
+    }
+
+    public List<DocumentEntry> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Смена статуса заявки
+     */
+    public static class HistoryEntry {
+
+        private final LocalDateTime changedAt;
+        private final String oldStatusName;
+        private final String newStatusName;
+        private final String changedByName;
+        private final String comment;
+
+        public HistoryEntry(LocalDateTime changedAt, String oldStatusName, String newStatusName,
+                            String changedByName, String comment) {
+            this.changedAt = changedAt;
+            this.oldStatusName = oldStatusName;
+            this.newStatusName = newStatusName;
+            this.changedByName = changedByName;
+            this.comment = comment;
+        }
+
+        public LocalDateTime getChangedAt() {
+            return changedAt;
+        }
+
+        public String getOldStatusName() {
+            return oldStatusName;
+        }
+
+        public String getNewStatusName() {
+            return newStatusName;
+        }
+
+        public String getChangedByName() {
+            return changedByName;
+        }
+
+        public String getComment() {
+            return comment;
+        }
+    }
+
+    /**
+     * Описание документа (файл остается в хранилище документов)
+     */
+    public static class DocumentEntry {
+
+        private final Long id;
+        private final String documentType;
+        private final String fileName;
+        private final long fileSize;
+        private final Integer pageCount;
+        private final LocalDateTime uploadedAt;
+
+        public DocumentEntry(Long id, String documentType, String fileName, long fileSize, Integer pageCount,
+                             LocalDateTime uploadedAt) {
+            this.id = id;
+            this.documentType = documentType;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.pageCount = pageCount;
+            this.uploadedAt = uploadedAt;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getDocumentType() {
+            return documentType;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public Integer getPageCount() {
+            return pageCount;
+        }
+
+        public LocalDateTime getUploadedAt() {
+            return uploadedAt;
+        }
+    }
+}
@@ -2,10 +2,10 @@ package ru.mospolytech.cards.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.security.crypto.bcrypt.BCrypt;
 import org.springframework.stereotype.Service;
 import ru.mospolytech.cards.entity.Employee;
 import ru.mospolytech.cards.repository.EmployeeRepository;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Service
@@ -14,46 +14,95 @@ public class AuthService {
     private static final Logger logger = LoggerFactory.getLogger(AuthService.class);
 
     private final EmployeeRepository employeeRepository;
+    private final AccessLogWriter accessLogWriter;
+    private final PasswordVerifier passwordVerifier;
+    private final LoginAttemptLimiter loginAttemptLimiter;
 
-    public AuthService(EmployeeRepository employeeRepository) {
+    public AuthService(
+            EmployeeRepository employeeRepository,
+            AccessLogWriter accessLogWriter,
+            PasswordVerifier passwordVerifier,
+            LoginAttemptLimiter loginAttemptLimiter) {
         this.employeeRepository = employeeRepository;
+        this.accessLogWriter = accessLogWriter;
+        this.passwordVerifier = passwordVerifier;
+        this.loginAttemptLimiter = loginAttemptLimiter;
     }
 
     /**
-     * Аутентификация сотрудника по email и паролю
+     * Аутентификация сотрудника по email и паролю.
+     * Успешные и неудачные попытки записываются в журнал доступа асинхронно.
+     *
+     * @throws LoginRejectedException если превышен лимит неудачных попыток или пул проверки паролей перегружен
      */
-    public Optional<Employee> authenticate(String email, String password) {
+    public Optional<Employee> authenticate(String email, String password, String ipAddress, String userAgent) {
         logger.info("Попытка входа с email: {}", email);
         logger.debug("Длина пароля: {}", password != null ? password.length() : "null");
 
+        // Отсекаем подбор пароля до обращения к БД и вычисления хеша
+        if (loginAttemptLimiter.isBlocked(email, ipAddress)) {
+            logger.warn("Превышен лимит неудачных попыток входа: email {}, IP {}", email, ipAddress);
+            throw new LoginRejectedException("Слишком много неудачных попыток входа. Попробуйте позже");
+        }
+
         Optional<Employee> employeeOpt = employeeRepository.findByEmailAndIsActive(email, true);
 
         if (employeeOpt.isEmpty()) {
             logger.warn("Сотрудник с email {} не найден или не активен", email);
+            loginAttemptLimiter.recordFailure(email, ipAddress);
             return Optional.empty();
         }
 
         Employee employee = employeeOpt.get();
         logger.debug("Найден сотрудник: {} (ID: {})", employee.getFullName(), employee.getId());
 
-        try {
-            // Проверка пароля с использованием BCrypt
-            boolean passwordMatches = BCrypt.checkpw(password, employee.getPasswordHash());
-            logger.debug("Результат проверки пароля для {}: {}", email, passwordMatches);
+        // Проверка пароля с использованием BCrypt (в отдельном пуле потоков)
+        boolean passwordMatches = passwordVerifier.matches(password, employee.getPasswordHash());
+        logger.debug("Результат проверки пароля для {}: {}", email, passwordMatches);
 
-            if (passwordMatches) {
-                logger.info("Успешный вход пользователя: {}", email);
-                return Optional.of(employee);
-            } else {
-                logger.warn("Неверный пароль для пользователя: {}", email);
-            }
-        } catch (Exception e) {
-            logger.error("Ошибка при проверке пароля для пользователя: {}", email, e);
+        if (passwordMatches) {
+            logger.info("Успешный вход пользователя: {}", email);
+            loginAttemptLimiter.recordSuccess(email);
+            accessLogWriter.submit(new AccessLogEvent(employee.getId(), LocalDateTime.now(),
+                    ipAddress, userAgent, AccessLogEvent.ACTION_LOGIN, true));
+            rehashIfNeeded(employee, password);
+            return Optional.of(employee);
         }
 
+        logger.warn("Неверный пароль для пользователя: {}", email);
+        loginAttemptLimiter.recordFailure(email, ipAddress);
+        accessLogWriter.submit(new AccessLogEvent(employee.getId(), LocalDateTime.now(),
+                ipAddress, userAgent, AccessLogEvent.ACTION_LOGIN_ATTEMPT, false));
         return Optional.empty();
     }
 
+    /**
+     * Если хеш создан с устаревшей стоимостью BCrypt, пересчитываем его в фоне по введенному паролю
+     */
+    private void rehashIfNeeded(Employee employee, String password) {
+        if (!passwordVerifier.needsRehash(employee.getPasswordHash())) {
+            return;
+        }
+        Long employeeId = employee.getId();
+        passwordVerifier.hashAsync(password).thenAccept(newHash -> {
+            if (newHash != null) {
+                employeeRepository.updatePasswordHash(employeeId, newHash);
+                logger.info("Пароль сотрудника {} перехеширован с новой стоимостью BCrypt", employeeId);
+            }
+        }).exceptionally(e -> {
+            logger.error("Ошибка перехеширования пароля сотрудника {}", employeeId, e);
+            return null;
+        });
+    }
+
+    /**
+     * Записать выход сотрудника из системы в журнал доступа
+     */
+    public void recordLogout(Long employeeId, String ipAddress, String userAgent) {
+        accessLogWriter.submit(new AccessLogEvent(employeeId, LocalDateTime.now(),
+                ipAddress, userAgent, AccessLogEvent.ACTION_LOGOUT, true));
+    }
+
     /**
      * Получить сотрудника по ID
      */
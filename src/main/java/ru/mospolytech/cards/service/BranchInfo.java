@@ -0,0 +1,47 @@
+package ru.mospolytech.cards.service;
+
+/**
+ * Отделение из кэша справочников (строка branches), неизменяемое
+ */
+public final class BranchInfo {
+
+    private final Long id;
+    private final String name;
+    private final String address;
+    private final String phone;
+    private final String workHours;
+    private final boolean active;
+
+    public BranchInfo(Long id, String name, String address, String phone, String workHours, boolean active) {
+        this.id = id;
+        this.name = name;
+        this.address = address;
+        this.phone = phone;
+        this.workHours = workHours;
+        this.active = active;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getPhone() {
+        return phone;
+    }
+
+    public String getWorkHours() {
+        return workHours;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+}
@@ -0,0 +1,483 @@
+package ru.mospolytech.cards.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.mospolytech.cards.entity.Employee;
+
+import java.security.SecureRandom;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пакетный выпуск карт по одобренным заявкам.
+ *
+ * Заявки в статусе "Одобрена" без карты обрабатываются пачками, каждая пачка - отдельная транзакция:
+ * выборка заявок с FOR UPDATE SKIP LOCKED (несколько узлов не выпустят карту дважды), номера карт
+ * из CardNumberGenerator, хеши CVV на отдельном пуле потоков, JDBC batch вставок в cards и
+ * card_limits (шаблон по умолчанию из LimitTemplateResolver), перевод заявок в статус "Выпущена"
+ * с записью истории и файл персонализации с открытыми CVV (PersonalizationFileWriter).
+ * После сбоя или остановки повторный запуск продолжает с необработанных заявок - выпущенные
+ * уже не попадают в выборку.
+ */
+@Service
+public class CardIssuanceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardIssuanceService.class);
+
+    private static final String APPROVED_STATUS = "Одобрена";
+    private static final String ISSUED_STATUS = "Выпущена";
+    private static final String ACTIVE_CARD_STATUS = "Активна";
+    private static final String ISSUE_COMMENT = "Карта выпущена пакетным выпуском";
+
+    // Длина имени держателя, которое помещается на карту
+    private static final int CARDHOLDER_NAME_LENGTH = 26;
+
+    private static final String SELECT_PENDING_SQL =
+            "SELECT r.id, r.card_type_id, u.first_name, u.last_name " +
+            "FROM card_requests r " +
+            "JOIN user_organizations uo ON uo.id = r.user_organization_id " +
+            "JOIN users u ON u.id = uo.user_id " +
+            "WHERE r.status_id = ? AND NOT EXISTS (SELECT 1 FROM cards c WHERE c.request_id = r.id) " +
+            "ORDER BY r.id LIMIT ? " +
+            "FOR UPDATE OF r SKIP LOCKED";
+
+    private static final String NEXT_CARD_IDS_SQL =
+            "SELECT nextval('cards_id_seq') FROM generate_series(1, ?)";
+
+    private static final String INSERT_CARD_SQL =
+            "INSERT INTO cards (id, request_id, card_type_id, status_id, card_number, cardholder_name, " +
+            "expiry_date, issue_date, cvv_hash, is_active, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, TRUE, ?)";
+
+    private static final String INSERT_LIMIT_SQL =
+            "INSERT INTO card_limits (card_id, daily_limit, monthly_limit, single_transaction_limit, " +
+            "atm_daily_limit, currency, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final Map<Character, String> TRANSLITERATION = createTransliteration();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CardNumberGenerator cardNumberGenerator;
+    private final RequestStatusService requestStatusService;
+    private final ReferenceDataCache referenceDataCache;
+    private final LimitTemplateResolver limitTemplateResolver;
+    private final DashboardService dashboardService;
+    private final PersonalizationFileWriter personalizationFileWriter;
+
+    private final int chunkSize;
+    private final int validityYears;
+    private final int cvvHashCost;
+    private final ExecutorService hashExecutor;
+    private final ExecutorService jobExecutor;
+    private final SecureRandom random = new SecureRandom();
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopRequested;
+    private volatile IssuanceProgress progress;
+
+    private final Counter issuedCounter;
+    private final Counter failedChunksCounter;
+    private final Timer chunkTimer;
+
+    public CardIssuanceService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            CardNumberGenerator cardNumberGenerator,
+            RequestStatusService requestStatusService,
+            ReferenceDataCache referenceDataCache,
+            LimitTemplateResolver limitTemplateResolver,
+            DashboardService dashboardService,
+            PersonalizationFileWriter personalizationFileWriter,
+            MeterRegistry meterRegistry,
+            @Value("${cards.issuance.chunk-size:500}") int chunkSize,
+            @Value("${cards.issuance.validity-years:3}") int validityYears,
+            @Value("${cards.issuance.cvv-hash-cost:10}") int cvvHashCost,
+            @Value("${cards.issuance.hash-threads:0}") int hashThreads) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Каждая пачка фиксируется отдельно: при сбое теряется только текущая пачка
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.cardNumberGenerator = cardNumberGenerator;
+        this.requestStatusService = requestStatusService;
+        this.referenceDataCache = referenceDataCache;
+        this.limitTemplateResolver = limitTemplateResolver;
+        this.dashboardService = dashboardService;
+        this.personalizationFileWriter = personalizationFileWriter;
+        this.chunkSize = chunkSize;
+        this.validityYears = validityYears;
+        this.cvvHashCost = cvvHashCost;
+
+        int threads = hashThreads > 0 ? hashThreads : Math.max(2, Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.hashExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "cvv-hash-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "card-issuance");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.issuedCounter = Counter.builder("card_issuance.issued")
+                .description("Выпущенные карты")
+                .register(meterRegistry);
+        this.failedChunksCounter = Counter.builder("card_issuance.failed_chunks")
+                .description("Пачки выпуска карт, откатившиеся из-за ошибки")
+                .register(meterRegistry);
+        this.chunkTimer = Timer.builder("card_issuance.chunk")
+                .description("Время выпуска одной пачки карт")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopRequested = true;
+        jobExecutor.shutdownNow();
+        hashExecutor.shutdownNow();
+    }
+
+    /**
+     * Запустить выпуск в фоне от имени сотрудника (он записывается в историю заявок).
+     *
+     * @return false, если выпуск уже идет на этом узле
+     */
+    public boolean start(Employee employee) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        RequestStatusInfo approved = referenceDataCache.findRequestStatusByName(APPROVED_STATUS).orElse(null);
+        stopRequested = false;
+        progress = new IssuanceProgress(employee.getId(),
+                approved == null ? 0 : dashboardService.getCount(DashboardService.BY_STATUS, approved.getId()));
+        try {
+            jobExecutor.execute(() -> run(employee));
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Остановить выпуск после текущей пачки
+     */
+    public void requestStop() {
+        stopRequested = true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Прогресс последнего запуска на этом узле (null, если выпуск не запускался)
+     */
+    public IssuanceProgress getProgress() {
+        return progress;
+    }
+
+    private void run(Employee employee) {
+        IssuanceProgress current = progress;
+        try {
+            RequestStatusInfo approved = referenceDataCache.findRequestStatusByName(APPROVED_STATUS)
+                    .orElseThrow(() -> new IllegalStateException("Статус заявки не найден: " + APPROVED_STATUS));
+            RequestStatusInfo issued = referenceDataCache.findRequestStatusByName(ISSUED_STATUS)
+                    .orElseThrow(() -> new IllegalStateException("Статус заявки не найден: " + ISSUED_STATUS));
+            CardStatusInfo active = referenceDataCache.findCardStatusByName(ACTIVE_CARD_STATUS)
+                    .orElseThrow(() -> new IllegalStateException("Статус карты не найден: " + ACTIVE_CARD_STATUS));
+
+            logger.info("Начат выпуск карт, ожидает заявок: {}", current.getPendingAtStart());
+            while (!stopRequested) {
+                long startNanos = System.nanoTime();
+                int issuedInChunk;
+                try {
+                    issuedInChunk = issueChunk(employee, approved, issued, active);
+                } catch (RuntimeException e) {
+                    failedChunksCounter.increment();
+                    throw e;
+                }
+                if (issuedInChunk == 0) {
+                    break;
+                }
+                chunkTimer.record(Duration.ofNanos(System.nanoTime() - startNanos));
+                issuedCounter.increment(issuedInChunk);
+                current.chunkCompleted(issuedInChunk);
+            }
+            current.finish(stopRequested ? IssuanceProgress.STOPPED : IssuanceProgress.COMPLETED, null);
+            logger.info("Выпуск карт завершен: выпущено {}, {} карт/с",
+                    current.getIssued(), String.format(Locale.ROOT, "%.1f", current.getCardsPerSecond()));
+        } catch (Exception e) {
+            current.finish(IssuanceProgress.FAILED, e.getMessage());
+            logger.error("Выпуск карт прерван после {} карт", current.getIssued(), e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Выпустить карты для одной пачки заявок
+     *
+     * @return количество выпущенных карт (0 - заявок больше нет)
+     */
+    private int issueChunk(Employee employee, RequestStatusInfo approved, RequestStatusInfo issued,
+                           CardStatusInfo active) {
+        Integer result = transactionTemplate.execute(status -> {
+            List<PendingRequest> pending = jdbcTemplate.query(SELECT_PENDING_SQL,
+                    (rs, rowNum) -> new PendingRequest(
+                            rs.getLong("id"),
+                            rs.getLong("card_type_id"),
+                            rs.getString("first_name"),
+                            rs.getString("last_name")),
+                    approved.getId(), chunkSize);
+            if (pending.isEmpty()) {
+                return 0;
+            }
+
+            // CVV хешируются параллельно, пока поток выпуска получает номера карт
+            List<GeneratedCvv> cvvs = generateCvvs(pending.size());
+            List<String> cardNumbers = cardNumberGenerator.nextNumbers(pending.size());
+            List<Long> cardIds = jdbcTemplate.queryForList(NEXT_CARD_IDS_SQL, Long.class, pending.size());
+
+            LocalDate issueDate = LocalDate.now();
+            LocalDate expiryDate = issueDate.plusYears(validityYears).withDayOfMonth(1).plusMonths(1).minusDays(1);
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+            List<Object[]> cardRows = new ArrayList<>(pending.size());
+            List<Object[]> limitRows = new ArrayList<>(pending.size());
+            List<PersonalizationFileWriter.CardPersonalization> personalization = new ArrayList<>(pending.size());
+            for (int i = 0; i < pending.size(); i++) {
+                PendingRequest request = pending.get(i);
+                Long cardId = cardIds.get(i);
+                String cardholderName = toCardholderName(request.firstName, request.lastName);
+                GeneratedCvv cvv = cvvs.get(i);
+                cardRows.add(new Object[]{
+                        cardId, request.requestId, request.cardTypeId, active.getId(), cardNumbers.get(i),
+                        cardholderName, Date.valueOf(expiryDate), Date.valueOf(issueDate), await(cvv.hash), now});
+                personalization.add(new PersonalizationFileWriter.CardPersonalization(
+                        cardId, cardNumbers.get(i), cardholderName, expiryDate, cvv.value));
+
+                LimitTemplate template = limitTemplateResolver.findDefault(request.cardTypeId).orElse(null);
+                if (template != null) {
+                    limitRows.add(new Object[]{cardId, template.getDailyLimit(), template.getMonthlyLimit(),
+                            template.getSingleTransactionLimit(), template.getAtmDailyLimit(),
+                            template.getCurrency(), now});
+                }
+            }
+
+            jdbcTemplate.batchUpdate(INSERT_CARD_SQL, cardRows);
+            if (!limitRows.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_LIMIT_SQL, limitRows);
+            }
+            if (limitRows.size() < cardRows.size()) {
+                logger.warn("Для {} карт нет шаблона лимитов по умолчанию, лимиты не установлены",
+                        cardRows.size() - limitRows.size());
+            }
+
+            requestStatusService.changeStatuses(
+                    pending.stream().map(request -> request.requestId).toList(),
+                    issued.getId(), employee, ISSUE_COMMENT);
+            // Файл станет доступен бюро персонализации только после фиксации пачки
+            personalizationFileWriter.write(personalization);
+            return pending.size();
+        });
+        return result == null ? 0 : result;
+    }
+
+    private List<GeneratedCvv> generateCvvs(int count) {
+        List<GeneratedCvv> cvvs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // В БД сохраняется только хеш, открытое значение уходит в файл персонализации
+            String cvv = String.format("%03d", random.nextInt(1000));
+            Callable<String> task = () -> BCrypt.hashpw(cvv, BCrypt.gensalt(cvvHashCost));
+            cvvs.add(new GeneratedCvv(cvv, hashExecutor.submit(task)));
+        }
+        return cvvs;
+    }
+
+    private static String await(Future<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Выпуск карт прерван", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка хеширования CVV", e.getCause());
+        }
+    }
+
+    /**
+     * Имя держателя латиницей в верхнем регистре, как оно печатается на карте: "IVAN IVANOV"
+     */
+    static String toCardholderName(String firstName, String lastName) {
+        String name = (transliterate(firstName) + " " + transliterate(lastName)).trim();
+        if (name.isEmpty()) {
+            return "CARDHOLDER";
+        }
+        return name.length() > CARDHOLDER_NAME_LENGTH ? name.substring(0, CARDHOLDER_NAME_LENGTH).trim() : name;
+    }
+
+    private static String transliterate(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder(value.length() + 4);
+        for (char c : value.toUpperCase(Locale.ROOT).toCharArray()) {
+            String latin = TRANSLITERATION.get(c);
+            if (latin != null) {
+                result.append(latin);
+            } else if ((c >= 'A' && c <= 'Z') || c == ' ' || c == '-') {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static Map<Character, String> createTransliteration() {
+        String[] pairs = {
+                "А", "A", "Б", "B", "В", "V", "Г", "G", "Д", "D", "Е", "E", "Ё", "E", "Ж", "ZH",
+                "З", "Z", "И", "I", "Й", "I", "К", "K", "Л", "L", "М", "M", "Н", "N", "О", "O",
+                "П", "P", "Р", "R", "С", "S", "Т", "T", "У", "U", "Ф", "F", "Х", "KH", "Ц", "TS",
+                "Ч", "CH", "Ш", "SH", "Щ", "SHCH", "Ъ", "IE", "Ы", "Y", "Ь", "", "Э", "E", "Ю", "IU",
+                "Я", "IA"};
+        Map<Character, String> map = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            map.put(pairs[i].charAt(0), pairs[i + 1]);
+        }
+        return map;
+    }
+
+    private static final class GeneratedCvv {
+
+        final String value;
+        final Future<String> hash;
+
+        GeneratedCvv(String value, Future<String> hash) {
+            this.value = value;
+            this.hash = hash;
+        }
+    }
+
+    private static final class PendingRequest {
+
+        final Long requestId;
+        final Long cardTypeId;
+        final String firstName;
+        final String lastName;
+
+        PendingRequest(Long requestId, Long cardTypeId, String firstName, String lastName) {
+            this.requestId = requestId;
+            this.cardTypeId = cardTypeId;
+            this.firstName = firstName;
+            this.lastName = lastName;
+        }
+    }
+
+    /**
+     * Прогресс запуска выпуска карт
+     */
+    public static class IssuanceProgress {
+
+        public static final String RUNNING = "RUNNING";
+        public static final String COMPLETED = "COMPLETED";
+        public static final String STOPPED = "STOPPED";
+        public static final String FAILED = "FAILED";
+
+        private final Long startedBy;
+        private final long pendingAtStart;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong issued = new AtomicLong();
+        private final AtomicLong chunks = new AtomicLong();
+        private volatile long finishNanos;
+        private volatile LocalDateTime finishedAt;
+        private volatile String state = RUNNING;
+        private volatile String lastError;
+
+        IssuanceProgress(Long startedBy, long pendingAtStart) {
+            this.startedBy = startedBy;
+            this.pendingAtStart = pendingAtStart;
+        }
+
+        void chunkCompleted(int issuedInChunk) {
+            issued.addAndGet(issuedInChunk);
+            chunks.incrementAndGet();
+        }
+
+        void finish(String finalState, String error) {
+            finishNanos = System.nanoTime();
+            finishedAt = LocalDateTime.now();
+            lastError = error;
+            state = finalState;
+        }
+
+        public Long getStartedBy() {
+            return startedBy;
+        }
+
+        /**
+         * Одобренных заявок на момент запуска (по счетчикам дашборда)
+         */
+        public long getPendingAtStart() {
+            return pendingAtStart;
+        }
+
+        public LocalDateTime getStartedAt() {
+            return startedAt;
+        }
+
+        public LocalDateTime getFinishedAt() {
+            return finishedAt;
+        }
+
+        public String getState() {
+            return state;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        public long getIssued() {
+            return issued.get();
+        }
+
+        public long getChunks() {
+            return chunks.get();
+        }
+
+        public double getCardsPerSecond() {
+            long end = finishedAt == null ? System.nanoTime() : finishNanos;
+            double seconds = (end - startNanos) / 1_000_000_000.0;
+            return seconds <= 0 ? 0 : issued.get() / seconds;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package ru.mospolytech.cards.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.mospolytech.cards.authorization.CardAuthorizationService;
+import ru.mospolytech.cards.entity.Employee;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Массовое изменение лимитов карт организации и/или типа карт.
+ *
+ * Новые значения берутся из шаблона лимитов (LimitTemplateResolver) или задаются явно
+ * (незаданное значение не меняется). Карты обрабатываются пачками по id лимита (keyset), каждая пачка -
+ * отдельная короткая транзакция: один UPDATE ... FROM с блокировкой строк пачки, возвращающий
+ * старые и новые значения, и один JDBC batch вставок в card_limit_history. Блокировки держатся
+ * только на время пачки, поэтому авторизации и выпуск карт не ждут окончания всей операции.
+ * Строки, которые не меняются или нарушили бы ограничения таблицы (например, дневной лимит
+ * больше месячного), пропускаются.
+ */
+@Service
+public class CardLimitBulkService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardLimitBulkService.class);
+
+    private static final String UPDATE_SQL =
+            "UPDATE card_limits l SET daily_limit = n.daily_limit, monthly_limit = n.monthly_limit, " +
+            "single_transaction_limit = n.single_transaction_limit, atm_daily_limit = n.atm_daily_limit, " +
+            "currency = n.currency, updated_at = ? " +
+            "FROM (SELECT id, daily_limit, monthly_limit, single_transaction_limit, atm_daily_limit, currency " +
+            "      FROM card_limits WHERE id = ANY (?) ORDER BY id FOR UPDATE) o " +
+            "CROSS JOIN LATERAL (SELECT " +
+            "      COALESCE(CAST(? AS DECIMAL(15, 2)), o.daily_limit) AS daily_limit, " +
+            "      COALESCE(CAST(? AS DECIMAL(15, 2)), o.monthly_limit) AS monthly_limit, " +
+            "      COALESCE(CAST(? AS DECIMAL(15, 2)), o.single_transaction_limit) AS single_transaction_limit, " +
+            "      COALESCE(CAST(? AS DECIMAL(15, 2)), o.atm_daily_limit) AS atm_daily_limit, " +
+            "      COALESCE(CAST(? AS VARCHAR(3)), o.currency) AS currency) n " +
+            "WHERE l.id = o.id " +
+            "AND (n.daily_limit, n.monthly_limit, n.single_transaction_limit, n.atm_daily_limit, n.currency) " +
+            "    IS DISTINCT FROM (o.daily_limit, o.monthly_limit, o.single_transaction_limit, o.atm_daily_limit, o.currency) " +
+            "AND n.single_transaction_limit <= n.daily_limit AND n.daily_limit <= n.monthly_limit " +
+            "RETURNING l.id, l.card_id, " +
+            "o.daily_limit AS old_daily_limit, n.daily_limit AS new_daily_limit, " +
+            "o.monthly_limit AS old_monthly_limit, n.monthly_limit AS new_monthly_limit, " +
+            "o.single_transaction_limit AS old_single_limit, n.single_transaction_limit AS new_single_limit, " +
+            "o.atm_daily_limit AS old_atm_limit, n.atm_daily_limit AS new_atm_limit";
+
+    private static final String INSERT_HISTORY_SQL =
+            "INSERT INTO card_limit_history (card_limit_id, card_id, old_daily_limit, new_daily_limit, " +
+            "old_monthly_limit, new_monthly_limit, old_single_transaction_limit, new_single_transaction_limit, " +
+            "old_atm_daily_limit, new_atm_daily_limit, changed_by, change_reason, changed_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CardAuthorizationService authorizationService;
+    private final LimitTemplateResolver limitTemplateResolver;
+    private final int chunkSize;
+
+    private final Counter changedCounter;
+
+    public CardLimitBulkService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            CardAuthorizationService authorizationService,
+            LimitTemplateResolver limitTemplateResolver,
+            MeterRegistry meterRegistry,
+            @Value("${cards.limits.bulk-chunk-size:500}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Каждая пачка фиксируется отдельно, чтобы не держать блокировки тысяч строк card_limits
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.authorizationService = authorizationService;
+        this.limitTemplateResolver = limitTemplateResolver;
+        this.chunkSize = chunkSize;
+
+        this.changedCounter = Counter.builder("card_limits.bulk.changed")
+                .description("Лимиты карт, измененные массовыми операциями")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Применить шаблон лимитов к картам. Если тип карт не задан, берется тип карт шаблона.
+     */
+    public BulkLimitResult applyTemplate(Long templateId, Long organizationId, Long cardTypeId,
+                                         String reason, Employee employee) {
+        LimitTemplate template = limitTemplateResolver.findById(templateId)
+                .orElseThrow(() -> new IllegalArgumentException("Шаблон лимитов не найден"));
+        LimitValues values = new LimitValues(template.getDailyLimit(), template.getMonthlyLimit(),
+                template.getSingleTransactionLimit(), template.getAtmDailyLimit(), template.getCurrency());
+        return apply(new CardSelection(organizationId, cardTypeId != null ? cardTypeId : template.getCardTypeId()),
+                values, reason, employee);
+    }
+
+    /**
+     * Установить явно заданные значения лимитов (null - значение не меняется)
+     */
+    public BulkLimitResult applyValues(LimitValues values, Long organizationId, Long cardTypeId,
+                                       String reason, Employee employee) {
+        return apply(new CardSelection(organizationId, cardTypeId), values.validated(), reason, employee);
+    }
+
+    private BulkLimitResult apply(CardSelection selection, LimitValues values, String reason, Employee employee) {
+        if (selection.organizationId == null && selection.cardTypeId == null) {
+            throw new IllegalArgumentException("Не задана организация или тип карт");
+        }
+
+        long startNanos = System.nanoTime();
+        long lastLimitId = 0;
+        int matched = 0;
+        int changed = 0;
+        while (true) {
+            List<Long> chunk = selection.nextChunk(jdbcTemplate, lastLimitId, chunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            lastLimitId = chunk.get(chunk.size() - 1);
+            matched += chunk.size();
+            Integer changedInChunk = transactionTemplate.execute(status ->
+                    updateChunk(chunk, values, reason, employee));
+            changed += changedInChunk == null ? 0 : changedInChunk;
+        }
+
+        changedCounter.increment(changed);
+        if (changed > 0) {
+            authorizationService.requestReload();
+        }
+        logger.info("Сотрудник {} изменил лимиты {} карт из {} (организация {}, тип карт {}) за {} мс",
+                employee.getId(), changed, matched, selection.organizationId, selection.cardTypeId,
+                (System.nanoTime() - startNanos) / 1_000_000);
+        return new BulkLimitResult(matched, changed);
+    }
+
+    /**
+     * Обновить лимиты одной пачки и записать историю
+     *
+     * @return количество измененных лимитов
+     */
+    private int updateChunk(List<Long> limitIds, LimitValues values, String reason, Employee employee) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> historyRows = jdbcTemplate.query(UPDATE_SQL, (rs, rowNum) -> new Object[]{
+                        rs.getLong("id"), rs.getLong("card_id"),
+                        rs.getBigDecimal("old_daily_limit"), rs.getBigDecimal("new_daily_limit"),
+                        rs.getBigDecimal("old_monthly_limit"), rs.getBigDecimal("new_monthly_limit"),
+                        rs.getBigDecimal("old_single_limit"), rs.getBigDecimal("new_single_limit"),
+                        rs.getBigDecimal("old_atm_limit"), rs.getBigDecimal("new_atm_limit"),
+                        employee.getId(), reason, now},
+                now, limitIds.toArray(new Long[0]),
+                values.dailyLimit, values.monthlyLimit, values.singleTransactionLimit, values.atmDailyLimit,
+                values.currency);
+        if (!historyRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_HISTORY_SQL, historyRows);
+        }
+        return historyRows.size();
+    }
+
+    /**
+     * Выборка карт: организация и/или тип карт
+     */
+    private static final class CardSelection {
+
+        final Long organizationId;
+        final Long cardTypeId;
+
+        CardSelection(Long organizationId, Long cardTypeId) {
+            this.organizationId = organizationId;
+            this.cardTypeId = cardTypeId;
+        }
+
+        /**
+         * Следующие id лимитов после lastLimitId (без блокировки - строки блокирует UPDATE пачки)
+         */
+        List<Long> nextChunk(JdbcTemplate jdbcTemplate, long lastLimitId, int limit) {
+            StringBuilder sql = new StringBuilder("SELECT l.id FROM card_limits l JOIN cards c ON c.id = l.card_id ");
+            List<Object> params = new ArrayList<>();
+            if (organizationId != null) {
+                sql.append("JOIN card_requests_all r ON r.id = c.request_id ")
+                        .append("JOIN user_organizations uo ON uo.id = r.user_organization_id ");
+            }
+            sql.append("WHERE l.id > ?");
+            params.add(lastLimitId);
+            if (organizationId != null) {
+                sql.append(" AND uo.organization_id = ?");
+                params.add(organizationId);
+            }
+            if (cardTypeId != null) {
+                sql.append(" AND c.card_type_id = ?");
+                params.add(cardTypeId);
+            }
+            sql.append(" ORDER BY l.id LIMIT ?");
+            params.add(limit);
+            return jdbcTemplate.queryForList(sql.toString(), Long.class, params.toArray());
+        }
+    }
+
+    /**
+     * Значения лимитов; null - значение не меняется
+     */
+    public static class LimitValues {
+
+        private final BigDecimal dailyLimit;
+        private final BigDecimal monthlyLimit;
+        private final BigDecimal singleTransactionLimit;
+        private final BigDecimal atmDailyLimit;
+        private final String currency;
+
+        public LimitValues(BigDecimal dailyLimit, BigDecimal monthlyLimit, BigDecimal singleTransactionLimit,
+                           BigDecimal atmDailyLimit, String currency) {
+            this.dailyLimit = dailyLimit;
+            this.monthlyLimit = monthlyLimit;
+            this.singleTransactionLimit = singleTransactionLimit;
+            this.atmDailyLimit = atmDailyLimit;
+            this.currency = currency == null ? null : currency.toUpperCase(Locale.ROOT);
+        }
+
+        LimitValues validated() {
+            if (dailyLimit == null && monthlyLimit == null && singleTransactionLimit == null
+                    && atmDailyLimit == null && currency == null) {
+                throw new IllegalArgumentException("Не задано ни одного нового значения лимита");
+            }
+            for (BigDecimal value : new BigDecimal[]{dailyLimit, monthlyLimit, singleTransactionLimit}) {
+                if (value != null && value.signum() <= 0) {
+                    throw new IllegalArgumentException("Лимиты должны быть положительными");
+                }
+            }
+            if (atmDailyLimit != null && atmDailyLimit.signum() < 0) {
+                throw new IllegalArgumentException("Лимит снятия наличных не может быть отрицательным");
+            }
+            if (currency != null && !currency.matches("[A-Z]{3}")) {
+                throw new IllegalArgumentException("Неверный код валюты");
+            }
+            return this;
+        }
+
+        public BigDecimal getDailyLimit() {
+            return dailyLimit;
+        }
+
+        public BigDecimal getMonthlyLimit() {
+            return monthlyLimit;
+        }
+
+        public BigDecimal getSingleTransactionLimit() {
+            return singleTransactionLimit;
+        }
+
+        public BigDecimal getAtmDailyLimit() {
+            return atmDailyLimit;
+        }
+
+        public String getCurrency() {
+            return currency;
+        }
+    }
+
+    /**
+     * Результат массового изменения
+     */
+    public static class BulkLimitResult {
+
+        private final int matchedCount;
+        private final int changedCount;
+
+        public BulkLimitResult(int matchedCount, int changedCount) {
+            this.matchedCount = matchedCount;
+            this.changedCount = changedCount;
+        }
+
+        public int getMatchedCount() {
+            return matchedCount;
+        }
+
+        public int getChangedCount() {
+            return changedCount;
+        }
+
+        /**
+         * Карты, лимиты которых уже совпадали с новыми или не прошли проверку ограничений
+         */
+        public int getSkippedCount() {
+            return matchedCount - changedCount;
+        }
+    }
+}
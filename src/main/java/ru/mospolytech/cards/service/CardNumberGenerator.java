@@ -0,0 +1,83 @@
+package ru.mospolytech.cards.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Генерация 16-значных номеров карт: BIN (6 цифр) + номер счета (9 цифр) + контрольная цифра Луна.
+ *
+ * Номер счета получается из последовательности card_account_number_seq взаимно однозначным
+ * перемешиванием (умножение на число, взаимно простое с 10^9), поэтому номера не идут подряд,
+ * но никогда не повторяются - вставка в cards не упирается в UNIQUE-индекс и не требует повторов.
+ * Значения последовательности берутся одним запросом на пачку.
+ */
+@Service
+public class CardNumberGenerator {
+
+    private static final String NEXT_VALUES_SQL =
+            "SELECT nextval('card_account_number_seq') FROM generate_series(1, ?)";
+
+    private static final long ACCOUNT_SPACE = 1_000_000_000L;
+    // 3^18: взаимно просто с 10^9, поэтому умножение по модулю 10^9 - перестановка
+    private static final long MULTIPLIER = 387_420_489L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String bin;
+
+    public CardNumberGenerator(
+            JdbcTemplate jdbcTemplate,
+            @Value("${cards.issuance.bin:220070}") String bin) {
+        if (!bin.matches("[0-9]{6}")) {
+            throw new IllegalArgumentException("BIN должен состоять из 6 цифр: " + bin);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.bin = bin;
+    }
+
+    /**
+     * Зарезервировать count новых уникальных номеров карт
+     */
+    public List<String> nextNumbers(int count) {
+        List<Long> values = jdbcTemplate.queryForList(NEXT_VALUES_SQL, Long.class, count);
+        List<String> numbers = new ArrayList<>(values.size());
+        for (Long value : values) {
+            long account = Math.floorMod(value * MULTIPLIER, ACCOUNT_SPACE);
+            String payload = bin + String.format("%09d", account);
+            numbers.add(payload + luhnCheckDigit(payload));
+        }
+        return numbers;
+    }
+
+    /**
+     * Контрольная цифра по алгоритму Луна для номера без последней цифры
+     */
+    public static int luhnCheckDigit(String payload) {
+        int sum = 0;
+        // Удваивается каждая вторая цифра справа, начиная с последней цифры payload
+        boolean doubleDigit = true;
+        for (int i = payload.length() - 1; i >= 0; i--) {
+            int digit = payload.charAt(i) - '0';
+            if (doubleDigit) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubleDigit = !doubleDigit;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    public static boolean isLuhnValid(String number) {
+        if (number == null || !number.matches("[0-9]{2,}")) {
+            return false;
+        }
+        int last = number.length() - 1;
+        return luhnCheckDigit(number.substring(0, last)) == number.charAt(last) - '0';
+    }
+}
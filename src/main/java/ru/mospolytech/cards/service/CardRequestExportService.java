@@ -0,0 +1,121 @@
+package ru.mospolytech.cards.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.mospolytech.cards.entity.CardRequest;
+import ru.mospolytech.cards.entity.Employee;
+import ru.mospolytech.cards.export.RowWriter;
+import ru.mospolytech.cards.specification.CardRequestSpecification;
+
+import java.io.IOException;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Выгрузка отфильтрованных заявок (CSV/XLSX).
+ *
+ * Заявки выбираются той же спецификацией, что и список (фильтры, ограничение менеджера, сортировка),
+ * поэтому выгрузка всегда совпадает с тем, что видно на экране. Строки читаются курсором JDBC
+ * (fetch size) и сразу пишутся в поток ответа; контекст персистентности очищается после каждой
+ * порции, поэтому расход памяти не зависит от количества выгружаемых заявок.
+ */
+@Service
+public class CardRequestExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardRequestExportService.class);
+
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
+
+    public static final List<String> HEADER = List.of(
+            "Номер заявки", "Дата создания", "Статус", "Клиент", "Организация", "ИНН",
+            "Тип карты", "Отделение", "Ответственный", "Комментарий");
+
+    // Общий EntityManager, привязанный к текущей транзакции
+    private final EntityManager entityManager;
+    private final int fetchSize;
+
+    public CardRequestExportService(
+            EntityManager entityManager,
+            @Value("${cards.export.fetch-size:1000}") int fetchSize) {
+        this.entityManager = entityManager;
+        this.fetchSize = Math.max(1, fetchSize);
+    }
+
+    /**
+     * Выгрузить заявки в writer (заголовок и строки).
+     * Транзакция нужна PostgreSQL-драйверу: курсор с fetch size работает только при выключенном autocommit.
+     *
+     * @param spec фильтры списка заявок, включая ограничение менеджера своими заявками
+     * @return количество выгруженных заявок
+     */
+    @Transactional(readOnly = true)
+    public long export(
+            Specification<CardRequest> spec,
+            String sortBy,
+            String sortDirection,
+            Employee employee,
+            RowWriter writer) throws IOException {
+
+        // Fetch join первым, чтобы фильтры и сортировка переиспользовали его join'ы
+        Specification<CardRequest> exportSpec = Specification.where(CardRequestSpecification.fetchForExport())
+                .and(spec)
+                .and(CardRequestSpecification.withSort(sortBy, sortDirection));
+
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<CardRequest> query = criteriaBuilder.createQuery(CardRequest.class);
+        Root<CardRequest> root = query.from(CardRequest.class);
+        Predicate predicate = exportSpec.toPredicate(root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+
+        writer.writeRow(HEADER);
+        long count = 0;
+        try (Stream<CardRequest> requests = entityManager.createQuery(query)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream()) {
+            // Клиент оборвал загрузку - IOException закрывает курсор вместе с транзакцией
+            Iterator<CardRequest> iterator = requests.iterator();
+            while (iterator.hasNext()) {
+                writer.writeRow(toRow(iterator.next()));
+                count++;
+                if (count % fetchSize == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+        writer.finish();
+
+        logger.info("Сотрудник {} выгрузил заявок: {}", employee.getId(), count);
+        return count;
+    }
+
+    private static List<String> toRow(CardRequest request) {
+        List<String> row = new ArrayList<>(HEADER.size());
+        row.add(request.getRequestNumber());
+        row.add(request.getCreatedAt() == null ? null : request.getCreatedAt().format(DATE_TIME_FORMAT));
+        row.add(request.getStatus().getStatusName());
+        row.add(request.getUserOrganization().getUser().getFullName());
+        row.add(request.getUserOrganization().getOrganization().getName());
+        row.add(request.getUserOrganization().getOrganization().getInn());
+        row.add(request.getCardType().getTypeName());
+        row.add(request.getBranch().getName());
+        row.add(request.getAssignedEmployee() == null ? null : request.getAssignedEmployee().getFullName());
+        row.add(request.getComments());
+        return row;
+    }
+}
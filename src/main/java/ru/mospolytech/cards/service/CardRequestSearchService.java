@@ -0,0 +1,114 @@
+package ru.mospolytech.cards.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import ru.mospolytech.cards.entity.Employee;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+
+/**
+ * Полнотекстовый поиск заявок по таблице card_request_search (tsvector + GIN).
+ *
+ * Каждое слово запроса ищется как префикс (фамилия, название организации, ИНН, комментарий),
+ * все слова должны встретиться в документе. Дополнительно запрос ищется как произвольный
+ * фрагмент номера заявки (триграммный индекс) и как точный номер заявки.
+ *
+ * Каждая ветка поиска отбирает по своему индексу не больше MAX_CANDIDATES заявок, и ранжируются
+ * только они: точное совпадение номера, затем ts_rank, затем более новые заявки. Поэтому частый
+ * префикс не заставляет вычислять ts_rank и сортировать все совпадения; если совпадений больше,
+ * в выдачу попадают лучшие из первых MAX_CANDIDATES найденных, а не из всех.
+ */
+@Service
+public class CardRequestSearchService {
+
+    private static final int MAX_CANDIDATES = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CardRequestSearchService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Найти id заявок, отсортированные по релевантности.
+     * Менеджер находит только свои заявки.
+     *
+     * @param offset сколько результатов пропустить
+     * @param limit  сколько результатов вернуть
+     */
+    public List<Long> search(String query, Employee employee, int offset, int limit) {
+        String normalized = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (normalized.length() < SearchQueries.MIN_QUERY_LENGTH) {
+            return List.of();
+        }
+
+        int skip = Math.max(0, offset);
+        int candidates = Math.max(MAX_CANDIDATES, skip + limit);
+        String tsQuery = toPrefixTsQuery(normalized);
+        // Менеджер видит только свои заявки - условие внутри каждой ветки, чтобы лимит веток считал только их
+        String ownRequests = employee.isAdmin() ? "" : " AND r.assigned_employee_id = ?";
+
+        List<String> branches = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        branches.add("(SELECT r.id AS request_id FROM card_requests r WHERE r.request_number = ?" + ownRequests + ")");
+        params.add(normalized.toUpperCase(Locale.ROOT));
+        addOwner(params, employee);
+        if (!tsQuery.isEmpty()) {
+            branches.add("(SELECT s.request_id FROM card_request_search s" +
+                    " JOIN card_requests r ON r.id = s.request_id" +
+                    " WHERE s.document @@ to_tsquery('simple', ?)" + ownRequests + " LIMIT ?)");
+            params.add(tsQuery);
+            addOwner(params, employee);
+            params.add(candidates);
+        }
+        branches.add("(SELECT s.request_id FROM card_request_search s" +
+                " JOIN card_requests r ON r.id = s.request_id" +
+                " WHERE lower(s.request_number) LIKE ?" + ownRequests + " LIMIT ?)");
+        params.add("%" + escapeLike(normalized) + "%");
+        addOwner(params, employee);
+        params.add(candidates);
+
+        StringBuilder sql = new StringBuilder("WITH candidates AS (")
+                .append(String.join(" UNION ", branches))
+                .append(") SELECT s.request_id FROM candidates c")
+                .append(" JOIN card_request_search s ON s.request_id = c.request_id")
+                .append(" ORDER BY (lower(s.request_number) = ?) DESC");
+        params.add(normalized);
+        if (!tsQuery.isEmpty()) {
+            sql.append(", ts_rank(s.document, to_tsquery('simple', ?)) DESC");
+            params.add(tsQuery);
+        }
+        sql.append(", s.request_id DESC LIMIT ? OFFSET ?");
+        params.add(limit);
+        params.add(skip);
+
+        return jdbcTemplate.queryForList(sql.toString(), Long.class, params.toArray());
+    }
+
+    private static void addOwner(List<Object> params, Employee employee) {
+        if (!employee.isAdmin()) {
+            params.add(employee.getId());
+        }
+    }
+
+    /**
+     * Запрос вида "иванов & 7701:*" из слов пользователя. Из слов оставляются только буквы и цифры,
+     * поэтому синтаксис tsquery во вводе не интерпретируется.
+     */
+    private static String toPrefixTsQuery(String query) {
+        StringJoiner result = new StringJoiner(" & ");
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word + ":*");
+            }
+        }
+        return result.toString();
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
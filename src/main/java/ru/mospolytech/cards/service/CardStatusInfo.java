@@ -0,0 +1,23 @@
+package ru.mospolytech.cards.service;
+
+/**
+ * Статус карты из кэша справочников (строка card_statuses), неизменяемый
+ */
+public final class CardStatusInfo {
+
+    private final Long id;
+    private final String statusName;
+
+    public CardStatusInfo(Long id, String statusName) {
+        this.id = id;
+        this.statusName = statusName;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getStatusName() {
+        return statusName;
+    }
+}
@@ -0,0 +1,43 @@
+package ru.mospolytech.cards.service;
+
+import java.math.BigDecimal;
+
+/**
+ * Тип карт из кэша справочников (строка card_types), неизменяемый
+ */
+public final class CardTypeInfo {
+
+    private final Long id;
+    private final String typeName;
+    private final String description;
+    private final BigDecimal annualFee;
+    private final String currency;
+
+    public CardTypeInfo(Long id, String typeName, String description, BigDecimal annualFee, String currency) {
+        this.id = id;
+        this.typeName = typeName;
+        this.description = description;
+        this.annualFee = annualFee;
+        this.currency = currency;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public BigDecimal getAnnualFee() {
+        return annualFee;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+}
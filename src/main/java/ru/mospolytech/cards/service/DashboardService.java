@@ -0,0 +1,53 @@
+package ru.mospolytech.cards.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Счетчики заявок для дашборда.
+ * Читаются из card_request_counters, которую поддерживает триггер на card_requests,
+ * поэтому запрос не зависит от количества заявок.
+ */
+@Service
+public class DashboardService {
+
+    public static final String BY_STATUS = "status";
+    public static final String BY_EMPLOYEE = "employee";
+    public static final String BY_ORGANIZATION = "organization";
+
+    private static final String COUNTS_SQL =
+            "SELECT key_id, SUM(cnt) AS cnt FROM card_request_counters " +
+            "WHERE dimension = ? GROUP BY key_id HAVING SUM(cnt) <> 0 ORDER BY cnt DESC, key_id LIMIT ?";
+
+    private static final String COUNT_SQL =
+            "SELECT COALESCE(SUM(cnt), 0) FROM card_request_counters WHERE dimension = ? AND key_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DashboardService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Количество заявок по значениям измерения (id -> количество), по убыванию количества.
+     * Для измерения "employee" ключ 0 означает заявки без ответственного.
+     */
+    public Map<Long, Long> getCounts(String dimension, int limit) {
+        Map<Long, Long> counts = new LinkedHashMap<>();
+        jdbcTemplate.query(COUNTS_SQL, rs -> {
+            counts.put(rs.getLong("key_id"), rs.getLong("cnt"));
+        }, dimension, limit);
+        return counts;
+    }
+
+    /**
+     * Количество заявок для одного значения измерения
+     */
+    public long getCount(String dimension, Long keyId) {
+        Long count = jdbcTemplate.queryForObject(COUNT_SQL, Long.class, dimension, keyId == null ? 0L : keyId);
+        return count == null ? 0 : count;
+    }
+}
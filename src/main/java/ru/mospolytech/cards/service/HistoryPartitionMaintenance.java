@@ -0,0 +1,211 @@
+package ru.mospolytech.cards.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Обслуживание помесячных секций журналов (request_history, card_history, card_limit_history, access_logs).
+ *
+ * При старте и затем периодически создаются секции на months-ahead месяцев вперед, чтобы вставка
+ * никогда не попадала в отсутствующую секцию. Если обслуживание отстало или было остановлено, строки
+ * попадают в секцию по умолчанию (<таблица>_default) - вставка не падает, а при следующем запуске
+ * они переносятся в помесячные секции. Секции старше срока хранения отсоединяются
+ * (DETACH PARTITION) и переносятся в схему history_archive или удаляются: очистка журнала -
+ * операция над метаданными, а не DELETE миллионов строк. Срок 0 - хранить без ограничений.
+ * На нескольких узлах обслуживание выполняет тот, кто взял advisory-блокировку.
+ */
+@Service
+public class HistoryPartitionMaintenance {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryPartitionMaintenance.class);
+
+    // Ключ pg_advisory_xact_lock для обслуживания секций
+    private static final long LOCK_KEY = 0x6869737470617274L;
+    private static final String ARCHIVE_SCHEMA = "history_archive";
+    private static final Pattern PARTITION_SUFFIX = Pattern.compile("_p(\\d{6})$");
+    private static final DateTimeFormatter SUFFIX_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String TRY_LOCK_SQL = "SELECT pg_try_advisory_xact_lock(?)";
+
+    private static final String CREATE_PARTITIONS_SQL = "SELECT create_monthly_partitions(?, ?, ?)";
+
+    private static final String REHOME_SQL = "SELECT rehome_default_partition(?, ?)";
+
+    // Таблица -> столбец, по которому она секционирована
+    private static final Map<String, String> PARTITION_COLUMNS = Map.of(
+            "request_history", "changed_at",
+            "card_history", "changed_at",
+            "card_limit_history", "changed_at",
+            "access_logs", "login_time");
+
+    private static final String PARTITIONS_SQL =
+            "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "JOIN pg_class p ON p.oid = i.inhparent " +
+            "JOIN pg_namespace n ON n.oid = p.relnamespace " +
+            "WHERE n.nspname = current_schema() AND p.relname = ? ORDER BY c.relname";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // Таблица -> срок хранения в месяцах
+    private final Map<String, Integer> retentionMonths = new LinkedHashMap<>();
+    private final int monthsAhead;
+    private final long checkIntervalMinutes;
+    private final boolean dropExpired;
+    private final String lockTimeout;
+    private final Counter detachedCounter;
+    private final Counter rehomedCounter;
+
+    private ScheduledExecutorService scheduler;
+
+    public HistoryPartitionMaintenance(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${cards.history.retention-months:0}") int historyRetentionMonths,
+            @Value("${cards.access-logs.retention-months:12}") int accessLogRetentionMonths,
+            @Value("${cards.history.partitions.months-ahead:3}") int monthsAhead,
+            @Value("${cards.history.partitions.check-interval-minutes:360}") long checkIntervalMinutes,
+            @Value("${cards.history.retention.drop:false}") boolean dropExpired,
+            @Value("${cards.history.partitions.lock-timeout-ms:5000}") long lockTimeoutMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retentionMonths.put("request_history", historyRetentionMonths);
+        this.retentionMonths.put("card_history", historyRetentionMonths);
+        this.retentionMonths.put("card_limit_history", historyRetentionMonths);
+        this.retentionMonths.put("access_logs", accessLogRetentionMonths);
+        this.monthsAhead = Math.max(1, monthsAhead);
+        this.checkIntervalMinutes = Math.max(1, checkIntervalMinutes);
+        this.dropExpired = dropExpired;
+        this.lockTimeout = Math.max(1, lockTimeoutMs) + "ms";
+        this.detachedCounter = Counter.builder("history_partitions.detached")
+                .description("Секции журналов, отсоединенные по сроку хранения")
+                .register(meterRegistry);
+        this.rehomedCounter = Counter.builder("history_partitions.rehomed_rows")
+                .description("Строки журналов, перенесенные из секции по умолчанию в помесячные")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "history-partitions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, 0, checkIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void runSafely() {
+        try {
+            maintain();
+        } catch (Exception e) {
+            // Следующая проверка через check-interval; секций создано с запасом на months-ahead месяцев
+            logger.error("Ошибка обслуживания секций журналов", e);
+        }
+    }
+
+    /**
+     * Перенести строки из секций по умолчанию, создать недостающие будущие секции и отсоединить просроченные
+     */
+    public void maintain() {
+        YearMonth current = YearMonth.now();
+        Boolean created = transactionTemplate.execute(status -> {
+            if (!tryLock()) {
+                return false;
+            }
+            Date from = Date.valueOf(current.atDay(1));
+            Date to = Date.valueOf(current.plusMonths(monthsAhead + 1L).atDay(1));
+            for (String table : retentionMonths.keySet()) {
+                // Сначала освобождаем секцию по умолчанию: пока в ней есть строки месяца, секцию месяца не создать
+                Integer moved = jdbcTemplate.queryForObject(REHOME_SQL, Integer.class,
+                        table, PARTITION_COLUMNS.get(table));
+                if (moved != null && moved > 0) {
+                    rehomedCounter.increment(moved);
+                    logger.warn("Строки {} без помесячной секции перенесены из {}_default: {}", table, table, moved);
+                }
+                Integer count = jdbcTemplate.queryForObject(CREATE_PARTITIONS_SQL, Integer.class, table, from, to);
+                if (count != null && count > 0) {
+                    logger.info("Созданы секции {}: {}", table, count);
+                }
+            }
+            return true;
+        });
+        if (!Boolean.TRUE.equals(created)) {
+            logger.debug("Секции журналов обслуживает другой узел");
+            return;
+        }
+
+        retentionMonths.forEach((table, months) -> {
+            if (months > 0) {
+                detachExpired(table, current.minusMonths(months));
+            }
+        });
+    }
+
+    /**
+     * Отсоединить секции, целиком лежащие раньше месяца cutoff
+     */
+    private void detachExpired(String table, YearMonth cutoff) {
+        List<String> partitions = jdbcTemplate.queryForList(PARTITIONS_SQL, String.class, table);
+        for (String partition : partitions) {
+            Matcher matcher = PARTITION_SUFFIX.matcher(partition);
+            if (!matcher.find() || !YearMonth.parse(matcher.group(1), SUFFIX_FORMAT).isBefore(cutoff)) {
+                continue;
+            }
+            // Каждая секция - отдельная короткая транзакция: DETACH берет эксклюзивную блокировку
+            // родительской таблицы, lock_timeout не дает ему надолго встать в очередь за читателями
+            Boolean detached = transactionTemplate.execute(status -> {
+                if (!tryLock()) {
+                    return false;
+                }
+                jdbcTemplate.execute("SET LOCAL lock_timeout = '" + lockTimeout + "'");
+                jdbcTemplate.execute("ALTER TABLE " + table + " DETACH PARTITION " + partition);
+                if (dropExpired) {
+                    jdbcTemplate.execute("DROP TABLE " + partition);
+                } else {
+                    jdbcTemplate.execute("ALTER TABLE " + partition + " SET SCHEMA " + ARCHIVE_SCHEMA);
+                }
+                return true;
+            });
+            if (Boolean.TRUE.equals(detached)) {
+                detachedCounter.increment();
+                logger.info("Секция {} отсоединена по сроку хранения{}", partition,
+                        dropExpired ? " и удалена" : " и перенесена в " + ARCHIVE_SCHEMA);
+            }
+        }
+    }
+
+    private boolean tryLock() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(TRY_LOCK_SQL, Boolean.class, LOCK_KEY));
+    }
+}
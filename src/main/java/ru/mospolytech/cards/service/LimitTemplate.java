@@ -0,0 +1,63 @@
+package ru.mospolytech.cards.service;
+
+import java.math.BigDecimal;
+
+/**
+ * Шаблон лимитов типа карт (строка card_type_limit_templates), неизменяемый
+ */
+public final class LimitTemplate {
+
+    private final Long id;
+    private final Long cardTypeId;
+    private final BigDecimal dailyLimit;
+    private final BigDecimal monthlyLimit;
+    private final BigDecimal singleTransactionLimit;
+    private final BigDecimal atmDailyLimit;
+    private final String currency;
+    private final boolean isDefault;
+
+    public LimitTemplate(Long id, Long cardTypeId, BigDecimal dailyLimit, BigDecimal monthlyLimit,
+                         BigDecimal singleTransactionLimit, BigDecimal atmDailyLimit, String currency,
+                         boolean isDefault) {
+        this.id = id;
+        this.cardTypeId = cardTypeId;
+        this.dailyLimit = dailyLimit;
+        this.monthlyLimit = monthlyLimit;
+        this.singleTransactionLimit = singleTransactionLimit;
+        this.atmDailyLimit = atmDailyLimit;
+        this.currency = currency;
+        this.isDefault = isDefault;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getCardTypeId() {
+        return cardTypeId;
+    }
+
+    public BigDecimal getDailyLimit() {
+        return dailyLimit;
+    }
+
+    public BigDecimal getMonthlyLimit() {
+        return monthlyLimit;
+    }
+
+    public BigDecimal getSingleTransactionLimit() {
+        return singleTransactionLimit;
+    }
+
+    public BigDecimal getAtmDailyLimit() {
+        return atmDailyLimit;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public boolean isDefault() {
+        return isDefault;
+    }
+}
@@ -0,0 +1,101 @@
+package ru.mospolytech.cards.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Кэш шаблонов лимитов по типам карт (card_type_limit_templates).
+ *
+ * Шаблоны хранятся в неизменяемом снимке: по id и для каждого типа карт - шаблон по умолчанию
+ * и неизменяемый список альтернативных шаблонов. Снимок заменяется целиком при изменении таблицы
+ * (уведомление reference_data_changed, см. ReferenceDataCache), поэтому выпуск и массовое
+ * изменение лимитов получают шаблон без обращения к БД.
+ */
+@Service
+public class LimitTemplateResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(LimitTemplateResolver.class);
+
+    // Первый по id шаблон по умолчанию считается основным, как и при выпуске карт
+    private static final String LOAD_SQL =
+            "SELECT id, card_type_id, daily_limit, monthly_limit, single_transaction_limit, atm_daily_limit, " +
+            "currency, is_default FROM card_type_limit_templates ORDER BY card_type_id, is_default DESC, id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Snapshot snapshot = new Snapshot(List.of());
+
+    public LimitTemplateResolver(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Шаблон по умолчанию для типа карт
+     */
+    public Optional<LimitTemplate> findDefault(Long cardTypeId) {
+        return cardTypeId == null ? Optional.empty() : Optional.ofNullable(snapshot.defaults.get(cardTypeId));
+    }
+
+    /**
+     * Все шаблоны типа карт: сначала шаблон по умолчанию, затем альтернативные
+     */
+    public List<LimitTemplate> getTemplates(Long cardTypeId) {
+        return cardTypeId == null ? List.of() : snapshot.byCardType.getOrDefault(cardTypeId, List.of());
+    }
+
+    public Optional<LimitTemplate> findById(Long id) {
+        return id == null ? Optional.empty() : Optional.ofNullable(snapshot.byId.get(id));
+    }
+
+    /**
+     * Перечитать шаблоны
+     */
+    public void refresh() {
+        List<LimitTemplate> templates = jdbcTemplate.query(LOAD_SQL, (rs, rowNum) -> new LimitTemplate(
+                rs.getLong("id"),
+                rs.getLong("card_type_id"),
+                rs.getBigDecimal("daily_limit"),
+                rs.getBigDecimal("monthly_limit"),
+                rs.getBigDecimal("single_transaction_limit"),
+                rs.getBigDecimal("atm_daily_limit"),
+                rs.getString("currency"),
+                rs.getBoolean("is_default")));
+        Snapshot loaded = new Snapshot(templates);
+        snapshot = loaded;
+        logger.debug("Загружены шаблоны лимитов: {}, типов карт с шаблоном по умолчанию: {}",
+                templates.size(), loaded.defaults.size());
+    }
+
+    private static final class Snapshot {
+
+        final Map<Long, LimitTemplate> byId;
+        final Map<Long, LimitTemplate> defaults;
+        final Map<Long, List<LimitTemplate>> byCardType;
+
+        Snapshot(List<LimitTemplate> templates) {
+            Map<Long, LimitTemplate> ids = new HashMap<>();
+            Map<Long, LimitTemplate> defaultTemplates = new HashMap<>();
+            Map<Long, List<LimitTemplate>> cardTypes = new HashMap<>();
+            for (LimitTemplate template : templates) {
+                ids.put(template.getId(), template);
+                if (template.isDefault()) {
+                    defaultTemplates.putIfAbsent(template.getCardTypeId(), template);
+                }
+                cardTypes.computeIfAbsent(template.getCardTypeId(), id -> new ArrayList<>()).add(template);
+            }
+            Map<Long, List<LimitTemplate>> immutableCardTypes = new HashMap<>();
+            cardTypes.forEach((cardTypeId, list) -> immutableCardTypes.put(cardTypeId, List.copyOf(list)));
+            this.byId = Map.copyOf(ids);
+            this.defaults = Map.copyOf(defaultTemplates);
+            this.byCardType = Map.copyOf(immutableCardTypes);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ru.mospolytech.cards.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничение неудачных попыток входа по email и по IP-адресу (скользящее окно).
+ *
+ * Для каждого ключа хранится счетчик текущего и предыдущего окна; оценка числа неудач за
+ * последние windowMs - взвешенная сумма двух счетчиков. Проверка выполняется до обращения
+ * к БД и до вычисления BCrypt, поэтому подбор паролей не нагружает сервер.
+ */
+@Service
+public class LoginAttemptLimiter {
+
+    private static final int CLEANUP_THRESHOLD = 10000;
+
+    private final long windowMs;
+    private final int maxFailuresPerEmail;
+    private final int maxFailuresPerIp;
+
+    private final Map<String, WindowCounter> emailFailures = new ConcurrentHashMap<>();
+    private final Map<String, WindowCounter> ipFailures = new ConcurrentHashMap<>();
+
+    public LoginAttemptLimiter(
+            @Value("${cards.security.login-limit.window-minutes:15}") long windowMinutes,
+            @Value("${cards.security.login-limit.max-failures-per-email:5}") int maxFailuresPerEmail,
+            @Value("${cards.security.login-limit.max-failures-per-ip:20}") int maxFailuresPerIp) {
+        this.windowMs = TimeUnit.MINUTES.toMillis(windowMinutes);
+        this.maxFailuresPerEmail = maxFailuresPerEmail;
+        this.maxFailuresPerIp = maxFailuresPerIp;
+    }
+
+    /**
+     * Заблокированы ли попытки входа для email или IP-адреса
+     */
+    public boolean isBlocked(String email, String ipAddress) {
+        long now = System.currentTimeMillis();
+        return estimate(emailFailures, normalizeEmail(email), now) >= maxFailuresPerEmail
+                || estimate(ipFailures, ipAddress, now) >= maxFailuresPerIp;
+    }
+
+    public void recordFailure(String email, String ipAddress) {
+        long now = System.currentTimeMillis();
+        increment(emailFailures, normalizeEmail(email), now);
+        increment(ipFailures, ipAddress, now);
+    }
+
+    /**
+     * Успешный вход сбрасывает счетчик по email (счетчик по IP остается)
+     */
+    public void recordSuccess(String email) {
+        emailFailures.remove(normalizeEmail(email));
+    }
+
+    private double estimate(Map<String, WindowCounter> counters, String key, long now) {
+        if (key == null) {
+            return 0;
+        }
+        WindowCounter counter = counters.get(key);
+        return counter == null ? 0 : counter.estimate(now, windowMs);
+    }
+
+    private void increment(Map<String, WindowCounter> counters, String key, long now) {
+        if (key == null) {
+            return;
+        }
+        counters.computeIfAbsent(key, k -> new WindowCounter(now)).increment(now, windowMs);
+        if (counters.size() > CLEANUP_THRESHOLD) {
+            // Ключи без неудач за два окна больше не влияют на оценку
+            counters.values().removeIf(counter -> counter.isExpired(now, windowMs));
+        }
+    }
+
+    private static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Счетчик неудач в текущем и предыдущем окне фиксированной длины
+     */
+    private static final class WindowCounter {
+
+        private long windowStart;
+        private int current;
+        private int previous;
+
+        WindowCounter(long now) {
+            this.windowStart = now;
+        }
+
+        synchronized void increment(long now, long windowMs) {
+            roll(now, windowMs);
+            current++;
+        }
+
+        synchronized double estimate(long now, long windowMs) {
+            roll(now, windowMs);
+            double previousWeight = 1.0 - (double) (now - windowStart) / windowMs;
+            return previous * previousWeight + current;
+        }
+
+        synchronized boolean isExpired(long now, long windowMs) {
+            return now - windowStart >= 2 * windowMs;
+        }
+
+        private void roll(long now, long windowMs) {
+            long elapsedWindows = (now - windowStart) / windowMs;
+            if (elapsedWindows == 1) {
+                previous = current;
+                current = 0;
+                windowStart += windowMs;
+            } else if (elapsedWindows > 1) {
+                previous = 0;
+                current = 0;
+                windowStart = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package ru.mospolytech.cards.service;
+
+/**
+ * Вход отклонен без проверки пароля: превышен лимит неудачных попыток
+ * или пул проверки паролей перегружен
+ */
+public class LoginRejectedException extends RuntimeException {
+
+    public LoginRejectedException(String message) {
+        super(message);
+    }
+}
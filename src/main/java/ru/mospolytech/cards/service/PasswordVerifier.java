@@ -0,0 +1,127 @@
+package ru.mospolytech.cards.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Проверка и хеширование паролей BCrypt на отдельном пуле потоков ограниченного размера.
+ *
+ * BCrypt намеренно дорог по CPU, поэтому всплеск входов не должен занимать все потоки Tomcat:
+ * проверка выполняется в пуле с ограниченной очередью, а если задача не успела выполниться
+ * за отведенное время или очередь заполнена, вход отклоняется с LoginRejectedException.
+ */
+@Service
+public class PasswordVerifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordVerifier.class);
+
+    private static final String BUSY_MESSAGE = "Сервис входа перегружен. Попробуйте позже";
+
+    private final ThreadPoolExecutor executor;
+    private final long queueTimeoutMs;
+    private final int bcryptCost;
+
+    public PasswordVerifier(
+            @Value("${cards.security.bcrypt.pool-size:0}") int poolSize,
+            @Value("${cards.security.bcrypt.queue-capacity:100}") int queueCapacity,
+            @Value("${cards.security.bcrypt.queue-timeout-ms:2000}") long queueTimeoutMs,
+            @Value("${cards.security.bcrypt.cost:10}") int bcryptCost) {
+        int threads = poolSize > 0 ? poolSize : Math.max(2, Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bcrypt-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.bcryptCost = bcryptCost;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Проверить пароль по хешу. Вызывающий поток ждет результат не дольше queueTimeoutMs.
+     *
+     * @throws LoginRejectedException если пул перегружен
+     */
+    public boolean matches(String password, String passwordHash) {
+        Future<Boolean> future;
+        try {
+            future = executor.submit(() -> BCrypt.checkpw(password, passwordHash));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Очередь проверки паролей заполнена, вход отклонен");
+            throw new LoginRejectedException(BUSY_MESSAGE);
+        }
+
+        try {
+            return future.get(queueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Задача, еще не начавшая выполнение, будет пропущена пулом
+            future.cancel(true);
+            logger.warn("Проверка пароля не уложилась в {} мс, вход отклонен", queueTimeoutMs);
+            throw new LoginRejectedException(BUSY_MESSAGE);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new LoginRejectedException(BUSY_MESSAGE);
+        } catch (ExecutionException e) {
+            // Например, хеш в неверном формате
+            logger.error("Ошибка при проверке пароля", e.getCause());
+            return false;
+        }
+    }
+
+    /**
+     * Захешировать пароль с текущей стоимостью (выполняется в вызывающем потоке)
+     */
+    public String hash(String password) {
+        return BCrypt.hashpw(password, BCrypt.gensalt(bcryptCost));
+    }
+
+    /**
+     * Захешировать пароль в пуле, не задерживая вызывающий поток.
+     * Если пул занят, возвращается пустой результат - перехеширование будет при следующем входе.
+     */
+    public CompletableFuture<String> hashAsync(String password) {
+        try {
+            return CompletableFuture.supplyAsync(() -> hash(password), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Нужно ли перехешировать пароль: хеш создан с другой стоимостью
+     */
+    public boolean needsRehash(String passwordHash) {
+        // Формат BCrypt: $2a$10$<salt+hash>
+        if (passwordHash == null || passwordHash.length() < 7 || passwordHash.charAt(3) != '$') {
+            return false;
+        }
+        try {
+            return Integer.parseInt(passwordHash.substring(4, 6)) != bcryptCost;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package ru.mospolytech.cards.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Файлы персонализации для изготовления пластика: номер карты, имя держателя, срок действия и CVV.
+ *
+ * Открытое значение CVV в БД не попадает (там только хеш) и существует только в этих файлах,
+ * которые забирает бюро персонализации. Файл пачки выпуска пишется во временный файл внутри
+ * транзакции пачки и становится видимым (переименование в .csv) только после ее фиксации;
+ * при откате временный файл удаляется, и на пластик не попадают карты, которых нет в БД.
+ */
+@Service
+public class PersonalizationFileWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersonalizationFileWriter.class);
+
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final DateTimeFormatter EXPIRY_FORMAT = DateTimeFormatter.ofPattern("MM/yy");
+
+    private final Path directory;
+
+    public PersonalizationFileWriter(
+            @Value("${cards.issuance.personalization-dir:data/personalization}") String directory) {
+        this.directory = Path.of(directory).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать каталог персонализации " + this.directory, e);
+        }
+    }
+
+    /**
+     * Записать карты пачки. Вызывается внутри транзакции пачки выпуска.
+     */
+    public void write(List<CardPersonalization> cards) {
+        if (cards.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Файл персонализации пишется только внутри транзакции выпуска");
+        }
+        String name = "cards-" + LocalDateTime.now().format(FILE_TIME_FORMAT) + "-" + cards.get(0).cardId;
+        Path temp = directory.resolve(name + ".part");
+        Path target = directory.resolve(name + ".csv");
+
+        StringBuilder content = new StringBuilder(cards.size() * 64);
+        content.append("card_id;card_number;cardholder_name;expiry;cvv\n");
+        for (CardPersonalization card : cards) {
+            content.append(card.cardId).append(';')
+                    .append(card.cardNumber).append(';')
+                    .append(card.cardholderName).append(';')
+                    .append(card.expiryDate.format(EXPIRY_FORMAT)).append(';')
+                    .append(card.cvv).append('\n');
+        }
+
+        try {
+            createOwnerOnly(temp);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            deleteQuietly(temp);
+            throw new UncheckedIOException("Не удалось записать файл персонализации " + temp, e);
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    deleteQuietly(temp);
+                    return;
+                }
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    // Карты уже выпущены: файл остается под именем .part и передается вручную
+                    logger.error("Не удалось опубликовать файл персонализации {}, карт в нем: {}",
+                            temp, cards.size(), e);
+                }
+            }
+        });
+    }
+
+    private static void createOwnerOnly(Path path) throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(path);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Не удалось удалить временный файл персонализации {}", path, e);
+        }
+    }
+
+    /**
+     * Данные одной карты для персонализации
+     */
+    public static final class CardPersonalization {
+
+        private final Long cardId;
+        private final String cardNumber;
+        private final String cardholderName;
+        private final LocalDate expiryDate;
+        private final String cvv;
+
+        public CardPersonalization(Long cardId, String cardNumber, String cardholderName, LocalDate expiryDate,
+                                   String cvv) {
+            this.cardId = cardId;
+            this.cardNumber = cardNumber;
+            this.cardholderName = cardholderName;
+            this.expiryDate = expiryDate;
+            this.cvv = cvv;
+        }
+    }
+}
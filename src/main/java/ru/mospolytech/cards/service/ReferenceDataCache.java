@@ -0,0 +1,306 @@
+package ru.mospolytech.cards.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import ru.mospolytech.cards.entity.*;
+import ru.mospolytech.cards.repository.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Кэш справочников (статусы заявок и карт, типы карт, отделения, роли).
+ * Шаблоны лимитов типов карт обновляются по тем же уведомлениям (LimitTemplateResolver).
+ *
+ * Справочники хранятся в виде неизменяемых снимков и заменяются целиком при изменении. Снимки
+ * содержат не сущности JPA, а неизменяемые копии (RequestStatusInfo, CardTypeInfo и т.д.), так что
+ * вызывающий код не может испортить кэш для остальных потоков. Для связей сущностей есть методы
+ * *Reference: они возвращают ссылку JPA (getReferenceById) без запроса к БД.
+ *
+ * Об изменениях сообщают триггеры БД через PostgreSQL NOTIFY (канал reference_data_changed,
+ * в payload - имя таблицы), поэтому кэш обновляется на всех узлах приложения. Подписка держит
+ * собственное соединение в обход пула, чтобы не занимать соединение пула все время работы.
+ */
+@Service
+public class ReferenceDataCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceDataCache.class);
+
+    private static final String CHANNEL = "reference_data_changed";
+    private static final int LISTEN_TIMEOUT_MS = 5000;
+    private static final long RECONNECT_DELAY_MS = 10000;
+
+    private final RequestStatusRepository requestStatusRepository;
+    private final CardStatusRepository cardStatusRepository;
+    private final CardTypeRepository cardTypeRepository;
+    private final BranchRepository branchRepository;
+    private final RoleRepository roleRepository;
+    private final LimitTemplateResolver limitTemplateResolver;
+    private final DataSourceProperties dataSourceProperties;
+
+    private volatile ReferenceSnapshot<RequestStatusInfo> requestStatuses = ReferenceSnapshot.empty();
+    private volatile ReferenceSnapshot<CardStatusInfo> cardStatuses = ReferenceSnapshot.empty();
+    private volatile ReferenceSnapshot<CardTypeInfo> cardTypes = ReferenceSnapshot.empty();
+    private volatile ReferenceSnapshot<BranchInfo> branches = ReferenceSnapshot.empty();
+    private volatile List<BranchInfo> activeBranches = List.of();
+    private volatile ReferenceSnapshot<RoleInfo> roles = ReferenceSnapshot.empty();
+
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public ReferenceDataCache(
+            RequestStatusRepository requestStatusRepository,
+            CardStatusRepository cardStatusRepository,
+            CardTypeRepository cardTypeRepository,
+            BranchRepository branchRepository,
+            RoleRepository roleRepository,
+            LimitTemplateResolver limitTemplateResolver,
+            DataSourceProperties dataSourceProperties) {
+        this.requestStatusRepository = requestStatusRepository;
+        this.cardStatusRepository = cardStatusRepository;
+        this.cardTypeRepository = cardTypeRepository;
+        this.branchRepository = branchRepository;
+        this.roleRepository = roleRepository;
+        this.limitTemplateResolver = limitTemplateResolver;
+        this.dataSourceProperties = dataSourceProperties;
+    }
+
+    @PostConstruct
+    public void start() {
+        refreshAll();
+
+        running = true;
+        listenerThread = new Thread(this::listenLoop, "reference-data-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    // ===== Статусы заявок =====
+
+    public List<RequestStatusInfo> getRequestStatuses() {
+        return requestStatuses.getAll();
+    }
+
+    public Optional<RequestStatusInfo> findRequestStatusById(Long id) {
+        return requestStatuses.findById(id);
+    }
+
+    public Optional<RequestStatusInfo> findRequestStatusByName(String statusName) {
+        return requestStatuses.findByName(statusName);
+    }
+
+    /**
+     * Ссылка JPA на статус заявки для связи сущностей; пустая, если статуса нет в справочнике
+     */
+    public Optional<RequestStatus> requestStatusReference(Long id) {
+        return findRequestStatusById(id).map(status -> requestStatusRepository.getReferenceById(status.getId()));
+    }
+
+    // ===== Статусы карт =====
+
+    public List<CardStatusInfo> getCardStatuses() {
+        return cardStatuses.getAll();
+    }
+
+    public Optional<CardStatusInfo> findCardStatusById(Long id) {
+        return cardStatuses.findById(id);
+    }
+
+    public Optional<CardStatusInfo> findCardStatusByName(String statusName) {
+        return cardStatuses.findByName(statusName);
+    }
+
+    // ===== Типы карт =====
+
+    public List<CardTypeInfo> getCardTypes() {
+        return cardTypes.getAll();
+    }
+
+    public Optional<CardTypeInfo> findCardTypeById(Long id) {
+        return cardTypes.findById(id);
+    }
+
+    /**
+     * Ссылка JPA на тип карт для связи сущностей; пустая, если типа нет в справочнике
+     */
+    public Optional<CardType> cardTypeReference(Long id) {
+        return findCardTypeById(id).map(type -> cardTypeRepository.getReferenceById(type.getId()));
+    }
+
+    // ===== Отделения =====
+
+    public List<BranchInfo> getActiveBranches() {
+        return activeBranches;
+    }
+
+    public Optional<BranchInfo> findBranchById(Long id) {
+        return branches.findById(id);
+    }
+
+    /**
+     * Ссылка JPA на отделение для связи сущностей; пустая, если отделения нет в справочнике
+     */
+    public Optional<Branch> branchReference(Long id) {
+        return findBranchById(id).map(branch -> branchRepository.getReferenceById(branch.getId()));
+    }
+
+    // ===== Роли =====
+
+    public List<RoleInfo> getRoles() {
+        return roles.getAll();
+    }
+
+    public Optional<RoleInfo> findRoleById(Long id) {
+        return roles.findById(id);
+    }
+
+    public Optional<RoleInfo> findRoleByName(String roleName) {
+        return roles.findByName(roleName);
+    }
+
+    /**
+     * Ссылка JPA на роль для связи сущностей; пустая, если роли нет в справочнике
+     */
+    public Optional<Role> roleReference(Long id) {
+        return findRoleById(id).map(role -> roleRepository.getReferenceById(role.getId()));
+    }
+
+    /**
+     * Перечитать все справочники
+     */
+    public void refreshAll() {
+        refreshRequestStatuses();
+        refreshCardStatuses();
+        refreshCardTypes();
+        refreshBranches();
+        refreshRoles();
+        limitTemplateResolver.refresh();
+    }
+
+    /**
+     * Перечитать справочник по имени таблицы (payload уведомления)
+     */
+    public void refreshTable(String tableName) {
+        switch (tableName) {
+            case "request_statuses" -> refreshRequestStatuses();
+            case "card_statuses" -> refreshCardStatuses();
+            case "card_types" -> refreshCardTypes();
+            case "branches" -> refreshBranches();
+            case "roles" -> refreshRoles();
+            case "card_type_limit_templates" -> limitTemplateResolver.refresh();
+            default -> logger.warn("Получено уведомление для неизвестного справочника: {}", tableName);
+        }
+    }
+
+    private void refreshRequestStatuses() {
+        requestStatuses = ReferenceSnapshot.of(requestStatusRepository.findAll(Sort.by("id")).stream()
+                        .map(status -> new RequestStatusInfo(status.getId(), status.getStatusName()))
+                        .toList(),
+                RequestStatusInfo::getId, RequestStatusInfo::getStatusName);
+    }
+
+    private void refreshCardStatuses() {
+        cardStatuses = ReferenceSnapshot.of(cardStatusRepository.findAll(Sort.by("id")).stream()
+                        .map(status -> new CardStatusInfo(status.getId(), status.getStatusName()))
+                        .toList(),
+                CardStatusInfo::getId, CardStatusInfo::getStatusName);
+    }
+
+    private void refreshCardTypes() {
+        cardTypes = ReferenceSnapshot.of(cardTypeRepository.findAll(Sort.by("typeName")).stream()
+                        .map(type -> new CardTypeInfo(type.getId(), type.getTypeName(), type.getDescription(),
+                                type.getAnnualFee(), type.getCurrency()))
+                        .toList(),
+                CardTypeInfo::getId, CardTypeInfo::getTypeName);
+    }
+
+    private void refreshBranches() {
+        ReferenceSnapshot<BranchInfo> snapshot = ReferenceSnapshot.of(branchRepository.findAll(Sort.by("id")).stream()
+                        .map(branch -> new BranchInfo(branch.getId(), branch.getName(), branch.getAddress(),
+                                branch.getPhone(), branch.getWorkHours(), Boolean.TRUE.equals(branch.getIsActive())))
+                        .toList(),
+                BranchInfo::getId, BranchInfo::getName);
+        branches = snapshot;
+        activeBranches = snapshot.getAll().stream()
+                .filter(BranchInfo::isActive)
+                .toList();
+    }
+
+    private void refreshRoles() {
+        roles = ReferenceSnapshot.of(roleRepository.findAll(Sort.by("id")).stream()
+                        .map(role -> new RoleInfo(role.getId(), role.getRoleName(), role.getDescription()))
+                        .toList(),
+                RoleInfo::getId, RoleInfo::getRoleName);
+    }
+
+    /**
+     * Подписка на уведомления об изменении справочников.
+     * Держит одно выделенное соединение вне пула; при разрыве переподключается и перечитывает все справочники,
+     * так как уведомления за время разрыва могли быть потеряны.
+     */
+    private void listenLoop() {
+        while (running) {
+            try (Connection connection = openListenConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                refreshAll();
+                logger.info("Подписка на изменения справочников установлена");
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(LISTEN_TIMEOUT_MS);
+                    if (notifications == null || notifications.length == 0) {
+                        continue;
+                    }
+                    Set<String> changedTables = new HashSet<>();
+                    for (PGNotification notification : notifications) {
+                        changedTables.add(notification.getParameter());
+                    }
+                    changedTables.forEach(this::refreshTable);
+                    logger.debug("Справочники обновлены: {}", changedTables);
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                logger.warn("Ошибка подписки на изменения справочников, повтор через {} мс", RECONNECT_DELAY_MS, e);
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Отдельное соединение в обход пула: LISTEN держит его все время работы приложения
+     */
+    private Connection openListenConnection() throws SQLException {
+        return DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword());
+    }
+}
@@ -0,0 +1,56 @@
+package ru.mospolytech.cards.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Неизменяемый снимок справочника с поиском по id и по названию.
+ * Элементы тоже должны быть неизменяемыми (не сущности JPA): снимок разделяется всеми потоками.
+ */
+public final class ReferenceSnapshot<T> {
+
+    private final List<T> items;
+    private final Map<Long, T> byId;
+    private final Map<String, T> byName;
+
+    private ReferenceSnapshot(List<T> items, Map<Long, T> byId, Map<String, T> byName) {
+        this.items = items;
+        this.byId = byId;
+        this.byName = byName;
+    }
+
+    /**
+     * Создает снимок; порядок элементов сохраняется, при совпадении названий берется первый элемент
+     */
+    public static <T> ReferenceSnapshot<T> of(List<T> items, Function<T, Long> idGetter, Function<T, String> nameGetter) {
+        Map<Long, T> byId = new LinkedHashMap<>();
+        Map<String, T> byName = new LinkedHashMap<>();
+        for (T item : items) {
+            byId.put(idGetter.apply(item), item);
+            byName.putIfAbsent(nameGetter.apply(item), item);
+        }
+        return new ReferenceSnapshot<>(List.copyOf(items),
+                Collections.unmodifiableMap(byId),
+                Collections.unmodifiableMap(byName));
+    }
+
+    public static <T> ReferenceSnapshot<T> empty() {
+        return new ReferenceSnapshot<>(List.of(), Map.of(), Map.of());
+    }
+
+    public List<T> getAll() {
+        return items;
+    }
+
+    public Optional<T> findById(Long id) {
+        return id == null ? Optional.empty() : Optional.ofNullable(byId.get(id));
+    }
+
+    public Optional<T> findByName(String name) {
+        return name == null ? Optional.empty() : Optional.ofNullable(byName.get(name));
+    }
+}
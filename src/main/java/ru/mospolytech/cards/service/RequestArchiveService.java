@@ -0,0 +1,317 @@
+package ru.mospolytech.cards.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.mospolytech.cards.entity.Employee;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Перенос закрытых заявок в архив.
+ *
+ * Заявки в статусах "Выпущена" и "Отклонена", не менявшиеся дольше min-age-days, фоновым
+ * потоком переносятся пачками по chunk-size в card_requests_archive вместе с request_history
+ * и описаниями documents, после чего удаляются из рабочих таблиц - индексы card_requests,
+ * по которым работают список и фильтры, остаются маленькими. Каждая пачка - отдельная короткая
+ * транзакция, строки берутся с FOR UPDATE SKIP LOCKED и не мешают работе с заявками и другим узлам.
+ * Счетчики дашборда учитывают только рабочие заявки и при переносе уменьшаются, как и список заявок.
+ * Архив просматривается отдельным списком с поиском, архивная заявка открывается только для чтения.
+ */
+@Service
+public class RequestArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestArchiveService.class);
+
+    private static final List<String> CLOSED_STATUSES = List.of("Выпущена", "Отклонена");
+
+    private static final String PICK_SQL =
+            "SELECT id FROM card_requests WHERE status_id = ANY (?) AND updated_at < ? " +
+            "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    private static final String ARCHIVE_REQUESTS_SQL =
+            "INSERT INTO card_requests_archive SELECT r.*, ? FROM card_requests r WHERE r.id = ANY (?)";
+
+    private static final String ARCHIVE_HISTORY_SQL =
+            "INSERT INTO request_history_archive SELECT h.* FROM request_history h WHERE h.request_id = ANY (?)";
+
+    private static final String ARCHIVE_DOCUMENTS_SQL =
+            "INSERT INTO documents_archive SELECT d.* FROM documents d WHERE d.request_id = ANY (?)";
+
+    // История, документы, поисковые документы и задания обработки удаляются каскадом
+    private static final String DELETE_SQL = "DELETE FROM card_requests WHERE id = ANY (?)";
+
+    private static final String SELECT_SQL =
+            "SELECT r.id, r.request_number, rs.status_name, r.assigned_employee_id, r.comments, " +
+            "r.created_at, r.updated_at, r.archived_at, " +
+            "u.last_name, u.first_name, u.middle_name, o.name AS organization_name, o.inn, " +
+            "ct.type_name, b.name AS branch_name, " +
+            "e.last_name AS employee_last_name, e.first_name AS employee_first_name, " +
+            "e.middle_name AS employee_middle_name " +
+            "FROM card_requests_archive r " +
+            "JOIN user_organizations uo ON uo.id = r.user_organization_id " +
+            "JOIN users u ON u.id = uo.user_id " +
+            "JOIN organizations o ON o.id = uo.organization_id " +
+            "JOIN card_types ct ON ct.id = r.card_type_id " +
+            "JOIN branches b ON b.id = r.branch_id " +
+            "JOIN request_statuses rs ON rs.id = r.status_id " +
+            "LEFT JOIN employees e ON e.id = r.assigned_employee_id ";
+
+    private static final String FIND_SQL = SELECT_SQL + "WHERE r.id = ?";
+
+    // Поиск по архиву: префикс номера, фамилии клиента или названия организации, точный ИНН
+    private static final String SEARCH_CONDITION =
+            "(r.request_number LIKE ? OR lower(u.last_name) LIKE ? " +
+            "OR lower(o.name) LIKE ? OR o.inn = ?) ";
+
+    private static final String HISTORY_SQL =
+            "SELECT h.changed_at, os.status_name AS old_status_name, ns.status_name AS new_status_name, " +
+            "e.last_name, e.first_name, e.middle_name, h.change_comment " +
+            "FROM request_history_archive h " +
+            "LEFT JOIN request_statuses os ON os.id = h.old_status_id " +
+            "JOIN request_statuses ns ON ns.id = h.new_status_id " +
+            "JOIN employees e ON e.id = h.changed_by " +
+            "WHERE h.request_id = ? ORDER BY h.changed_at, h.id";
+
+    private static final String DOCUMENTS_SQL =
+            "SELECT id, document_type, file_name, file_size, page_count, uploaded_at " +
+            "FROM documents_archive WHERE request_id = ? ORDER BY uploaded_at DESC, id DESC";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate chunkTransaction;
+    private final ReferenceDataCache referenceDataCache;
+
+    private final boolean enabled;
+    private final int minAgeDays;
+    private final int chunkSize;
+    private final long chunkPauseMs;
+    private final long intervalMinutes;
+    private final Counter archivedCounter;
+
+    private ScheduledExecutorService scheduler;
+
+    public RequestArchiveService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ReferenceDataCache referenceDataCache,
+            MeterRegistry meterRegistry,
+            @Value("${cards.archive.enabled:true}") boolean enabled,
+            @Value("${cards.archive.min-age-days:365}") int minAgeDays,
+            @Value("${cards.archive.chunk-size:500}") int chunkSize,
+            @Value("${cards.archive.chunk-pause-ms:200}") long chunkPauseMs,
+            @Value("${cards.archive.interval-minutes:60}") long intervalMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.referenceDataCache = referenceDataCache;
+        this.enabled = enabled;
+        this.minAgeDays = Math.max(1, minAgeDays);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.chunkPauseMs = Math.max(0, chunkPauseMs);
+        this.intervalMinutes = Math.max(1, intervalMinutes);
+        this.archivedCounter = Counter.builder("card_requests.archived")
+                .description("Заявки, перенесенные в архив")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "request-archiver");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void runSafely() {
+        try {
+            archiveClosedRequests();
+        } catch (Exception e) {
+            logger.error("Ошибка переноса заявок в архив", e);
+        }
+    }
+
+    /**
+     * Перенести в архив все закрытые заявки старше min-age-days
+     *
+     * @return количество перенесенных заявок
+     */
+    public long archiveClosedRequests() {
+        Long[] statusIds = CLOSED_STATUSES.stream()
+                .map(referenceDataCache::findRequestStatusByName)
+                .flatMap(Optional::stream)
+                .map(RequestStatusInfo::getId)
+                .toArray(Long[]::new);
+        if (statusIds.length == 0) {
+            return 0;
+        }
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(minAgeDays));
+
+        long total = 0;
+        // Остановка приложения прерывает поток архивации между пачками
+        while (!Thread.currentThread().isInterrupted()) {
+            Integer moved = chunkTransaction.execute(status -> archiveChunk(statusIds, cutoff));
+            int count = moved == null ? 0 : moved;
+            total += count;
+            archivedCounter.increment(count);
+            if (count < chunkSize) {
+                break;
+            }
+            if (chunkPauseMs > 0) {
+                // Пауза между пачками - WAL и автовакуум успевают за переносом
+                try {
+                    Thread.sleep(chunkPauseMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (total > 0) {
+            logger.info("В архив перенесено заявок: {}", total);
+        }
+        return total;
+    }
+
+    private int archiveChunk(Long[] statusIds, Timestamp cutoff) {
+        List<Long> ids = jdbcTemplate.queryForList(PICK_SQL, Long.class, statusIds, cutoff, chunkSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Long[] idArray = ids.toArray(new Long[0]);
+        jdbcTemplate.update(ARCHIVE_REQUESTS_SQL, Timestamp.valueOf(LocalDateTime.now()), idArray);
+        jdbcTemplate.update(ARCHIVE_HISTORY_SQL, (Object) idArray);
+        jdbcTemplate.update(ARCHIVE_DOCUMENTS_SQL, (Object) idArray);
+        jdbcTemplate.update(DELETE_SQL, (Object) idArray);
+        return ids.size();
+    }
+
+    /**
+     * Архивная заявка с историей и документами
+     */
+    public Optional<ArchivedRequest> findArchived(Long id) {
+        return jdbcTemplate.query(FIND_SQL, (rs, rowNum) -> mapRequest(rs, findHistory(id), findDocuments(id)), id)
+                .stream().findFirst();
+    }
+
+    private static ArchivedRequest mapRequest(ResultSet rs, List<ArchivedRequest.HistoryEntry> history,
+                                              List<ArchivedRequest.DocumentEntry> documents) throws SQLException {
+        return new ArchivedRequest(
+                rs.getLong("id"),
+                rs.getString("request_number"),
+                rs.getString("status_name"),
+                fullName(rs, "last_name", "first_name", "middle_name"),
+                rs.getString("organization_name"),
+                rs.getString("inn"),
+                rs.getString("type_name"),
+                rs.getString("branch_name"),
+                rs.getObject("assigned_employee_id", Long.class),
+                fullName(rs, "employee_last_name", "employee_first_name", "employee_middle_name"),
+                rs.getString("comments"),
+                toLocalDateTime(rs.getTimestamp("created_at")),
+                toLocalDateTime(rs.getTimestamp("updated_at")),
+                toLocalDateTime(rs.getTimestamp("archived_at")),
+                history,
+                documents);
+    }
+
+    /**
+     * Страница архивных заявок, новые первыми, без истории и документов.
+     * Менеджер видит только назначенные ему заявки.
+     *
+     * @param query   строка поиска или пустая строка
+     * @param afterId id последней заявки предыдущей страницы или null
+     */
+    public List<ArchivedRequest> findArchivedPage(String query, Employee employee, Long afterId, int limit) {
+        StringBuilder sql = new StringBuilder(SELECT_SQL).append("WHERE TRUE ");
+        List<Object> args = new ArrayList<>();
+        if (!employee.isAdmin()) {
+            sql.append("AND r.assigned_employee_id = ? ");
+            args.add(employee.getId());
+        }
+        if (!query.isEmpty()) {
+            String prefix = escapeLike(query) + "%";
+            sql.append("AND ").append(SEARCH_CONDITION);
+            args.add(prefix.toUpperCase(Locale.ROOT));
+            args.add(prefix.toLowerCase(Locale.ROOT));
+            args.add(prefix.toLowerCase(Locale.ROOT));
+            args.add(query);
+        }
+        if (afterId != null) {
+            sql.append("AND r.id < ? ");
+            args.add(afterId);
+        }
+        sql.append("ORDER BY r.id DESC LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> mapRequest(rs, List.of(), List.of()),
+                args.toArray());
+    }
+
+    private List<ArchivedRequest.HistoryEntry> findHistory(Long requestId) {
+        return jdbcTemplate.query(HISTORY_SQL, (rs, rowNum) -> new ArchivedRequest.HistoryEntry(
+                toLocalDateTime(rs.getTimestamp("changed_at")),
+                rs.getString("old_status_name"),
+                rs.getString("new_status_name"),
+                fullName(rs, "last_name", "first_name", "middle_name"),
+                rs.getString("change_comment")), requestId);
+    }
+
+    private List<ArchivedRequest.DocumentEntry> findDocuments(Long requestId) {
+        return jdbcTemplate.query(DOCUMENTS_SQL, (rs, rowNum) -> new ArchivedRequest.DocumentEntry(
+                rs.getLong("id"),
+                rs.getString("document_type"),
+                rs.getString("file_name"),
+                rs.getLong("file_size"),
+                rs.getObject("page_count", Integer.class),
+                toLocalDateTime(rs.getTimestamp("uploaded_at"))), requestId);
+    }
+
+    private static String fullName(ResultSet rs, String lastName, String firstName, String middleName)
+            throws SQLException {
+        String last = rs.getString(lastName);
+        if (last == null) {
+            return null;
+        }
+        String middle = rs.getString(middleName);
+        return last + " " + rs.getString(firstName) + (middle == null || middle.isEmpty() ? "" : " " + middle);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+}
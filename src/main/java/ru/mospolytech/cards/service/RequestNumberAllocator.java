@@ -0,0 +1,128 @@
+package ru.mospolytech.cards.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Function;
+
+/**
+ * Выдача номеров заявок вида REQ-yyyyMMdd-NNNN с нумерацией внутри дня.
+ *
+ * Счетчик на каждый день хранится в таблице request_number_counters и увеличивается атомарным UPSERT,
+ * поэтому номера уникальны при любом количестве узлов.
+ *
+ * По умолчанию размер блока 1: счетчик увеличивается в транзакции, сохраняющей заявку (см. createWithNumber),
+ * и откатывается вместе с ней - нумерация без пропусков. Строка счетчика дня при этом заблокирована
+ * до конца этой транзакции, так что заявки за день создаются по одной на все узлы.
+ * При размере блока больше 1 узел резервирует блок номеров в отдельной короткой транзакции и раздает
+ * их из памяти. Номер не возвращается в блок, если заявка не сохранилась, а остаток блока теряется
+ * при остановке узла или смене дня (пропуски в нумерации).
+ */
+@Service
+public class RequestNumberAllocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestNumberAllocator.class);
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final String RESERVE_SQL =
+            "INSERT INTO request_number_counters (counter_date, last_value) VALUES (?, ?) " +
+            "ON CONFLICT (counter_date) DO UPDATE " +
+            "SET last_value = request_number_counters.last_value + EXCLUDED.last_value " +
+            "RETURNING last_value";
+
+    private final JdbcTemplate jdbcTemplate;
+    // Транзакция сохранения заявки вместе с выдачей номера
+    private final TransactionTemplate insertTransaction;
+    // Транзакция UPSERT счетчика: общая с сохранением заявки при размере блока 1, иначе отдельная
+    private final TransactionTemplate reserveTransaction;
+    private final int blockSize;
+
+    // Текущий зарезервированный блок (next..last включительно) для дня blockDate, защищен монитором this
+    private LocalDate blockDate;
+    private long next;
+    private long last;
+
+    public RequestNumberAllocator(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${cards.request-number.block-size:1}") int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Размер блока номеров должен быть положительным: " + blockSize);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.insertTransaction = new TransactionTemplate(transactionManager);
+        this.reserveTransaction = new TransactionTemplate(transactionManager);
+        this.reserveTransaction.setPropagationBehavior(blockSize == 1
+                ? TransactionDefinition.PROPAGATION_REQUIRED
+                : TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Выдать номер и сохранить с ним заявку в одной транзакции
+     *
+     * @param insert сохранение заявки с выданным номером
+     * @return результат insert
+     */
+    public <T> T createWithNumber(Function<String, T> insert) {
+        return insertTransaction.execute(status -> insert.apply(nextRequestNumber()));
+    }
+
+    /**
+     * Следующий номер заявки.
+     * При размере блока 1 вызывается в транзакции, сохраняющей заявку, иначе номер не откатится вместе с ней.
+     */
+    public String nextRequestNumber() {
+        LocalDate today = LocalDate.now();
+        long value = blockSize == 1 ? reserve(today) : nextFromBlock(today);
+        return String.format("REQ-%s-%04d", today.format(DATE_FORMAT), value);
+    }
+
+    /**
+     * Следующий порядковый номер из блока узла. Монитор защищает только раздачу из памяти,
+     * UPSERT нового блока идет без него
+     */
+    private long nextFromBlock(LocalDate day) {
+        synchronized (this) {
+            if (day.equals(blockDate) && next <= last) {
+                return next++;
+            }
+        }
+
+        long reservedLast = reserve(day);
+        long first = reservedLast - blockSize + 1;
+        synchronized (this) {
+            // Пока шел UPSERT, другой поток мог поставить свой блок - тогда остаток этого блока теряется
+            if (blockDate == null || blockDate.isBefore(day) || (day.equals(blockDate) && next > last)) {
+                blockDate = day;
+                next = first + 1;
+                last = reservedLast;
+            }
+        }
+        logger.debug("Зарезервирован блок номеров заявок на {}: {}..{}", day, first, reservedLast);
+        return first;
+    }
+
+    /**
+     * Увеличить счетчик дня на размер блока
+     *
+     * @return последний зарезервированный номер
+     */
+    private long reserve(LocalDate day) {
+        Long reservedLast = reserveTransaction.execute(status ->
+                jdbcTemplate.queryForObject(RESERVE_SQL, Long.class, day, blockSize));
+        if (reservedLast == null) {
+            throw new IllegalStateException("Не удалось зарезервировать номера заявок на " + day);
+        }
+        return reservedLast;
+    }
+}
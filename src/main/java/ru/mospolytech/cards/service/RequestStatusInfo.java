@@ -0,0 +1,23 @@
+package ru.mospolytech.cards.service;
+
+/**
+ * Статус заявки из кэша справочников (строка request_statuses), неизменяемый
+ */
+public final class RequestStatusInfo {
+
+    private final Long id;
+    private final String statusName;
+
+    public RequestStatusInfo(Long id, String statusName) {
+        this.id = id;
+        this.statusName = statusName;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getStatusName() {
+        return statusName;
+    }
+}
@@ -0,0 +1,163 @@
+package ru.mospolytech.cards.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.mospolytech.cards.entity.Employee;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Смена статусов заявок с записью истории (request_history).
+ *
+ * Заявки обрабатываются пачками: одна выборка текущих статусов с блокировкой строк,
+ * один JDBC batch обновлений card_requests и один JDBC batch вставок в request_history
+ * на пачку, все в одной транзакции.
+ */
+@Service
+public class RequestStatusService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestStatusService.class);
+
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String ISSUED_STATUS = "Выпущена";
+
+    private static final String UPDATE_SQL =
+            "UPDATE card_requests SET status_id = ?, updated_at = ? WHERE id = ?";
+
+    private static final String INSERT_HISTORY_SQL =
+            "INSERT INTO request_history (request_id, old_status_id, new_status_id, changed_by, change_comment, changed_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataCache referenceDataCache;
+
+    public RequestStatusService(JdbcTemplate jdbcTemplate, ReferenceDataCache referenceDataCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.referenceDataCache = referenceDataCache;
+    }
+
+    /**
+     * Сменить статус одной заявки
+     */
+    @Transactional
+    public StatusTransitionResult changeStatus(Long requestId, Long newStatusId, Employee employee, String comment) {
+        return changeStatuses(List.of(requestId), newStatusId, employee, comment);
+    }
+
+    /**
+     * Сменить статус набора заявок в одной транзакции.
+     * Пропускаются заявки, которых нет, которые недоступны сотруднику (не администратор
+     * может менять только свои заявки), выпущенные заявки и заявки, уже находящиеся в этом статусе.
+     */
+    @Transactional
+    public StatusTransitionResult changeStatuses(List<Long> requestIds, Long newStatusId, Employee employee, String comment) {
+        RequestStatusInfo newStatus = referenceDataCache.findRequestStatusById(newStatusId)
+                .orElseThrow(() -> new RuntimeException("Статус не найден"));
+        Long issuedStatusId = referenceDataCache.findRequestStatusByName(ISSUED_STATUS)
+                .map(RequestStatusInfo::getId)
+                .orElse(null);
+
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(requestIds));
+        Map<Long, Long> oldStatuses = new LinkedHashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size()));
+            Map<Long, Long> chunkOldStatuses = lockCurrentStatuses(chunk, employee);
+            chunkOldStatuses.values().removeIf(oldStatusId ->
+                    oldStatusId.equals(newStatus.getId()) || oldStatusId.equals(issuedStatusId));
+            if (chunkOldStatuses.isEmpty()) {
+                continue;
+            }
+
+            List<Map.Entry<Long, Long>> changes = new ArrayList<>(chunkOldStatuses.entrySet());
+            Timestamp changedAt = Timestamp.valueOf(now);
+
+            jdbcTemplate.batchUpdate(UPDATE_SQL, changes, changes.size(), (ps, change) -> {
+                ps.setLong(1, newStatus.getId());
+                ps.setTimestamp(2, changedAt);
+                ps.setLong(3, change.getKey());
+            });
+
+            jdbcTemplate.batchUpdate(INSERT_HISTORY_SQL, changes, changes.size(), (ps, change) -> {
+                ps.setLong(1, change.getKey());
+                ps.setLong(2, change.getValue());
+                ps.setLong(3, newStatus.getId());
+                ps.setLong(4, employee.getId());
+                ps.setString(5, comment);
+                ps.setTimestamp(6, changedAt);
+            });
+
+            oldStatuses.putAll(chunkOldStatuses);
+        }
+
+        logger.info("Сотрудник {} сменил статус {} заявок на '{}' (запрошено {})",
+                employee.getId(), oldStatuses.size(), newStatus.getStatusName(), ids.size());
+        return new StatusTransitionResult(newStatus, oldStatuses, ids.size());
+    }
+
+    /**
+     * Текущие статусы заявок (id заявки -> id статуса) с блокировкой строк до конца транзакции
+     */
+    private Map<Long, Long> lockCurrentStatuses(List<Long> requestIds, Employee employee) {
+        StringBuilder sql = new StringBuilder("SELECT id, status_id FROM card_requests WHERE id = ANY (?)");
+        List<Object> params = new ArrayList<>();
+        params.add(requestIds.toArray(new Long[0]));
+        if (!employee.isAdmin()) {
+            sql.append(" AND assigned_employee_id = ?");
+            params.add(employee.getId());
+        }
+        sql.append(" ORDER BY id FOR UPDATE");
+
+        Map<Long, Long> result = new LinkedHashMap<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            result.put(rs.getLong("id"), rs.getLong("status_id"));
+        }, params.toArray());
+        return result;
+    }
+
+    /**
+     * Результат смены статусов
+     */
+    public static class StatusTransitionResult {
+
+        private final RequestStatusInfo newStatus;
+        private final Map<Long, Long> oldStatusIds;
+        private final int requestedCount;
+
+        public StatusTransitionResult(RequestStatusInfo newStatus, Map<Long, Long> oldStatusIds, int requestedCount) {
+            this.newStatus = newStatus;
+            this.oldStatusIds = oldStatusIds;
+            this.requestedCount = requestedCount;
+        }
+
+        public RequestStatusInfo getNewStatus() {
+            return newStatus;
+        }
+
+        /**
+         * Измененные заявки: id заявки -> id прежнего статуса
+         */
+        public Map<Long, Long> getOldStatusIds() {
+            return oldStatusIds;
+        }
+
+        public int getChangedCount() {
+            return oldStatusIds.size();
+        }
+
+        public int getSkippedCount() {
+            return requestedCount - oldStatusIds.size();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.mospolytech.cards.service;
+
+/**
+ * Роль сотрудника из кэша справочников (строка roles), неизменяемая
+ */
+public final class RoleInfo {
+
+    private final Long id;
+    private final String roleName;
+    private final String description;
+
+    public RoleInfo(Long id, String roleName, String description) {
+        this.id = id;
+        this.roleName = roleName;
+        this.description = description;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getRoleName() {
+        return roleName;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,14 @@
+package ru.mospolytech.cards.service;
+
+/**
+ * Общие ограничения поисковых запросов: подсказки в панели фильтров и поиск заявок
+ */
+public final class SearchQueries {
+
+    // Триграммный индекс (pg_trgm) не помогает для %xx% из двух символов, а префикс из двух букв
+    // совпадает с большей частью строк - такой запрос обходил бы всю таблицу
+    public static final int MIN_QUERY_LENGTH = 3;
+
+    private SearchQueries() {
+    }
+}
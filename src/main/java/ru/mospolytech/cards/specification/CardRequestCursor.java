@@ -0,0 +1,85 @@
+package ru.mospolytech.cards.specification;
+
+import ru.mospolytech.cards.entity.CardRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Курсор для постраничного вывода заявок (keyset pagination).
+ * Хранит значение ключа сортировки и id последней показанной заявки.
+ */
+public class CardRequestCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final String sortValue;
+    private final Long id;
+
+    public CardRequestCursor(String sortValue, Long id) {
+        this.sortValue = sortValue;
+        this.id = id;
+    }
+
+    public String getSortValue() {
+        return sortValue;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Значение ключа сортировки как дата (для сортировки по createdAt)
+     */
+    public LocalDateTime getSortValueAsDateTime() {
+        return LocalDateTime.parse(sortValue);
+    }
+
+    /**
+     * Курсор, указывающий на заявку, для заданного поля сортировки
+     */
+    public static CardRequestCursor of(CardRequest request, String sortBy) {
+        String sortValue;
+        switch (CardRequestSpecification.normalizeSortBy(sortBy)) {
+            case "client":
+                sortValue = request.getUserOrganization().getUser().getLastName();
+                break;
+            case "organization":
+                sortValue = request.getUserOrganization().getOrganization().getName();
+                break;
+            default:
+                sortValue = request.getCreatedAt().toString();
+        }
+        return new CardRequestCursor(sortValue, request.getId());
+    }
+
+    /**
+     * Кодирует курсор в строку для передачи в параметре запроса
+     */
+    public String encode() {
+        String raw = id + SEPARATOR + sortValue;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Разбирает курсор из параметра запроса. Возвращает null для пустого или поврежденного значения.
+     */
+    public static CardRequestCursor decode(String encoded) {
+        if (encoded == null || encoded.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int separatorIndex = raw.indexOf(SEPARATOR);
+            if (separatorIndex <= 0) {
+                return null;
+            }
+            Long id = Long.valueOf(raw.substring(0, separatorIndex));
+            return new CardRequestCursor(raw.substring(separatorIndex + 1), id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
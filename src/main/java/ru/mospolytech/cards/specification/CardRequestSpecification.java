@@ -6,7 +6,9 @@ import ru.mospolytech.cards.entity.*;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class CardRequestSpecification {
@@ -28,13 +30,13 @@ public class CardRequestSpecification {
 
             // Фильтр по пользователю (клиенту)
             if (userId != null) {
-                Join<CardRequest, UserOrganization> userOrgJoin = root.join("userOrganization");
+                Join<CardRequest, UserOrganization> userOrgJoin = getOrCreateJoin(root, "userOrganization");
                 predicates.add(criteriaBuilder.equal(userOrgJoin.get("user").get("id"), userId));
             }
 
             // Фильтр по организации
             if (organizationId != null) {
-                Join<CardRequest, UserOrganization> userOrgJoin = root.join("userOrganization");
+                Join<CardRequest, UserOrganization> userOrgJoin = getOrCreateJoin(root, "userOrganization");
                 predicates.add(criteriaBuilder.equal(userOrgJoin.get("organization").get("id"), organizationId));
             }
 
@@ -69,6 +71,42 @@ public class CardRequestSpecification {
         };
     }
 
+    /**
+     * Подгружает связанные сущности, отображаемые в списке заявок, в том же запросе (fetch join).
+     * Должна идти первой в цепочке, чтобы filterBy, withSort и afterCursor переиспользовали эти join'ы.
+     */
+    public static Specification<CardRequest> fetchForList() {
+        return (root, query, criteriaBuilder) -> {
+            // В запросе количества fetch join недопустим
+            if (query == null || isCountQuery(query)) {
+                return null;
+            }
+
+            Fetch<CardRequest, UserOrganization> userOrgFetch = root.fetch("userOrganization");
+            userOrgFetch.fetch("user");
+            userOrgFetch.fetch("organization");
+            root.fetch("cardType");
+            root.fetch("status");
+            root.fetch("assignedEmployee", JoinType.LEFT).fetch("role", JoinType.LEFT);
+            return null;
+        };
+    }
+
+    /**
+     * Как fetchForList, плюс отделение - для выгрузки заявок
+     */
+    public static Specification<CardRequest> fetchForExport() {
+        return (root, query, criteriaBuilder) -> {
+            if (query == null || isCountQuery(query)) {
+                return null;
+            }
+
+            fetchForList().toPredicate(root, query, criteriaBuilder);
+            root.fetch("branch");
+            return null;
+        };
+    }
+
     /**
      * Фильтр для менеджера - показывает только свои заявки
      */
@@ -78,7 +116,15 @@ public class CardRequestSpecification {
     }
 
     /**
-     * Добавляет сортировку к спецификации
+     * Заявки с указанными id (порядок результата не задается)
+     */
+    public static Specification<CardRequest> byIds(Collection<Long> ids) {
+        return (root, query, criteriaBuilder) -> root.get("id").in(ids);
+    }
+
+    /**
+     * Добавляет сортировку к спецификации.
+     * Вторым ключом всегда идет id, чтобы порядок был однозначным для постраничного вывода.
      */
     public static Specification<CardRequest> withSort(String sortBy, String sortDirection) {
         return (root, query, criteriaBuilder) -> {
@@ -87,34 +133,136 @@ public class CardRequestSpecification {
             }
 
             // Определяем направление сортировки
-            boolean isAsc = "asc".equalsIgnoreCase(sortDirection);
+            boolean isAsc = isAscending(sortBy, sortDirection);
 
             // Применяем сортировку в зависимости от поля
             Order order;
-            switch (sortBy) {
+            switch (normalizeSortBy(sortBy)) {
                 case "client":
-                    Join<CardRequest, UserOrganization> userOrgJoin = root.join("userOrganization");
-                    Join<UserOrganization, User> userJoin = userOrgJoin.join("user");
+                    Join<CardRequest, UserOrganization> userOrgJoin = getOrCreateJoin(root, "userOrganization");
+                    Join<UserOrganization, User> userJoin = getOrCreateJoin(userOrgJoin, "user");
                     order = isAsc ? criteriaBuilder.asc(userJoin.get("lastName"))
                                   : criteriaBuilder.desc(userJoin.get("lastName"));
                     break;
                 case "organization":
-                    Join<CardRequest, UserOrganization> userOrgJoin2 = root.join("userOrganization");
-                    Join<UserOrganization, Organization> orgJoin = userOrgJoin2.join("organization");
+                    Join<CardRequest, UserOrganization> userOrgJoin2 = getOrCreateJoin(root, "userOrganization");
+                    Join<UserOrganization, Organization> orgJoin = getOrCreateJoin(userOrgJoin2, "organization");
                     order = isAsc ? criteriaBuilder.asc(orgJoin.get("name"))
                                   : criteriaBuilder.desc(orgJoin.get("name"));
                     break;
-                case "createdAt":
+                default:
                     order = isAsc ? criteriaBuilder.asc(root.get("createdAt"))
                                   : criteriaBuilder.desc(root.get("createdAt"));
-                    break;
-                default:
-                    // По умолчанию сортировка по дате создания (DESC)
-                    order = criteriaBuilder.desc(root.get("createdAt"));
             }
 
-            query.orderBy(order);
+            Order idOrder = isAsc ? criteriaBuilder.asc(root.get("id")) : criteriaBuilder.desc(root.get("id"));
+            query.orderBy(order, idOrder);
             return null;
         };
     }
+
+    /**
+     * Условие "после курсора" для keyset-пагинации по паре (ключ сортировки, id).
+     * Должна применяться вместе с withSort с теми же параметрами сортировки.
+     * По индексу (created_at, id) идет только сортировка по дате; при сортировке по клиенту или
+     * организации ключ лежит в связанной таблице, и страница выбирается после соединения и сортировки.
+     */
+    public static Specification<CardRequest> afterCursor(String sortBy, String sortDirection, CardRequestCursor cursor) {
+        return (root, query, criteriaBuilder) -> {
+            if (cursor == null) {
+                return null;
+            }
+
+            boolean isAsc = isAscending(sortBy, sortDirection);
+            Path<Long> idPath = root.get("id");
+
+            switch (normalizeSortBy(sortBy)) {
+                case "client":
+                    Join<CardRequest, UserOrganization> userOrgJoin = getOrCreateJoin(root, "userOrganization");
+                    Join<UserOrganization, User> userJoin = getOrCreateJoin(userOrgJoin, "user");
+                    return keysetPredicate(criteriaBuilder, userJoin.get("lastName"),
+                            cursor.getSortValue(), idPath, cursor.getId(), isAsc);
+                case "organization":
+                    Join<CardRequest, UserOrganization> userOrgJoin2 = getOrCreateJoin(root, "userOrganization");
+                    Join<UserOrganization, Organization> orgJoin = getOrCreateJoin(userOrgJoin2, "organization");
+                    return keysetPredicate(criteriaBuilder, orgJoin.get("name"),
+                            cursor.getSortValue(), idPath, cursor.getId(), isAsc);
+                default:
+                    LocalDateTime createdAt;
+                    try {
+                        createdAt = cursor.getSortValueAsDateTime();
+                    } catch (DateTimeParseException e) {
+                        // Курсор от другой сортировки - начинаем с первой страницы
+                        return null;
+                    }
+                    return keysetPredicate(criteriaBuilder, root.get("createdAt"),
+                            createdAt, idPath, cursor.getId(), isAsc);
+            }
+        };
+    }
+
+    /**
+     * Приводит поле сортировки к одному из поддерживаемых значений
+     */
+    public static String normalizeSortBy(String sortBy) {
+        if ("client".equals(sortBy) || "organization".equals(sortBy)) {
+            return sortBy;
+        }
+        return "createdAt";
+    }
+
+    /**
+     * По умолчанию (неизвестное поле) сортировка по дате создания по убыванию
+     */
+    private static boolean isAscending(String sortBy, String sortDirection) {
+        if (!normalizeSortBy(sortBy).equals(sortBy)) {
+            return false;
+        }
+        return "asc".equalsIgnoreCase(sortDirection);
+    }
+
+    /**
+     * (key, id) > (value, lastId) для ASC и (key, id) < (value, lastId) для DESC.
+     * Дополнительное условие key >= value / key <= value позволяет использовать составной индекс.
+     */
+    private static <Y extends Comparable<? super Y>> Predicate keysetPredicate(
+            CriteriaBuilder criteriaBuilder, Expression<Y> key, Y value,
+            Path<Long> idPath, Long lastId, boolean isAsc) {
+        if (isAsc) {
+            return criteriaBuilder.and(
+                    criteriaBuilder.greaterThanOrEqualTo(key, value),
+                    criteriaBuilder.or(
+                            criteriaBuilder.greaterThan(key, value),
+                            criteriaBuilder.greaterThan(idPath, lastId)));
+        }
+        return criteriaBuilder.and(
+                criteriaBuilder.lessThanOrEqualTo(key, value),
+                criteriaBuilder.or(
+                        criteriaBuilder.lessThan(key, value),
+                        criteriaBuilder.lessThan(idPath, lastId)));
+    }
+
+    private static boolean isCountQuery(CriteriaQuery<?> query) {
+        return Long.class == query.getResultType() || long.class == query.getResultType();
+    }
+
+    /**
+     * Возвращает уже существующий join (в том числе fetch join) по атрибуту или создает новый,
+     * чтобы фильтрация и сортировка не порождали повторных join'ов одной таблицы
+     */
+    @SuppressWarnings("unchecked")
+    private static <X, Y> Join<X, Y> getOrCreateJoin(From<?, X> from, String attribute) {
+        for (Fetch<X, ?> fetch : from.getFetches()) {
+            if (fetch instanceof Join && fetch.getAttribute().getName().equals(attribute)
+                    && fetch.getJoinType() == JoinType.INNER) {
+                return (Join<X, Y>) fetch;
+            }
+        }
+        for (Join<X, ?> join : from.getJoins()) {
+            if (join.getAttribute().getName().equals(attribute) && join.getJoinType() == JoinType.INNER) {
+                return (Join<X, Y>) join;
+            }
+        }
+        return from.join(attribute);
+    }
 }
@@ -0,0 +1,304 @@
+package ru.mospolytech.cards.timeline;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import ru.mospolytech.cards.entity.Employee;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+/**
+ * Единая лента событий заявки и ее карты, от новых к старым.
+ *
+ * Источники (request_history, documents, card_history, card_limit_history) читаются отдельными
+ * запросами по индексам (ключ, время), каждый уже отсортирован по времени и ограничен размером
+ * страницы + 1 с условием keyset после курсора. Потоки сливаются k-way merge через очередь
+ * с приоритетом по текущему событию каждого источника, поэтому страница строится не больше чем
+ * за пять запросов и 4 * (size + 1) строк в памяти независимо от длины истории заявки.
+ * Порядок: время по убыванию, при равном времени - источник (rank), затем id по убыванию.
+ * Для архивной заявки история и документы читаются из архивных таблиц.
+ */
+@Service
+public class RequestTimelineService {
+
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private static final String REQUEST_SQL =
+            "SELECT r.assigned_employee_id, r.is_archived, c.id AS card_id " +
+            "FROM card_requests_all r LEFT JOIN cards c ON c.request_id = r.id WHERE r.id = ?";
+
+    // %1$s - таблица, %2$s - условие keyset; время события - колонка t.<timeColumn>
+    private static final SourceQuery REQUEST_STATUS = new SourceQuery(TimelineEvent.Source.REQUEST_STATUS, "changed_at",
+            "SELECT t.id, t.changed_at AS occurred_at, os.status_name AS old_status, ns.status_name AS new_status, " +
+            "t.change_comment, e.last_name, e.first_name, e.middle_name " +
+            "FROM %1$s t " +
+            "LEFT JOIN request_statuses os ON os.id = t.old_status_id " +
+            "JOIN request_statuses ns ON ns.id = t.new_status_id " +
+            "LEFT JOIN employees e ON e.id = t.changed_by " +
+            "WHERE t.request_id = ?%2$s",
+            rs -> {
+                Map<String, Object> details = new LinkedHashMap<>();
+                details.put("oldStatus", rs.getString("old_status"));
+                details.put("newStatus", rs.getString("new_status"));
+                details.put("comment", rs.getString("change_comment"));
+                return details;
+            });
+
+    private static final SourceQuery DOCUMENT = new SourceQuery(TimelineEvent.Source.DOCUMENT, "uploaded_at",
+            "SELECT t.id, t.uploaded_at AS occurred_at, t.document_type, t.file_name, t.file_size, " +
+            "e.last_name, e.first_name, e.middle_name " +
+            "FROM %1$s t " +
+            "LEFT JOIN employees e ON e.id = t.uploaded_by " +
+            // uploaded_at заполняется при загрузке; строки без времени в ленту не попадают
+            "WHERE t.request_id = ? AND t.uploaded_at IS NOT NULL%2$s",
+            rs -> {
+                Map<String, Object> details = new LinkedHashMap<>();
+                details.put("documentType", rs.getString("document_type"));
+                details.put("fileName", rs.getString("file_name"));
+                details.put("fileSize", rs.getLong("file_size"));
+                return details;
+            });
+
+    private static final SourceQuery CARD_STATUS = new SourceQuery(TimelineEvent.Source.CARD_STATUS, "changed_at",
+            "SELECT t.id, t.changed_at AS occurred_at, os.status_name AS old_status, ns.status_name AS new_status, " +
+            "t.change_reason, e.last_name, e.first_name, e.middle_name " +
+            "FROM %1$s t " +
+            "LEFT JOIN card_statuses os ON os.id = t.old_status_id " +
+            "JOIN card_statuses ns ON ns.id = t.new_status_id " +
+            "LEFT JOIN employees e ON e.id = t.changed_by " +
+            "WHERE t.card_id = ?%2$s",
+            rs -> {
+                Map<String, Object> details = new LinkedHashMap<>();
+                details.put("oldStatus", rs.getString("old_status"));
+                details.put("newStatus", rs.getString("new_status"));
+                details.put("reason", rs.getString("change_reason"));
+                return details;
+            });
+
+    private static final SourceQuery CARD_LIMIT = new SourceQuery(TimelineEvent.Source.CARD_LIMIT, "changed_at",
+            "SELECT t.id, t.changed_at AS occurred_at, t.old_daily_limit, t.new_daily_limit, " +
+            "t.old_monthly_limit, t.new_monthly_limit, t.old_single_transaction_limit, t.new_single_transaction_limit, " +
+            "t.old_atm_daily_limit, t.new_atm_daily_limit, t.change_reason, e.last_name, e.first_name, e.middle_name " +
+            "FROM %1$s t " +
+            "LEFT JOIN employees e ON e.id = t.changed_by " +
+            "WHERE t.card_id = ?%2$s",
+            rs -> {
+                Map<String, Object> details = new LinkedHashMap<>();
+                details.put("oldDailyLimit", rs.getBigDecimal("old_daily_limit"));
+                details.put("newDailyLimit", rs.getBigDecimal("new_daily_limit"));
+                details.put("oldMonthlyLimit", rs.getBigDecimal("old_monthly_limit"));
+                details.put("newMonthlyLimit", rs.getBigDecimal("new_monthly_limit"));
+                details.put("oldSingleTransactionLimit", rs.getBigDecimal("old_single_transaction_limit"));
+                details.put("newSingleTransactionLimit", rs.getBigDecimal("new_single_transaction_limit"));
+                details.put("oldAtmDailyLimit", rs.getBigDecimal("old_atm_daily_limit"));
+                details.put("newAtmDailyLimit", rs.getBigDecimal("new_atm_daily_limit"));
+                details.put("reason", rs.getString("change_reason"));
+                return details;
+            });
+
+    private static final Comparator<TimelineEvent> TIMELINE_ORDER = Comparator
+            .comparing(TimelineEvent::getOccurredAt, Comparator.reverseOrder())
+            .thenComparingInt(event -> event.getSource().getRank())
+            .thenComparing(TimelineEvent::getId, Comparator.reverseOrder());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RequestTimelineService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Страница ленты после курсора (null - с начала).
+     * Пусто, если заявка не найдена или недоступна сотруднику.
+     */
+    public Optional<TimelinePage> getTimeline(Long requestId, TimelineCursor after, int size, Employee employee) {
+        List<RequestRef> found = jdbcTemplate.query(REQUEST_SQL, (rs, rowNum) -> new RequestRef(
+                rs.getObject("assigned_employee_id", Long.class),
+                rs.getBoolean("is_archived"),
+                rs.getObject("card_id", Long.class)), requestId);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        RequestRef request = found.get(0);
+        if (!employee.isAdmin() && !Objects.equals(employee.getId(), request.assignedEmployeeId)) {
+            return Optional.empty();
+        }
+        boolean archived = request.archived;
+        Long cardId = request.cardId;
+
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        List<List<TimelineEvent>> streams = new ArrayList<>();
+        streams.add(REQUEST_STATUS.fetch(jdbcTemplate,
+                archived ? "request_history_archive" : "request_history", requestId, after, limit + 1));
+        streams.add(DOCUMENT.fetch(jdbcTemplate,
+                archived ? "documents_archive" : "documents", requestId, after, limit + 1));
+        if (cardId != null) {
+            streams.add(CARD_STATUS.fetch(jdbcTemplate, "card_history", cardId, after, limit + 1));
+            streams.add(CARD_LIMIT.fetch(jdbcTemplate, "card_limit_history", cardId, after, limit + 1));
+        }
+
+        List<TimelineEvent> events = merge(streams, limit + 1);
+        boolean hasMore = events.size() > limit;
+        if (hasMore) {
+            events = events.subList(0, limit);
+        }
+        String nextCursor = hasMore ? TimelineCursor.of(events.get(events.size() - 1)).encode() : null;
+        return Optional.of(new TimelinePage(events, nextCursor));
+    }
+
+    /**
+     * Слияние отсортированных потоков: берется не больше limit событий
+     */
+    static List<TimelineEvent> merge(List<List<TimelineEvent>> streams, int limit) {
+        PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, streams.size()),
+                (a, b) -> TIMELINE_ORDER.compare(a.current, b.current));
+        for (List<TimelineEvent> stream : streams) {
+            Iterator<TimelineEvent> iterator = stream.iterator();
+            if (iterator.hasNext()) {
+                heads.add(new Head(iterator.next(), iterator));
+            }
+        }
+        List<TimelineEvent> result = new ArrayList<>(limit);
+        while (result.size() < limit && !heads.isEmpty()) {
+            Head head = heads.poll();
+            result.add(head.current);
+            if (head.rest.hasNext()) {
+                head.current = head.rest.next();
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    private static String fullName(ResultSet rs) throws SQLException {
+        String lastName = rs.getString("last_name");
+        if (lastName == null) {
+            return null;
+        }
+        String middleName = rs.getString("middle_name");
+        return lastName + " " + rs.getString("first_name")
+                + (middleName == null || middleName.isEmpty() ? "" : " " + middleName);
+    }
+
+    /**
+     * Заявка: ответственный, признак архива и карта (null, если не выпущена)
+     */
+    private static final class RequestRef {
+
+        private final Long assignedEmployeeId;
+        private final boolean archived;
+        private final Long cardId;
+
+        private RequestRef(Long assignedEmployeeId, boolean archived, Long cardId) {
+            this.assignedEmployeeId = assignedEmployeeId;
+            this.archived = archived;
+            this.cardId = cardId;
+        }
+    }
+
+    /**
+     * Текущее событие потока и его остаток
+     */
+    private static final class Head {
+
+        private TimelineEvent current;
+        private final Iterator<TimelineEvent> rest;
+
+        private Head(TimelineEvent current, Iterator<TimelineEvent> rest) {
+            this.current = current;
+            this.rest = rest;
+        }
+    }
+
+    @FunctionalInterface
+    private interface DetailsMapper {
+
+        Map<String, Object> map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Запрос одного источника ленты
+     */
+    private static final class SourceQuery {
+
+        private final TimelineEvent.Source source;
+        private final String timeColumn;
+        private final String sql;
+        private final DetailsMapper detailsMapper;
+
+        private SourceQuery(TimelineEvent.Source source, String timeColumn, String sql, DetailsMapper detailsMapper) {
+            this.source = source;
+            this.timeColumn = timeColumn;
+            this.sql = sql;
+            this.detailsMapper = detailsMapper;
+        }
+
+        List<TimelineEvent> fetch(JdbcTemplate jdbcTemplate, String table, Long key, TimelineCursor after, int limit) {
+            List<Object> params = new ArrayList<>();
+            params.add(key);
+            String condition = "";
+            if (after != null) {
+                Timestamp at = Timestamp.valueOf(after.getOccurredAt());
+                String column = "t." + timeColumn;
+                int rank = source.getRank();
+                // Событие идет после курсора: раньше по времени, при равном времени - больший rank
+                // или тот же источник и меньший id
+                if (rank > after.getSourceRank()) {
+                    condition = " AND " + column + " <= ?";
+                    params.add(at);
+                } else if (rank < after.getSourceRank()) {
+                    condition = " AND " + column + " < ?";
+                    params.add(at);
+                } else {
+                    condition = " AND (" + column + " < ? OR (" + column + " = ? AND t.id < ?))";
+                    params.add(at);
+                    params.add(at);
+                    params.add(after.getId());
+                }
+            }
+            params.add(limit);
+            RowMapper<TimelineEvent> mapper = (rs, rowNum) -> new TimelineEvent(
+                    source,
+                    rs.getLong("id"),
+                    rs.getTimestamp("occurred_at").toLocalDateTime(),
+                    fullName(rs),
+                    detailsMapper.map(rs));
+            return jdbcTemplate.query(String.format(sql, table, condition)
+                            + " ORDER BY t." + timeColumn + " DESC, t.id DESC LIMIT ?",
+                    mapper, params.toArray());
+        }
+    }
+
+    /**
+     * Страница ленты и курсор следующей страницы (null - страница последняя)
+     */
+    public static class TimelinePage {
+
+        private final List<TimelineEvent> events;
+        private final String nextCursor;
+
+        public TimelinePage(List<TimelineEvent> events, String nextCursor) {
+            this.events = events;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<TimelineEvent> getEvents() {
+            return events;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ru.mospolytech.cards.timeline;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Курсор ленты событий заявки (keyset pagination).
+ * Хранит время, источник и id последнего показанного события.
+ */
+public class TimelineCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final LocalDateTime occurredAt;
+    private final int sourceRank;
+    private final long id;
+
+    public TimelineCursor(LocalDateTime occurredAt, int sourceRank, long id) {
+        this.occurredAt = occurredAt;
+        this.sourceRank = sourceRank;
+        this.id = id;
+    }
+
+    public static TimelineCursor of(TimelineEvent event) {
+        return new TimelineCursor(event.getOccurredAt(), event.getSource().getRank(), event.getId());
+    }
+
+    public LocalDateTime getOccurredAt() {
+        return occurredAt;
+    }
+
+    public int getSourceRank() {
+        return sourceRank;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Кодирует курсор в строку для передачи в параметре запроса
+     */
+    public String encode() {
+        String raw = id + SEPARATOR + sourceRank + SEPARATOR + occurredAt;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Разбирает курсор из параметра запроса. Возвращает null для пустого или поврежденного значения.
+     */
+    public static TimelineCursor decode(String encoded) {
+        if (encoded == null || encoded.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 3);
+            if (parts.length != 3) {
+                return null;
+            }
+            return new TimelineCursor(LocalDateTime.parse(parts[2]), Integer.parseInt(parts[1]), Long.parseLong(parts[0]));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return null;
+        }
+    }
+}
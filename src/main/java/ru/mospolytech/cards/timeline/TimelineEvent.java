@@ -0,0 +1,71 @@
+package ru.mospolytech.cards.timeline;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Событие ленты заявки: смена статуса заявки или карты, изменение лимитов, загрузка документа
+ */
+public class TimelineEvent {
+
+    /**
+     * Источник события. rank упорядочивает события с одинаковым временем.
+     */
+    public enum Source {
+        REQUEST_STATUS(0),
+        DOCUMENT(1),
+        CARD_STATUS(2),
+        CARD_LIMIT(3);
+
+        private final int rank;
+
+        Source(int rank) {
+            this.rank = rank;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+    }
+
+    private final Source source;
+    private final long id;
+    private final LocalDateTime occurredAt;
+    private final String employeeName;
+    private final Map<String, Object> details;
+
+    public TimelineEvent(Source source, long id, LocalDateTime occurredAt, String employeeName,
+                         Map<String, Object> details) {
+        this.source = source;
+        this.id = id;
+        this.occurredAt = occurredAt;
+        this.employeeName = employeeName;
+        this.details = details;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * id строки в таблице источника
+     */
+    public long getId() {
+        return id;
+    }
+
+    public LocalDateTime getOccurredAt() {
+        return occurredAt;
+    }
+
+    public String getEmployeeName() {
+        return employeeName;
+    }
+
+    /**
+     * Поля, зависящие от источника (статусы, лимиты, имя файла)
+     */
+    public Map<String, Object> getDetails() {
+        return details;
+    }
+}
@@ -5,6 +5,63 @@
 
 SET search_path TO public;
 
+-- Триграммный поиск (поиск клиентов, организаций и сотрудников по фрагменту)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- Журналы (request_history, card_history, card_limit_history, access_logs) секционированы по месяцам.
+-- Секция <таблица>_pYYYYMM; будущие секции заранее создает приложение (HistoryPartitionMaintenance),
+-- старые по истечении срока хранения отсоединяются и переносятся в схему history_archive.
+-- Строки без помесячной секции (обслуживание отстало или остановлено, загрузка старых данных) попадают
+-- в секцию <таблица>_default, а не обрывают вставку вместе с триггерами и бизнес-транзакцией;
+-- обслуживание переносит их в помесячные секции (rehome_default_partition).
+CREATE SCHEMA IF NOT EXISTS history_archive;
+
+CREATE OR REPLACE FUNCTION create_monthly_partitions(p_parent TEXT, p_from DATE, p_to DATE) RETURNS INTEGER AS
+$$
+DECLARE
+    v_month   DATE := date_trunc('month', p_from)::DATE;
+    v_created INTEGER := 0;
+BEGIN
+    WHILE v_month < p_to
+        LOOP
+            IF to_regclass(format('%I', p_parent || '_p' || to_char(v_month, 'YYYYMM'))) IS NULL THEN
+                EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                               p_parent || '_p' || to_char(v_month, 'YYYYMM'), p_parent,
+                               v_month, (v_month + INTERVAL '1 month')::DATE);
+                v_created := v_created + 1;
+            END IF;
+            v_month := (v_month + INTERVAL '1 month')::DATE;
+        END LOOP;
+    RETURN v_created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Перенести строки из секции по умолчанию в помесячные секции, создав недостающие.
+-- Пока в секции по умолчанию лежат строки, пересекающиеся с новой секцией, создать ее нельзя,
+-- поэтому строки сначала забираются во временную таблицу. Возвращает количество перенесенных строк.
+CREATE OR REPLACE FUNCTION rehome_default_partition(p_parent TEXT, p_column TEXT) RETURNS INTEGER AS
+$$
+DECLARE
+    v_from  DATE;
+    v_to    DATE;
+    v_moved INTEGER;
+BEGIN
+    EXECUTE format('SELECT min(%I)::DATE, max(%I)::DATE FROM %I', p_column, p_column, p_parent || '_default')
+        INTO v_from, v_to;
+    IF v_from IS NULL THEN
+        RETURN 0;
+    END IF;
+    EXECUTE format('CREATE TEMP TABLE rehome_rows (LIKE %I) ON COMMIT DROP', p_parent);
+    EXECUTE format('WITH moved AS (DELETE FROM %I RETURNING *) INSERT INTO rehome_rows SELECT * FROM moved',
+                   p_parent || '_default');
+    GET DIAGNOSTICS v_moved = ROW_COUNT;
+    PERFORM create_monthly_partitions(p_parent, v_from, v_to + 1);
+    EXECUTE format('INSERT INTO %I SELECT * FROM rehome_rows', p_parent);
+    DROP TABLE rehome_rows;
+    RETURN v_moved;
+END;
+$$ LANGUAGE plpgsql;
+
 -- =====================================================
 -- 1. СПРАВОЧНЫЕ ТАБЛИЦЫ (Справочники)
 -- =====================================================
@@ -108,6 +165,9 @@ COMMENT ON TABLE employees IS 'Сотрудники банка, работающ
 CREATE INDEX idx_employees_email ON employees (email);
 CREATE INDEX idx_employees_role_id ON employees (role_id);
 CREATE INDEX idx_employees_branch_id ON employees (branch_id);
+CREATE INDEX idx_employees_full_name_trgm ON employees
+    USING GIN (lower(last_name || ' ' || first_name || ' ' || coalesce(middle_name, '')) gin_trgm_ops);
+CREATE INDEX idx_employees_email_prefix ON employees (lower(email) text_pattern_ops);
 
 -- Таблица: organizations (Организации-клиенты)
 CREATE TABLE organizations
@@ -134,6 +194,8 @@ CREATE TABLE organizations
 COMMENT ON TABLE organizations IS 'Организации-клиенты банка';
 
 CREATE INDEX idx_organizations_inn ON organizations (inn);
+CREATE INDEX idx_organizations_name_trgm ON organizations USING GIN (lower(name) gin_trgm_ops);
+CREATE INDEX idx_organizations_inn_prefix ON organizations (inn text_pattern_ops);
 
 -- Таблица: users (Физические лица - потенциальные владельцы карт)
 CREATE TABLE users
@@ -165,6 +227,10 @@ COMMENT ON TABLE users IS 'Физические лица - потенциаль
 
 CREATE INDEX idx_users_passport ON users (passport_series, passport_number);
 CREATE INDEX idx_users_email ON users (email);
+CREATE INDEX idx_users_full_name_trgm ON users
+    USING GIN (lower(last_name || ' ' || first_name || ' ' || coalesce(middle_name, '')) gin_trgm_ops);
+CREATE INDEX idx_users_phone_prefix ON users (phone text_pattern_ops);
+CREATE INDEX idx_users_passport_prefix ON users ((passport_series || passport_number) text_pattern_ops);
 
 -- Таблица: user_organizations (Связь пользователей с организациями)
 CREATE TABLE user_organizations
@@ -239,8 +305,242 @@ COMMENT ON COLUMN card_requests.status_id IS '⚠️ Внешний ключ н
 CREATE INDEX idx_requests_user_org_id ON card_requests (user_organization_id);
 CREATE INDEX idx_requests_status_id ON card_requests (status_id);
 CREATE INDEX idx_requests_assigned_employee ON card_requests (assigned_employee_id);
-CREATE INDEX idx_requests_created_at ON card_requests (created_at);
+-- Keyset-пагинация списка заявок по дате создания (CardRequestSpecification.afterCursor). Сортировки по клиенту
+-- и организации идут по столбцам связанных таблиц, и индекс их не обслуживает: подходящие заявки соединяются и сортируются
+CREATE INDEX idx_requests_created_at ON card_requests (created_at, id);
+CREATE INDEX idx_requests_assigned_created_at ON card_requests (assigned_employee_id, created_at, id);
 CREATE INDEX idx_requests_card_type_id ON card_requests (card_type_id);
+-- Отбор закрытых заявок для переноса в архив (RequestArchiveService)
+CREATE INDEX idx_requests_status_updated_at ON card_requests (status_id, updated_at, id);
+
+-- Таблица: card_request_counters (Счетчики заявок для дашборда)
+-- Поддерживается триггером на card_requests, архивные заявки не учитываются. Каждый счетчик
+-- разбит на несколько строк (slot), чтобы параллельные транзакции не ждали блокировку одной
+-- строки; значение - сумма по слотам.
+--   dimension = 'status'       - key_id = status_id
+--   dimension = 'employee'     - key_id = assigned_employee_id (0 - не назначен)
+--   dimension = 'organization' - key_id = organization_id (через user_organizations)
+CREATE TABLE card_request_counters
+(
+    dimension VARCHAR(20) NOT NULL,
+    key_id    INTEGER     NOT NULL,
+    slot      SMALLINT    NOT NULL,
+    cnt       BIGINT      NOT NULL DEFAULT 0,
+    PRIMARY KEY (dimension, key_id, slot),
+    CONSTRAINT check_counter_dimension CHECK (dimension IN ('status', 'employee', 'organization'))
+);
+
+COMMENT ON TABLE card_request_counters IS 'Количество заявок по статусам, ответственным и организациям';
+
+CREATE OR REPLACE FUNCTION bump_card_request_counter(p_dimension VARCHAR, p_key_id INTEGER, p_delta BIGINT)
+    RETURNS VOID AS
+$$
+BEGIN
+    INSERT INTO card_request_counters (dimension, key_id, slot, cnt)
+    VALUES (p_dimension, COALESCE(p_key_id, 0), (pg_backend_pid() % 8)::SMALLINT, p_delta)
+    ON CONFLICT (dimension, key_id, slot) DO UPDATE SET cnt = card_request_counters.cnt + EXCLUDED.cnt;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION card_requests_maintain_counters() RETURNS TRIGGER AS
+$$
+DECLARE
+    old_org_id INTEGER;
+    new_org_id INTEGER;
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        SELECT organization_id INTO old_org_id FROM user_organizations WHERE id = OLD.user_organization_id;
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        SELECT organization_id INTO new_org_id FROM user_organizations WHERE id = NEW.user_organization_id;
+    END IF;
+
+    IF TG_OP = 'UPDATE' THEN
+        IF OLD.status_id IS DISTINCT FROM NEW.status_id THEN
+            PERFORM bump_card_request_counter('status', OLD.status_id, -1);
+            PERFORM bump_card_request_counter('status', NEW.status_id, 1);
+        END IF;
+        IF OLD.assigned_employee_id IS DISTINCT FROM NEW.assigned_employee_id THEN
+            PERFORM bump_card_request_counter('employee', OLD.assigned_employee_id, -1);
+            PERFORM bump_card_request_counter('employee', NEW.assigned_employee_id, 1);
+        END IF;
+        IF old_org_id IS DISTINCT FROM new_org_id THEN
+            PERFORM bump_card_request_counter('organization', old_org_id, -1);
+            PERFORM bump_card_request_counter('organization', new_org_id, 1);
+        END IF;
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP = 'INSERT' THEN
+        PERFORM bump_card_request_counter('status', NEW.status_id, 1);
+        PERFORM bump_card_request_counter('employee', NEW.assigned_employee_id, 1);
+        PERFORM bump_card_request_counter('organization', new_org_id, 1);
+    ELSE
+        -- В том числе перенос в архив: счетчики, как и список заявок, учитывают только рабочие заявки
+        PERFORM bump_card_request_counter('status', OLD.status_id, -1);
+        PERFORM bump_card_request_counter('employee', OLD.assigned_employee_id, -1);
+        PERFORM bump_card_request_counter('organization', old_org_id, -1);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_card_requests_counters
+    AFTER INSERT OR DELETE OR UPDATE OF status_id, assigned_employee_id, user_organization_id ON card_requests
+    FOR EACH ROW EXECUTE FUNCTION card_requests_maintain_counters();
+
+-- Полный пересчет счетчиков (например, после ручных правок данных с отключенным триггером)
+CREATE OR REPLACE FUNCTION rebuild_card_request_counters() RETURNS VOID AS
+$$
+BEGIN
+    LOCK TABLE card_requests IN SHARE MODE;
+    DELETE FROM card_request_counters;
+    INSERT INTO card_request_counters (dimension, key_id, slot, cnt)
+    SELECT 'status', status_id, 0, COUNT(*) FROM card_requests GROUP BY status_id;
+    INSERT INTO card_request_counters (dimension, key_id, slot, cnt)
+    SELECT 'employee', COALESCE(assigned_employee_id, 0), 0, COUNT(*) FROM card_requests GROUP BY 2;
+    INSERT INTO card_request_counters (dimension, key_id, slot, cnt)
+    SELECT 'organization', uo.organization_id, 0, COUNT(*)
+    FROM card_requests r
+             JOIN user_organizations uo ON uo.id = r.user_organization_id
+    GROUP BY uo.organization_id;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Таблица: request_number_counters (Счетчики номеров заявок по дням)
+-- Узлы приложения резервируют блоки номеров атомарным UPSERT (см. RequestNumberAllocator)
+CREATE TABLE request_number_counters
+(
+    counter_date DATE PRIMARY KEY,
+    last_value   BIGINT NOT NULL,
+    CONSTRAINT check_counter_last_value_positive CHECK (last_value > 0)
+);
+
+COMMENT ON TABLE request_number_counters IS 'Последний выданный номер заявки за день';
+
+-- Таблица: card_request_search (Полнотекстовый поиск заявок)
+-- Денормализованный поисковый документ по заявке: номер заявки и ИНН (вес A), ФИО клиента и
+-- название организации (вес B), комментарий (вес C). Конфигурация 'simple' - без стемминга,
+-- чтобы фамилии и названия искались по префиксу как есть. Поддерживается триггерами на
+-- card_requests, users, organizations и user_organizations.
+CREATE TABLE card_request_search
+(
+    request_id     INTEGER PRIMARY KEY,
+    request_number VARCHAR(50) NOT NULL,
+    document       TSVECTOR    NOT NULL,
+    CONSTRAINT fk_search_request FOREIGN KEY (request_id)
+        REFERENCES card_requests (id) ON DELETE CASCADE
+);
+
+COMMENT ON TABLE card_request_search IS 'Поисковые документы заявок (tsvector) для полнотекстового поиска';
+
+CREATE INDEX idx_card_request_search_document ON card_request_search USING GIN (document);
+-- Для поиска по произвольному фрагменту номера заявки (LIKE '%...%')
+CREATE INDEX idx_card_request_search_number_trgm ON card_request_search
+    USING GIN (lower(request_number) gin_trgm_ops);
+
+CREATE OR REPLACE VIEW card_request_search_source AS
+SELECT r.id AS request_id,
+       r.request_number,
+       setweight(to_tsvector('simple', r.request_number || ' ' || o.inn), 'A') ||
+       setweight(to_tsvector('simple', u.last_name || ' ' || u.first_name || ' ' ||
+                                       coalesce(u.middle_name, '') || ' ' || o.name), 'B') ||
+       setweight(to_tsvector('simple', coalesce(r.comments, '')), 'C') AS document
+FROM card_requests r
+         JOIN user_organizations uo ON uo.id = r.user_organization_id
+         JOIN users u ON u.id = uo.user_id
+         JOIN organizations o ON o.id = uo.organization_id;
+
+CREATE OR REPLACE FUNCTION refresh_card_request_search(p_request_ids INTEGER[]) RETURNS VOID AS
+$$
+BEGIN
+    INSERT INTO card_request_search (request_id, request_number, document)
+    SELECT request_id, request_number, document
+    FROM card_request_search_source
+    WHERE request_id = ANY (p_request_ids)
+    ON CONFLICT (request_id) DO UPDATE
+        SET request_number = EXCLUDED.request_number,
+            document       = EXCLUDED.document;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION card_requests_maintain_search() RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_card_request_search(ARRAY [NEW.id]);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Удаление заявки удаляет документ каскадно
+CREATE TRIGGER trg_card_requests_search
+    AFTER INSERT OR UPDATE OF request_number, comments, user_organization_id ON card_requests
+    FOR EACH ROW EXECUTE FUNCTION card_requests_maintain_search();
+
+CREATE OR REPLACE FUNCTION users_maintain_search() RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_card_request_search(ARRAY(
+            SELECT r.id
+            FROM card_requests r
+                     JOIN user_organizations uo ON uo.id = r.user_organization_id
+            WHERE uo.user_id = NEW.id));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_users_search
+    AFTER UPDATE OF last_name, first_name, middle_name ON users
+    FOR EACH ROW
+    WHEN (OLD.last_name IS DISTINCT FROM NEW.last_name
+        OR OLD.first_name IS DISTINCT FROM NEW.first_name
+        OR OLD.middle_name IS DISTINCT FROM NEW.middle_name)
+EXECUTE FUNCTION users_maintain_search();
+
+CREATE OR REPLACE FUNCTION organizations_maintain_search() RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_card_request_search(ARRAY(
+            SELECT r.id
+            FROM card_requests r
+                     JOIN user_organizations uo ON uo.id = r.user_organization_id
+            WHERE uo.organization_id = NEW.id));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_organizations_search
+    AFTER UPDATE OF name, inn ON organizations
+    FOR EACH ROW
+    WHEN (OLD.name IS DISTINCT FROM NEW.name OR OLD.inn IS DISTINCT FROM NEW.inn)
+EXECUTE FUNCTION organizations_maintain_search();
+
+CREATE OR REPLACE FUNCTION user_organizations_maintain_search() RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_card_request_search(ARRAY(
+            SELECT id FROM card_requests WHERE user_organization_id = NEW.id));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_user_organizations_search
+    AFTER UPDATE OF user_id, organization_id ON user_organizations
+    FOR EACH ROW
+    WHEN (OLD.user_id IS DISTINCT FROM NEW.user_id OR OLD.organization_id IS DISTINCT FROM NEW.organization_id)
+EXECUTE FUNCTION user_organizations_maintain_search();
+
+-- Полное перестроение поисковых документов (первичное заполнение или правки с отключенными триггерами)
+CREATE OR REPLACE FUNCTION rebuild_card_request_search() RETURNS VOID AS
+$$
+BEGIN
+    LOCK TABLE card_requests IN SHARE MODE;
+    DELETE FROM card_request_search;
+    INSERT INTO card_request_search (request_id, request_number, document)
+    SELECT request_id, request_number, document
+    FROM card_request_search_source;
+END;
+$$ LANGUAGE plpgsql;
 
 -- Таблица: cards (Выпущенные карты)
 -- 🔗 СВЯЗИ:
@@ -260,8 +560,8 @@ CREATE TABLE cards
     cvv_hash        VARCHAR(255) NOT NULL,
     is_active       BOOLEAN      NOT NULL DEFAULT TRUE,
     created_at      TIMESTAMP             DEFAULT CURRENT_TIMESTAMP,
-    CONSTRAINT fk_card_request FOREIGN KEY (request_id)
-        REFERENCES card_requests (id) ON DELETE RESTRICT,
+    -- request_id ссылается на card_requests или card_requests_archive (заявка выпущенной карты
+    -- уходит в архив, карта остается), связь проверяет триггер trg_cards_check_request
     CONSTRAINT fk_card_type FOREIGN KEY (card_type_id)
         REFERENCES card_types (id) ON DELETE RESTRICT,
     -- ⚠️ ВАЖНАЯ СВЯЗЬ #2: cards → card_statuses
@@ -280,11 +580,17 @@ CREATE INDEX idx_cards_request_id ON cards (request_id);
 CREATE INDEX idx_cards_card_number ON cards (card_number);
 CREATE INDEX idx_cards_status_id ON cards (status_id);
 
+-- Последовательность номеров счетов для номеров карт (см. CardNumberGenerator):
+-- номер карты = BIN + перемешанное значение последовательности (9 цифр) + контрольная цифра Луна
+CREATE SEQUENCE card_account_number_seq MINVALUE 1 MAXVALUE 999999999 NO CYCLE;
+
 -- Таблица: card_limits (Лимиты карт)
+-- Одна строка на карту: авторизация (CardAuthorizationService) и CardLimitRepository.findByCardId
+-- на это рассчитывают
 CREATE TABLE card_limits
 (
     id                       SERIAL PRIMARY KEY,
-    card_id                  INTEGER        NOT NULL,
+    card_id                  INTEGER        NOT NULL UNIQUE,
     daily_limit              DECIMAL(15, 2) NOT NULL,
     monthly_limit            DECIMAL(15, 2) NOT NULL,
     single_transaction_limit DECIMAL(15, 2) NOT NULL,
@@ -304,7 +610,42 @@ CREATE TABLE card_limits
 
 COMMENT ON TABLE card_limits IS 'Лимиты операций по картам';
 
-CREATE INDEX idx_card_limits_card_id ON card_limits (card_id);
+-- Таблица: organization_limits (Общие лимиты расходов организации)
+-- Действуют поверх card_limits на сумму операций по всем картам организации
+-- (иерархия проверки: карта -> держатель (user_organization) -> организация)
+CREATE TABLE organization_limits
+(
+    organization_id INTEGER PRIMARY KEY,
+    daily_limit     DECIMAL(15, 2) NOT NULL,
+    monthly_limit   DECIMAL(15, 2) NOT NULL,
+    currency        VARCHAR(3)     NOT NULL DEFAULT 'RUB',
+    updated_at      TIMESTAMP               DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT fk_org_limit_organization FOREIGN KEY (organization_id)
+        REFERENCES organizations (id) ON DELETE CASCADE,
+    CONSTRAINT check_org_daily_limit_positive CHECK (daily_limit > 0),
+    CONSTRAINT check_org_daily_less_monthly CHECK (daily_limit <= monthly_limit),
+    CONSTRAINT check_org_limit_currency_length CHECK (LENGTH(currency) = 3)
+);
+
+COMMENT ON TABLE organization_limits IS 'Общие лимиты расходов по всем картам организации';
+
+-- Таблица: user_organization_limits (Общие лимиты расходов держателя)
+-- Сумма операций по всем картам сотрудника организации
+CREATE TABLE user_organization_limits
+(
+    user_organization_id INTEGER PRIMARY KEY,
+    daily_limit          DECIMAL(15, 2) NOT NULL,
+    monthly_limit        DECIMAL(15, 2) NOT NULL,
+    currency             VARCHAR(3)     NOT NULL DEFAULT 'RUB',
+    updated_at           TIMESTAMP               DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT fk_user_org_limit_user_org FOREIGN KEY (user_organization_id)
+        REFERENCES user_organizations (id) ON DELETE CASCADE,
+    CONSTRAINT check_user_org_daily_limit_positive CHECK (daily_limit > 0),
+    CONSTRAINT check_user_org_daily_less_monthly CHECK (daily_limit <= monthly_limit),
+    CONSTRAINT check_user_org_limit_currency_length CHECK (LENGTH(currency) = 3)
+);
+
+COMMENT ON TABLE user_organization_limits IS 'Общие лимиты расходов по всем картам держателя';
 
 -- Таблица: card_type_limit_templates (Шаблоны лимитов для типов карт)
 CREATE TABLE card_type_limit_templates
@@ -338,7 +679,7 @@ CREATE INDEX idx_card_type_limit_templates_is_default ON card_type_limit_templat
 -- Таблица: card_limit_history (История изменений лимитов карт)
 CREATE TABLE card_limit_history
 (
-    id                           SERIAL PRIMARY KEY,
+    id                           SERIAL,
     card_limit_id                INTEGER        NOT NULL,
     card_id                      INTEGER        NOT NULL,
     old_daily_limit              DECIMAL(15, 2),
@@ -351,20 +692,27 @@ CREATE TABLE card_limit_history
     new_atm_daily_limit          DECIMAL(15, 2),
     changed_by                   INTEGER        NOT NULL,
     change_reason                TEXT,
-    changed_at                   TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    changed_at                   TIMESTAMP      NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, changed_at),
     CONSTRAINT fk_limit_history_card_limit FOREIGN KEY (card_limit_id)
         REFERENCES card_limits (id) ON DELETE CASCADE,
     CONSTRAINT fk_limit_history_card FOREIGN KEY (card_id)
         REFERENCES cards (id) ON DELETE CASCADE,
     CONSTRAINT fk_limit_history_changed_by FOREIGN KEY (changed_by)
         REFERENCES employees (id) ON DELETE RESTRICT
-);
+) PARTITION BY RANGE (changed_at);
 
-COMMENT ON TABLE card_limit_history IS 'История изменений лимитов карт (аудит)';
+COMMENT ON TABLE card_limit_history IS 'История изменений лимитов карт (аудит), секции по месяцам';
 
-CREATE INDEX idx_card_limit_history_card_limit_id ON card_limit_history (card_limit_id);
-CREATE INDEX idx_card_limit_history_card_id ON card_limit_history (card_id);
-CREATE INDEX idx_card_limit_history_changed_at ON card_limit_history (changed_at);
+-- История читается по карте/лимиту в порядке changed_at DESC
+CREATE INDEX idx_card_limit_history_card_limit_id ON card_limit_history (card_limit_id, changed_at);
+CREATE INDEX idx_card_limit_history_card_id ON card_limit_history (card_id, changed_at);
+-- Строки пишутся в порядке времени, BRIN на порядки меньше B-дерева
+CREATE INDEX idx_card_limit_history_changed_at ON card_limit_history USING BRIN (changed_at);
+
+SELECT create_monthly_partitions('card_limit_history', date_trunc('month', CURRENT_DATE)::DATE,
+                                 (date_trunc('month', CURRENT_DATE) + INTERVAL '4 months')::DATE);
+CREATE TABLE card_limit_history_default PARTITION OF card_limit_history DEFAULT;
 
 -- =====================================================
 -- 4. ТАБЛИЦЫ ДОКУМЕНТОВ И ИСТОРИИ
@@ -380,6 +728,11 @@ CREATE TABLE documents
     file_name     VARCHAR(255) NOT NULL,
     file_path     TEXT         NOT NULL,
     file_size     INTEGER      NOT NULL,
+    content_hash  VARCHAR(64),            -- SHA-256 содержимого, ключ файла в хранилище
+    content_type  VARCHAR(100),
+    page_count     INTEGER,               -- заполняются фоновой обработкой (document_jobs)
+    preview_path   TEXT,
+    thumbnail_path TEXT,
     uploaded_by   INTEGER      NOT NULL,
     uploaded_at   TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     -- ⚠️ ВАЖНАЯ СВЯЗЬ #3: documents → card_requests
@@ -395,8 +748,48 @@ CREATE TABLE documents
 
 COMMENT ON TABLE documents IS 'Скан-копии документов к заявкам';
 COMMENT ON COLUMN documents.request_id IS '⚠️ Внешний ключ на card_requests - СВЯЗЬ УСТАНОВЛЕНА';
+COMMENT ON COLUMN documents.file_path IS 'Путь относительно каталога хранилища документов (sha256/ab/cd/<хеш>)';
 
 CREATE INDEX idx_documents_request_id ON documents (request_id);
+CREATE INDEX idx_documents_content_hash ON documents (content_hash);
+
+-- Таблица: document_jobs (Очередь фоновой обработки документов: превью, миниатюры, число страниц)
+-- Задание создается триггером при загрузке документа и выбирается обработчиками с FOR UPDATE SKIP LOCKED
+CREATE TABLE document_jobs
+(
+    id              BIGSERIAL PRIMARY KEY,
+    document_id     INTEGER     NOT NULL,
+    status          VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    attempts        INTEGER     NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP   NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    locked_at       TIMESTAMP,
+    last_error      TEXT,
+    created_at      TIMESTAMP            DEFAULT CURRENT_TIMESTAMP,
+    updated_at      TIMESTAMP            DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT fk_document_job_document FOREIGN KEY (document_id)
+        REFERENCES documents (id) ON DELETE CASCADE,
+    CONSTRAINT check_document_job_status CHECK (status IN ('PENDING', 'RUNNING', 'DONE', 'FAILED'))
+);
+
+COMMENT ON TABLE document_jobs IS 'Очередь фоновой обработки загруженных документов';
+
+CREATE INDEX idx_document_jobs_pending ON document_jobs (next_attempt_at, id) WHERE status = 'PENDING';
+CREATE INDEX idx_document_jobs_document_id ON document_jobs (document_id);
+
+CREATE OR REPLACE FUNCTION enqueue_document_processing() RETURNS TRIGGER AS
+$$
+BEGIN
+    INSERT INTO document_jobs (document_id) VALUES (NEW.id);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Документы, загруженные до появления хранилища (без content_hash), не обрабатываются
+CREATE TRIGGER trg_documents_enqueue_processing
+    AFTER INSERT ON documents
+    FOR EACH ROW
+    WHEN (NEW.content_hash IS NOT NULL)
+EXECUTE FUNCTION enqueue_document_processing();
 
 -- Таблица: request_history (История изменений заявок)
 -- 🔗 СВЯЗИ:
@@ -406,13 +799,14 @@ CREATE INDEX idx_documents_request_id ON documents (request_id);
 --   4. changed_by → employees(id)
 CREATE TABLE request_history
 (
-    id             SERIAL PRIMARY KEY,
+    id             SERIAL,
     request_id     INTEGER NOT NULL,  -- ⚠️ Связь с card_requests
     old_status_id  INTEGER,
     new_status_id  INTEGER NOT NULL,
     changed_by     INTEGER NOT NULL,
     change_comment TEXT,
-    changed_at     TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    changed_at     TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, changed_at),
     -- ⚠️ ВАЖНАЯ СВЯЗЬ #4: request_history → card_requests
     CONSTRAINT fk_req_history_request FOREIGN KEY (request_id)
         REFERENCES card_requests (id) ON DELETE CASCADE,
@@ -422,24 +816,29 @@ CREATE TABLE request_history
         REFERENCES request_statuses (id) ON DELETE RESTRICT,
     CONSTRAINT fk_req_history_changed_by FOREIGN KEY (changed_by)
         REFERENCES employees (id) ON DELETE RESTRICT
-);
+) PARTITION BY RANGE (changed_at);
 
-COMMENT ON TABLE request_history IS 'История изменений статусов заявок (аудит)';
+COMMENT ON TABLE request_history IS 'История изменений статусов заявок (аудит), секции по месяцам';
 COMMENT ON COLUMN request_history.request_id IS '⚠️ Внешний ключ на card_requests - СВЯЗЬ УСТАНОВЛЕНА';
 
-CREATE INDEX idx_req_history_request_id ON request_history (request_id);
-CREATE INDEX idx_req_history_changed_at ON request_history (changed_at);
+CREATE INDEX idx_req_history_request_id ON request_history (request_id, changed_at);
+CREATE INDEX idx_req_history_changed_at ON request_history USING BRIN (changed_at);
+
+SELECT create_monthly_partitions('request_history', date_trunc('month', CURRENT_DATE)::DATE,
+                                 (date_trunc('month', CURRENT_DATE) + INTERVAL '4 months')::DATE);
+CREATE TABLE request_history_default PARTITION OF request_history DEFAULT;
 
 -- Таблица: card_history (История изменений карт)
 CREATE TABLE card_history
 (
-    id            SERIAL PRIMARY KEY,
+    id            SERIAL,
     card_id       INTEGER NOT NULL,
     old_status_id INTEGER,
     new_status_id INTEGER NOT NULL,
     changed_by    INTEGER NOT NULL,
     change_reason TEXT,
-    changed_at    TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    changed_at    TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, changed_at),
     CONSTRAINT fk_card_history_card FOREIGN KEY (card_id)
         REFERENCES cards (id) ON DELETE CASCADE,
     CONSTRAINT fk_card_history_old_status FOREIGN KEY (old_status_id)
@@ -448,33 +847,161 @@ CREATE TABLE card_history
         REFERENCES card_statuses (id) ON DELETE RESTRICT,
     CONSTRAINT fk_card_history_changed_by FOREIGN KEY (changed_by)
         REFERENCES employees (id) ON DELETE RESTRICT
-);
+) PARTITION BY RANGE (changed_at);
+
+COMMENT ON TABLE card_history IS 'История изменений статусов карт (аудит), секции по месяцам';
 
-COMMENT ON TABLE card_history IS 'История изменений статусов карт (аудит)';
+CREATE INDEX idx_card_history_card_id ON card_history (card_id, changed_at);
+CREATE INDEX idx_card_history_changed_at ON card_history USING BRIN (changed_at);
 
-CREATE INDEX idx_card_history_card_id ON card_history (card_id);
-CREATE INDEX idx_card_history_changed_at ON card_history (changed_at);
+SELECT create_monthly_partitions('card_history', date_trunc('month', CURRENT_DATE)::DATE,
+                                 (date_trunc('month', CURRENT_DATE) + INTERVAL '4 months')::DATE);
+CREATE TABLE card_history_default PARTITION OF card_history DEFAULT;
 
 -- Таблица: access_logs (Логи доступа)
 CREATE TABLE access_logs
 (
-    id            SERIAL PRIMARY KEY,
+    id            SERIAL,
     employee_id   INTEGER      NOT NULL,
-    login_time    TIMESTAMP             DEFAULT CURRENT_TIMESTAMP,
+    login_time    TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
     ip_address    VARCHAR(45)  NOT NULL,
     user_agent    TEXT,
     action        VARCHAR(100) NOT NULL,
     is_successful BOOLEAN      NOT NULL DEFAULT TRUE,
+    PRIMARY KEY (id, login_time),
     CONSTRAINT fk_access_log_employee FOREIGN KEY (employee_id)
         REFERENCES employees (id) ON DELETE CASCADE,
     CONSTRAINT check_ip_address CHECK (ip_address <> ''),
     CONSTRAINT check_action CHECK (action <> '')
-    );
+    ) PARTITION BY RANGE (login_time);
+
+COMMENT ON TABLE access_logs IS 'Журнал входов сотрудников в систему, секции по месяцам';
+
+CREATE INDEX idx_access_logs_employee_id ON access_logs (employee_id, login_time);
+CREATE INDEX idx_access_logs_login_time ON access_logs USING BRIN (login_time);
+CREATE INDEX idx_access_logs_failed ON access_logs (login_time) WHERE is_successful = FALSE;
+
+SELECT create_monthly_partitions('access_logs', date_trunc('month', CURRENT_DATE)::DATE,
+                                 (date_trunc('month', CURRENT_DATE) + INTERVAL '4 months')::DATE);
+CREATE TABLE access_logs_default PARTITION OF access_logs DEFAULT;
+
+-- =====================================================
+-- 5. АРХИВ ЗАКРЫТЫХ ЗАЯВОК
+-- =====================================================
+
+-- Выпущенные и отклоненные заявки старше срока хранения переносятся сюда пачками
+-- (RequestArchiveService) вместе с историей и описаниями документов; файлы документов
+-- остаются в хранилище. Колонки повторяют рабочие таблицы в том же порядке (LIKE),
+-- изменения рабочих таблиц нужно повторять в архивных.
+CREATE TABLE card_requests_archive
+(
+    LIKE card_requests INCLUDING CONSTRAINTS,
+    archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id)
+);
+
+COMMENT ON TABLE card_requests_archive IS 'Архив закрытых заявок (только чтение)';
+
+CREATE UNIQUE INDEX idx_requests_archive_number ON card_requests_archive (request_number);
+CREATE INDEX idx_requests_archive_user_org_id ON card_requests_archive (user_organization_id);
+-- Список архива менеджера (RequestArchiveService.findArchivedPage)
+CREATE INDEX idx_requests_archive_employee ON card_requests_archive (assigned_employee_id, id);
+
+CREATE TABLE request_history_archive
+(
+    LIKE request_history INCLUDING CONSTRAINTS,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_req_history_archive_request_id ON request_history_archive (request_id, changed_at);
+
+CREATE TABLE documents_archive
+(
+    LIKE documents INCLUDING CONSTRAINTS,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_documents_archive_request_id ON documents_archive (request_id);
+
+-- Все заявки, рабочие и архивные (для связей карт с заявками)
+CREATE OR REPLACE VIEW card_requests_all AS
+SELECT id, user_organization_id, card_type_id, branch_id, status_id, assigned_employee_id,
+       request_number, comments, created_at, updated_at, FALSE AS is_archived
+FROM card_requests
+UNION ALL
+SELECT id, user_organization_id, card_type_id, branch_id, status_id, assigned_employee_id,
+       request_number, comments, created_at, updated_at, TRUE AS is_archived
+FROM card_requests_archive;
+
+-- Замена внешнего ключа cards.request_id: заявка должна быть в рабочей или архивной таблице
+CREATE OR REPLACE FUNCTION cards_check_request() RETURNS TRIGGER AS
+$$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM card_requests WHERE id = NEW.request_id)
+        AND NOT EXISTS (SELECT 1 FROM card_requests_archive WHERE id = NEW.request_id) THEN
+        RAISE foreign_key_violation USING MESSAGE = 'Заявка ' || NEW.request_id || ' не найдена';
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE CONSTRAINT TRIGGER trg_cards_check_request
+    AFTER INSERT OR UPDATE OF request_id ON cards
+    FOR EACH ROW EXECUTE FUNCTION cards_check_request();
+
+-- Заявку с выпущенной картой можно удалить из рабочей таблицы только после переноса в архив
+CREATE OR REPLACE FUNCTION card_requests_restrict_delete() RETURNS TRIGGER AS
+$$
+BEGIN
+    IF EXISTS (SELECT 1 FROM cards WHERE request_id = OLD.id)
+        AND NOT EXISTS (SELECT 1 FROM card_requests_archive WHERE id = OLD.id) THEN
+        RAISE foreign_key_violation USING MESSAGE = 'По заявке ' || OLD.id || ' выпущена карта';
+    END IF;
+    RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_card_requests_restrict_delete
+    BEFORE DELETE ON card_requests
+    FOR EACH ROW EXECUTE FUNCTION card_requests_restrict_delete();
+
+-- =====================================================
+-- 6. УВЕДОМЛЕНИЯ ОБ ИЗМЕНЕНИИ СПРАВОЧНИКОВ
+-- =====================================================
+
+-- Приложение кэширует справочники в памяти и слушает канал reference_data_changed
+-- (LISTEN/NOTIFY), payload - имя измененной таблицы
+CREATE OR REPLACE FUNCTION notify_reference_data_changed() RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM pg_notify('reference_data_changed', TG_TABLE_NAME);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_roles_changed
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON roles
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_reference_data_changed();
+
+CREATE TRIGGER trg_request_statuses_changed
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON request_statuses
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_reference_data_changed();
+
+CREATE TRIGGER trg_card_statuses_changed
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON card_statuses
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_reference_data_changed();
+
+CREATE TRIGGER trg_card_types_changed
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON card_types
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_reference_data_changed();
 
-COMMENT ON TABLE access_logs IS 'Журнал входов сотрудников в систему';
+CREATE TRIGGER trg_branches_changed
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON branches
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_reference_data_changed();
 
-CREATE INDEX idx_access_logs_employee_id ON access_logs (employee_id);
-CREATE INDEX idx_access_logs_login_time ON access_logs (login_time);
+CREATE TRIGGER trg_card_type_limit_templates_changed
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON card_type_limit_templates
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_reference_data_changed();
 
 -- =====================================================
 -- ПРОВЕРКА СВЯЗЕЙ (VERIFICATION QUERIES)
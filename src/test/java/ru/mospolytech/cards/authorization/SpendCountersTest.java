@@ -0,0 +1,61 @@
+package ru.mospolytech.cards.authorization;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Счетчики расходов карт: лимит за период и смена периода без сброса расходов нового периода
+ */
+class SpendCountersTest {
+
+    private static final long DAY = 20_000;
+    private static final int SLOT = 5;
+
+    @Test
+    void addsUpToLimit() {
+        SpendCounters counters = counters();
+
+        assertThat(counters.tryAdd(SLOT, SpendCounters.DAILY, DAY, 600, 1_000)).isEqualTo(600);
+        assertThat(counters.tryAdd(SLOT, SpendCounters.DAILY, DAY, 400, 1_000)).isEqualTo(1_000);
+        assertThat(counters.tryAdd(SLOT, SpendCounters.DAILY, DAY, 1, 1_000)).isEqualTo(-1);
+        assertThat(counters.get(SLOT, SpendCounters.DAILY, DAY)).isEqualTo(1_000);
+    }
+
+    @Test
+    void newPeriodStartsFromZero() {
+        SpendCounters counters = counters();
+
+        assertThat(counters.tryAdd(SLOT, SpendCounters.DAILY, DAY, 1_000, 1_000)).isEqualTo(1_000);
+        assertThat(counters.tryAdd(SLOT, SpendCounters.DAILY, DAY + 1, 300, 1_000)).isEqualTo(300);
+        assertThat(counters.get(SLOT, SpendCounters.DAILY, DAY)).isZero();
+    }
+
+    @Test
+    void staleAddDoesNotResetNewerPeriod() {
+        SpendCounters counters = counters();
+        assertThat(counters.tryAdd(SLOT, SpendCounters.DAILY, DAY + 1, 900, 1_000)).isEqualTo(900);
+
+        // Операция посчитала день до полуночи, а счетчик уже в новом дне
+        assertThat(counters.tryAdd(SLOT, SpendCounters.DAILY, DAY, 500, 1_000)).isEqualTo(-1);
+
+        assertThat(counters.get(SLOT, SpendCounters.DAILY, DAY + 1)).isEqualTo(900);
+        assertThat(counters.tryAdd(SLOT, SpendCounters.DAILY, DAY + 1, 101, 1_000)).isEqualTo(-1);
+    }
+
+    @Test
+    void subtractOfPreviousPeriodIsIgnored() {
+        SpendCounters counters = counters();
+        counters.tryAdd(SLOT, SpendCounters.DAILY, DAY + 1, 700, 1_000);
+
+        counters.subtract(SLOT, SpendCounters.DAILY, DAY, 700);
+
+        assertThat(counters.get(SLOT, SpendCounters.DAILY, DAY + 1)).isEqualTo(700);
+    }
+
+    private static SpendCounters counters() {
+        SpendCounters counters = new SpendCounters();
+        counters.ensureCapacity(SLOT + 1);
+        return counters;
+    }
+}
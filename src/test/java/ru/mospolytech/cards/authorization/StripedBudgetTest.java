@@ -0,0 +1,204 @@
+package ru.mospolytech.cards.authorization;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Учет аренды полос общего лимита: потрачено ровно столько, сколько списано, и никогда больше лимита
+ */
+class StripedBudgetTest {
+
+    // Номер дня, как у дневных лимитов
+    private static final long PERIOD = LocalDate.of(2025, 3, 1).toEpochDay();
+    private static final int THREADS = 8;
+
+    @Test
+    void spentCountsConsumedAmountNotLeasedAmount() {
+        StripedBudget budget = new StripedBudget(4);
+
+        assertThat(budget.tryConsume(0, PERIOD, 1_500, 10_000_000)).isTrue();
+        assertThat(budget.tryConsume(1, PERIOD, 700, 10_000_000)).isTrue();
+
+        // Полосы взяли из центра порции с запасом, но неизрасходованная аренда в расход не входит
+        assertThat(budget.spent(PERIOD)).isEqualTo(2_200);
+    }
+
+    @Test
+    void consumesExactlyUpToLimitFromOneStripe() {
+        StripedBudget budget = new StripedBudget(1);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(budget.tryConsume(0, PERIOD, 10, 1_000)).isTrue();
+        }
+
+        assertThat(budget.tryConsume(0, PERIOD, 1, 1_000)).isFalse();
+        assertThat(budget.spent(PERIOD)).isEqualTo(1_000);
+    }
+
+    @Test
+    void exhaustedCenterBorrowsLeaseOfOtherStripe() {
+        StripedBudget budget = new StripedBudget(2);
+        long limit = 12_800;
+
+        // Полоса 0 берет всю аренду: лимит / (2 полосы * 64) = 100, но не меньше суммы операции
+        assertThat(budget.tryConsume(0, PERIOD, 1, limit)).isTrue();
+        assertThat(budget.tryConsume(1, PERIOD, limit - 100, limit)).isTrue();
+
+        // Центр исчерпан, остаток (99) лежит в аренде полосы 0 - полоса 1 его забирает
+        assertThat(budget.tryConsume(1, PERIOD, 99, limit)).isTrue();
+        assertThat(budget.tryConsume(1, PERIOD, 1, limit)).isFalse();
+        assertThat(budget.tryConsume(0, PERIOD, 1, limit)).isFalse();
+        assertThat(budget.spent(PERIOD)).isEqualTo(limit);
+    }
+
+    @Test
+    void releaseReturnsAmountToStripe() {
+        StripedBudget budget = new StripedBudget(2);
+
+        assertThat(budget.tryConsume(0, PERIOD, 1_000, 1_000)).isTrue();
+        assertThat(budget.tryConsume(1, PERIOD, 1, 1_000)).isFalse();
+
+        budget.release(0, PERIOD, 400);
+
+        assertThat(budget.spent(PERIOD)).isEqualTo(600);
+        // Возвращенная сумма доступна и другим полосам
+        assertThat(budget.tryConsume(1, PERIOD, 400, 1_000)).isTrue();
+        assertThat(budget.tryConsume(1, PERIOD, 1, 1_000)).isFalse();
+        assertThat(budget.spent(PERIOD)).isEqualTo(1_000);
+    }
+
+    @Test
+    void restoredSpendingReducesAvailableBudget() {
+        StripedBudget budget = new StripedBudget(4);
+
+        budget.addSpent(PERIOD, 9_990);
+
+        assertThat(budget.spent(PERIOD)).isEqualTo(9_990);
+        assertThat(budget.tryConsume(2, PERIOD, 11, 10_000)).isFalse();
+        assertThat(budget.tryConsume(2, PERIOD, 10, 10_000)).isTrue();
+        assertThat(budget.spent(PERIOD)).isEqualTo(10_000);
+    }
+
+    @Test
+    void newPeriodStartsFromZero() {
+        StripedBudget budget = new StripedBudget(2);
+
+        assertThat(budget.tryConsume(0, PERIOD, 1_000, 1_000)).isTrue();
+        assertThat(budget.tryConsume(0, PERIOD, 1, 1_000)).isFalse();
+
+        // Аренда прошлого периода в новом не расходуется и не уменьшает его бюджет
+        assertThat(budget.tryConsume(0, PERIOD + 1, 1_000, 1_000)).isTrue();
+        assertThat(budget.spent(PERIOD + 1)).isEqualTo(1_000);
+        assertThat(budget.spent(PERIOD)).isZero();
+    }
+
+    @Test
+    void lateReleaseOfPreviousPeriodKeepsCurrentLease() {
+        StripedBudget budget = new StripedBudget(1);
+        long limit = 12_800;
+
+        // Аренда нового периода: 200 (limit / 64), из них 100 списано
+        assertThat(budget.tryConsume(0, PERIOD + 1, 100, limit)).isTrue();
+
+        // Откат авторизации прошлого периода пришел после смены дня
+        budget.release(0, PERIOD, 50);
+
+        assertThat(budget.spent(PERIOD + 1)).isEqualTo(100);
+        // Остаток бюджета: 100 в аренде полосы и 12 600 в центре
+        assertThat(budget.tryConsume(0, PERIOD + 1, 100, limit)).isTrue();
+        assertThat(budget.tryConsume(0, PERIOD + 1, limit - 200, limit)).isTrue();
+        assertThat(budget.tryConsume(0, PERIOD + 1, 1, limit)).isFalse();
+        assertThat(budget.spent(PERIOD + 1)).isEqualTo(limit);
+    }
+
+    @Test
+    void staleConsumeDoesNotResetNewerPeriod() {
+        StripedBudget budget = new StripedBudget(2);
+
+        assertThat(budget.tryConsume(0, PERIOD + 1, 1_000, 1_000)).isTrue();
+
+        // Операция посчитала день до полуночи, а бюджет уже в новом дне: центр не возвращается к старому дню
+        assertThat(budget.tryConsume(1, PERIOD, 500, 1_000)).isFalse();
+        budget.addSpent(PERIOD, 500);
+
+        assertThat(budget.spent(PERIOD + 1)).isEqualTo(1_000);
+        assertThat(budget.tryConsume(1, PERIOD + 1, 1, 1_000)).isFalse();
+    }
+
+    @Test
+    void concurrentUnitSpendingReachesLimitExactly() throws Exception {
+        StripedBudget budget = new StripedBudget(THREADS);
+        long limit = 200_000;
+
+        long consumed = spendConcurrently(budget, limit, () -> 1L);
+
+        // Каждая полоса перед отказом исчерпывает свою аренду, поэтому бюджет расходуется без остатка
+        assertThat(consumed).isEqualTo(limit);
+        assertThat(budget.spent(PERIOD)).isEqualTo(limit);
+    }
+
+    @Test
+    void concurrentSpendingNeverExceedsLimit() throws Exception {
+        StripedBudget budget = new StripedBudget(THREADS);
+        long limit = 5_000_000;
+
+        long consumed = spendConcurrently(budget, limit, () -> ThreadLocalRandom.current().nextLong(1, 5_000));
+
+        assertThat(consumed).isLessThanOrEqualTo(limit);
+        assertThat(budget.spent(PERIOD)).isEqualTo(consumed);
+    }
+
+    /**
+     * Каждый поток списывает через свою полосу, пока не получит отказ
+     *
+     * @return сумма успешных списаний
+     */
+    private static long spendConcurrently(StripedBudget budget, long limit, AmountSource amounts) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int stripe = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    long total = 0;
+                    // Отказ по крупной сумме не означает исчерпания - пробуем еще несколько раз
+                    int refusals = 0;
+                    while (refusals < 20) {
+                        long amount = amounts.next();
+                        if (budget.tryConsume(stripe, PERIOD, amount, limit)) {
+                            total += amount;
+                        } else {
+                            refusals++;
+                        }
+                    }
+                    return total;
+                }));
+            }
+            start.countDown();
+            long consumed = 0;
+            for (Future<Long> future : futures) {
+                consumed += future.get(30, TimeUnit.SECONDS);
+            }
+            return consumed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface AmountSource {
+        long next();
+    }
+}
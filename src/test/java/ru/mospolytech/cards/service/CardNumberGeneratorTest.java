@@ -0,0 +1,119 @@
+package ru.mospolytech.cards.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Номера карт: контрольная цифра Луна и отсутствие повторов при перемешивании значений последовательности.
+ * Последовательность card_account_number_seq заменена счетчиком в памяти.
+ */
+class CardNumberGeneratorTest {
+
+    private static final String BIN = "220070";
+
+    @Test
+    void luhnCheckDigitMatchesKnownNumbers() {
+        assertThat(CardNumberGenerator.luhnCheckDigit("7992739871")).isEqualTo(3);
+        assertThat(CardNumberGenerator.luhnCheckDigit("453957876362148")).isEqualTo(6);
+        assertThat(CardNumberGenerator.luhnCheckDigit("000000000000000")).isEqualTo(0);
+        assertThat(CardNumberGenerator.isLuhnValid("79927398713")).isTrue();
+        assertThat(CardNumberGenerator.isLuhnValid("4539578763621486")).isTrue();
+    }
+
+    @Test
+    void luhnRejectsSingleDigitErrorsAndGarbage() {
+        String valid = "4539578763621486";
+        for (int position = 0; position < valid.length(); position++) {
+            for (char digit = '0'; digit <= '9'; digit++) {
+                if (digit == valid.charAt(position)) {
+                    continue;
+                }
+                String corrupted = valid.substring(0, position) + digit + valid.substring(position + 1);
+                assertThat(CardNumberGenerator.isLuhnValid(corrupted)).as(corrupted).isFalse();
+            }
+        }
+        assertThat(CardNumberGenerator.isLuhnValid(null)).isFalse();
+        assertThat(CardNumberGenerator.isLuhnValid("7")).isFalse();
+        assertThat(CardNumberGenerator.isLuhnValid("4539 5787 6362 1486")).isFalse();
+    }
+
+    @Test
+    void numbersHaveBinAndValidCheckDigit() {
+        CardNumberGenerator generator = new CardNumberGenerator(new SequenceStub(1), BIN);
+
+        List<String> numbers = generator.nextNumbers(1000);
+
+        assertThat(numbers).hasSize(1000).allSatisfy(number -> {
+            assertThat(number).hasSize(16).startsWith(BIN).containsOnlyDigits();
+            assertThat(CardNumberGenerator.isLuhnValid(number)).as(number).isTrue();
+        });
+    }
+
+    @Test
+    void numbersDoNotRepeatAcrossBatches() {
+        SequenceStub sequence = new SequenceStub(1);
+        CardNumberGenerator generator = new CardNumberGenerator(sequence, BIN);
+
+        Set<String> seen = new HashSet<>();
+        for (int batch = 0; batch < 200; batch++) {
+            for (String number : generator.nextNumbers(1000)) {
+                assertThat(seen.add(number)).as(number).isTrue();
+            }
+        }
+        assertThat(seen).hasSize(200_000);
+    }
+
+    @Test
+    void numbersDoNotRepeatAtEndOfSequence() {
+        // Перестановка по модулю 10^9: конец диапазона не пересекается с началом
+        Set<String> seen = new HashSet<>(new CardNumberGenerator(new SequenceStub(1), BIN).nextNumbers(50_000));
+        List<String> last = new CardNumberGenerator(new SequenceStub(999_950_000L), BIN).nextNumbers(50_000);
+
+        assertThat(last).doesNotHaveDuplicates().noneMatch(seen::contains);
+    }
+
+    @Test
+    void consecutiveSequenceValuesAreNotConsecutiveNumbers() {
+        List<String> numbers = new CardNumberGenerator(new SequenceStub(1), BIN).nextNumbers(2);
+
+        long first = Long.parseLong(numbers.get(0).substring(6, 15));
+        long second = Long.parseLong(numbers.get(1).substring(6, 15));
+        assertThat(Math.abs(second - first)).isGreaterThan(1);
+    }
+
+    @Test
+    void binMustBeSixDigits() {
+        assertThatThrownBy(() -> new CardNumberGenerator(new SequenceStub(1), "22007"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new CardNumberGenerator(new SequenceStub(1), "22007a"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * nextval по card_account_number_seq для generate_series(1, count)
+     */
+    private static class SequenceStub extends JdbcTemplate {
+
+        private final AtomicLong next;
+
+        SequenceStub(long start) {
+            this.next = new AtomicLong(start);
+        }
+
+        @Override
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            int count = ((Number) args[0]).intValue();
+            long start = next.getAndAdd(count);
+            return LongStream.range(start, start + count).mapToObj(elementType::cast).toList();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ru.mospolytech.cards.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Таблица request_number_counters в памяти для RequestNumberAllocator.
+ *
+ * UPSERT блокирует строку дня до конца транзакции, как PostgreSQL, а откат транзакции возвращает
+ * счетчик к прежнему значению. Транзакции привязаны к потоку; REQUIRES_NEW приостанавливает внешнюю,
+ * REQUIRED присоединяется к ней.
+ */
+public class InMemoryRequestNumberCounters extends JdbcTemplate {
+
+    private final Map<LocalDate, Long> values = new ConcurrentHashMap<>();
+    private final Map<LocalDate, ReentrantLock> rowLocks = new ConcurrentHashMap<>();
+    private final ThreadLocal<Deque<Transaction>> transactions = ThreadLocal.withInitial(ArrayDeque::new);
+    private final PlatformTransactionManager transactionManager = new TransactionManager();
+
+    public PlatformTransactionManager transactionManager() {
+        return transactionManager;
+    }
+
+    /**
+     * Зафиксированное значение счетчика дня (0, если строки нет)
+     */
+    public long lastValue(LocalDate day) {
+        return values.getOrDefault(day, 0L);
+    }
+
+    /**
+     * UPSERT: прибавляет размер блока (args[1]) к счетчику дня (args[0]) и возвращает новое last_value
+     */
+    @Override
+    public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+        Transaction transaction = transactions.get().peek();
+        if (transaction == null) {
+            throw new IllegalTransactionStateException("UPSERT счетчика вне транзакции");
+        }
+        LocalDate day = (LocalDate) args[0];
+        long amount = ((Number) args[1]).longValue();
+        if (!transaction.previousValues.containsKey(day)) {
+            ReentrantLock rowLock = rowLocks.computeIfAbsent(day, key -> new ReentrantLock());
+            rowLock.lock();
+            transaction.previousValues.put(day, values.get(day));
+        }
+        long value = values.merge(day, amount, Long::sum);
+        return requiredType.cast(value);
+    }
+
+    private static class Transaction {
+
+        // Значения строк до изменения в этой транзакции (null - строки не было)
+        private final Map<LocalDate, Long> previousValues = new LinkedHashMap<>();
+        private boolean rollbackOnly;
+    }
+
+    private static class Status extends SimpleTransactionStatus {
+
+        private final Transaction transaction;
+
+        Status(Transaction transaction, boolean newTransaction) {
+            super(newTransaction);
+            this.transaction = transaction;
+        }
+    }
+
+    private class TransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            Deque<Transaction> stack = transactions.get();
+            int propagation = definition == null
+                    ? TransactionDefinition.PROPAGATION_REQUIRED : definition.getPropagationBehavior();
+            if (propagation == TransactionDefinition.PROPAGATION_REQUIRED && !stack.isEmpty()) {
+                return new Status(stack.peek(), false);
+            }
+            Transaction transaction = new Transaction();
+            stack.push(transaction);
+            return new Status(transaction, true);
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+            Status current = (Status) status;
+            if (!current.isNewTransaction()) {
+                return;
+            }
+            if (current.transaction.rollbackOnly) {
+                finish(current.transaction, true);
+                throw new UnexpectedRollbackException("Транзакция помечена для отката");
+            }
+            finish(current.transaction, false);
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+            Status current = (Status) status;
+            if (current.isNewTransaction()) {
+                finish(current.transaction, true);
+            } else {
+                current.transaction.rollbackOnly = true;
+            }
+        }
+
+        private void finish(Transaction transaction, boolean rollback) {
+            transactions.get().pop();
+            transaction.previousValues.forEach((day, previous) -> {
+                if (rollback) {
+                    if (previous == null) {
+                        values.remove(day);
+                    } else {
+                        values.put(day, previous);
+                    }
+                }
+                rowLocks.get(day).unlock();
+            });
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package ru.mospolytech.cards.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Параллельная выдача номеров заявок: без повторов, а при размере блока 1 - без пропусков,
+ * в том числе когда заявка не сохранилась после выдачи номера.
+ * Таблица request_number_counters заменена InMemoryRequestNumberCounters с блокировкой строки и откатом.
+ */
+class RequestNumberAllocatorTest {
+
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 500;
+
+    @Test
+    void blockSizeOneGivesContiguousNumbersWithoutCollisions() throws Exception {
+        InMemoryRequestNumberCounters counter = new InMemoryRequestNumberCounters();
+        RequestNumberAllocator allocator = allocator(counter, 1);
+
+        List<String> numbers = allocateConcurrently(List.of(allocator));
+
+        assertThat(numbers).hasSize(THREADS * PER_THREAD).doesNotHaveDuplicates();
+        assertThat(sequenceValues(numbers))
+                .containsExactlyElementsOf(LongStream.rangeClosed(1, THREADS * PER_THREAD).boxed().toList());
+    }
+
+    @Test
+    void blocksAreUniqueAcrossNodes() throws Exception {
+        InMemoryRequestNumberCounters counter = new InMemoryRequestNumberCounters();
+        List<RequestNumberAllocator> nodes = List.of(allocator(counter, 20), allocator(counter, 20),
+                allocator(counter, 7));
+
+        List<String> numbers = allocateConcurrently(nodes);
+
+        assertThat(numbers).hasSize(THREADS * PER_THREAD).doesNotHaveDuplicates();
+        // Все номера лежат в зарезервированных блоках; пропуски - только остатки последних блоков узлов
+        long lastValue = counter.lastValue(LocalDate.now());
+        assertThat(sequenceValues(numbers)).allMatch(value -> value >= 1 && value <= lastValue);
+    }
+
+    @Test
+    void failedInsertRollsBackNumberWithBlockSizeOne() {
+        InMemoryRequestNumberCounters counter = new InMemoryRequestNumberCounters();
+        RequestNumberAllocator allocator = allocator(counter, 1);
+
+        assertThatThrownBy(() -> allocator.createWithNumber(number -> {
+            throw new IllegalStateException("Ошибка вставки заявки " + number);
+        })).isInstanceOf(IllegalStateException.class).hasMessageEndingWith("-0001");
+
+        assertThat(counter.lastValue(LocalDate.now())).isZero();
+        String saved = allocator.createWithNumber(number -> number);
+        assertThat(saved).endsWith("-0001");
+        assertThat(counter.lastValue(LocalDate.now())).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentFailedInsertsLeaveNoGapsWithBlockSizeOne() throws Exception {
+        InMemoryRequestNumberCounters counter = new InMemoryRequestNumberCounters();
+        RequestNumberAllocator allocator = allocator(counter, 1);
+
+        // Каждая третья вставка падает после выдачи номера
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> saved = Collections.synchronizedList(new ArrayList<>());
+        runConcurrently(() -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                try {
+                    allocator.createWithNumber(number -> {
+                        if (attempts.incrementAndGet() % 3 == 0) {
+                            throw new IllegalStateException("Ошибка вставки заявки " + number);
+                        }
+                        return saved.add(number);
+                    });
+                } catch (IllegalStateException e) {
+                    // Заявка не создана, номер откатился
+                }
+            }
+        });
+
+        assertThat(saved).hasSize(THREADS * PER_THREAD - THREADS * PER_THREAD / 3);
+        assertThat(sequenceValues(saved))
+                .containsExactlyElementsOf(LongStream.rangeClosed(1, saved.size()).boxed().toList());
+        assertThat(counter.lastValue(LocalDate.now())).isEqualTo(saved.size());
+    }
+
+    @Test
+    void failedInsertSkipsNumberWithBlocks() {
+        InMemoryRequestNumberCounters counter = new InMemoryRequestNumberCounters();
+        RequestNumberAllocator allocator = allocator(counter, 10);
+
+        assertThatThrownBy(() -> allocator.createWithNumber(number -> {
+            throw new IllegalStateException("Ошибка вставки заявки " + number);
+        })).isInstanceOf(IllegalStateException.class);
+
+        // Блок зарезервирован в отдельной транзакции и не откатывается, номер 0001 пропущен, но не повторен
+        assertThat(counter.lastValue(LocalDate.now())).isEqualTo(10);
+        String saved = allocator.createWithNumber(number -> number);
+        assertThat(saved).endsWith("-0002");
+    }
+
+    @Test
+    void numberHasDailyFormat() {
+        RequestNumberAllocator allocator = allocator(new InMemoryRequestNumberCounters(), 1);
+
+        String today = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+        assertThat(allocator.nextRequestNumber()).isEqualTo("REQ-" + today + "-0001");
+        assertThat(allocator.nextRequestNumber()).isEqualTo("REQ-" + today + "-0002");
+    }
+
+    private static List<String> allocateConcurrently(List<RequestNumberAllocator> nodes) throws Exception {
+        List<String> numbers = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger threads = new AtomicInteger();
+        runConcurrently(() -> {
+            RequestNumberAllocator allocator = nodes.get(threads.getAndIncrement() % nodes.size());
+            for (int i = 0; i < PER_THREAD; i++) {
+                numbers.add(allocator.nextRequestNumber());
+            }
+        });
+        return numbers;
+    }
+
+    /**
+     * Запустить task в THREADS потоках одновременно и дождаться завершения
+     */
+    private static void runConcurrently(Runnable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Long> sequenceValues(List<String> numbers) {
+        return numbers.stream()
+                .map(number -> Long.parseLong(number.substring(number.lastIndexOf('-') + 1)))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static RequestNumberAllocator allocator(InMemoryRequestNumberCounters counters, int blockSize) {
+        return new RequestNumberAllocator(counters, counters.transactionManager(), blockSize);
+    }
+}
@@ -0,0 +1,83 @@
+package ru.mospolytech.cards.specification;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Кодирование курсора постраничного вывода и разбор поврежденных значений из адресной строки
+ */
+class CardRequestCursorTest {
+
+    @Test
+    void roundTripKeepsSortValueAndId() {
+        LocalDateTime createdAt = LocalDateTime.of(2025, 3, 14, 9, 26, 53, 589_000_000);
+        CardRequestCursor cursor = new CardRequestCursor(createdAt.toString(), 42L);
+
+        CardRequestCursor decoded = CardRequestCursor.decode(cursor.encode());
+
+        assertThat(decoded.getId()).isEqualTo(42L);
+        assertThat(decoded.getSortValue()).isEqualTo(createdAt.toString());
+        assertThat(decoded.getSortValueAsDateTime()).isEqualTo(createdAt);
+    }
+
+    @Test
+    void roundTripKeepsSeparatorAndNonAsciiInSortValue() {
+        CardRequestCursor cursor = new CardRequestCursor("ООО «Рога|Копыта»", 7L);
+
+        String encoded = cursor.encode();
+        CardRequestCursor decoded = CardRequestCursor.decode(encoded);
+
+        // Значение безопасно для параметра запроса без дополнительного кодирования
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+        assertThat(decoded.getId()).isEqualTo(7L);
+        assertThat(decoded.getSortValue()).isEqualTo("ООО «Рога|Копыта»");
+    }
+
+    @Test
+    void emptySortValueSurvivesRoundTrip() {
+        CardRequestCursor decoded = CardRequestCursor.decode(new CardRequestCursor("", 3L).encode());
+
+        assertThat(decoded.getId()).isEqualTo(3L);
+        assertThat(decoded.getSortValue()).isEmpty();
+    }
+
+    @Test
+    void missingCursorMeansFirstPage() {
+        assertThat(CardRequestCursor.decode(null)).isNull();
+        assertThat(CardRequestCursor.decode("")).isNull();
+        assertThat(CardRequestCursor.decode("   ")).isNull();
+    }
+
+    @Test
+    void corruptedCursorMeansFirstPage() {
+        // Не Base64
+        assertThat(CardRequestCursor.decode("не курсор!")).isNull();
+        assertThat(CardRequestCursor.decode("abc$")).isNull();
+        // Нет разделителя
+        assertThat(CardRequestCursor.decode(encodeRaw("12345"))).isNull();
+        // Нет id
+        assertThat(CardRequestCursor.decode(encodeRaw("|2025-01-01T00:00"))).isNull();
+        // id не число
+        assertThat(CardRequestCursor.decode(encodeRaw("12a|2025-01-01T00:00"))).isNull();
+        assertThat(CardRequestCursor.decode(encodeRaw("99999999999999999999|x"))).isNull();
+    }
+
+    @Test
+    void cursorFromAnotherSortIsNotADate() {
+        CardRequestCursor cursor = CardRequestCursor.decode(new CardRequestCursor("Иванов", 1L).encode());
+
+        assertThatThrownBy(cursor::getSortValueAsDateTime)
+                .isInstanceOf(DateTimeParseException.class);
+    }
+
+    private static String encodeRaw(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
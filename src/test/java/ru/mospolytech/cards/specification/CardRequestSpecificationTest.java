@@ -0,0 +1,248 @@
+package ru.mospolytech.cards.specification;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.junit.jupiter.api.Test;
+import ru.mospolytech.cards.entity.CardRequest;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Условие afterCursor при равных значениях ключа сортировки: обход страницами дает каждую заявку ровно один раз.
+ *
+ * Условия строятся настоящей спецификацией на заглушке Criteria API, которая вычисляет их
+ * над строками в памяти - база данных и JPA-провайдер не нужны.
+ */
+class CardRequestSpecificationTest {
+
+    private static final String ID = "id";
+    private static final String CREATED_AT = "createdAt";
+    private static final String LAST_NAME = "userOrganization.user.lastName";
+
+    @Test
+    void createdAtPagesVisitEveryRequestOnceWithTies() {
+        List<Map<String, Object>> rows = rows();
+
+        for (String direction : List.of("asc", "desc")) {
+            List<Long> visited = walkPages(rows, "createdAt", direction, 3,
+                    row -> new CardRequestCursor(row.get(CREATED_AT).toString(), (Long) row.get(ID)));
+
+            assertThat(visited).as(direction).doesNotHaveDuplicates()
+                    .containsExactlyElementsOf(sortedIds(rows, CREATED_AT, "asc".equals(direction)));
+        }
+    }
+
+    @Test
+    void clientPagesVisitEveryRequestOnceWithTies() {
+        List<Map<String, Object>> rows = rows();
+
+        for (String direction : List.of("asc", "desc")) {
+            List<Long> visited = walkPages(rows, "client", direction, 4,
+                    row -> new CardRequestCursor((String) row.get(LAST_NAME), (Long) row.get(ID)));
+
+            assertThat(visited).as(direction).doesNotHaveDuplicates()
+                    .containsExactlyElementsOf(sortedIds(rows, LAST_NAME, "asc".equals(direction)));
+        }
+    }
+
+    @Test
+    void pageBoundaryInsideGroupOfEqualValues() {
+        LocalDateTime sameTime = LocalDateTime.of(2025, 1, 1, 12, 0);
+        List<Map<String, Object>> rows = List.of(row(10, sameTime, "А"), row(11, sameTime, "А"),
+                row(12, sameTime, "А"), row(13, sameTime.plusMinutes(1), "Б"));
+
+        // Последней показана заявка 11: по убыванию дальше идет только 10, по возрастанию - 12 и 13
+        CardRequestCursor cursor = new CardRequestCursor(sameTime.toString(), 11L);
+        assertThat(matchingIds(rows, "createdAt", "desc", cursor)).containsExactlyInAnyOrder(10L);
+        assertThat(matchingIds(rows, "createdAt", "asc", cursor)).containsExactlyInAnyOrder(12L, 13L);
+    }
+
+    @Test
+    void cursorFromAnotherSortStartsFromFirstPage() {
+        Predicate predicate = CardRequestSpecification.afterCursor("createdAt", "desc",
+                new CardRequestCursor("Иванов", 5L)).toPredicate(root(), null, criteriaBuilder());
+
+        assertThat(predicate).isNull();
+    }
+
+    @Test
+    void unknownSortFallsBackToCreatedAtDescending() {
+        LocalDateTime time = LocalDateTime.of(2025, 1, 1, 12, 0);
+        List<Map<String, Object>> rows = List.of(row(1, time, "А"), row(2, time, "А"), row(3, time.plusDays(1), "А"));
+
+        // Направление "asc" для неизвестного поля игнорируется, как и в withSort
+        CardRequestCursor cursor = new CardRequestCursor(time.toString(), 2L);
+        assertThat(matchingIds(rows, "status; DROP TABLE", "asc", cursor)).containsExactly(1L);
+    }
+
+    /**
+     * Обход всех страниц: фильтр afterCursor, сортировка как в withSort, курсор через encode/decode
+     */
+    private static List<Long> walkPages(List<Map<String, Object>> rows, String sortBy, String direction,
+                                        int pageSize, Function<Map<String, Object>, CardRequestCursor> cursorOf) {
+        String key = "client".equals(sortBy) ? LAST_NAME : CREATED_AT;
+        Comparator<Map<String, Object>> order = order(key, "asc".equals(direction));
+
+        List<Long> visited = new ArrayList<>();
+        CardRequestCursor cursor = null;
+        for (int page = 0; page <= rows.size(); page++) {
+            Predicate predicate = CardRequestSpecification.afterCursor(sortBy, direction, cursor)
+                    .toPredicate(root(), null, criteriaBuilder());
+            List<Map<String, Object>> pageRows = rows.stream()
+                    .filter(row -> predicate == null || evaluate(predicate, row))
+                    .sorted(order)
+                    .limit(pageSize)
+                    .toList();
+            if (pageRows.isEmpty()) {
+                return visited;
+            }
+            pageRows.forEach(row -> visited.add((Long) row.get(ID)));
+            cursor = CardRequestCursor.decode(cursorOf.apply(pageRows.get(pageRows.size() - 1)).encode());
+        }
+        throw new AssertionError("Обход страниц не завершился");
+    }
+
+    private static List<Long> matchingIds(List<Map<String, Object>> rows, String sortBy, String direction,
+                                          CardRequestCursor cursor) {
+        Predicate predicate = CardRequestSpecification.afterCursor(sortBy, direction, cursor)
+                .toPredicate(root(), null, criteriaBuilder());
+        return rows.stream().filter(row -> evaluate(predicate, row)).map(row -> (Long) row.get(ID)).toList();
+    }
+
+    private static List<Long> sortedIds(List<Map<String, Object>> rows, String key, boolean ascending) {
+        return rows.stream().sorted(order(key, ascending)).map(row -> (Long) row.get(ID)).toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<Map<String, Object>> order(String key, boolean ascending) {
+        Comparator<Map<String, Object>> order = Comparator
+                .comparing((Map<String, Object> row) -> (Comparable<Object>) row.get(key))
+                .thenComparing(row -> (Long) row.get(ID));
+        return ascending ? order : order.reversed();
+    }
+
+    /**
+     * Заявки с повторяющимися датами создания и фамилиями, id в порядке, не совпадающем с датами
+     */
+    private static List<Map<String, Object>> rows() {
+        LocalDateTime base = LocalDateTime.of(2025, 2, 1, 10, 0);
+        String[] lastNames = {"Иванов", "Петров", "Иванов", "Сидоров", "Петров"};
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            long id = 100 + (i * 7) % 23;
+            rows.add(row(id, base.plusMinutes(i / 4), lastNames[i % lastNames.length]));
+        }
+        return rows;
+    }
+
+    private static Map<String, Object> row(long id, LocalDateTime createdAt, String lastName) {
+        Map<String, Object> row = new HashMap<>();
+        row.put(ID, id);
+        row.put(CREATED_AT, createdAt);
+        row.put(LAST_NAME, lastName);
+        return row;
+    }
+
+    // ----- Заглушка Criteria API: пути - имена полей строки, условия - функции над строкой -----
+
+    interface RowPredicate {
+        boolean test(Map<String, Object> row);
+    }
+
+    interface Named {
+        String name();
+    }
+
+    private static boolean evaluate(Predicate predicate, Map<String, Object> row) {
+        return ((RowPredicate) predicate).test(row);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Root<CardRequest> root() {
+        return (Root<CardRequest>) from(Root.class, "");
+    }
+
+    private static Object from(Class<?> type, String prefix) {
+        return Proxy.newProxyInstance(CardRequestSpecificationTest.class.getClassLoader(),
+                new Class<?>[]{type}, (proxy, method, args) -> switch (method.getName()) {
+                    case "get" -> path(prefix + args[0]);
+                    case "getFetches", "getJoins" -> Set.of();
+                    case "join" -> from(Join.class, prefix + args[0] + ".");
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "from(" + prefix + ")";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static Path<?> path(String name) {
+        return (Path<?>) Proxy.newProxyInstance(CardRequestSpecificationTest.class.getClassLoader(),
+                new Class<?>[]{Path.class, Named.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "name", "toString" -> name;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static CriteriaBuilder criteriaBuilder() {
+        return (CriteriaBuilder) Proxy.newProxyInstance(CardRequestSpecificationTest.class.getClassLoader(),
+                new Class<?>[]{CriteriaBuilder.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "and" -> predicate(row -> predicates(args).allMatch(p -> evaluate(p, row)));
+                    case "or" -> predicate(row -> predicates(args).anyMatch(p -> evaluate(p, row)));
+                    case "greaterThan" -> comparison(args, result -> result > 0);
+                    case "greaterThanOrEqualTo" -> comparison(args, result -> result >= 0);
+                    case "lessThan" -> comparison(args, result -> result < 0);
+                    case "lessThanOrEqualTo" -> comparison(args, result -> result <= 0);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "criteriaBuilder";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static Stream<Predicate> predicates(Object[] args) {
+        // and(x, y) и and(Predicate...)
+        return Arrays.stream(args).flatMap(arg -> arg instanceof Predicate[] array
+                ? Arrays.stream(array) : Stream.of((Predicate) arg));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate comparison(Object[] args, IntPredicate accept) {
+        String field = ((Named) args[0]).name();
+        Object value = args[1];
+        return predicate(row -> {
+            Object right = value instanceof Expression<?> expression ? row.get(((Named) expression).name()) : value;
+            return accept.test(((Comparable<Object>) row.get(field)).compareTo(right));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate predicate(RowPredicate test) {
+        return (Predicate) Proxy.newProxyInstance(CardRequestSpecificationTest.class.getClassLoader(),
+                new Class<?>[]{Predicate.class, RowPredicate.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "test" -> test.test((Map<String, Object>) args[0]);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "predicate";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}